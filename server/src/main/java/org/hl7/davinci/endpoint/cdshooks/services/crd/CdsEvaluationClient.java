@@ -0,0 +1,179 @@
+package org.hl7.davinci.endpoint.cdshooks.services.crd;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.hl7.davinci.endpoint.config.CdsClientConfig;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Shared client for the external CDS evaluation service configured by mettlesCDSUrl. Connections are
+ * pooled and kept alive between hook calls, and the response is parsed straight off the socket. The call
+ * runs on the calling thread: the client timeouts bound each step of it, and a shared timer aborts the
+ * connection once the whole call runs past the request deadline. Pool and latency statistics are published
+ * as "crd.cds.client.*" metrics through actuator.
+ */
+@Component
+public class CdsEvaluationClient {
+
+  static final Logger logger = LoggerFactory.getLogger(CdsEvaluationClient.class);
+
+  @Autowired
+  private YamlConfig myConfig;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private PoolingHttpClientConnectionManager connectionManager;
+  private CloseableHttpClient httpClient;
+  private ScheduledThreadPoolExecutor deadlines;
+
+  @PostConstruct
+  public void init() {
+    CdsClientConfig clientConfig = myConfig.getCdsClient();
+
+    connectionManager = new PoolingHttpClientConnectionManager(clientConfig.getKeepAlive(), TimeUnit.MILLISECONDS);
+    connectionManager.setMaxTotal(clientConfig.getMaxConnections());
+    connectionManager.setDefaultMaxPerRoute(clientConfig.getMaxConnectionsPerRoute());
+
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(clientConfig.getConnectTimeout())
+        .setConnectionRequestTimeout(clientConfig.getConnectionRequestTimeout())
+        .setSocketTimeout(clientConfig.getReadTimeout())
+        .build();
+
+    httpClient = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy((response, context) -> clientConfig.getKeepAlive())
+        .evictIdleConnections(clientConfig.getKeepAlive(), TimeUnit.MILLISECONDS)
+        .evictExpiredConnections()
+        .build();
+
+    deadlines = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "cds-client-deadline");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // most calls finish in time, do not keep their cancelled aborts queued until the deadline
+    deadlines.setRemoveOnCancelPolicy(true);
+
+    Gauge.builder("crd.cds.client.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased())
+        .description("Connections to the CDS evaluation service currently in use").register(meterRegistry);
+    Gauge.builder("crd.cds.client.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable())
+        .description("Idle keep-alive connections to the CDS evaluation service").register(meterRegistry);
+    Gauge.builder("crd.cds.client.pool.pending", connectionManager, cm -> cm.getTotalStats().getPending())
+        .description("Requests waiting for a connection to the CDS evaluation service").register(meterRegistry);
+    Gauge.builder("crd.cds.client.pool.max", connectionManager, cm -> cm.getTotalStats().getMax())
+        .description("Maximum connections to the CDS evaluation service").register(meterRegistry);
+  }
+
+  @PreDestroy
+  public void close() {
+    deadlines.shutdownNow();
+    try {
+      httpClient.close();
+    } catch (Exception e) {
+      logger.warn("CdsEvaluationClient::close(): failed to close http client: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Post the bundle JSON to the CDS evaluation service, aborting the call at the configured request deadline.
+   *
+   * @param bundleJson the encoded request bundle
+   * @return the parsed result array, or null if the call failed or ran past the deadline
+   */
+  public JSONArray post(String bundleJson) {
+    if (myConfig.getMettlesCDSUrl() == null || myConfig.getMettlesCDSUrl().isEmpty()) {
+      logger.warn("CdsEvaluationClient::post(): mettlesCDSUrl is not configured");
+      return null;
+    }
+    HttpPost post = new HttpPost(myConfig.getMettlesCDSUrl());
+    post.setHeader("Accept", "application/json");
+    post.setEntity(new StringEntity(bundleJson, ContentType.APPLICATION_JSON));
+
+    // aborting releases the connection and fails the call blocked on it
+    AtomicBoolean expired = new AtomicBoolean();
+    ScheduledFuture<?> deadline = deadlines.schedule(() -> {
+      expired.set(true);
+      post.abort();
+    }, myConfig.getCdsClient().getRequestDeadline(), TimeUnit.MILLISECONDS);
+    try {
+      return execute(post, expired);
+    } catch (RuntimeException e) {
+      if (expired.get()) {
+        meterRegistry.counter("crd.cds.client.deadline.exceeded").increment();
+        logger.warn("CdsEvaluationClient::post(): deadline exceeded calling " + myConfig.getMettlesCDSUrl());
+      } else {
+        logger.warn("CdsEvaluationClient::post(): call to " + myConfig.getMettlesCDSUrl() + " failed: "
+            + e.getMessage());
+      }
+      return null;
+    } finally {
+      deadline.cancel(false);
+    }
+  }
+
+  private JSONArray execute(HttpPost post, AtomicBoolean expired) {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "error";
+    try (CloseableHttpResponse response = httpClient.execute(post)) {
+      HttpEntity entity = response.getEntity();
+      int status = response.getStatusLine().getStatusCode();
+      if (status != HttpStatus.SC_OK) {
+        EntityUtils.consumeQuietly(entity);
+        outcome = String.valueOf(status);
+        throw new RuntimeException("CDS evaluation service returned status " + status);
+      }
+      // parse directly from the response stream instead of buffering the body
+      try (Reader reader = new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8)) {
+        JSONArray result = (JSONArray) new JSONParser().parse(reader);
+        outcome = "success";
+        return result;
+      }
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException("CDS evaluation service call failed: " + e.getMessage(), e);
+    } finally {
+      if (expired.get() && !"success".equals(outcome)) {
+        outcome = "deadline";
+      }
+      sample.stop(Timer.builder("crd.cds.client.requests")
+          .description("Latency of calls to the CDS evaluation service")
+          .tag("outcome", outcome)
+          .publishPercentileHistogram()
+          .register(meterRegistry));
+    }
+  }
+}
@@ -1,9 +1,5 @@
 package org.hl7.davinci.endpoint.cdshooks.services.crd;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,13 +8,14 @@ import org.cdshooks.AlternativeTherapy;
 import org.cdshooks.CoverageRequirements;
 import org.cdshooks.DrugInteraction;
 import org.hl7.ShortNameMaps;
+import org.hl7.davinci.endpoint.cdshooks.services.crd.r4.BundleIndex;
 import org.hl7.davinci.endpoint.components.CardBuilder.CqlResultsForCard;
 import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.hl7.davinci.endpoint.fhir.r4.FhirRuntime;
 import org.hl7.davinci.endpoint.rules.CoverageRequirementRuleResult;
 import org.hl7.davinci.r4.CardTypes;
 import org.hl7.fhir.r4.model.BooleanType;
 import org.hl7.fhir.r4.model.Bundle;
-import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r4.model.Parameters;
 import org.hl7.fhir.r4.model.Parameters.ParametersParameterComponent;
 import org.hl7.fhir.r4.model.Resource;
@@ -26,13 +23,10 @@ import org.hl7.fhir.r4.model.ResourceType;
 import org.hl7.fhir.r4.model.StringType;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.opencds.cqf.cql.engine.runtime.Code;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-
 import org.hl7.fhir.r4.model.Coverage;
 import org.hl7.fhir.r4.model.Reference;
 import org.hl7.fhir.r4.model.MedicationRequest;
@@ -40,23 +34,28 @@ import org.hl7.fhir.r4.model.ServiceRequest;
 import org.hl7.fhir.r4.model.DeviceRequest;
 import org.hl7.davinci.endpoint.rules.CoverageRequirementRuleCriteria;
 
-import ca.uhn.fhir.context.FhirContext;
 
 public class CdsResults {
 	YamlConfig myConfig;
-	FhirContext fhirContext = FhirContext.forR4();
 	private Bundle BundleResources;
+	private BundleIndex bundleIndex;
 	static final Logger logger = LoggerFactory.getLogger(CdsResults.class);
 	static final String DESC = "-description";
 
-	public CdsResults() {
+	private final CdsEvaluationClient cdsEvaluationClient;
+	private final FhirRuntime fhirRuntime;
 
+	public CdsResults(CdsEvaluationClient cdsEvaluationClient, FhirRuntime fhirRuntime) {
+		this.cdsEvaluationClient = cdsEvaluationClient;
+		this.fhirRuntime = fhirRuntime;
 	}
 
 	public List<CoverageRequirementRuleResult> executeCds(Bundle resources, YamlConfig myConfig) {
 		this.myConfig = myConfig;
 		this.BundleResources = resources;
 		if (resources != null) {
+			// index the flattened bundle once, every lookup below is a map read
+			this.bundleIndex = new BundleIndex(resources);
 			JSONArray resultobj = postResources(resources);
 			if (resultobj != null) {
 				return coverageResults(resultobj);
@@ -87,11 +86,7 @@ public class CdsResults {
 				logger.info("tthe key set is: " + obj.keySet());
 				if (obj.containsKey("requestId")) {
 					coverageRequirements.setRequestId((String) obj.get("requestId"));
-					Resource requestResource = getResourcefromBundle(this.BundleResources,
-							(String) obj.get("requestId"));
-					Gson gson = new Gson();
-					String json = gson.toJson(requestResource);
-					//System.out.println("==================================The request resource is " + json);
+					Resource requestResource = bundleIndex.getById((String) obj.get("requestId"));
 					if (requestResource.fhirType().equals("ServiceRequest")) {
 						ServiceRequest resource = (ServiceRequest) requestResource;
 						coverageRef = resource.getInsurance();
@@ -111,9 +106,9 @@ public class CdsResults {
 							Coverage res = null;
 							if (ref.getReference() != null) {
 							String coverage = ref.getReference().split("Coverage/")[1];
-								res = (Coverage) getResourcefromBundle(this.BundleResources, coverage);
+								res = (Coverage) bundleIndex.get("Coverage", coverage);
 							} else {
-								res = (Coverage) getResourcefromBundle(this.BundleResources, null);	
+								res = (Coverage) bundleIndex.getFirst("Coverage");
 							}
 							if (res != null) {
 								Reference insurerRef = res.getPayorFirstRep();
@@ -149,7 +144,7 @@ public class CdsResults {
 					
 					JSONObject params = (JSONObject) obj.get("configuration");
 
-					Resource resultParams = (Resource) fhirContext.newJsonParser().parseResource(params.toJSONString());
+					Resource resultParams = (Resource) fhirRuntime.getJsonParser().parseResource(params.toJSONString());
 					logger.info("resource type is"+resultParams.getResourceType().name());
 					if (resultParams.getResourceType().compareTo(ResourceType.Parameters)==0) {
 						cqlResults.setRuleApplies(true);
@@ -259,32 +254,6 @@ public class CdsResults {
 		return coverageRules;
 	}
 
-	private Resource getResourcefromBundle(Bundle bundle, String resourceId) {
-		// System.out.println("looking for resource: " + resourceId);
-		Resource res = null;
-		for (BundleEntryComponent entry : bundle.getEntry()) {
-			// System.out.println("the entry is :" + entry.getResource().fhirType());
-			if (entry.getResource().fhirType() == "Bundle") {
-				res = getResourcefromBundle((Bundle) entry.getResource(), resourceId);
-				if (res != null) {
-					return res;
-				}
-			}
-			if (resourceId == null && entry.getResource().fhirType() == "Coverage") {
-				return entry.getResource();
-			}
-			if (entry.getResource().getIdElement() != null) {
-				if (entry.getResource().getIdElement().getIdPart().equals(resourceId)) {
-					// System.out.println("found resource for: " + resourceId + "----"
-					// + ctx.newJsonParser().encodeResourceToString(entry.getResource()));
-					return entry.getResource();
-				}
-			}
-
-		}
-		return null;
-	}
-
 	private boolean getCQLBooleanResults(Parameters cqlParams, String code) {
 		for (ParametersParameterComponent param : cqlParams.getParameter()) {
 			if (param.getName().equals(code)) {
@@ -316,36 +285,11 @@ public class CdsResults {
 	public JSONArray postResources(Bundle requestsBundle) {
 		JSONArray cqlResObj = new JSONArray();
 
-		String cqlJsonStr = fhirContext.newJsonParser().encodeResourceToString(requestsBundle);
-		System.out.println("The bundle is " + cqlJsonStr);
-		try {
-
-			// cqlJsonStr = fhirContext.newJsonParser().encodeResourceToString(b);
-			// System.out.println("The bundle is " + cqlJsonStr);
-			logger.info("Trying to connect to " + myConfig.getMettlesCDSUrl());
-			URL cqlDataUrl = new URL(myConfig.getMettlesCDSUrl());
-			byte[] cqlReqDataBytes = cqlJsonStr.getBytes("UTF-8");
-			HttpURLConnection cqlDataconn = (HttpURLConnection) cqlDataUrl.openConnection();
-			cqlDataconn.setRequestMethod("POST");
-			cqlDataconn.setRequestProperty("Content-Type", "application/json");
-			cqlDataconn.setRequestProperty("Accept", "application/json");
-
-			cqlDataconn.setDoOutput(true);
-			cqlDataconn.getOutputStream().write(cqlReqDataBytes);
-			BufferedReader cqlResReader = new BufferedReader(
-					new InputStreamReader(cqlDataconn.getInputStream(), "UTF-8"));
-			String line = null;
-			StringBuilder cqlResStrBuilder = new StringBuilder();
-			while ((line = cqlResReader.readLine()) != null) {
-				cqlResStrBuilder.append(line);
-			}
-			logger.info("the recd string is : " + cqlResStrBuilder.toString());
-			JSONParser parser = new JSONParser();
-			JSONArray cqlObj = (JSONArray) parser.parse(cqlResStrBuilder.toString());
+		String cqlJsonStr = fhirRuntime.getJsonParser().encodeResourceToString(requestsBundle);
+		logger.info("Trying to connect to " + myConfig.getMettlesCDSUrl());
+		JSONArray cqlObj = cdsEvaluationClient.post(cqlJsonStr);
+		if (cqlObj != null) {
 			cqlResObj.add(cqlObj);
-
-		} catch (Exception e) {
-			e.printStackTrace();
 		}
 		return cqlResObj;
 	}
@@ -18,12 +18,14 @@ import org.hl7.davinci.PrefetchTemplateElement;
 import org.hl7.davinci.RequestIncompleteException;
 import org.hl7.davinci.endpoint.config.YamlConfig;
 import org.hl7.davinci.endpoint.components.CardBuilder;
+import org.hl7.davinci.endpoint.components.PrefetchExecutor;
 import org.hl7.davinci.endpoint.components.PrefetchHydrator;
 import org.hl7.davinci.endpoint.components.CardBuilder.CqlResultsForCard;
 import org.hl7.davinci.endpoint.components.QueryBatchRequest;
 import org.hl7.davinci.endpoint.database.FhirResourceRepository;
 import org.hl7.davinci.endpoint.database.RequestLog;
-import org.hl7.davinci.endpoint.database.RequestService;
+import org.hl7.davinci.endpoint.database.RequestLogWriter;
+import org.hl7.davinci.endpoint.fhir.r4.FhirRuntime;
 import org.hl7.davinci.endpoint.files.FileStore;
 import org.hl7.davinci.endpoint.rules.CoverageRequirementRuleCriteria;
 import org.hl7.davinci.endpoint.rules.CoverageRequirementRuleResult;
@@ -79,7 +81,7 @@ public abstract class CdsService<requestTypeT extends CdsRequest<?, ?>> {
   private YamlConfig myConfig;
 
   @Autowired
-  RequestService requestService;
+  RequestLogWriter requestLogWriter;
 
   @Autowired
   FileStore fileStore;
@@ -87,6 +89,18 @@ public abstract class CdsService<requestTypeT extends CdsRequest<?, ?>> {
   @Autowired
   private FhirResourceRepository fhirResourceRepository;
 
+  @Autowired
+  private CdsEvaluationClient cdsEvaluationClient;
+
+  @Autowired
+  private FhirRuntime fhirRuntime;
+
+  @Autowired
+  private PrefetchExecutor prefetchExecutor;
+
+  @Autowired
+  private FhirQueryClient fhirQueryClient;
+
   private final List<PrefetchTemplateElement> prefetchElements;
 
   protected FhirComponentsT fhirComponents;
@@ -144,22 +158,30 @@ public abstract class CdsService<requestTypeT extends CdsRequest<?, ?>> {
    * @return The response from the server
    */
   public CdsResponse handleRequest(@Valid @RequestBody requestTypeT request, URL applicationBaseUrl) {
-    // create the RequestLog
+    // create the RequestLog, it is only kept in memory until the request is done
     RequestLog requestLog = new RequestLog(request, new Date().getTime(),
-        this.fhirComponents.getFhirVersion().toString(), this.id, requestService, 5);
+        this.fhirComponents.getFhirVersion().toString(), this.id, 5);
+    try {
+      return handleRequest(request, applicationBaseUrl, requestLog);
+    } finally {
+      requestLogWriter.submit(requestLog);
+    }
+  }
 
+  private CdsResponse handleRequest(requestTypeT request, URL applicationBaseUrl, RequestLog requestLog) {
     // Parsed request
-    requestLog.advanceTimeline(requestService);
+    requestLog.advanceTimeline();
 
-    PrefetchHydrator prefetchHydrator = new PrefetchHydrator(this, request, this.fhirComponents);
+    PrefetchHydrator prefetchHydrator = new PrefetchHydrator(this, request, this.fhirComponents, fhirQueryClient,
+        prefetchExecutor);
     prefetchHydrator.hydrate();
 
     // hydrated
-    requestLog.advanceTimeline(requestService);
+    requestLog.advanceTimeline();
 
     // Attempt a Query Batch Request to backfill missing attributes.
     if (myConfig.isQueryBatchRequest()) {
-      QueryBatchRequest qbr = new QueryBatchRequest(this.fhirComponents);
+      QueryBatchRequest qbr = new QueryBatchRequest(this.fhirComponents, fhirQueryClient);
       this.attempQueryBatchRequest(request, qbr);
     }
 
@@ -175,16 +197,15 @@ public abstract class CdsService<requestTypeT extends CdsRequest<?, ?>> {
     
     try {
     	
-      lookupResults = new CdsResults().executeCds(resources,myConfig);
+      lookupResults = new CdsResults(cdsEvaluationClient, fhirRuntime).executeCds(resources,myConfig);
 //      lookupResults = this.createCqlExecutionContexts(request, fileStore, applicationBaseUrl.toString() + "/");
-      requestLog.advanceTimeline(requestService);
+      requestLog.advanceTimeline();
     } catch (RequestIncompleteException e) {
       logger.warn("RequestIncompleteException " + request);
       logger.warn(e.getMessage() + "; summary card sent to client");
       response.addCard(cardBuilder.summaryCard(CardTypes.COVERAGE, e.getMessage()));
       requestLog.setCardListFromCards(response.getCards());
       requestLog.setResults(e.getMessage());
-      requestService.edit(requestLog);
       return response;
     }
 
@@ -203,7 +224,7 @@ public abstract class CdsService<requestTypeT extends CdsRequest<?, ?>> {
 
     boolean foundApplicableRule = false;
     for (CoverageRequirementRuleResult lookupResult : lookupResults) {
-      requestLog.addTopic(requestService, lookupResult.getTopic());
+      requestLog.addTopic(lookupResult.getTopic());
 //      CqlResultsForCard results = executeCqlAndGetRelevantResults(lookupResult.getContext(), lookupResult.getTopic());
       CqlResultsForCard results = lookupResult.getCqlResultsForCard();
       CoverageRequirements coverageRequirements = results.getCoverageRequirements();
@@ -279,7 +300,7 @@ public abstract class CdsService<requestTypeT extends CdsRequest<?, ?>> {
     }
 
     // CQL Executed
-    requestLog.advanceTimeline(requestService);
+    requestLog.advanceTimeline();
 
     if (errorCardOnEmpty) {
       if (!foundApplicableRule) {
@@ -292,7 +313,6 @@ public abstract class CdsService<requestTypeT extends CdsRequest<?, ?>> {
 
     // Ading card to requestLog
     requestLog.setCardListFromCards(response.getCards());
-    requestService.edit(requestLog);
     System.out.println("===========In card response========");
     return response.extractSystemActions();
   }
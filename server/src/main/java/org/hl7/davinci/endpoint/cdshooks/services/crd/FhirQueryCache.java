@@ -0,0 +1,146 @@
+package org.hl7.davinci.endpoint.cdshooks.services.crd;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.cdshooks.CdsRequest;
+import org.cdshooks.FhirAuthorization;
+import org.hl7.davinci.endpoint.config.FhirQueryCacheConfig;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Short lived, size bounded cache of EHR FHIR query responses. A burst of hooks for the same patient
+ * (several order-selects followed by an order-sign) repeats the same prefetch and Query Batch queries, those
+ * are answered from here instead of the EHR.
+ * The key covers the FHIR server, the query, the patient and the authorization (subject, scope and a
+ * digest of the access token), so a response is only ever handed back to a caller holding the same grant.
+ * The raw response body is stored and parsed again on every hit, callers are free to modify the resources.
+ */
+@Component
+public class FhirQueryCache {
+
+  @Autowired
+  private YamlConfig myConfig;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private Map<String, CachedResponse> entries;
+  private Counter hitCounter;
+  private Counter missCounter;
+
+  private static class CachedResponse {
+    final String body;
+    final long expires;
+
+    CachedResponse(String body, long expires) {
+      this.body = body;
+      this.expires = expires;
+    }
+  }
+
+  @PostConstruct
+  public void init() {
+    int maxEntries = Math.max(1, myConfig.getFhirQueryCache().getMaxEntries());
+    entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+        return size() > maxEntries;
+      }
+    };
+    hitCounter = Counter.builder("crd.fhir.query.cache").tag("result", "hit")
+        .description("FHIR queries answered from the cache").register(meterRegistry);
+    missCounter = Counter.builder("crd.fhir.query.cache").tag("result", "miss")
+        .description("FHIR queries sent to the EHR").register(meterRegistry);
+    Gauge.builder("crd.fhir.query.cache.size", this, FhirQueryCache::size)
+        .description("Entries in the FHIR query cache").register(meterRegistry);
+  }
+
+  public boolean isEnabled() {
+    return myConfig.getFhirQueryCache().isEnabled();
+  }
+
+  /**
+   * Build the cache key for a query made on behalf of a hook request.
+   * @param fhirBase the FHIR server the query goes to
+   * @param method the HTTP method
+   * @param queryUrl the hydrated query url, relative to fhirBase
+   * @param queryBody the request body, empty for searches
+   * @param cdsRequest the hook request, supplies the patient and the authorization
+   */
+  public static String key(String fhirBase, String method, String queryUrl, String queryBody,
+                           CdsRequest<?, ?> cdsRequest) {
+    MessageDigest digest = DigestUtils.getSha256Digest();
+    update(digest, fhirBase);
+    update(digest, method);
+    update(digest, queryUrl);
+    update(digest, queryBody);
+    update(digest, cdsRequest.getContext() == null ? null : cdsRequest.getContext().getPatientId());
+    FhirAuthorization authorization = cdsRequest.getFhirAuthorization();
+    if (authorization != null) {
+      update(digest, authorization.getSubject());
+      update(digest, authorization.getScope());
+      update(digest, authorization.getAccessToken());
+    }
+    return Hex.encodeHexString(digest.digest());
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    if (value != null) {
+      digest.update(value.getBytes(StandardCharsets.UTF_8));
+    }
+    // separator so ("ab", "c") and ("a", "bc") differ
+    digest.update((byte) 0);
+  }
+
+  /**
+   * @return the cached response body, or null when there is none or it expired
+   */
+  public String get(String key) {
+    CachedResponse entry;
+    synchronized (entries) {
+      entry = entries.get(key);
+      if (entry != null && entry.expires < System.currentTimeMillis()) {
+        entries.remove(key);
+        entry = null;
+      }
+    }
+    if (entry == null) {
+      missCounter.increment();
+      return null;
+    }
+    hitCounter.increment();
+    return entry.body;
+  }
+
+  public void put(String key, String body) {
+    CachedResponse entry = new CachedResponse(body, System.currentTimeMillis() + myConfig.getFhirQueryCache().getTtl());
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package org.hl7.davinci.endpoint.cdshooks.services.crd;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.hl7.davinci.endpoint.config.FhirClientConfig;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Shared RestTemplate for queries against the EHR FHIR servers. Connections are pooled per host and kept
+ * alive between hook calls, responses may come back gzip compressed, and every call is bounded by the
+ * fhirClient timeouts. Latency per EHR host and status is published as the "crd.fhir.client.requests"
+ * metric. The hook services hand the client to the FhirRequestProcessor queries they make.
+ */
+@Component
+public class FhirQueryClient {
+
+  static final Logger logger = LoggerFactory.getLogger(FhirQueryClient.class);
+
+  @Autowired
+  private YamlConfig myConfig;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private FhirQueryCache queryCache;
+
+  private PoolingHttpClientConnectionManager connectionManager;
+  private CloseableHttpClient httpClient;
+  private RestTemplate restTemplate;
+  private RestTemplate prefetchRestTemplate;
+
+  @PostConstruct
+  public void init() {
+    FhirClientConfig clientConfig = myConfig.getFhirClient();
+
+    connectionManager = new PoolingHttpClientConnectionManager(clientConfig.getKeepAlive(), TimeUnit.MILLISECONDS);
+    connectionManager.setMaxTotal(clientConfig.getMaxConnections());
+    connectionManager.setDefaultMaxPerRoute(clientConfig.getMaxConnectionsPerRoute());
+
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(clientConfig.getConnectTimeout())
+        .setConnectionRequestTimeout(clientConfig.getConnectionRequestTimeout())
+        .setSocketTimeout(clientConfig.getReadTimeout())
+        .build();
+
+    // content compression is on by default, the client sends Accept-Encoding: gzip,deflate and inflates the response
+    httpClient = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setKeepAliveStrategy((response, context) -> clientConfig.getKeepAlive())
+        .evictIdleConnections(clientConfig.getKeepAlive(), TimeUnit.MILLISECONDS)
+        .evictExpiredConnections()
+        .build();
+
+    restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    restTemplate.getInterceptors().add(this::recordLatency);
+
+    // prefetch queries share the pool, but each step of the request gives up within the prefetch queryTimeout
+    int queryTimeout = myConfig.getPrefetch().getQueryTimeout();
+    HttpComponentsClientHttpRequestFactory prefetchRequestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+    prefetchRequestFactory.setConnectTimeout(Math.min(clientConfig.getConnectTimeout(), queryTimeout));
+    prefetchRequestFactory.setConnectionRequestTimeout(Math.min(clientConfig.getConnectionRequestTimeout(), queryTimeout));
+    prefetchRequestFactory.setReadTimeout(Math.min(clientConfig.getReadTimeout(), queryTimeout));
+    prefetchRestTemplate = new RestTemplate(prefetchRequestFactory);
+    prefetchRestTemplate.getInterceptors().add(this::recordLatency);
+
+    Gauge.builder("crd.fhir.client.pool.leased", connectionManager, cm -> cm.getTotalStats().getLeased())
+        .description("Connections to EHR FHIR servers currently in use").register(meterRegistry);
+    Gauge.builder("crd.fhir.client.pool.available", connectionManager, cm -> cm.getTotalStats().getAvailable())
+        .description("Idle keep-alive connections to EHR FHIR servers").register(meterRegistry);
+    Gauge.builder("crd.fhir.client.pool.pending", connectionManager, cm -> cm.getTotalStats().getPending())
+        .description("Requests waiting for a connection to an EHR FHIR server").register(meterRegistry);
+  }
+
+  @PreDestroy
+  public void close() {
+    try {
+      httpClient.close();
+    } catch (IOException e) {
+      logger.warn("FhirQueryClient::close(): failed to close http client: " + e.getMessage());
+    }
+  }
+
+  public RestTemplate getRestTemplate() {
+    return restTemplate;
+  }
+
+  /**
+   * @return the RestTemplate for prefetch queries, whose connect, pool and read timeouts are capped at the
+   * prefetch queryTimeout
+   */
+  public RestTemplate getPrefetchRestTemplate() {
+    return prefetchRestTemplate;
+  }
+
+  public FhirQueryCache getQueryCache() {
+    return queryCache;
+  }
+
+  private ClientHttpResponse recordLatency(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+      throws IOException {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String status = "error";
+    try {
+      ClientHttpResponse response = execution.execute(request, body);
+      status = String.valueOf(response.getRawStatusCode());
+      return response;
+    } finally {
+      sample.stop(Timer.builder("crd.fhir.client.requests")
+          .description("Latency of queries to EHR FHIR servers")
+          .tag("host", String.valueOf(request.getURI().getHost()))
+          .tag("method", request.getMethodValue())
+          .tag("status", status)
+          .publishPercentileHistogram()
+          .register(meterRegistry));
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package org.hl7.davinci.endpoint.cdshooks.services.crd.r4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Resource;
+
+/**
+ * Index over every resource in a bundle, including the entries of nested bundles, built in one pass.
+ * Lookups by id, by type and id, and by type are hash map reads instead of a walk over the bundle.
+ * Resources are kept in the order a depth first walk finds them (nested entries before the bundle that
+ * holds them) and the first resource wins when an id appears more than once.
+ */
+public class BundleIndex {
+
+  private static final char SEPARATOR = '/';
+
+  private final Map<String, Resource> byId = new HashMap<>();
+  private final Map<String, Resource> byTypeAndId = new HashMap<>();
+  private final Map<String, List<Resource>> byType = new HashMap<>();
+
+  public BundleIndex(Bundle bundle) {
+    if (bundle != null) {
+      add(bundle);
+    }
+  }
+
+  private void add(Bundle bundle) {
+    for (BundleEntryComponent entry : bundle.getEntry()) {
+      if (!entry.hasResource()) {
+        continue;
+      }
+      Resource resource = entry.getResource();
+      if (resource instanceof Bundle) {
+        add((Bundle) resource);
+      }
+      String type = resource.fhirType();
+      byType.computeIfAbsent(type, k -> new ArrayList<>()).add(resource);
+      String idPart = resource.getIdElement().getIdPart();
+      if (idPart != null) {
+        byId.putIfAbsent(idPart, resource);
+        byTypeAndId.putIfAbsent(type + SEPARATOR + idPart, resource);
+      }
+    }
+  }
+
+  /**
+   * @return the first resource of any type with the given id part, or null
+   */
+  public Resource getById(String idPart) {
+    return idPart == null ? null : byId.get(idPart);
+  }
+
+  /**
+   * @return the resource of the given type (e.g. "Coverage") and id part, or null
+   */
+  public Resource get(String type, String idPart) {
+    return idPart == null ? null : byTypeAndId.get(type + SEPARATOR + idPart);
+  }
+
+  /**
+   * @return the first resource of the given type, or null
+   */
+  public Resource getFirst(String type) {
+    List<Resource> resources = byType.get(type);
+    return resources == null ? null : resources.get(0);
+  }
+
+  public <R extends Resource> List<R> getResources(Class<R> type) {
+    List<Resource> resources = byType.getOrDefault(type.getSimpleName(), Collections.emptyList());
+    return resources.stream().map(type::cast).collect(Collectors.toList());
+  }
+
+  /**
+   * Find the resources of the given type that a reference points at. The reference may be relative
+   * ("Patient/123"), absolute or a bare id. References the index can not resolve fall back to matching
+   * any id that contains the reference, or is contained by it.
+   * @return the matching resources, empty if there are none
+   */
+  public <R extends Resource> List<R> findReferenced(Class<R> type, String reference) {
+    if (reference == null) {
+      return new ArrayList<>();
+    }
+    Resource resource = get(type.getSimpleName(), new IdType(reference).getIdPart());
+    if (resource != null) {
+      List<R> found = new ArrayList<>();
+      found.add(type.cast(resource));
+      return found;
+    }
+    return getResources(type).stream().filter((currentResource) -> {
+      String currentId = currentResource.getId();
+      return currentId != null && (currentId.contains(reference) || reference.contains(currentId));
+    }).collect(Collectors.toList());
+  }
+
+  public int size() {
+    return byType.values().stream().mapToInt(List::size).sum();
+  }
+}
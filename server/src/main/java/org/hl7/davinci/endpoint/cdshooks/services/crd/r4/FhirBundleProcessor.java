@@ -132,6 +132,7 @@ public class FhirBundleProcessor {
   public void processDeviceRequests(Bundle deviceRequestBundle, Bundle coverageBundle) {
     List<DeviceRequest> deviceRequestList = Utilities.getResourcesOfTypeFromBundle(DeviceRequest.class, deviceRequestBundle);
     List<Patient> patients = Utilities.getResourcesOfTypeFromBundle(Patient.class, deviceRequestBundle);
+    BundleIndex deviceRequestIndex = new BundleIndex(deviceRequestBundle);
     logger.info("r4/FhirBundleProcessor::processDeviceRequests: Found " + patients.size() + " patients.");
     List<Organization> payorList = Utilities.getResourcesOfTypeFromBundle(Organization.class, coverageBundle); // TODO - do something with the coverage.
     if (deviceRequestList.isEmpty()) return;
@@ -145,7 +146,7 @@ public class FhirBundleProcessor {
         List<CoverageRequirementRuleCriteria> criteriaList = createCriteriaList(deviceRequest.getCodeCodeableConcept(), deviceRequest.getInsurance(), payorList);
         
         String patientReference = deviceRequest.getSubject().getReference();
-        List<Patient> referencedPrefetechedPatients = extractReferencedResources(patients, patientReference);
+        List<Patient> referencedPrefetechedPatients = deviceRequestIndex.findReferenced(Patient.class, patientReference);
             
         if (referencedPrefetechedPatients.size() < 1) {
           logger.error("r4/FhirBundleProcessor::processDeviceRequests: ERROR - Device Request '"
@@ -162,6 +163,7 @@ public class FhirBundleProcessor {
   public void processMedicationRequests(Bundle medicationRequestBundle, Bundle coverageBundle) {
     List<MedicationRequest> medicationRequestList = Utilities.getResourcesOfTypeFromBundle(MedicationRequest.class, medicationRequestBundle);
     List<Patient> patients = Utilities.getResourcesOfTypeFromBundle(Patient.class, medicationRequestBundle);
+    BundleIndex medicationRequestIndex = new BundleIndex(medicationRequestBundle);
     List<Organization> payorList = Utilities.getResourcesOfTypeFromBundle(Organization.class, coverageBundle);
     if (medicationRequestList.isEmpty()) return;
 
@@ -173,7 +175,7 @@ public class FhirBundleProcessor {
       if (idInSelectionsList(medicationRequest.getId())) {
         String patientReference = medicationRequest.getSubject().getReference();
 
-        List<Patient> referencedPrefetechedPatients = extractReferencedResources(patients, patientReference);
+        List<Patient> referencedPrefetechedPatients = medicationRequestIndex.findReferenced(Patient.class, patientReference);
         if (referencedPrefetechedPatients.size() < 1) {
           logger.error("r4/FhirBundleProcessor::processMedicationRequests: ERROR - Medication Request '"
               + medicationRequest.getId() + "' does not contain a reference to any prefetched patients. Resource contains patient reference '"
@@ -190,6 +192,7 @@ public class FhirBundleProcessor {
   public void processMedicationDispenses(Bundle medicationDispenseBundle, Bundle coverageBundle) {
     List<MedicationDispense> medicationDispenseList = Utilities.getResourcesOfTypeFromBundle(MedicationDispense.class, medicationDispenseBundle);
     List<Patient> patients = Utilities.getResourcesOfTypeFromBundle(Patient.class, medicationDispenseBundle);
+    BundleIndex medicationDispenseIndex = new BundleIndex(medicationDispenseBundle);
     List<Organization> payorList = Utilities.getResourcesOfTypeFromBundle(Organization.class, coverageBundle);
     List<Organization> medicationPayorList = Utilities.getResourcesOfTypeFromBundle(Organization.class,
         medicationDispenseBundle);
@@ -203,7 +206,7 @@ public class FhirBundleProcessor {
     for (MedicationDispense medicationDispense : medicationDispenseList) {
       if (idInSelectionsList(medicationDispense.getId())) {
         String patientReference = medicationDispense.getSubject().getReference();
-        List<Patient> referencedPrefetechedPatients = extractReferencedResources(patients, patientReference);
+        List<Patient> referencedPrefetechedPatients = medicationDispenseIndex.findReferenced(Patient.class, patientReference);
         if (referencedPrefetechedPatients.size() < 1) {
           logger.error("r4/FhirBundleProcessor::processMedicationDispenses: ERROR - Medication Dispense '"
               + medicationDispense.getId() + "' does not contain a reference to any prefetched patients. Resource contains patient reference '"
@@ -221,6 +224,7 @@ public class FhirBundleProcessor {
     List<Organization> payorList = Utilities.getResourcesOfTypeFromBundle(Organization.class, coverageBundle);
     List<ServiceRequest> serviceRequestList = Utilities.getResourcesOfTypeFromBundle(ServiceRequest.class, serviceRequestBundle);
     List<Patient> patients = Utilities.getResourcesOfTypeFromBundle(Patient.class, serviceRequestBundle);
+    BundleIndex serviceRequestIndex = new BundleIndex(serviceRequestBundle);
     if (serviceRequestList.isEmpty()) return;
 
     logger.info("r4/FhirBundleProcessor::getAndProcessServiceRequests: ServiceRequest(s) found");
@@ -230,7 +234,7 @@ public class FhirBundleProcessor {
     for (ServiceRequest serviceRequest : serviceRequestList) {
       if (idInSelectionsList(serviceRequest.getId())) {
         String patientReference = serviceRequest.getSubject().getReference();
-        List<Patient> referencedPrefetechedPatients = extractReferencedResources(patients, patientReference);
+        List<Patient> referencedPrefetechedPatients = serviceRequestIndex.findReferenced(Patient.class, patientReference);
         if (referencedPrefetechedPatients.size() < 1) {
           logger.error("r4/FhirBundleProcessor::processServiceRequests: ERROR - Service Request '"
               + serviceRequest.getId() + "' does not contain a reference to any prefetched patients. Resource contains patient reference '"
@@ -250,6 +254,7 @@ public class FhirBundleProcessor {
     List<MedicationStatement> medicationStatementList = Utilities.getResourcesOfTypeFromBundle(MedicationStatement.class, medicationStatementBundle);
 
     List<Patient> medStatementPatients = Utilities.getResourcesOfTypeFromBundle(Patient.class, medicationStatementBundle);
+    BundleIndex medicationStatementIndex = new BundleIndex(medicationStatementBundle);
     List<Organization> payorList = Utilities.getResourcesOfTypeFromBundle(Organization.class, coverageBundle);
 
     if (medicationRequestList.isEmpty()) return;
@@ -267,7 +272,7 @@ public class FhirBundleProcessor {
         for (MedicationStatement medicationStatement : medicationStatementList) {
           logger.info("r4/FhirBundleProcessor::processOrderSelectMedicationStatements: MedicationStatement found: " + medicationStatement.getId());
           String patientReference = medicationStatement.getSubject().getReference();
-          List<Patient> referencedPrefetechedPatients = extractReferencedResources(medStatementPatients, patientReference);
+          List<Patient> referencedPrefetechedPatients = medicationStatementIndex.findReferenced(Patient.class, patientReference);
           if (referencedPrefetechedPatients.size() < 1) {
             logger.error("r4/FhirBundleProcessor::processMedicationStatements: ERROR - Medication Statement '"
                 + medicationStatement.getId() + "' does not contain a reference to any prefetched patients. Resource contains patient reference '"
@@ -358,7 +363,8 @@ public class FhirBundleProcessor {
 
           //get the CqlRule
           CqlRule cqlRule = fileStore.getCqlRule(rule.getTopic(), rule.getFhirVersion());
-          result.setContext(CqlExecutionContextBuilder.getExecutionContext(cqlRule, cqlParams, baseUrl));
+          result.setContext(CqlExecutionContextBuilder.getExecutionContext(cqlRule, cqlParams, baseUrl,
+              fileStore.getTerminologyService()));
           result.setDeidentifiedResourceContainsPhi(deidentifiedResourcesContainPhi);
           results.add(result);
         } catch (Exception e) {
@@ -392,19 +398,4 @@ public class FhirBundleProcessor {
       return false;
     }
   }
-
-  /**
-   * Extracts the resources from the list that have the given id.
-   * @param <R> The resource type to extract from.
-   * @param resources The resources to extact from.
-   * @param resourceId  The resource Id to extract with.
-   * @return  The list of resources with the given Id.
-   */
-  private static <R extends Resource> List<R> extractReferencedResources(List<R> resources, String resourceId) {
-    return resources.stream().filter((currentResource) -> {
-      String currentId = currentResource.getId();
-      return currentId != null && (currentId.contains(resourceId) || resourceId.contains(currentId));
-    }).collect(Collectors.toList());
-  }
-
 }
\ No newline at end of file
@@ -1,10 +1,18 @@
 package org.hl7.davinci.endpoint.cdshooks.services.crd.r4;
 
+import ca.uhn.fhir.context.BaseRuntimeChildDefinition;
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.RuntimeChildChoiceDefinition;
+import ca.uhn.fhir.context.RuntimeChildResourceDefinition;
+import ca.uhn.fhir.context.RuntimeResourceDefinition;
 import org.cdshooks.AlternativeTherapy;
 import org.cdshooks.CdsRequest;
 import org.hl7.davinci.FatalRequestIncompleteException;
 import org.hl7.davinci.FhirComponentsT;
+import org.hl7.davinci.endpoint.cdshooks.services.crd.FhirQueryCache;
+import org.hl7.davinci.endpoint.cdshooks.services.crd.FhirQueryClient;
 import org.hl7.davinci.r4.crdhook.CrdPrefetch;
+import org.hl7.fhir.instance.model.api.IBase;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.*;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
@@ -22,6 +30,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.gson.JsonElement;
 
@@ -31,6 +41,24 @@ public class FhirRequestProcessor {
 
   private static final String REFERENCE = "reference";
 
+  // the children that can hold a Reference, by resource class
+  private static final Map<Class<?>, List<BaseRuntimeChildDefinition>> REFERENCE_CHILDREN =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param client the shared client used for FHIR queries. Without one the query gets its own RestTemplate.
+   */
+  private static RestTemplate getRestTemplate(FhirQueryClient client) {
+    return client != null ? client.getRestTemplate() : new RestTemplate();
+  }
+
+  private static FhirQueryCache getFhirQueryCache(FhirQueryClient client) {
+    if (client == null || client.getQueryCache() == null || !client.getQueryCache().isEnabled()) {
+      return null;
+    }
+    return client.getQueryCache();
+  }
+
   public static IBaseResource swapTherapyInRequest(IBaseResource request, AlternativeTherapy alternativeTherapy) {
     IBaseResource output = request;
 
@@ -307,7 +335,8 @@ public class FhirRequestProcessor {
   }
 
   /**
-   * Extracts the reference Ids from the given JSON.
+   * Extracts the reference Ids from the given JSON. Superseded by extractReferenceIds(references, resource, ctx),
+   * which does not need the resource converted to JSON first.
    * 
    * @param references
    * @param jsonElement
@@ -328,6 +357,44 @@ public class FhirRequestProcessor {
     }
   }
 
+  /**
+   * Extracts the reference Ids from the elements of the resource that hold a Reference, like the subject and
+   * insurance of a DeviceRequest. Only the resource's own elements are looked at, not the nested ones.
+   * The elements to look at are worked out once per resource type from its definition in the FhirContext.
+   *
+   * @param references the list to add the reference Ids to
+   * @param resource   the resource to extract the references of
+   * @param ctx        the FhirContext with the definition of the resource
+   */
+  public static void extractReferenceIds(List<String> references, Resource resource, FhirContext ctx) {
+    List<BaseRuntimeChildDefinition> children = REFERENCE_CHILDREN.computeIfAbsent(resource.getClass(),
+        type -> findReferenceChildren(ctx.getResourceDefinition(resource)));
+    for (BaseRuntimeChildDefinition child : children) {
+      for (IBase value : child.getAccessor().getValues(resource)) {
+        if (value instanceof Reference && ((Reference) value).hasReference()) {
+          references.add(((Reference) value).getReference());
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the children of the resource definition that can hold a Reference, directly or as a choice
+   */
+  private static List<BaseRuntimeChildDefinition> findReferenceChildren(RuntimeResourceDefinition definition) {
+    List<BaseRuntimeChildDefinition> children = new ArrayList<>();
+    for (BaseRuntimeChildDefinition child : definition.getChildren()) {
+      if (child instanceof RuntimeChildResourceDefinition) {
+        children.add(child);
+      } else if (child.getClass() == RuntimeChildChoiceDefinition.class
+          && ((RuntimeChildChoiceDefinition) child).getValidChildTypes().contains(Reference.class)) {
+        // a choice like DeviceRequest.code[x], the extensions are choices too but are left out
+        children.add(child);
+      }
+    }
+    return Collections.unmodifiableList(children);
+  }
+
   /**
    * Adds the given coverage and patient to the given resource.
    * @param resource  The resource to add coverage and patient data to.
@@ -395,11 +462,28 @@ public class FhirRequestProcessor {
    * @param cdsRequest
    * @param fhirComponents
    * @param httpMethod
+   * @param fhirQueryClient the shared client to send the query with, null for a RestTemplate of its own
    * @return
    */
   public static IBaseResource executeFhirQueryUrl(String queryUrl, CdsRequest<?, ?> cdsRequest,
-      FhirComponentsT fhirComponents, HttpMethod httpMethod) {
-    return executeFhirQuery("", queryUrl, cdsRequest, fhirComponents, httpMethod);
+      FhirComponentsT fhirComponents, HttpMethod httpMethod, FhirQueryClient fhirQueryClient) {
+    return executeFhirQuery("", queryUrl, cdsRequest, fhirComponents, httpMethod, fhirQueryClient);
+  }
+
+  /**
+   * Execute a prefetch query, a URL-based GET whose connect, pool and read timeouts are capped at the
+   * prefetch queryTimeout of the client. Responses may be served from and stored in the FhirQueryCache.
+   * @param queryUrl
+   * @param cdsRequest
+   * @param fhirComponents
+   * @param fhirQueryClient the shared client to send the query with, null for a RestTemplate of its own
+   * @return
+   */
+  public static IBaseResource executePrefetchQuery(String queryUrl, CdsRequest<?, ?> cdsRequest,
+      FhirComponentsT fhirComponents, FhirQueryClient fhirQueryClient) {
+    RestTemplate restTemplate = fhirQueryClient != null ? fhirQueryClient.getPrefetchRestTemplate() : new RestTemplate();
+    return executeFhirQuery("", queryUrl, cdsRequest, fhirComponents, HttpMethod.GET, restTemplate,
+        getFhirQueryCache(fhirQueryClient));
   }
 
   /**
@@ -408,11 +492,29 @@ public class FhirRequestProcessor {
    * @param cdsRequest
    * @param fhirComponents
    * @param httpMethod
+   * @param fhirQueryClient the shared client to send the query with, null for a RestTemplate of its own
    * @return
    */
   public static IBaseResource executeFhirQueryBody(String queryBody, CdsRequest<?, ?> cdsRequest,
-      FhirComponentsT fhirComponents, HttpMethod httpMethod) {
-    return executeFhirQuery(queryBody, "", cdsRequest, fhirComponents, httpMethod);
+      FhirComponentsT fhirComponents, HttpMethod httpMethod, FhirQueryClient fhirQueryClient) {
+    return executeFhirQuery(queryBody, "", cdsRequest, fhirComponents, httpMethod, getRestTemplate(fhirQueryClient),
+        null);
+  }
+
+  /**
+   * Execute a Fhir Query with a body-based query that only reads data, such as a batch of searches.
+   * The response may be served from and stored in the FhirQueryCache of the client.
+   * @param queryBody
+   * @param cdsRequest
+   * @param fhirComponents
+   * @param httpMethod
+   * @param fhirQueryClient the shared client to send the query with, null for a RestTemplate of its own
+   * @return
+   */
+  public static IBaseResource executeReadOnlyFhirQueryBody(String queryBody, CdsRequest<?, ?> cdsRequest,
+      FhirComponentsT fhirComponents, HttpMethod httpMethod, FhirQueryClient fhirQueryClient) {
+    return executeFhirQuery(queryBody, "", cdsRequest, fhirComponents, httpMethod, getRestTemplate(fhirQueryClient),
+        getFhirQueryCache(fhirQueryClient));
   }
 
   /**
@@ -422,10 +524,20 @@ public class FhirRequestProcessor {
    * @param cdsRequest
    * @param fhirComponents
    * @param httpMethod
+   * @param fhirQueryClient the shared client to send the query with, null for a RestTemplate of its own
    * @return
    */
   public static IBaseResource executeFhirQuery(String queryBody, String queryUrl, CdsRequest<?, ?> cdsRequest,
-      FhirComponentsT fhirComponents, HttpMethod httpMethod) {
+      FhirComponentsT fhirComponents, HttpMethod httpMethod, FhirQueryClient fhirQueryClient) {
+    return executeFhirQuery(queryBody, queryUrl, cdsRequest, fhirComponents, httpMethod,
+        getRestTemplate(fhirQueryClient), httpMethod == HttpMethod.GET ? getFhirQueryCache(fhirQueryClient) : null);
+  }
+
+  /**
+   * @param queryCache the cache reads may be answered from, null to always ask the server
+   */
+  private static IBaseResource executeFhirQuery(String queryBody, String queryUrl, CdsRequest<?, ?> cdsRequest,
+      FhirComponentsT fhirComponents, HttpMethod httpMethod, RestTemplate restTemplate, FhirQueryCache queryCache) {
     if (cdsRequest.getFhirServer() == null) {
       throw new FatalRequestIncompleteException("Attempted to perform a Query Batch Request, but no fhir "
           + "server provided.");
@@ -451,7 +563,17 @@ public class FhirRequestProcessor {
       token = cdsRequest.getFhirAuthorization().getAccessToken();
     }
 
-    RestTemplate restTemplate = new RestTemplate();
+    // reads may be answered from the short lived query cache
+    String cacheKey = null;
+    if (queryCache != null) {
+      cacheKey = FhirQueryCache.key(fhirBase, httpMethod.name(), queryUrl, queryBody, cdsRequest);
+      String cachedBody = queryCache.get(cacheKey);
+      if (cachedBody != null) {
+        logger.info("Fetched from cache: " + fullUrl);
+        return fhirComponents.getFhirContext().newJsonParser().parseResource(cachedBody);
+      }
+    }
+
     HttpHeaders headers = new HttpHeaders();
     headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
     if(!queryBody.isEmpty()){
@@ -466,7 +588,11 @@ public class FhirRequestProcessor {
       // Request source: https://www.hl7.org/fhir/http.html#transaction
       ResponseEntity<String> response = restTemplate.exchange(fullUrl, httpMethod, entity, String.class);
       logger.info("Fetched: " + response.getBody());
-      return fhirComponents.getJsonParser().parseResource(response.getBody());
+      if (cacheKey != null && response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
+        queryCache.put(cacheKey, response.getBody());
+      }
+      // prefetch queries run on several threads at once and a parser is not thread safe
+      return fhirComponents.getFhirContext().newJsonParser().parseResource(response.getBody());
     } catch (RestClientException e) {
       logger.warn("Unable to make the fetch request", e);
       return null;
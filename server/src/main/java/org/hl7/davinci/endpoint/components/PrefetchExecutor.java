@@ -0,0 +1,60 @@
+package org.hl7.davinci.endpoint.components;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hl7.davinci.endpoint.config.PrefetchConfig;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Worker pool shared by every PrefetchHydrator, so the missing prefetch queries of a request can run
+ * against the EHR FHIR server at the same time. Per request limits come from the prefetch config.
+ */
+@Component
+public class PrefetchExecutor {
+
+  @Autowired
+  private YamlConfig myConfig;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private ExecutorService executor;
+
+  @PostConstruct
+  public void init() {
+    AtomicInteger threadCount = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(Math.max(1, myConfig.getPrefetch().getThreads()), runnable -> {
+      Thread thread = new Thread(runnable, "prefetch-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @PreDestroy
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  public <T> CompletableFuture<T> submit(Supplier<T> task) {
+    return CompletableFuture.supplyAsync(task, executor);
+  }
+
+  public PrefetchConfig getConfig() {
+    return myConfig.getPrefetch();
+  }
+
+  public MeterRegistry getMeterRegistry() {
+    return meterRegistry;
+  }
+}
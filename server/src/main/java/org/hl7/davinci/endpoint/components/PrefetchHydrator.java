@@ -2,7 +2,17 @@ package org.hl7.davinci.endpoint.components;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -11,12 +21,16 @@ import org.hl7.davinci.FatalRequestIncompleteException;
 import org.hl7.davinci.FhirComponentsT;
 import org.hl7.davinci.PrefetchTemplateElement;
 import org.hl7.davinci.endpoint.cdshooks.services.crd.CdsService;
+import org.hl7.davinci.endpoint.cdshooks.services.crd.FhirQueryClient;
 import org.hl7.davinci.endpoint.cdshooks.services.crd.r4.FhirRequestProcessor;
+import org.hl7.davinci.endpoint.config.PrefetchConfig;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpMethod;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 public class PrefetchHydrator {
 
@@ -30,6 +44,8 @@ public class PrefetchHydrator {
   private CdsRequest<?, ?> cdsRequest;
   private Object dataForPrefetchToken;
   private FhirComponentsT fhirComponents;
+  private FhirQueryClient fhirQueryClient;
+  private PrefetchExecutor prefetchExecutor;
 
   private String currentlyResolvingPrefetchToken;
 
@@ -50,6 +66,23 @@ public class PrefetchHydrator {
     this.fhirComponents = fhirComponents;
   }
 
+  /**
+   * Same as above, but the missing prefetch elements are fetched concurrently on the executor.
+   *
+   * @param cdsService The service that is processing the request.
+   * @param cdsRequest The request in question, the prefetch will be hydrated if possible. Note that
+   *                   this object gets modified.
+   * @param fhirComponents The fhir components object.
+   * @param fhirQueryClient The shared client the queries are sent with.
+   * @param prefetchExecutor The shared worker pool and its limits.
+   */
+  public PrefetchHydrator(CdsService cdsService, CdsRequest cdsRequest,
+      FhirComponentsT fhirComponents, FhirQueryClient fhirQueryClient, PrefetchExecutor prefetchExecutor) {
+    this(cdsService, cdsRequest, fhirComponents);
+    this.fhirQueryClient = fhirQueryClient;
+    this.prefetchExecutor = prefetchExecutor;
+  }
+
   private void resolvePrefetchTokenRecursive(
       Object object, List<String> pathList, List<String> elementList) {
     if (object == null) {
@@ -94,9 +127,13 @@ public class PrefetchHydrator {
 
   /**
    * Attempt to hydrate missing prefetch elements, note that this modifies the request object.
+   * With a PrefetchExecutor the missing queries run concurrently, queries that fail or run past the
+   * timeouts are left out and the prefetch is filled with whatever was returned in time.
    */
   public void hydrate() {
     Object crdResponse = cdsRequest.getPrefetch();
+    // resolve the queries for the missing keys on this thread, only the fetches run in parallel
+    Map<PrefetchTemplateElement, String> missingQueries = new LinkedHashMap<>();
     for (PrefetchTemplateElement prefetchElement : cdsService.getPrefetchElements()) {
       String prefetchKey = prefetchElement.getKey();
       //check if the prefetch has already been populated with that key
@@ -118,25 +155,170 @@ public class PrefetchHydrator {
             throw new FatalRequestIncompleteException("Attempting to fill the prefetch, but no fhir "
                 + "server provided. Either provide a full prefetch or provide a fhir server.");
           }
+          missingQueries.put(prefetchElement, hydratedPrefetchQuery);
+        }
+      }
+    }
+    if (missingQueries.isEmpty()) {
+      return;
+    }
+
+    long startTime = System.nanoTime();
+    Map<PrefetchTemplateElement, IBaseResource> results = prefetchExecutor == null
+        ? fetchSequential(missingQueries) : fetchParallel(missingQueries);
+    logger.info("PrefetchHydrator::hydrate(): resolved " + results.size() + " of " + missingQueries.size()
+        + " prefetch queries in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms");
+
+    for (Map.Entry<PrefetchTemplateElement, IBaseResource> result : results.entrySet()) {
+      PrefetchTemplateElement prefetchElement = result.getKey();
+      String prefetchKey = prefetchElement.getKey();
+      try {
+        Bundle bundle = (Bundle) PropertyUtils.getProperty(crdResponse, prefetchKey);
+        if (bundle == null) {
+          PropertyUtils.setProperty(crdResponse, prefetchKey, prefetchElement.getReturnType().cast(result.getValue()));
+        } else {
+          Bundle newBundle = (Bundle) prefetchElement.getReturnType().cast(result.getValue());
+          bundle.getEntry().addAll(newBundle.getEntry());
+          PropertyUtils.setProperty(crdResponse, prefetchKey, bundle);
+        }
+      } catch (Exception e) {
+        logger.warn("Failed to fill prefetch for key: " + prefetchKey, e);
+      }
+    }
+  }
+
+  IBaseResource fetch(String hydratedPrefetchQuery) {
+    return FhirRequestProcessor.executePrefetchQuery(hydratedPrefetchQuery, cdsRequest, fhirComponents,
+        fhirQueryClient);
+  }
+
+  private Map<PrefetchTemplateElement, IBaseResource> fetchSequential(Map<PrefetchTemplateElement, String> queries) {
+    Map<PrefetchTemplateElement, IBaseResource> results = new LinkedHashMap<>();
+    for (Map.Entry<PrefetchTemplateElement, String> query : queries.entrySet()) {
+      try {
+        IBaseResource resource = fetch(query.getValue());
+        if (resource != null) {
+          results.put(query.getKey(), resource);
+        }
+      } catch (Exception e) {
+        logger.warn("Failed to fill prefetch for key: " + query.getKey().getKey(), e);
+      }
+    }
+    return results;
+  }
+
+  Map<PrefetchTemplateElement, IBaseResource> fetchParallel(Map<PrefetchTemplateElement, String> queries) {
+    PrefetchConfig config = prefetchExecutor.getConfig();
+    MeterRegistry meterRegistry = prefetchExecutor.getMeterRegistry();
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getDeadline());
+    Semaphore width = new Semaphore(Math.max(1, config.getWidth()));
+
+    Map<PrefetchTemplateElement, CompletableFuture<IBaseResource>> tasks = new LinkedHashMap<>();
+    Map<PrefetchTemplateElement, CompletableFuture<IBaseResource>> futures = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<PrefetchTemplateElement, String> query : queries.entrySet()) {
+        if (!width.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+          logger.warn("PrefetchHydrator::fetchParallel(): deadline reached before fetching " + query.getKey().getKey());
+          break;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // what the hydrator waits for, completed by the task or by running past queryTimeout
+        CompletableFuture<IBaseResource> future = new CompletableFuture<>();
+        // whoever claims the query first gives back its slot: the task once it ran, or the cancellation of a
+        // task that never got a thread, so the slot only goes to the next query once this one is done
+        AtomicBoolean claimed = new AtomicBoolean();
+        CompletableFuture<IBaseResource> task = prefetchExecutor.submit(() -> {
+          if (claimed.getAndSet(true)) {
+            return null;
+          }
+          // the request itself gives up within queryTimeout, waiting for it is bounded the same way from the
+          // time it starts, not from the time it was queued
+          future.orTimeout(config.getQueryTimeout(), TimeUnit.MILLISECONDS);
+          IBaseResource resource = null;
+          Throwable error = null;
           try {
-            Bundle bundle = (Bundle) PropertyUtils.getProperty(crdResponse, prefetchKey);
-            if (bundle == null) {
-              PropertyUtils
-                .setProperty(crdResponse, prefetchKey,
-                    prefetchElement.getReturnType().cast(
-                        FhirRequestProcessor.executeFhirQueryUrl(hydratedPrefetchQuery, cdsRequest, fhirComponents, HttpMethod.GET)));
-            } else {
-              Bundle newBundle = (Bundle) prefetchElement.getReturnType().cast(
-                  FhirRequestProcessor.executeFhirQueryUrl(hydratedPrefetchQuery, cdsRequest, fhirComponents, HttpMethod.GET));
-              bundle.getEntry().addAll(newBundle.getEntry());
-              PropertyUtils.setProperty(crdResponse, prefetchKey, bundle);
-            }
-          } catch (Exception e) {
-            logger.warn("Failed to fill prefetch for key: " + prefetchKey, e);
+            resource = fetch(query.getValue());
+            return resource;
+          } catch (RuntimeException e) {
+            error = e;
+            throw e;
+          } finally {
+            release(width, sample, meterRegistry, outcome(future, resource, error));
+          }
+        });
+        task.whenComplete((resource, error) -> {
+          if (error == null) {
+            future.complete(resource);
+          } else {
+            future.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
           }
+          if (!claimed.getAndSet(true)) {
+            release(width, sample, meterRegistry, "deadline");
+          }
+        });
+        tasks.put(query.getKey(), task);
+        futures.put(query.getKey(), future);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    Map<PrefetchTemplateElement, IBaseResource> results = new LinkedHashMap<>();
+    for (Map.Entry<PrefetchTemplateElement, CompletableFuture<IBaseResource>> future : futures.entrySet()) {
+      String prefetchKey = future.getKey().getKey();
+      try {
+        IBaseResource resource = future.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        if (resource != null) {
+          results.put(future.getKey(), resource);
         }
+      } catch (TimeoutException e) {
+        logger.warn("PrefetchHydrator::fetchParallel(): deadline reached waiting for " + prefetchKey);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof TimeoutException) {
+          logger.warn("PrefetchHydrator::fetchParallel(): query timed out for " + prefetchKey);
+        } else {
+          logger.warn("Failed to fill prefetch for key: " + prefetchKey, e.getCause());
+        }
+      } catch (CancellationException e) {
+        logger.warn("PrefetchHydrator::fetchParallel(): query cancelled for " + prefetchKey);
+      }
+      if (!future.getValue().isDone() || future.getValue().isCompletedExceptionally()) {
+        // a task still waiting in the shared queue is dropped without ever reaching the EHR
+        future.getValue().cancel(true);
+        tasks.get(future.getKey()).cancel(true);
       }
     }
+    return results;
+  }
+
+  private static void release(Semaphore width, Timer.Sample sample, MeterRegistry meterRegistry, String outcome) {
+    width.release();
+    sample.stop(Timer.builder("crd.prefetch.queries")
+        .description("Latency of prefetch queries to the EHR FHIR server")
+        .tag("outcome", outcome)
+        .register(meterRegistry));
+  }
+
+  /**
+   * @param future what the hydrator waited for, it may have stopped waiting before the query was done
+   */
+  private static String outcome(CompletableFuture<IBaseResource> future, IBaseResource resource, Throwable error) {
+    try {
+      future.getNow(null);
+    } catch (CancellationException e) {
+      return "deadline";
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof TimeoutException) {
+        return "timeout";
+      }
+    }
+    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+    if (cause == null) {
+      return resource == null ? "empty" : "success";
+    }
+    return "error";
   }
 
   private String hydratePrefetchQuery(String prefetchQuery) {
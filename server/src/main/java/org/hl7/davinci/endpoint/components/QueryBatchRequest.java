@@ -2,6 +2,8 @@ package org.hl7.davinci.endpoint.components;
 
 import org.cdshooks.CdsRequest;
 import org.hl7.davinci.FhirComponentsT;
+import org.hl7.davinci.endpoint.cdshooks.services.crd.FhirQueryClient;
+import org.hl7.davinci.endpoint.cdshooks.services.crd.r4.BundleIndex;
 import org.hl7.davinci.endpoint.cdshooks.services.crd.r4.FhirRequestProcessor;
 import org.hl7.davinci.r4.crdhook.CrdPrefetch;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
@@ -20,14 +22,13 @@ import org.springframework.http.HttpMethod;
 import ca.uhn.fhir.context.FhirContext;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-
 /**
  * A Query Batch Request can be used to populate fields in a CDS Request that a
  * Prefetch may have missed.
@@ -39,9 +40,18 @@ public class QueryBatchRequest {
   private static final String COVERAGE = "Coverage";
 
   private final FhirComponentsT fhirComponents;
+  private final FhirQueryClient fhirQueryClient;
 
   public QueryBatchRequest(FhirComponentsT fhirComponents) {
+    this(fhirComponents, null);
+  }
+
+  /**
+   * @param fhirQueryClient the shared client the Query Batch is sent with, null for a RestTemplate of its own
+   */
+  public QueryBatchRequest(FhirComponentsT fhirComponents, FhirQueryClient fhirQueryClient) {
     this.fhirComponents = fhirComponents;
+    this.fhirQueryClient = fhirQueryClient;
   }
 
   /**
@@ -54,107 +64,60 @@ public class QueryBatchRequest {
    * Query Batch JSON request using
    * http://build.fhir.org/ig/HL7/davinci-crd/hooks.html#fhir-resource-access,
    * then populates the CRD response with the response from the Query Batch.
+   * The references of all draft orders go into a single Query Batch, so the EHR is
+   * asked once per hook no matter how many orders share a Patient or Coverage.
    */
   public void performQueryBatchRequest(CdsRequest<?, ?> cdsRequest, CrdPrefetch crdPrefetch) {
     logger.info("***** ***** Performing Query Batch Request.");
-    // Get the IDs of references in the request's draft orders.
-    Bundle draftOrdersBundle = cdsRequest.getContext().getDraftOrders();
-
-    // Perform the query batch request for each of the draft orders.
-    for (BundleEntryComponent bec : draftOrdersBundle.getEntry()) {
-      this.performBundleQueryBatchRequest(bec.getResource(), crdPrefetch, cdsRequest);
-    }
-    /*
-     * if (crdPrefetch.getCoverageBundle() != null) {
-     * for(BundleEntryComponent bec : crdPrefetch.getCoverageBundle().getEntry()) {
-     * this.performBundleQueryBatchRequest(bec.getResource(), crdPrefetch,
-     * cdsRequest);
-     * }
-     * }
-     * if (crdPrefetch.getServiceRequestBundle() != null) {
-     * for(BundleEntryComponent bec :
-     * crdPrefetch.getServiceRequestBundle().getEntry()) {
-     * this.performBundleQueryBatchRequest(bec.getResource(), crdPrefetch,
-     * cdsRequest);
-     * }
-     * }
-     * if (crdPrefetch.getDeviceRequestBundle() != null) {
-     * for(BundleEntryComponent bec :
-     * crdPrefetch.getDeviceRequestBundle().getEntry()) {
-     * this.performBundleQueryBatchRequest(bec.getResource(), crdPrefetch,
-     * cdsRequest);
-     * }
-     * }
-     * if (crdPrefetch.getMedicationRequestBundle() != null) {
-     * for(BundleEntryComponent bec :
-     * crdPrefetch.getMedicationRequestBundle().getEntry()) {
-     * this.performBundleQueryBatchRequest(bec.getResource(), crdPrefetch,
-     * cdsRequest);
-     * }
-     * }
-     */
-
-  }
-
-  private void performBundleQueryBatchRequest(Resource resource, CrdPrefetch crdResponse, CdsRequest<?, ?> cdsRequest) {
-    ResourceType requestType = resource.getResourceType();
-    // The list of references that should be queried in the batch request.
-    logger.info("***** ***** resource type", requestType.name());
-    List<String> requiredReferences = new ArrayList<String>();
-    // Extract the references by iterating through the JSON.
-    Gson gson = new Gson();
-    final JsonObject jsonObject = gson.toJsonTree(resource).getAsJsonObject();
-    for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+    FhirContext ctx = this.fhirComponents.getFhirContext();
 
-      FhirRequestProcessor.extractReferenceIds(requiredReferences, entry.getValue());
-    }
-    List<Coverage> coverages = new ArrayList<>();
-    if (crdResponse.getCoverageBundle() != null) {
-      coverages = FhirRequestProcessor.extractCoverageFromBundle(crdResponse.getCoverageBundle());
-    }
-    if (crdResponse.getDeviceRequestBundle() != null) {
-      coverages = FhirRequestProcessor.extractCoverageFromBundle(crdResponse.getDeviceRequestBundle());
-    }
-    if (crdResponse.getServiceRequestBundle() != null) {
-      coverages = FhirRequestProcessor.extractCoverageFromBundle(crdResponse.getServiceRequestBundle());
-    }
-    if (crdResponse.getMedicationRequestBundle() != null) {
-      coverages = FhirRequestProcessor.extractCoverageFromBundle(crdResponse.getMedicationRequestBundle());
-    }
+    // The coverages of the prefetch, and the references they hold, are the same for every draft order.
+    List<Coverage> coverages = findPrefetchCoverages(crdPrefetch);
+    List<String> coverageReferences = new ArrayList<>();
     for (Coverage coverage : coverages) {
-      gson = new Gson();
-      final JsonObject cjsonObject = gson.toJsonTree(coverage).getAsJsonObject();
-      for (Map.Entry<String, JsonElement> entry : cjsonObject.entrySet()) {
-
-        FhirRequestProcessor.extractReferenceIds(requiredReferences, entry.getValue());
-      }
+      FhirRequestProcessor.extractReferenceIds(coverageReferences, coverage, ctx);
     }
     Coverage preferredInsurance = null;
     if (coverages.size() > 0) {
       preferredInsurance = coverages.get(0);
     }
 
-    // Filter out references that already exist in the CRD Response.
-    requiredReferences = requiredReferences.stream()
-        .filter(referenceId -> !crdResponse.containsRequestResourceId(referenceId))
-        .collect(Collectors.toList());
+    // Get the IDs of references in the request's draft orders that are missing from the CRD Response.
+    Bundle draftOrdersBundle = cdsRequest.getContext().getDraftOrders();
+    Map<Resource, List<String>> missingReferences = new LinkedHashMap<>();
+    Set<String> requiredReferences = new LinkedHashSet<>();
+    for (BundleEntryComponent bec : draftOrdersBundle.getEntry()) {
+      Resource resource = bec.getResource();
+      List<String> references = new ArrayList<>();
+      FhirRequestProcessor.extractReferenceIds(references, resource, ctx);
+      references.addAll(coverageReferences);
+      references = references.stream()
+          .filter(referenceId -> !crdPrefetch.containsRequestResourceId(referenceId))
+          .distinct()
+          .collect(Collectors.toList());
+      logger.info("References to query for " + resource.getResourceType().name() + ": " + references);
+      if (!references.isEmpty()) {
+        missingReferences.put(resource, references);
+        requiredReferences.addAll(references);
+      }
+    }
 
-    logger.info("References to query: " + requiredReferences);
     if (requiredReferences.isEmpty()) {
       logger.info("A Query Batch Request is not needed: all references have already already fetched.");
       return;
     }
 
     // Build the Query Batch Request JSON.
-    Bundle queryBatchRequestBundle = buildQueryBatchRequestBundle(requiredReferences);
-    String queryBatchRequestBody = FhirContext.forR4().newJsonParser().encodeResourceToString(queryBatchRequestBundle);
+    Bundle queryBatchRequestBundle = buildQueryBatchRequestBundle(new ArrayList<>(requiredReferences));
+    String queryBatchRequestBody = ctx.newJsonParser().encodeResourceToString(queryBatchRequestBundle);
 
     // Make the query batch request to the EHR server.
     Bundle queryResponseBundle = null;
     try {
-      logger.info("Executing Query Batch Request: " + queryBatchRequestBody);
-      queryResponseBundle = (Bundle) FhirRequestProcessor.executeFhirQueryBody(queryBatchRequestBody, cdsRequest,
-          this.fhirComponents, HttpMethod.POST);
+      logger.info("Executing Query Batch Request for " + missingReferences.size() + " draft orders: "
+          + queryBatchRequestBody);
+      queryResponseBundle = (Bundle) FhirRequestProcessor.executeReadOnlyFhirQueryBody(queryBatchRequestBody, cdsRequest,
+          this.fhirComponents, HttpMethod.POST, this.fhirQueryClient);
       queryResponseBundle = extractNestedBundledResources(queryResponseBundle);
       logger.info("Extracted Query Batch Resources: "
           + (queryResponseBundle).getEntry().stream().map(entry -> entry.getResource()).collect(Collectors.toList()));
@@ -167,21 +130,80 @@ public class QueryBatchRequest {
       return;
     }
 
-    // Add the request resource to the query batch response as it may be missing.
-    // Coverage and Subject are not automatically being
-    // linked to the request object. It seems to somehow automatically link during
-    // standard prefetch, but not here so we're doing it manually.
-    coverages = FhirRequestProcessor.extractCoverageFromBundle(queryResponseBundle);
-    if (coverages.size() == 0) {
-      coverages.add(preferredInsurance);
-    }
-    List<Patient> patients = FhirRequestProcessor.extractPatientsFromBundle(queryResponseBundle);
-    FhirRequestProcessor.addInsuranceAndSubject(resource, patients, coverages);
+    // Fan the response out to every draft order that was missing references.
+    List<Coverage> responseCoverages = FhirRequestProcessor.extractCoverageFromBundle(queryResponseBundle);
+    List<Patient> responsePatients = FhirRequestProcessor.extractPatientsFromBundle(queryResponseBundle);
+    BundleIndex responseIndex = new BundleIndex(queryResponseBundle);
+    for (Map.Entry<Resource, List<String>> order : missingReferences.entrySet()) {
+      Resource resource = order.getKey();
+
+      // Add the request resource to the query batch response as it may be missing.
+      // Coverage and Subject are not automatically being
+      // linked to the request object. It seems to somehow automatically link during
+      // standard prefetch, but not here so we're doing it manually.
+      // The Coverage and Patient the order itself refers to come first.
+      List<Coverage> orderCoverages = preferReferenced(responseIndex, Coverage.class, responseCoverages,
+          order.getValue());
+      if (orderCoverages.size() == 0 && preferredInsurance != null) {
+        orderCoverages.add(preferredInsurance);
+      }
+      List<Patient> orderPatients = preferReferenced(responseIndex, Patient.class, responsePatients,
+          order.getValue());
+      FhirRequestProcessor.addInsuranceAndSubject(resource, orderPatients, orderCoverages);
 
-    // Add the query batch response resources to the CRD Prefetch request.
+      // Add the query batch response resources to the CRD Prefetch request.
+      FhirRequestProcessor.addToCrdPrefetchRequest(crdPrefetch, resource.getResourceType(),
+          queryResponseBundle.getEntry());
+    }
     logger.info("Query Batch Response Entries: " + queryResponseBundle.getEntry());
-    FhirRequestProcessor.addToCrdPrefetchRequest(crdResponse, requestType, queryResponseBundle.getEntry());
-    logger.info("Post-Query Batch CRDResponse: " + crdResponse);
+    logger.info("Post-Query Batch CRDResponse: " + crdPrefetch);
+  }
+
+  /**
+   * Finds the coverages in the prefetch, from the bundle of the last request type that has one.
+   */
+  private static List<Coverage> findPrefetchCoverages(CrdPrefetch crdPrefetch) {
+    List<Coverage> coverages = new ArrayList<>();
+    if (crdPrefetch.getCoverageBundle() != null) {
+      coverages = FhirRequestProcessor.extractCoverageFromBundle(crdPrefetch.getCoverageBundle());
+    }
+    if (crdPrefetch.getDeviceRequestBundle() != null) {
+      coverages = FhirRequestProcessor.extractCoverageFromBundle(crdPrefetch.getDeviceRequestBundle());
+    }
+    if (crdPrefetch.getServiceRequestBundle() != null) {
+      coverages = FhirRequestProcessor.extractCoverageFromBundle(crdPrefetch.getServiceRequestBundle());
+    }
+    if (crdPrefetch.getMedicationRequestBundle() != null) {
+      coverages = FhirRequestProcessor.extractCoverageFromBundle(crdPrefetch.getMedicationRequestBundle());
+    }
+    return coverages;
+  }
+
+  /**
+   * Orders the resources so the ones the draft order refers to come first.
+   *
+   * @param index      the index over the query batch response
+   * @param type       the type of the resources
+   * @param resources  the resources of the type in the query batch response
+   * @param references the references of the draft order
+   * @return a new list with the referenced resources first
+   */
+  private static <R extends Resource> List<R> preferReferenced(BundleIndex index, Class<R> type, List<R> resources,
+      List<String> references) {
+    List<R> preferred = new ArrayList<>();
+    for (String reference : references) {
+      for (R resource : index.findReferenced(type, reference)) {
+        if (!preferred.contains(resource)) {
+          preferred.add(resource);
+        }
+      }
+    }
+    for (R resource : resources) {
+      if (!preferred.contains(resource)) {
+        preferred.add(resource);
+      }
+    }
+    return preferred;
   }
 
   /**
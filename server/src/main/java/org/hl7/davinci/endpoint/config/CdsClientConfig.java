@@ -0,0 +1,43 @@
+package org.hl7.davinci.endpoint.config;
+
+/**
+ * Settings for the shared HTTP client used to call the external CDS evaluation service (mettlesCDSUrl).
+ * All times are in milliseconds.
+ */
+public class CdsClientConfig {
+  private int maxConnections = 50;
+  private int maxConnectionsPerRoute = 20;
+  private int connectTimeout = 2000;
+  private int connectionRequestTimeout = 1000;
+  private int readTimeout = 10000;
+  private int requestDeadline = 15000;
+  private int keepAlive = 30000;
+
+  public int getMaxConnections() { return maxConnections; }
+
+  public void setMaxConnections(int maxConnections) { this.maxConnections = maxConnections; }
+
+  public int getMaxConnectionsPerRoute() { return maxConnectionsPerRoute; }
+
+  public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) { this.maxConnectionsPerRoute = maxConnectionsPerRoute; }
+
+  public int getConnectTimeout() { return connectTimeout; }
+
+  public void setConnectTimeout(int connectTimeout) { this.connectTimeout = connectTimeout; }
+
+  public int getConnectionRequestTimeout() { return connectionRequestTimeout; }
+
+  public void setConnectionRequestTimeout(int connectionRequestTimeout) { this.connectionRequestTimeout = connectionRequestTimeout; }
+
+  public int getReadTimeout() { return readTimeout; }
+
+  public void setReadTimeout(int readTimeout) { this.readTimeout = readTimeout; }
+
+  public int getRequestDeadline() { return requestDeadline; }
+
+  public void setRequestDeadline(int requestDeadline) { this.requestDeadline = requestDeadline; }
+
+  public int getKeepAlive() { return keepAlive; }
+
+  public void setKeepAlive(int keepAlive) { this.keepAlive = keepAlive; }
+}
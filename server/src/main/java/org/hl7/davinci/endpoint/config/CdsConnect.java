@@ -7,6 +7,7 @@ public class CdsConnect {
   private String basicAuth;
   private String proxyHost;
   private Integer proxyPort;
+  private long artifactCacheMaxBytes = 32 * 1024 * 1024;
 
   public String getUrl() { return url; }
 
@@ -31,4 +32,8 @@ public class CdsConnect {
   public Integer getProxyPort() { return proxyPort; }
 
   public void setProxyPort(Integer proxyPort) { this.proxyPort = proxyPort; }
+
+  public long getArtifactCacheMaxBytes() { return artifactCacheMaxBytes; }
+
+  public void setArtifactCacheMaxBytes(long artifactCacheMaxBytes) { this.artifactCacheMaxBytes = artifactCacheMaxBytes; }
 }
@@ -0,0 +1,22 @@
+package org.hl7.davinci.endpoint.config;
+
+/**
+ * Settings for the short lived cache of EHR FHIR query results. ttl is in milliseconds.
+ */
+public class FhirQueryCacheConfig {
+  private boolean enabled = true;
+  private int ttl = 30000;
+  private int maxEntries = 1000;
+
+  public boolean isEnabled() { return enabled; }
+
+  public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+  public int getTtl() { return ttl; }
+
+  public void setTtl(int ttl) { this.ttl = ttl; }
+
+  public int getMaxEntries() { return maxEntries; }
+
+  public void setMaxEntries(int maxEntries) { this.maxEntries = maxEntries; }
+}
@@ -8,6 +8,7 @@ public class GitHubConfig {
   private String rulePath;
   private String examplesPath;
   private Boolean useZipForReload;
+  private String mirrorPath = "GitHubMirror/";
 
   public String getUsername() {return username; }
 
@@ -36,4 +37,8 @@ public class GitHubConfig {
   public boolean getUseZipForReload() { return useZipForReload; }
 
   public void setUseZipForReload(boolean useZipForReload) { this.useZipForReload = useZipForReload; }
+
+  public String getMirrorPath() { return mirrorPath; }
+
+  public void setMirrorPath(String mirrorPath) { this.mirrorPath = mirrorPath; }
 }
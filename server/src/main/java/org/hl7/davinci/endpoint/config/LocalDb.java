@@ -3,6 +3,8 @@ package org.hl7.davinci.endpoint.config;
 public class LocalDb {
   private String path;
   private String examplesPath;
+  private boolean watch;
+  private long watchDebounce = 250;
 
   public String getPath() { return path; }
 
@@ -11,4 +13,12 @@ public class LocalDb {
   public String getExamplesPath() { return examplesPath; }
 
   public void setExamplesPath(String examplesPath) { this.examplesPath = examplesPath; }
+
+  public boolean getWatch() { return watch; }
+
+  public void setWatch(boolean watch) { this.watch = watch; }
+
+  public long getWatchDebounce() { return watchDebounce; }
+
+  public void setWatchDebounce(long watchDebounce) { this.watchDebounce = watchDebounce; }
 }
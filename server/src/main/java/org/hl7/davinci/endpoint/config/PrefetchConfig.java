@@ -0,0 +1,29 @@
+package org.hl7.davinci.endpoint.config;
+
+/**
+ * Settings for resolving missing prefetch elements against the EHR FHIR server.
+ * width is the number of queries one request runs at the same time, threads is shared by all requests.
+ * All times are in milliseconds.
+ */
+public class PrefetchConfig {
+  private int threads = 16;
+  private int width = 4;
+  private int deadline = 10000;
+  private int queryTimeout = 5000;
+
+  public int getThreads() { return threads; }
+
+  public void setThreads(int threads) { this.threads = threads; }
+
+  public int getWidth() { return width; }
+
+  public void setWidth(int width) { this.width = width; }
+
+  public int getDeadline() { return deadline; }
+
+  public void setDeadline(int deadline) { this.deadline = deadline; }
+
+  public int getQueryTimeout() { return queryTimeout; }
+
+  public void setQueryTimeout(int queryTimeout) { this.queryTimeout = queryTimeout; }
+}
@@ -0,0 +1,38 @@
+package org.hl7.davinci.endpoint.config;
+
+/**
+ * Settings for the background writer that persists the request log.
+ * queueCapacity bounds the number of logs waiting to be written. When the queue is full the overflow policy
+ * decides what happens: "drop" discards the log, "block" makes the request thread wait up to blockTimeout
+ * milliseconds for room before discarding it.
+ */
+public class RequestLogConfig {
+  public static final String OVERFLOW_DROP = "drop";
+  public static final String OVERFLOW_BLOCK = "block";
+
+  private int queueCapacity = 1000;
+  private int batchSize = 50;
+  private int flushInterval = 500;
+  private String overflow = OVERFLOW_DROP;
+  private int blockTimeout = 1000;
+
+  public int getQueueCapacity() { return queueCapacity; }
+
+  public void setQueueCapacity(int queueCapacity) { this.queueCapacity = queueCapacity; }
+
+  public int getBatchSize() { return batchSize; }
+
+  public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+
+  public int getFlushInterval() { return flushInterval; }
+
+  public void setFlushInterval(int flushInterval) { this.flushInterval = flushInterval; }
+
+  public String getOverflow() { return overflow; }
+
+  public void setOverflow(String overflow) { this.overflow = overflow; }
+
+  public int getBlockTimeout() { return blockTimeout; }
+
+  public void setBlockTimeout(int blockTimeout) { this.blockTimeout = blockTimeout; }
+}
@@ -0,0 +1,18 @@
+package org.hl7.davinci.endpoint.config;
+
+/**
+ * Settings for fetching VSAC ValueSets on reload. concurrency is the number of SVS requests in flight at
+ * the same time, requestsPerSecond caps how fast they are started (0 for no cap).
+ */
+public class VsacConfig {
+  private int concurrency = 4;
+  private double requestsPerSecond = 10;
+
+  public int getConcurrency() { return concurrency; }
+
+  public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+
+  public double getRequestsPerSecond() { return requestsPerSecond; }
+
+  public void setRequestsPerSecond(double requestsPerSecond) { this.requestsPerSecond = requestsPerSecond; }
+}
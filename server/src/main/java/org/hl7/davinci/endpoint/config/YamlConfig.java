@@ -29,6 +29,13 @@ public class YamlConfig {
   private String hostOrg;
   private boolean embedCqlInLibrary;
   private String mettlesCDSUrl;
+  private CdsClientConfig cdsClient = new CdsClientConfig();
+  private RequestLogConfig requestLog = new RequestLogConfig();
+  private PrefetchConfig prefetch = new PrefetchConfig();
+
+  private VsacConfig vsac = new VsacConfig();
+  private FhirClientConfig fhirClient = new FhirClientConfig();
+  private FhirQueryCacheConfig fhirQueryCache = new FhirQueryCacheConfig();
   private CdsConnect cdsConnect;
 
   private GitHubConfig gitHubConfig;
@@ -37,6 +44,14 @@ public class YamlConfig {
 
   private String valueSetCachePath;
 
+  private String elmCachePath;
+
+  private int elmPrecompileThreads = 4;
+
+  private int assembledQuestionnaireCacheSize = 1000;
+
+  private int reloadThreads = 0;
+
   private boolean urlEncodeAppContext;
 
   private boolean queryBatchRequest;
@@ -112,7 +127,47 @@ public class YamlConfig {
 
   public void setValueSetCachePath(String valueSetCachePath) { this.valueSetCachePath = valueSetCachePath; }
 
+  public String getElmCachePath() { return elmCachePath; }
+
+  public void setElmCachePath(String elmCachePath) { this.elmCachePath = elmCachePath; }
+
+  public int getElmPrecompileThreads() { return elmPrecompileThreads; }
+
+  public void setElmPrecompileThreads(int elmPrecompileThreads) { this.elmPrecompileThreads = elmPrecompileThreads; }
+
+  public int getAssembledQuestionnaireCacheSize() { return assembledQuestionnaireCacheSize; }
+
+  public void setAssembledQuestionnaireCacheSize(int assembledQuestionnaireCacheSize) { this.assembledQuestionnaireCacheSize = assembledQuestionnaireCacheSize; }
+
+  public int getReloadThreads() { return reloadThreads; }
+
+  public void setReloadThreads(int reloadThreads) { this.reloadThreads = reloadThreads; }
+
   public String getMettlesCDSUrl() { return mettlesCDSUrl; }
 
   public void setMettlesCDSUrl(String mettlesCDSUrl) { this.mettlesCDSUrl = mettlesCDSUrl; }
+
+  public CdsClientConfig getCdsClient() { return cdsClient; }
+
+  public void setCdsClient(CdsClientConfig cdsClient) { this.cdsClient = cdsClient; }
+
+  public RequestLogConfig getRequestLog() { return requestLog; }
+
+  public void setRequestLog(RequestLogConfig requestLog) { this.requestLog = requestLog; }
+
+  public PrefetchConfig getPrefetch() { return prefetch; }
+
+  public void setPrefetch(PrefetchConfig prefetch) { this.prefetch = prefetch; }
+
+  public VsacConfig getVsac() { return vsac; }
+
+  public void setVsac(VsacConfig vsac) { this.vsac = vsac; }
+
+  public FhirClientConfig getFhirClient() { return fhirClient; }
+
+  public void setFhirClient(FhirClientConfig fhirClient) { this.fhirClient = fhirClient; }
+
+  public FhirQueryCacheConfig getFhirQueryCache() { return fhirQueryCache; }
+
+  public void setFhirQueryCache(FhirQueryCacheConfig fhirQueryCache) { this.fhirQueryCache = fhirQueryCache; }
 }
@@ -9,9 +9,11 @@ import org.hl7.davinci.endpoint.config.YamlConfig;
 import org.hl7.davinci.endpoint.database.*;
 import org.hl7.davinci.endpoint.files.FileResource;
 import org.hl7.davinci.endpoint.files.FileStore;
+import org.hl7.davinci.endpoint.files.ReloadReport;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -57,7 +59,7 @@ public class DataController {
 
   @GetMapping(value = "/api/requests")
   @CrossOrigin
-  public Iterable<RequestLog> showAllLogs() {
+  public Iterable<RequestLogSummary> showAllLogs() {
     logger.info("showAll: GET /api/data");
 
     boolean[] timelineTrue = new boolean[5];
@@ -65,10 +67,22 @@ public class DataController {
     boolean[] timelineFalse = new boolean[5];
     Arrays.fill(timelineFalse, Boolean.FALSE);
 
-    Iterable<RequestLog> list = requestRepository.findAll();
+    // the summary columns only, the request bodies are fetched one at a time below
+    Iterable<RequestLogSummary> list = requestRepository.findLogs();
     return list;
   }
 
+  @GetMapping(value = "/api/requests/{id}/body", produces = MediaType.APPLICATION_JSON_VALUE)
+  @CrossOrigin
+  public ResponseEntity<byte[]> showLogBody(@PathVariable long id) {
+    logger.info("showLogBody: GET /api/requests/" + id + "/body");
+    byte[] requestBody = requestRepository.findPayload(id).map(RequestLogPayload::getRequestBody).orElse(null);
+    if (requestBody == null) {
+      return ResponseEntity.notFound().build();
+    }
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(requestBody);
+  }
+
   @GetMapping(value = "/api/data")
   @CrossOrigin
   public Iterable<RuleMapping> showAll() {
@@ -76,17 +90,57 @@ public class DataController {
     return fileStore.findAllRules();
   }
 
-  private ResponseEntity<Resource> processFileResource(FileResource fileResource) {
+  private ResponseEntity<Resource> processFileResource(FileResource fileResource, String ifNoneMatch) {
     if (fileResource == null) {
       logger.warning("file / fhir resource not found, return error (404)");
       return ResponseEntity.notFound().build();
     }
-    return ResponseEntity.ok()
+    String etag = fileResource.getEtag();
+    if (etag != null && etagMatches(ifNoneMatch, etag)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+    ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+    if (etag != null) {
+      builder.eTag(etag);
+    }
+    return builder
         .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileResource.getFilename() + "\"")
         .contentType(MediaType.parseMediaType("application/octet-stream"))
         .body(fileResource.getResource());
   }
 
+  /**
+   * If-None-Match uses the weak comparison, a W/ prefix on the client's tag is ignored.
+   */
+  static boolean etagMatches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Report what the last reload of the File Store changed.
+   */
+  @GetMapping(value = "/api/reload")
+  @CrossOrigin
+  public ResponseEntity<ReloadReport> getReloadReport() {
+    ReloadReport report = fileStore.getLastReloadReport();
+    if (report == null) {
+      return ResponseEntity.notFound().build();
+    }
+    return ResponseEntity.ok(report);
+  }
+
   @GetMapping(value = "/api/clients")
   @CrossOrigin
   public Iterable<Client> getClients() {
@@ -124,24 +178,26 @@ public class DataController {
    * @param fhirVersion (converted to uppercase)
    * @param fileName (case sensitive)
    * @param noconvert
+   * @param ifNoneMatch ETag the client already has, answered with 304 when the ELM did not change
    * @return
    * @throws IOException
    */
   @GetMapping(path = "/files/{topic}/{fhirVersion}/{fileName}")
-  public ResponseEntity<Resource> getFile(@PathVariable String topic, @PathVariable String fhirVersion, @PathVariable String fileName, @RequestParam(required = false) boolean noconvert) throws IOException {
+  public ResponseEntity<Resource> getFile(@PathVariable String topic, @PathVariable String fhirVersion, @PathVariable String fileName, @RequestParam(required = false) boolean noconvert,
+                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) throws IOException {
     fhirVersion = fhirVersion.toUpperCase();
     logger.info("GET /files/" + topic + "/" + fhirVersion + "/" + fileName);
 
     FileResource fileResource = fileStore.getFile(topic, fileName, fhirVersion, !noconvert);
-    return processFileResource(fileResource);
+    return processFileResource(fileResource, ifNoneMatch);
   }
 
   /**
-   * Reload the entire File Store.
+   * Reload the File Store. Only the topics that changed are ingested again unless full is set.
    * @return
    */
   @PostMapping(path = "/reload")
-  public RedirectView reload(@RequestParam String vsac_api_key) {
+  public RedirectView reload(@RequestParam String vsac_api_key, @RequestParam(required = false) boolean full) {
     logger.info("reload rule file index");
 
     if (vsac_api_key != null) {
@@ -150,7 +206,7 @@ public class DataController {
       fileStore.reinitializeVSACLoader();
     }
 
-    fileStore.reload();
+    fileStore.reload(full);
     String newUrl = "/data";
 
     return new RedirectView(newUrl);
@@ -5,10 +5,12 @@ import org.hl7.davinci.endpoint.Application;
 import org.hl7.davinci.endpoint.Utils;
 import org.hl7.davinci.endpoint.database.FhirResource;
 import org.hl7.davinci.endpoint.database.FhirResourceRepository;
+import org.hl7.davinci.endpoint.fhir.r4.FhirRuntime;
 import org.hl7.davinci.endpoint.fhir.r4.QuestionnaireNextQuestionOperation;
 import org.hl7.davinci.endpoint.fhir.r4.QuestionnairePackageOperation;
 import org.hl7.davinci.endpoint.files.FileResource;
 import org.hl7.davinci.endpoint.files.FileStore;
+import org.hl7.fhir.r4.model.Parameters;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpEntity;
@@ -36,6 +38,9 @@ public class FhirController {
   @Autowired
   private FhirResourceRepository fhirResourceRepository;
 
+  @Autowired
+  private FhirRuntime fhirRuntime;
+
   org.hl7.davinci.endpoint.fhir.r4.Metadata r4Metadata = new org.hl7.davinci.endpoint.fhir.r4.Metadata();
 
 
@@ -91,6 +96,31 @@ public class FhirController {
     }
   }
 
+  /**
+   * Check if a code is in a ValueSet. This pretends to be a ValueSet/$validate-code operator, answered from
+   * the VSAC ValueSets cached on this server.
+   *
+   * @param url The Canonical URL of the ValueSet.
+   * @param code The code to look for.
+   * @param system The code system of the code, if left out the code matches in any code system.
+   * @param display The display to check against the one of the code.
+   * @return Parameters with the result, or 404 if the ValueSet is not cached here.
+   */
+  @GetMapping(path = "fhir/r4/ValueSet/$validate-code")
+  public ResponseEntity<String> validateCode(@RequestParam String url, @RequestParam String code,
+                                             @RequestParam(required = false) String system,
+                                             @RequestParam(required = false) String display) {
+    logger.info("GET /fhir/R4/ValueSet/$validate-code?url=" + url);
+
+    Parameters parameters = fileStore.getTerminologyService().validateCode(url, system, code, display);
+    if (parameters == null) {
+      logger.warning("ValueSet " + url + " not found, return error (404)");
+      return ResponseEntity.notFound().build();
+    }
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+        .body(fhirRuntime.getJsonParser().encodeResourceToString(parameters));
+  }
+
   /**
    * Retrieve a FHIR resource by id
    * @param fhirVersion (converted to uppercase)
@@ -237,7 +267,7 @@ public class FhirController {
 
     String resource = null;
     if (fhirVersion.equalsIgnoreCase("R4")) {
-      QuestionnairePackageOperation operation = new QuestionnairePackageOperation(fileStore, baseUrl);
+      QuestionnairePackageOperation operation = new QuestionnairePackageOperation(fileStore, baseUrl, fhirRuntime);
       resource = operation.execute(entity.getBody());
 
       if (resource == null) {
@@ -270,7 +300,7 @@ public class FhirController {
     logger.info("POST /fhir/" + fhirVersion + "/Questionnaire/$next-question");
 
     if (fhirVersion.equalsIgnoreCase("R4")) {
-      QuestionnaireNextQuestionOperation operation = new QuestionnaireNextQuestionOperation(fileStore);
+      QuestionnaireNextQuestionOperation operation = new QuestionnaireNextQuestionOperation(fileStore, fhirRuntime);
       return operation.execute(entity.getBody(), request);
     } else {
       logger.warning("unsupported FHIR version: " + fhirVersion + ", not storing");
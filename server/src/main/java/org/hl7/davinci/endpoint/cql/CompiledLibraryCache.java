@@ -0,0 +1,67 @@
+package org.hl7.davinci.endpoint.cql;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.cqframework.cql.elm.execution.Library;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide cache of translated (execution) ELM libraries. Entries are keyed by the content hash of the
+ * CQL rule they were translated from plus the library id and version, so a changed rule never hits a stale
+ * entry. After a reload the FileStore drops the libraries of rules that are no longer in use.
+ */
+public class CompiledLibraryCache {
+
+  static final Logger logger = LoggerFactory.getLogger(CompiledLibraryCache.class);
+
+  private static final Map<String, Library> libraries = new ConcurrentHashMap<>();
+
+  private CompiledLibraryCache() { }
+
+  public static String key(String contentHash, String libraryId, String libraryVersion) {
+    return contentHash + "|" + libraryId + "|" + (libraryVersion == null ? "" : libraryVersion);
+  }
+
+  /**
+   * Return the cached library for the key, translating it with the supplier on a miss.
+   * The supplier runs outside of any lock, so two racing requests may both translate the same library once.
+   */
+  public static Library get(String key, Supplier<Library> translator) {
+    Library library = libraries.get(key);
+    if (library != null) {
+      return library;
+    }
+    logger.info("CompiledLibraryCache::get(): translating " + key);
+    library = translator.get();
+    if (library != null) {
+      libraries.put(key, library);
+    }
+    return library;
+  }
+
+  public static boolean contains(String key) {
+    return libraries.containsKey(key);
+  }
+
+  public static int size() {
+    return libraries.size();
+  }
+
+  /**
+   * Drop every library that was not translated from one of the given rule content hashes.
+   */
+  public static void retain(Set<String> contentHashes) {
+    int before = libraries.size();
+    libraries.keySet().removeIf(key -> !contentHashes.contains(key.substring(0, key.indexOf('|'))));
+    logger.info("CompiledLibraryCache::retain(): dropped " + (before - libraries.size()) + " libraries");
+  }
+
+  public static void clear() {
+    logger.info("CompiledLibraryCache::clear(): dropping " + libraries.size() + " libraries");
+    libraries.clear();
+  }
+}
@@ -1,9 +1,13 @@
 package org.hl7.davinci.endpoint.cql;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
 import org.cqframework.cql.cql2elm.CqlTranslator;
 import org.cqframework.cql.cql2elm.CqlTranslatorException;
 import org.cqframework.cql.cql2elm.LibraryManager;
@@ -12,6 +16,8 @@ import org.cqframework.cql.cql2elm.ModelManager;
 import org.cqframework.cql.cql2elm.FhirLibrarySourceProvider;
 import org.cqframework.cql.elm.execution.Library;
 import org.cqframework.cql.elm.tracking.TrackBack;
+import org.hl7.cql_annotations.r1.Annotation;
+import org.hl7.elm.r1.ObjectFactory;
 import org.fhir.ucum.UcumEssenceService;
 import org.fhir.ucum.UcumService;
 import org.opencds.cqf.cql.engine.execution.CqlLibraryReader;
@@ -53,6 +59,22 @@ public class CqlExecution {
   }
 
   public static Library translate(String cql, LibraryManager libraryManager, ModelManager modelManager) throws Exception {
+    Library library = null;
+    try {
+      library = CqlLibraryReader.read(new StringReader(translateToXml(cql, libraryManager, modelManager)));
+    } catch (IOException e) {
+      e.printStackTrace();
+    } catch (JAXBException e) {
+      e.printStackTrace();
+    }
+
+    return library;
+  }
+
+  /**
+   * Translate the CQL to XML ELM. Libraries it includes are left translated in the libraryManager.
+   */
+  public static String translateToXml(String cql, LibraryManager libraryManager, ModelManager modelManager) throws Exception {
     ArrayList<CqlTranslator.Options> options = new ArrayList<>();
     options.add(CqlTranslator.Options.EnableDateRangeOptimization);
     UcumService ucumService = new UcumEssenceService(UcumEssenceService.class.getResourceAsStream("/ucum-essence.xml"));
@@ -68,15 +90,30 @@ public class CqlExecution {
       throw new IllegalArgumentException(errors.toString());
     }
 
-    Library library = null;
+    return translator.toXml();
+  }
+
+  /**
+   * Read XML ELM into an execution library.
+   */
+  public static Library readXmlElm(byte[] elm) {
     try {
-      library = CqlLibraryReader.read(new StringReader(translator.toXml()));
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (JAXBException e) {
-      e.printStackTrace();
+      return CqlLibraryReader.read(new ByteArrayInputStream(elm));
+    } catch (IOException | JAXBException e) {
+      throw new RuntimeException("Failed to read ELM: " + e.getMessage(), e);
     }
+  }
 
-    return library;
+  /**
+   * Marshal an already translated library to XML ELM.
+   */
+  public static String toXml(org.hl7.elm.r1.Library library) throws JAXBException {
+    JAXBContext jc = JAXBContext.newInstance(org.hl7.elm.r1.Library.class, Annotation.class);
+    Marshaller marshaller = jc.createMarshaller();
+    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+
+    StringWriter writer = new StringWriter();
+    marshaller.marshal(new ObjectFactory().createLibrary(library), writer);
+    return writer.getBuffer().toString();
   }
 }
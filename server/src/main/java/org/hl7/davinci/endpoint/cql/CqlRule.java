@@ -1,5 +1,7 @@
 package org.hl7.davinci.endpoint.cql;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.hl7.elm.r1.UsingDef;
@@ -12,10 +14,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,6 +36,8 @@ public class CqlRule {
 
   private HashMap<String, HashMap<VersionedIdentifier, InputStream>> rawCqlLibraries = new HashMap<>();
   private HashMap<String, VersionedIdentifier> mainCqlLibraryId = new HashMap<>();
+  private HashMap<String, String> contentHash = new HashMap<>();
+  private HashMap<String, HashMap<VersionedIdentifier, byte[]>> elmLibraries = new HashMap<>();
 
 
   /**
@@ -118,20 +126,22 @@ public class CqlRule {
       }
     }
 
-    precompiled = false;
+    // precompiled only when every library ships with XML ELM, the engine can not read the JSON form
+    precompiled = !cqlLibraries.isEmpty()
+        && cqlLibraries.stream().allMatch(cqlLibrary -> cqlLibrary.elm != null && cqlLibrary.xlmElm);
+
+    // sources per fhir version, sorted by library id so the content hash is stable
+    HashMap<String, TreeMap<String, byte[]>> sourcesByVersion = new HashMap<>();
 
     for (CqlLibrary cqlLibrary : cqlLibraries) {
+      VersionedIdentifier id = getIdFromCqlFile(cqlLibrary.cql);
+      String fhirVersionFromFile = getFhirVersionFromCqlFile(cqlLibrary.cql);
+      logger.info("CqlRule::Constructor() add id: " + id.getId() + ", fhir version: " + fhirVersionFromFile);
+
       if (precompiled) {
-        if (cqlLibrary.elm == null) {
-          throw new RuntimeException("Package indicated CQL was precompiled, but elm xml missing.");
-        }
-        // TODO: need to set rulePackage.elmLibraries and mainCqlLibraryId
+        elmLibraries.computeIfAbsent(fhirVersionFromFile, k -> new HashMap<>()).put(id, cqlLibrary.elm);
       } else {
         InputStream cqlStream = new ByteArrayInputStream(cqlLibrary.cql);
-        VersionedIdentifier id = getIdFromCqlFile(cqlLibrary.cql);
-        String fhirVersionFromFile = getFhirVersionFromCqlFile(cqlLibrary.cql);
-        logger.info("CqlRule::Constructor() add id: " + id.getId() + ", fhir version: " + fhirVersionFromFile);
-
         if (rawCqlLibraries.containsKey(fhirVersionFromFile)) {
           //logger.info("CqlRule::Constructor() add rawCqlLibraries add: " + id.getId());
           rawCqlLibraries.get(fhirVersionFromFile).put(id, cqlStream);
@@ -141,12 +151,27 @@ public class CqlRule {
           //logger.info("CqlRule::Constructor() add rawCqlLibraries new: " + id.getId());
           rawCqlLibraries.put(fhirVersionFromFile, map);
         }
-        if (id.getId().equals(mainCqlLibraryName)) {
-          //logger.info("CqlRule::Constructor() add mainCqlLibraryId: " + id.getId());
-          mainCqlLibraryId.put(fhirVersionFromFile, id);
-        }
+      }
+      sourcesByVersion.computeIfAbsent(fhirVersionFromFile, k -> new TreeMap<>())
+          .put(id.getId() + "|" + id.getVersion(), cqlLibrary.cql);
+      if (id.getId().equals(mainCqlLibraryName)) {
+        //logger.info("CqlRule::Constructor() add mainCqlLibraryId: " + id.getId());
+        mainCqlLibraryId.put(fhirVersionFromFile, id);
       }
     }
+
+    hashSources(sourcesByVersion);
+  }
+
+  private void hashSources(HashMap<String, TreeMap<String, byte[]>> sourcesByVersion) {
+    for (Map.Entry<String, TreeMap<String, byte[]>> version : sourcesByVersion.entrySet()) {
+      MessageDigest digest = DigestUtils.getSha256Digest();
+      for (Map.Entry<String, byte[]> source : version.getValue().entrySet()) {
+        digest.update(source.getKey().getBytes(StandardCharsets.UTF_8));
+        digest.update(source.getValue());
+      }
+      contentHash.put(version.getKey(), Hex.encodeHexString(digest.digest()));
+    }
   }
 
   public boolean isPrecompiled() {
@@ -158,6 +183,27 @@ public class CqlRule {
     return new RawCqlLibrarySourceProvider(rawCqlLibraries.get(fhirVersion));
   }
 
+  /**
+   * @return the XML ELM of every library for the FHIR version, only filled when the rule is precompiled
+   */
+  public HashMap<VersionedIdentifier, byte[]> getElmLibraries(String fhirVersion) {
+    return elmLibraries.get(fhirVersion);
+  }
+
+  /**
+   * @return the identifier of the main library (e.g. "Rule") for the FHIR version, or null if there is none
+   */
+  public VersionedIdentifier getMainCqlLibraryId(String fhirVersion) {
+    return mainCqlLibraryId.get(fhirVersion);
+  }
+
+  /**
+   * @return SHA-256 over every CQL library of the FHIR version, used to key compiled libraries
+   */
+  public String getContentHash(String fhirVersion) {
+    return contentHash.get(fhirVersion);
+  }
+
   public String getRawMainCqlLibrary(String fhirVersion) {
     logger.info("CqlRule::getRawMainCqlLibrary(): " + fhirVersion);
 
@@ -0,0 +1,244 @@
+package org.hl7.davinci.endpoint.cql;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.cqframework.cql.cql2elm.model.TranslatedLibrary;
+import org.cqframework.cql.elm.execution.Library;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.hl7.davinci.endpoint.cql.r4.CqlExecutionContextBuilder;
+import org.hl7.davinci.endpoint.database.RuleMapping;
+import org.hl7.davinci.endpoint.files.FileStoreGeneration;
+import org.hl7.elm.r1.VersionedIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Translates the CQL of every rule to ELM while the FileStore reloads, so requests only ever use
+ * deserialized libraries from the CompiledLibraryCache. The XML ELM is persisted under elmCachePath in a
+ * folder named after the rule content hash, which lets a restart skip translation for unchanged rules. The
+ * file of the main library is written last and only once every included library was written, so it marks the
+ * folder as complete. Folders of rules that are no longer published are deleted after each reload.
+ */
+@Component
+public class ElmPrecompiler {
+
+  static final Logger logger = LoggerFactory.getLogger(ElmPrecompiler.class);
+
+  static final String ELM_EXTENSION = ".xml";
+
+  @Autowired
+  private YamlConfig config;
+
+  /**
+   * Reads the CQL of a rule, from the generation being published.
+   */
+  public interface CqlRuleReader {
+    CqlRule getCqlRule(String topic, String fhirVersion);
+  }
+
+  /**
+   * Precompile all of the R4 rules of a generation. Blocks until every topic is done, so the generation can
+   * be published with its libraries already in the CompiledLibraryCache.
+   * @param generation the generation about to be published
+   * @param cqlRules reads the rules of that generation
+   * @return the content hashes of the rules that are in the CompiledLibraryCache
+   */
+  public Set<String> precompileAll(FileStoreGeneration generation, CqlRuleReader cqlRules) {
+    Set<String> contentHashes = ConcurrentHashMap.newKeySet();
+    long startTime = System.nanoTime();
+
+    TreeSet<String> topics = new TreeSet<>();
+    for (RuleMapping rule : generation.getRuleIndex().findAll()) {
+      if ("R4".equalsIgnoreCase(rule.getFhirVersion())) {
+        topics.add(rule.getTopic());
+      }
+    }
+
+    int threads = Math.max(1, config.getElmPrecompileThreads());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+      for (String topic : topics) {
+        tasks.add(() -> {
+          String contentHash = precompile(cqlRules, topic, "R4");
+          if (contentHash != null) {
+            contentHashes.add(contentHash);
+          }
+          return contentHash != null;
+        });
+      }
+      int compiled = 0;
+      for (Future<Boolean> result : executor.invokeAll(tasks)) {
+        try {
+          if (result.get()) {
+            compiled++;
+          }
+        } catch (Exception e) {
+          logger.warn("ElmPrecompiler::precompileAll(): " + e.getMessage());
+        }
+      }
+
+      float seconds = (float) (System.nanoTime() - startTime) / (float) 1000000000;
+      logger.info("ElmPrecompiler::precompileAll(): precompiled " + compiled + " of " + topics.size()
+          + " topics in " + seconds + " seconds");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+    return contentHashes;
+  }
+
+  /**
+   * Load the ELM for one topic into the CompiledLibraryCache, from elmCachePath when available,
+   * translating (and persisting) it otherwise.
+   * @return the content hash of the rule if its libraries are in the cache, null otherwise
+   */
+  String precompile(CqlRuleReader cqlRules, String topic, String fhirVersion) {
+    CqlRule cqlRule = cqlRules.getCqlRule(topic, fhirVersion);
+    String cqlVersion = CqlExecutionContextBuilder.CQL_VERSION;
+    String contentHash = cqlRule.getContentHash(cqlVersion);
+    VersionedIdentifier mainId = cqlRule.getMainCqlLibraryId(cqlVersion);
+    if (contentHash == null || mainId == null) {
+      logger.warn("ElmPrecompiler::precompile(): no " + fhirVersion + " rule found for " + topic);
+      return null;
+    }
+
+    // unchanged since the last reload, nothing to load
+    if (CompiledLibraryCache.contains(CompiledLibraryCache.key(contentHash, mainId.getId(), mainId.getVersion()))) {
+      return contentHash;
+    }
+
+    if (cqlRule.isPrecompiled()) {
+      for (Map.Entry<VersionedIdentifier, byte[]> elm : cqlRule.getElmLibraries(cqlVersion).entrySet()) {
+        cache(contentHash, elm.getKey(), elm.getValue());
+      }
+      return contentHash;
+    }
+
+    File elmFolder = config.getElmCachePath() == null ? null : new File(config.getElmCachePath(), contentHash);
+    if (elmFolder != null && new File(elmFolder, fileName(mainId)).exists()) {
+      logger.info("ElmPrecompiler::precompile(): " + topic + " loading ELM from " + elmFolder);
+      if (load(elmFolder, contentHash)) {
+        return contentHash;
+      }
+      // translate again rather than fail on the same file at every reload
+      delete(elmFolder);
+    }
+
+    logger.info("ElmPrecompiler::precompile(): translating " + topic);
+    ModelManager modelManager = new ModelManager();
+    LibraryManager libraryManager = new LibraryManager(modelManager);
+    libraryManager.getLibrarySourceLoader().clearProviders();
+    libraryManager.getLibrarySourceLoader().registerProvider(cqlRule.getRawCqlLibrarySourceProvider(cqlVersion));
+    try {
+      String mainElm = CqlExecution.translateToXml(cqlRule.getRawMainCqlLibrary(cqlVersion), libraryManager, modelManager);
+      boolean complete = true;
+      for (TranslatedLibrary included : libraryManager.getTranslatedLibraries().values()) {
+        complete &= store(complete ? elmFolder : null, contentHash, included.getIdentifier(),
+            CqlExecution.toXml(included.getLibrary()));
+      }
+      // the main library goes last, its file marks the folder as complete
+      store(complete ? elmFolder : null, contentHash, mainId, mainElm);
+    } catch (Exception e) {
+      logger.warn("ElmPrecompiler::precompile(): failed to translate " + topic + ": " + e.getMessage());
+      return null;
+    }
+    return contentHash;
+  }
+
+  /**
+   * Load every library persisted in the folder into the CompiledLibraryCache.
+   * @return false if a file could not be read or parsed
+   */
+  private boolean load(File elmFolder, String contentHash) {
+    File[] elmFiles = elmFolder.listFiles((dir, name) -> name.endsWith(ELM_EXTENSION));
+    for (File elmFile : elmFiles == null ? new File[0] : elmFiles) {
+      try {
+        Library library = CqlExecution.readXmlElm(Files.readAllBytes(elmFile.toPath()));
+        CompiledLibraryCache.get(CompiledLibraryCache.key(contentHash, library.getIdentifier().getId(),
+            library.getIdentifier().getVersion()), () -> library);
+      } catch (Exception e) {
+        logger.warn("ElmPrecompiler::load(): failed to read " + elmFile + ": " + e.getMessage());
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Cache the library, and persist it to the folder if there is one.
+   * @return true if the library was persisted
+   */
+  private boolean store(File elmFolder, String contentHash, VersionedIdentifier id, String elm) {
+    byte[] elmBytes = elm.getBytes(StandardCharsets.UTF_8);
+    boolean persisted = false;
+    if (elmFolder != null) {
+      try {
+        // written aside and moved in place, so the file is either complete or not there at all
+        Files.createDirectories(elmFolder.toPath());
+        Path temporary = Files.createTempFile(elmFolder.toPath(), id.getId(), ".tmp");
+        Files.write(temporary, elmBytes);
+        Files.move(temporary, new File(elmFolder, fileName(id)).toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        persisted = true;
+      } catch (IOException e) {
+        logger.warn("ElmPrecompiler::store(): failed to persist " + fileName(id) + ": " + e.getMessage());
+      }
+    }
+    cache(contentHash, id, elmBytes);
+    return persisted;
+  }
+
+  /**
+   * Delete the persisted ELM of every rule that is not published any more.
+   * @param contentHashes the content hashes of the rules of the published generation
+   */
+  public void retain(Set<String> contentHashes) {
+    File[] folders = config.getElmCachePath() == null ? null
+        : new File(config.getElmCachePath()).listFiles(File::isDirectory);
+    int deleted = 0;
+    for (File folder : folders == null ? new File[0] : folders) {
+      if (!contentHashes.contains(folder.getName()) && delete(folder)) {
+        deleted++;
+      }
+    }
+    logger.info("ElmPrecompiler::retain(): deleted " + deleted + " ELM folders");
+  }
+
+  private static boolean delete(File elmFolder) {
+    File[] files = elmFolder.listFiles();
+    for (File file : files == null ? new File[0] : files) {
+      file.delete();
+    }
+    return elmFolder.delete();
+  }
+
+  private void cache(String contentHash, VersionedIdentifier id, byte[] elm) {
+    CompiledLibraryCache.get(CompiledLibraryCache.key(contentHash, id.getId(), id.getVersion()),
+        () -> CqlExecution.readXmlElm(elm));
+  }
+
+  private static String fileName(VersionedIdentifier id) {
+    return id.getId() + "-" + id.getVersion() + ELM_EXTENSION;
+  }
+}
@@ -0,0 +1,193 @@
+package org.hl7.davinci.endpoint.cql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.hl7.davinci.endpoint.files.CDSLibrarySourceProvider;
+import org.hl7.davinci.endpoint.files.FileResource;
+import org.hl7.davinci.endpoint.files.FileStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache of the ELM JSON served for CQL files requested with convert=true. Entries are keyed by
+ * topic/fhirVersion/fileName and remember the hash of the CQL source they were translated from, a changed
+ * file is translated again. Included libraries are not part of the hash, so the FileStore replaces the
+ * cache on reload, translating the CQL files of the new generation up front. Only the entries of topics
+ * the reload left untouched are kept.
+ * Every entry carries a strong ETag over the ELM bytes for conditional requests.
+ */
+@Component
+public class ElmTranslationCache {
+
+  static final Logger logger = LoggerFactory.getLogger(ElmTranslationCache.class);
+
+  @Autowired
+  private YamlConfig config;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private volatile Map<String, TranslatedElm> entries = new ConcurrentHashMap<>();
+  private Counter hitCounter;
+  private Counter missCounter;
+
+  public static class TranslatedElm {
+    private final String sourceHash;
+    private final byte[] elm;
+    private final String etag;
+
+    TranslatedElm(String sourceHash, byte[] elm) {
+      this.sourceHash = sourceHash;
+      this.elm = elm;
+      this.etag = "\"" + DigestUtils.sha256Hex(elm) + "\"";
+    }
+
+    public byte[] getElm() { return elm; }
+
+    public String getEtag() { return etag; }
+  }
+
+  @PostConstruct
+  public void init() {
+    hitCounter = Counter.builder("crd.elm.translation.cache").tag("result", "hit")
+        .description("CQL to ELM conversions answered from the cache").register(meterRegistry);
+    missCounter = Counter.builder("crd.elm.translation.cache").tag("result", "miss")
+        .description("CQL to ELM conversions that ran the translator").register(meterRegistry);
+    Gauge.builder("crd.elm.translation.cache.size", this, ElmTranslationCache::size)
+        .description("Translated CQL files in the ELM cache").register(meterRegistry);
+  }
+
+  public static String key(String topic, String fhirVersion, String fileName) {
+    return topic + "/" + fhirVersion + "/" + fileName;
+  }
+
+  /**
+   * Return the ELM JSON for a CQL file, translating it on a miss or when the source changed.
+   * @param fileStore the file store that resolves included libraries
+   * @param cql the current CQL source of the file
+   * @return the translated ELM, null if the CQL does not translate
+   */
+  public TranslatedElm get(FileStore fileStore, String topic, String fhirVersion, String fileName, byte[] cql) {
+    String key = key(topic, fhirVersion, fileName);
+    String sourceHash = DigestUtils.sha256Hex(cql);
+    Map<String, TranslatedElm> current = entries;
+    TranslatedElm entry = current.get(key);
+    if (entry != null && entry.sourceHash.equals(sourceHash)) {
+      hitCounter.increment();
+      return entry;
+    }
+    missCounter.increment();
+    entry = translate(fileStore, key, sourceHash, cql);
+    if (entry != null) {
+      current.put(key, entry);
+    }
+    return entry;
+  }
+
+  private TranslatedElm translate(FileStore fileStore, String key, String sourceHash, byte[] cql) {
+    logger.info("ElmTranslationCache::translate(): converting " + key + " to JSON ELM");
+    try {
+      String elm = CqlExecution.translateToElm(new String(cql), new CDSLibrarySourceProvider(fileStore));
+      return new TranslatedElm(sourceHash, elm.getBytes());
+    } catch (Exception e) {
+      logger.warn("ElmTranslationCache::translate(): could not convert " + key + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Translate the given CQL files into a new cache and swap it in once all are done. Blocks until then,
+   * requests keep using the previous entries in the meantime.
+   * @param fileStore the file store that was just reloaded
+   * @param cqlFiles the files as "topic/fhirVersion/fileName"
+   */
+  public void warm(FileStore fileStore, Collection<String> cqlFiles) {
+    warm(fileStore, cqlFiles, Collections.emptySet());
+  }
+
+  /**
+   * Like warm(fileStore, cqlFiles), but the current entries of files in the reusable topics are kept as they
+   * are instead of being translated again.
+   * @param reusableTopics topics whose files, and the libraries they include, did not change
+   */
+  public void warm(FileStore fileStore, Collection<String> cqlFiles, Set<String> reusableTopics) {
+    long startTime = System.nanoTime();
+    Map<String, TranslatedElm> current = entries;
+    Map<String, TranslatedElm> warmed = new ConcurrentHashMap<>();
+    int reused = 0;
+
+    int threads = Math.max(1, config.getElmPrecompileThreads());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (String cqlFile : cqlFiles) {
+        TranslatedElm existing = current.get(cqlFile);
+        if (existing != null && reusableTopics.contains(cqlFile.split("/")[0])) {
+          warmed.put(cqlFile, existing);
+          reused++;
+          continue;
+        }
+        tasks.add(() -> {
+          String[] parts = cqlFile.split("/");
+          byte[] cql = read(fileStore.getFile(parts[0], parts[2], parts[1], false));
+          if (cql != null) {
+            TranslatedElm entry = translate(fileStore, cqlFile, DigestUtils.sha256Hex(cql), cql);
+            if (entry != null) {
+              warmed.put(cqlFile, entry);
+            }
+          }
+          return null;
+        });
+      }
+      executor.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } finally {
+      executor.shutdownNow();
+    }
+
+    entries = warmed;
+    float seconds = (float) (System.nanoTime() - startTime) / (float) 1000000000;
+    logger.info("ElmTranslationCache::warm(): translated " + (warmed.size() - reused) + " and kept " + reused
+        + " of " + cqlFiles.size() + " CQL files in " + seconds + " seconds");
+  }
+
+  private static byte[] read(FileResource fileResource) {
+    if (fileResource == null) {
+      return null;
+    }
+    try (InputStream inputStream = fileResource.getResource().getInputStream()) {
+      return IOUtils.toByteArray(inputStream);
+    } catch (IOException e) {
+      logger.warn("ElmTranslationCache::read(): failed to read " + fileResource.getFilename() + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+}
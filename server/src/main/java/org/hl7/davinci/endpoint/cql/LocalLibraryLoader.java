@@ -2,22 +2,17 @@ package org.hl7.davinci.endpoint.cql;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 
 import org.cqframework.cql.cql2elm.CqlTranslatorOptions;
 import org.cqframework.cql.cql2elm.CqlTranslatorException;
 import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.elm.execution.Library;
 import org.cqframework.cql.elm.execution.VersionedIdentifier;
-import org.hl7.cql_annotations.r1.Annotation;
-import org.hl7.elm.r1.ObjectFactory;
 import org.opencds.cqf.cql.engine.execution.CqlLibraryReader;
 import org.opencds.cqf.cql.engine.execution.LibraryLoader;
 
@@ -27,15 +22,27 @@ import org.opencds.cqf.cql.engine.execution.LibraryLoader;
 public class LocalLibraryLoader implements LibraryLoader {
 
   public LocalLibraryLoader(LibraryManager libraryManager) {
+    this(libraryManager, null);
+  }
+
+  /**
+   * Create a loader that shares translated libraries through the CompiledLibraryCache.
+   * @param libraryManager used to translate libraries that are not cached yet
+   * @param contentHash content hash of the CqlRule the libraries come from, null disables the shared cache
+   */
+  public LocalLibraryLoader(LibraryManager libraryManager, String contentHash) {
     if (libraryManager == null) {
       throw new IllegalArgumentException("libraryManager is null");
     }
 
     this.libraryManager = libraryManager;
+    this.contentHash = contentHash;
   }
 
   private LibraryManager libraryManager;
 
+  private String contentHash;
+
   private Map<String, Library> libraries = new HashMap<>();
 
   private Library resolveLibrary(VersionedIdentifier libraryIdentifier) {
@@ -52,8 +59,13 @@ public class LocalLibraryLoader implements LibraryLoader {
       throw new IllegalArgumentException(String.format("Could not load library %s, version %s because version %s is already loaded.",
           libraryIdentifier.getId(), libraryIdentifier.getVersion(), library.getIdentifier().getVersion()));
     }
-    else {
-      library = loadLibrary(libraryIdentifier);
+    else if (library == null) {
+      if (contentHash != null) {
+        String key = CompiledLibraryCache.key(contentHash, libraryIdentifier.getId(), libraryIdentifier.getVersion());
+        library = CompiledLibraryCache.get(key, () -> loadLibrary(libraryIdentifier));
+      } else {
+        library = loadLibrary(libraryIdentifier);
+      }
       libraries.put(libraryIdentifier.getId(), library);
     }
 
@@ -72,13 +84,7 @@ public class LocalLibraryLoader implements LibraryLoader {
 
     String xml;
     try {
-      JAXBContext jc = JAXBContext.newInstance(org.hl7.elm.r1.Library.class, Annotation.class);
-      Marshaller marshaller = jc.createMarshaller();
-      marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-
-      StringWriter writer = new StringWriter();
-      marshaller.marshal(new ObjectFactory().createLibrary(translatedLibrary.getLibrary()), writer);
-      xml = writer.getBuffer().toString();
+      xml = CqlExecution.toXml(translatedLibrary.getLibrary());
     } catch (JAXBException e) {
       throw new RuntimeException(String.format("Errors encountered while loading library %s: %s", libraryIdentifier.getId(), e.getMessage()));
     }
@@ -4,9 +4,12 @@ import ca.uhn.fhir.context.FhirContext;
 import org.cqframework.cql.cql2elm.LibraryManager;
 import org.cqframework.cql.cql2elm.ModelManager;
 import org.cqframework.cql.elm.execution.Library;
+import org.hl7.davinci.endpoint.cql.CompiledLibraryCache;
 import org.hl7.davinci.endpoint.cql.CqlExecution;
 import org.hl7.davinci.endpoint.cql.LocalLibraryLoader;
 import org.hl7.davinci.endpoint.cql.CqlRule;
+import org.hl7.davinci.r4.FhirComponents;
+import org.hl7.elm.r1.VersionedIdentifier;
 import org.hl7.fhir.r4.model.Resource;
 
 import org.opencds.cqf.cql.engine.data.CompositeDataProvider;
@@ -15,15 +18,30 @@ import org.opencds.cqf.cql.engine.execution.LibraryLoader;
 import org.opencds.cqf.cql.engine.fhir.model.R4FhirModelResolver;
 import org.opencds.cqf.cql.engine.fhir.retrieve.RestFhirRetrieveProvider;
 import org.opencds.cqf.cql.engine.fhir.searchparam.SearchParameterResolver;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class CqlExecutionContextBuilder {
 
   public static String CQL_VERSION = "4.0.0";
 
+  // shared across executions, building these runs a full scan of the FHIR model
+  private static final FhirContext FHIR_CONTEXT = new FhirComponents().getFhirContext();
+  private static final R4FhirModelResolver MODEL_RESOLVER = new R4FhirModelResolver();
+  private static final SearchParameterResolver SEARCH_PARAMETER_RESOLVER = new SearchParameterResolver(FHIR_CONTEXT);
+
   public static Context getExecutionContext(CqlRule cqlRule, HashMap<String, Resource> cqlParams, String baseUrl) {
+    return getExecutionContext(cqlRule, cqlParams, baseUrl, null);
+  }
+
+  /**
+   * @param terminologyProvider answers "in ValueSet" and ValueSet expansion in the rule, may be null
+   */
+  public static Context getExecutionContext(CqlRule cqlRule, HashMap<String, Resource> cqlParams, String baseUrl,
+                                            TerminologyProvider terminologyProvider) {
     ModelManager modelManager = new ModelManager();
     LibraryManager libraryManager = new LibraryManager(modelManager);
     libraryManager.getLibrarySourceLoader().clearProviders();
@@ -31,27 +49,49 @@ public class CqlExecutionContextBuilder {
     Library library = null;
     LibraryLoader libraryLoader = null;
 
+    String contentHash = cqlRule.getContentHash(CQL_VERSION);
+    VersionedIdentifier mainId = cqlRule.getMainCqlLibraryId(CQL_VERSION);
+
     if (cqlRule.isPrecompiled()) {
-      //todo
+      // only deserialize the shipped ELM, the loader then finds the included libraries in the cache
+      for (Map.Entry<VersionedIdentifier, byte[]> elm : cqlRule.getElmLibraries(CQL_VERSION).entrySet()) {
+        Library elmLibrary = CompiledLibraryCache.get(
+            CompiledLibraryCache.key(contentHash, elm.getKey().getId(), elm.getKey().getVersion()),
+            () -> CqlExecution.readXmlElm(elm.getValue()));
+        if (elm.getKey().equals(mainId)) {
+          library = elmLibrary;
+        }
+      }
+      libraryLoader = new LocalLibraryLoader(libraryManager, contentHash);
     } else {
       libraryManager.getLibrarySourceLoader().registerProvider(cqlRule.getRawCqlLibrarySourceProvider(CQL_VERSION));
-      libraryLoader = new LocalLibraryLoader(libraryManager);
-      try {
-        library = CqlExecution.translate(cqlRule.getRawMainCqlLibrary(CQL_VERSION), libraryManager, modelManager);
-      } catch (Exception e){
-        throw new RuntimeException(e);
+      libraryLoader = new LocalLibraryLoader(libraryManager, contentHash);
+
+      // translated libraries are reused until the rule content changes or the file store reloads
+      Supplier<Library> translator = () -> {
+        try {
+          return CqlExecution.translate(cqlRule.getRawMainCqlLibrary(CQL_VERSION), libraryManager, modelManager);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      };
+      if (contentHash != null && mainId != null) {
+        library = CompiledLibraryCache.get(CompiledLibraryCache.key(contentHash, mainId.getId(), mainId.getVersion()), translator);
+      } else {
+        library = translator.get();
       }
     }
 
-    FhirContext fhirContext = FhirContext.forR4();
     Context context = new Context(library);
     context.registerLibraryLoader(libraryLoader);
     context.setExpressionCaching(true);
 
-    R4FhirModelResolver modelResolver = new R4FhirModelResolver();
-    RestFhirRetrieveProvider retrieveProvider = new RestFhirRetrieveProvider(new SearchParameterResolver(fhirContext), fhirContext.newRestfulGenericClient("http://fhirtest.uhn.ca/baseR4"));
-    CompositeDataProvider provider = new CompositeDataProvider(modelResolver, retrieveProvider);
+    RestFhirRetrieveProvider retrieveProvider = new RestFhirRetrieveProvider(SEARCH_PARAMETER_RESOLVER, FHIR_CONTEXT.newRestfulGenericClient("http://fhirtest.uhn.ca/baseR4"));
+    CompositeDataProvider provider = new CompositeDataProvider(MODEL_RESOLVER, retrieveProvider);
     context.registerDataProvider("http://hl7.org/fhir", provider);
+    if (terminologyProvider != null) {
+      context.registerTerminologyProvider(terminologyProvider);
+    }
 
     for (Map.Entry<String, org.hl7.fhir.r4.model.Resource> entry : cqlParams.entrySet()) {
       context.setParameter(null, entry.getKey(), entry.getValue());
@@ -64,8 +64,8 @@ public class FhirResource {
     if (this.getName() == null) {
       this.setName(uuid);
     }
-    // set the filename if unset
-    if (this.getFilename() == null) {
+    // set the filename if unset, resources without data (VSAC ValueSets) have no file to name
+    if (this.getFilename() == null && this.getData() != null) {
       this.setFilename(this.getResourceType() + "-" + this.getFhirVersion() + "-" + this.getName() + ".json");
     }
   }
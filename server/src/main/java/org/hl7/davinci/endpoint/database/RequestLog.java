@@ -1,5 +1,6 @@
 package org.hl7.davinci.endpoint.database;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
@@ -11,12 +12,16 @@ import java.util.Set;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.SequenceGenerator;
 import javax.persistence.Table;
 import javax.persistence.Lob;
 
@@ -31,7 +36,7 @@ import org.joda.time.Period;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-// request_body: BLOB
+// payload: request_log_payload, holding the compressed request_body
 // timestamp: timestamp
 // patient_age: integer
 // patient_gender: string
@@ -42,19 +47,27 @@ import org.slf4j.LoggerFactory;
 // timeline: boolean[]
 // topics: string[]
 
+// the summary row stays small, the request body lives in request_log_payload and is only read when asked for
 @Entity
-@Table(name = "request_log")
+@Table(name = "request_log", indexes = {
+    @Index(name = "request_log_timestamp", columnList = "timestamp"),
+    @Index(name = "request_log_hook_type", columnList = "hook_type"),
+    @Index(name = "request_log_code", columnList = "code")
+})
 public class RequestLog {
   static final Logger logger = LoggerFactory.getLogger(RequestLog.class);
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  // sequence ids let hibernate batch the inserts made by the RequestLogWriter
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "request_log_seq")
+  @SequenceGenerator(name = "request_log_seq", sequenceName = "request_log_seq", allocationSize = 50)
   @Column(name = "id", updatable = false, nullable = false)
   private long id;
 
-  @Lob
-  @Column(name = "request_body", nullable = false)
-  private byte[] requestBody;
+  @JsonIgnore
+  @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, optional = false, orphanRemoval = true)
+  @JoinColumn(name = "payload_id", nullable = false, unique = true)
+  private RequestLogPayload payload;
 
   @Column(name = "timestamp", nullable = false)
   private long timestamp;
@@ -109,8 +122,12 @@ public class RequestLog {
     setTimestamp(timestamp);
   }
 
+  /**
+   * Build the log for a hook request. Nothing is written here, the finished log is handed to the
+   * RequestLogWriter once the request is done.
+   */
   public RequestLog(Object request, long timestamp, String fhirVersion,
-                    String hookType, RequestService requestService, int sections) {
+                    String hookType, int sections) {
     // parse and assign to RequestLog all the relevant information from the request
     // object
     String requestStr = this.setFromRequest(request);
@@ -127,7 +144,6 @@ public class RequestLog {
     setTimeline(timeline);
     this.timelineCounter = 1;
     this.topicCounter = 0;
-    requestService.create(this);
   }
 
   /**
@@ -208,12 +224,10 @@ public class RequestLog {
     return requestStr;
   }
 
-  public void advanceTimeline(RequestService requestService) {
+  public void advanceTimeline() {
     // Note that the first timeline element ("Authorized") is set in the constructor
     this.timeline[this.timelineCounter] = true;
     this.timelineCounter++;
-    requestService.edit(this);
-
   }
 
   public void setCardListFromCards(Object cards) {
@@ -233,18 +247,16 @@ public class RequestLog {
     this.setCardList(newStr);
   }
 
-  public void addTopic(RequestService requestService, String topic) {
+  public void addTopic(String topic) {
     int topicMax = 10;
     if (this.topicCounter == 0) { // first topic added
       String[] topics = new String[topicMax]; // up to 10 topics allowed
       topics[this.topicCounter] = topic;
       setTopics(topics);
       this.topicCounter++;
-      requestService.edit(this);
     } else if (this.topicCounter < topicMax) { // topics 1-10 added
       this.topics[this.topicCounter] = topic;
       this.topicCounter++;
-      requestService.edit(this);
     } else { // do not allow more than 10 topics
       logger.warn("not storing topic, already reached maximum (10)");
     }
@@ -272,12 +284,20 @@ public class RequestLog {
     this.id = id;
   }
 
+  /**
+   * Reads the payload, which is loaded lazily for a RequestLog read from the database.
+   */
+  @JsonIgnore
   public byte[] getRequestBody() {
-    return requestBody;
+    return payload == null ? null : payload.getRequestBody();
   }
 
   public void setRequestBody(byte[] requestBody) {
-    this.requestBody = requestBody;
+    if (payload == null) {
+      payload = new RequestLogPayload(requestBody);
+    } else {
+      payload.setRequestBody(requestBody);
+    }
   }
 
   public long getTimestamp() {
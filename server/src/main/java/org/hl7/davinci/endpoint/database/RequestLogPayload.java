@@ -0,0 +1,118 @@
+package org.hl7.davinci.endpoint.database;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The request body of a RequestLog, kept in its own table so listing the logs never reads it. The body is
+ * stored deflated at the fastest level, hook requests are repetitive JSON and shrink several times over.
+ */
+@Entity
+@Table(name = "request_log_payload")
+public class RequestLogPayload {
+  static final Logger logger = LoggerFactory.getLogger(RequestLogPayload.class);
+
+  @Id
+  // sequence ids let hibernate batch the inserts made by the RequestLogWriter
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "request_log_payload_seq")
+  @SequenceGenerator(name = "request_log_payload_seq", sequenceName = "request_log_payload_seq", allocationSize = 50)
+  @Column(name = "id", updatable = false, nullable = false)
+  private long id;
+
+  @Lob
+  @Column(name = "request_body", nullable = false)
+  private byte[] compressedRequestBody;
+
+  @Column(name = "request_body_length", nullable = false)
+  private int requestBodyLength;
+
+  public RequestLogPayload() {
+  }
+
+  public RequestLogPayload(byte[] requestBody) {
+    setRequestBody(requestBody);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public byte[] getRequestBody() {
+    return decompress(compressedRequestBody, requestBodyLength);
+  }
+
+  public void setRequestBody(byte[] requestBody) {
+    this.compressedRequestBody = compress(requestBody);
+    this.requestBodyLength = requestBody.length;
+  }
+
+  public byte[] getCompressedRequestBody() {
+    return compressedRequestBody;
+  }
+
+  /**
+   * @return the length of the request body before compression
+   */
+  public int getRequestBodyLength() {
+    return requestBodyLength;
+  }
+
+  static byte[] compress(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * @param length the length of the data before compression
+   * @return the data, null if it is corrupt
+   */
+  static byte[] decompress(byte[] compressed, int length) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      byte[] data = new byte[length];
+      int inflated = 0;
+      while (inflated < length && !inflater.finished()) {
+        int count = inflater.inflate(data, inflated, length - inflated);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        inflated += count;
+      }
+      if (inflated != length) {
+        logger.warn("RequestLogPayload::decompress(): expected " + length + " bytes, got " + inflated);
+        return null;
+      }
+      return data;
+    } catch (DataFormatException e) {
+      logger.warn("RequestLogPayload::decompress(): " + e.getMessage());
+      return null;
+    } finally {
+      inflater.end();
+    }
+  }
+}
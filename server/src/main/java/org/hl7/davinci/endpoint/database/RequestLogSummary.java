@@ -0,0 +1,35 @@
+package org.hl7.davinci.endpoint.database;
+
+/**
+ * The summary columns of a RequestLog, what the admin table lists. Read with a projection query so the
+ * request body is never loaded.
+ */
+public interface RequestLogSummary {
+  long getId();
+
+  long getTimestamp();
+
+  String getCardList();
+
+  int getPatientAge();
+
+  String getPatientGender();
+
+  String getPatientAddressState();
+
+  String getProviderAddressState();
+
+  String getCode();
+
+  String getCodeSystem();
+
+  String getHookType();
+
+  String getFhirVersion();
+
+  String getResults();
+
+  boolean[] getTimeline();
+
+  String[] getTopics();
+}
@@ -0,0 +1,164 @@
+package org.hl7.davinci.endpoint.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hl7.davinci.endpoint.config.RequestLogConfig;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Persists RequestLogs off the request thread. A hook builds its RequestLog in memory and submits it once
+ * when done; a single background thread drains the bounded queue and saves the logs in batches, so each
+ * request costs one insert instead of a save per timeline step. Queue depth, flush latency and dropped logs
+ * are published as "crd.requestlog.*" metrics.
+ */
+@Component
+public class RequestLogWriter {
+
+  static final Logger logger = LoggerFactory.getLogger(RequestLogWriter.class);
+
+  @Autowired
+  private YamlConfig myConfig;
+
+  @Autowired
+  private RequestService requestService;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private BlockingQueue<RequestLog> queue;
+  private Thread writerThread;
+  private volatile boolean running;
+
+  private Counter writtenCounter;
+  private Counter droppedCounter;
+  private Counter failedCounter;
+  private Timer flushTimer;
+
+  @PostConstruct
+  public void init() {
+    RequestLogConfig logConfig = myConfig.getRequestLog();
+    queue = new ArrayBlockingQueue<>(Math.max(1, logConfig.getQueueCapacity()));
+
+    Gauge.builder("crd.requestlog.queue.depth", queue, BlockingQueue::size)
+        .description("Request logs waiting to be written").register(meterRegistry);
+    writtenCounter = Counter.builder("crd.requestlog.written")
+        .description("Request logs written to the database").register(meterRegistry);
+    droppedCounter = Counter.builder("crd.requestlog.dropped")
+        .description("Request logs discarded because the queue was full").register(meterRegistry);
+    failedCounter = Counter.builder("crd.requestlog.failed")
+        .description("Request logs lost because the database write failed").register(meterRegistry);
+    flushTimer = Timer.builder("crd.requestlog.flush")
+        .description("Time to write one batch of request logs")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+
+    running = true;
+    writerThread = new Thread(this::run, "request-log-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  @PreDestroy
+  public void close() {
+    // the writer notices within one flush interval, interrupting it could abort a write in progress
+    running = false;
+    try {
+      writerThread.join(myConfig.getRequestLog().getFlushInterval() * 4L);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // write whatever is still queued before the datasource goes away
+    flushRemaining();
+  }
+
+  /**
+   * Queue a finished RequestLog for writing. Never throws, a full queue is handled by the overflow policy.
+   * @param requestLog the log to persist, must not be modified after this call
+   * @return true if the log was queued
+   */
+  public boolean submit(RequestLog requestLog) {
+    RequestLogConfig logConfig = myConfig.getRequestLog();
+    boolean queued = queue.offer(requestLog);
+    if (!queued && RequestLogConfig.OVERFLOW_BLOCK.equalsIgnoreCase(logConfig.getOverflow())) {
+      try {
+        queued = queue.offer(requestLog, logConfig.getBlockTimeout(), TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (!queued) {
+      droppedCounter.increment();
+      logger.warn("RequestLogWriter::submit(): queue full, dropping request log " + requestLog.getTimestamp());
+    }
+    return queued;
+  }
+
+  /**
+   * @return number of logs waiting to be written
+   */
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  private void run() {
+    RequestLogConfig logConfig = myConfig.getRequestLog();
+    int batchSize = Math.max(1, logConfig.getBatchSize());
+    List<RequestLog> batch = new ArrayList<>(batchSize);
+    while (running) {
+      try {
+        RequestLog first = queue.poll(logConfig.getFlushInterval(), TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, batchSize - 1);
+        write(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (Exception e) {
+        logger.warn("RequestLogWriter::run(): " + e.getMessage());
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void flushRemaining() {
+    int batchSize = Math.max(1, myConfig.getRequestLog().getBatchSize());
+    List<RequestLog> batch = new ArrayList<>(batchSize);
+    while (queue.drainTo(batch, batchSize) > 0) {
+      write(batch);
+      batch.clear();
+    }
+  }
+
+  private void write(List<RequestLog> batch) {
+    long startTime = System.nanoTime();
+    try {
+      requestService.createAll(batch);
+      writtenCounter.increment(batch.size());
+    } catch (Exception e) {
+      failedCounter.increment(batch.size());
+      logger.warn("RequestLogWriter::write(): failed to write " + batch.size() + " request logs: " + e.getMessage());
+    } finally {
+      flushTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+    }
+  }
+}
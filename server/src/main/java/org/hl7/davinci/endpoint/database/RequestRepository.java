@@ -1,8 +1,10 @@
 package org.hl7.davinci.endpoint.database;
 
 import java.util.List;
+import java.util.Optional;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.rest.core.annotation.RepositoryRestResource;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -14,6 +16,18 @@ import org.springframework.web.bind.annotation.CrossOrigin;
 public interface RequestRepository extends CrudRepository<RequestLog, Long> {
 
   @Query(
-      "SELECT r FROM RequestLog r")
-  List<RequestLog> findLogs();
+      "SELECT r.id AS id, r.timestamp AS timestamp, r.cardList AS cardList, r.patientAge AS patientAge, "
+          + "r.patientGender AS patientGender, r.patientAddressState AS patientAddressState, "
+          + "r.providerAddressState AS providerAddressState, r.code AS code, r.codeSystem AS codeSystem, "
+          + "r.hookType AS hookType, r.fhirVersion AS fhirVersion, r.results AS results, "
+          + "r.timeline AS timeline, r.topics AS topics "
+          + "FROM RequestLog r ORDER BY r.timestamp DESC")
+  List<RequestLogSummary> findLogs();
+
+  /**
+   * Read just the payload of one log.
+   */
+  @Query(
+      "SELECT r.payload FROM RequestLog r WHERE r.id = :id")
+  Optional<RequestLogPayload> findPayload(@Param("id") long id);
 }
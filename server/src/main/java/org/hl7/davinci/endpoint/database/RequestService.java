@@ -10,6 +10,8 @@ public interface RequestService {
 
   RequestLog create(RequestLog rule);
 
+  Iterable<RequestLog> createAll(Iterable<RequestLog> rules);
+
   RequestLog edit(RequestLog rule);
 
   void deleteById(Long id);
@@ -33,6 +33,11 @@ public class RequestServiceImpl implements RequestService {
     return this.requestRepository.save(rule);
   }
 
+  @Override
+  public Iterable<RequestLog> createAll(Iterable<RequestLog> rules) {
+    return this.requestRepository.saveAll(rules);
+  }
+
   @Override
   public RequestLog edit(RequestLog rule) {
     return this.requestRepository.save(rule);
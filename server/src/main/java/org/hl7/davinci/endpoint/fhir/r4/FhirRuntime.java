@@ -0,0 +1,35 @@
+package org.hl7.davinci.endpoint.fhir.r4;
+
+import org.hl7.davinci.r4.FhirComponents;
+import org.springframework.stereotype.Component;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ * Owns the single R4 FhirContext for the server along with reusable parsers. The context is the one built
+ * once by FhirComponents, so the HAPI model scan happens a single time per JVM. IParser instances are not
+ * thread safe, so each thread gets its own. Callers must not change settings on the returned parsers.
+ */
+@Component
+public class FhirRuntime {
+
+  private final FhirContext fhirContext = new FhirComponents().getFhirContext();
+
+  private final ThreadLocal<IParser> jsonParser = ThreadLocal.withInitial(() -> fhirContext.newJsonParser());
+
+  private final ThreadLocal<IParser> prettyJsonParser =
+      ThreadLocal.withInitial(() -> fhirContext.newJsonParser().setPrettyPrint(true));
+
+  public FhirContext getFhirContext() { return fhirContext; }
+
+  /**
+   * @return the calling thread's compact JSON parser
+   */
+  public IParser getJsonParser() { return jsonParser.get(); }
+
+  /**
+   * @return the calling thread's pretty printing JSON parser
+   */
+  public IParser getPrettyJsonParser() { return prettyJsonParser.get(); }
+}
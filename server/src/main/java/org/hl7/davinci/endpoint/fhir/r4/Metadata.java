@@ -119,6 +119,12 @@ public class Metadata {
     expandOperator.setDefinition("http://hl7.org/fhir/OperationDefinition/ValueSet-expand");
     expandOperator.setDocumentation("Only works at the ValueSet type level with a 'url' query parameter. Will only return expansions that are pre-cached on this server.");
     valueset.addOperation(expandOperator);
+    // ValueSet $validate-code Operator
+    CapabilityStatementRestResourceOperationComponent validateCodeOperator = new CapabilityStatementRestResourceOperationComponent();
+    validateCodeOperator.setName("validate-code");
+    validateCodeOperator.setDefinition("http://hl7.org/fhir/OperationDefinition/ValueSet-validate-code");
+    validateCodeOperator.setDocumentation("Only works at the ValueSet type level with 'url' and 'code' query parameters, 'system' and 'display' are optional. Will only check ValueSets that are pre-cached on this server.");
+    valueset.addOperation(validateCodeOperator);
     rest.addResource(valueset);
 
     metadata.addRest(rest);
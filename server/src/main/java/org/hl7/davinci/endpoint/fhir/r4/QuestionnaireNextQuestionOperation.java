@@ -15,7 +15,6 @@ import javax.servlet.http.HttpServletRequest;
 import org.hl7.davinci.endpoint.files.FileResource;
 import org.hl7.davinci.endpoint.files.FileStore;
 import org.hl7.davinci.endpoint.files.QuestionnaireEmbeddedCQLProcessor;
-import org.hl7.davinci.r4.FhirComponents;
 import org.hl7.fhir.instance.model.api.IDomainResource;
 import org.hl7.fhir.r4.model.Questionnaire;
 import org.hl7.fhir.r4.model.Questionnaire.QuestionnaireItemAnswerOptionComponent;
@@ -32,7 +31,6 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 
-import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
 
@@ -49,6 +47,8 @@ public class QuestionnaireNextQuestionOperation {
     
     FileStore fileStore;
 
+    FhirRuntime fhirRuntime;
+
     private QuestionnaireEmbeddedCQLProcessor questionnaireEmbeddedCQLProcessor;
 
      // Logger.
@@ -56,8 +56,9 @@ public class QuestionnaireNextQuestionOperation {
      // Trees that track the current and next questions. Is key-value mappng of: Map<Questionnaire ID -> AdaptiveQuestionnaireTree>
      private static final Map<String, AdaptiveQuestionnaireTree> questionnaireTrees = new HashMap<String, AdaptiveQuestionnaireTree>();
 
-    public QuestionnaireNextQuestionOperation(FileStore fileStore) {
+    public QuestionnaireNextQuestionOperation(FileStore fileStore, FhirRuntime fhirRuntime) {
         this.fileStore = fileStore;
+        this.fhirRuntime = fhirRuntime;
         this.questionnaireEmbeddedCQLProcessor = new QuestionnaireEmbeddedCQLProcessor();
     }
 
@@ -274,8 +275,7 @@ public class QuestionnaireNextQuestionOperation {
     public ResponseEntity<String> execute(String body, HttpServletRequest request) {
         logger.info("POST /Questionnaire/$next-question fhir+");
 
-        FhirContext ctx = new FhirComponents().getFhirContext();
-        IParser parser = ctx.newJsonParser();
+        IParser parser = fhirRuntime.getJsonParser();
 
         // Parses the body.
         IDomainResource domainResource = (IDomainResource) parser.parseResource(QuestionnaireResponse.class, body);
@@ -301,7 +301,7 @@ public class QuestionnaireNextQuestionOperation {
                 }
             }
 
-            logger.info("--- Received questionnaire response: " + ctx.newJsonParser().encodeResourceToString(inputQuestionnaireResponse));
+            logger.info("--- Received questionnaire response: " + parser.encodeResourceToString(inputQuestionnaireResponse));
             // Check that there are no duplicates in the recieved set of questions.
             if ((new HashSet(((Questionnaire) inputQuestionnaireResponse.getContained().get(0)).getItem().stream().map(item -> item.getLinkId()).collect(Collectors.toList()))).size() != ((Questionnaire) inputQuestionnaireResponse.getContained().get(0)).getItem().size()){
                 throw new RuntimeException("Received a set of questions with duplicates.");
@@ -339,7 +339,7 @@ public class QuestionnaireNextQuestionOperation {
                 logger.info("--- Added next question set for questionnaire \'" + questionnaireId + "\' for responses \'" + allResponses + "\'.");
 
                 // Build and send the response.
-                String formattedResourceString = ctx.newJsonParser().encodeResourceToString(inputQuestionnaireResponse);
+                String formattedResourceString = parser.encodeResourceToString(inputQuestionnaireResponse);
                 logger.info("--- Sending questionnaire response: " + formattedResourceString);
                 return ResponseEntity.status(HttpStatus.ACCEPTED).contentType(MediaType.APPLICATION_JSON)
                         .header(HttpHeaders.CONTENT_TYPE, "application/fhir+json" + "; charset=utf-8")
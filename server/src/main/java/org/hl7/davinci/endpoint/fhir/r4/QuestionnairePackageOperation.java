@@ -22,9 +22,6 @@ import org.slf4j.LoggerFactory;
 
 import ca.uhn.fhir.parser.DataFormatException;
 
-import ca.uhn.fhir.context.FhirContext;
-import ca.uhn.fhir.parser.IParser;
-
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -37,13 +34,15 @@ public class QuestionnairePackageOperation {
 
     FileStore fileStore;
     String baseUrl;
+    FhirRuntime fhirRuntime;
 
     // map of Resources and ids/urls so that we can skip retrieving duplicates
     HashMap<String, Resource> resources = new HashMap<>();
 
-    public QuestionnairePackageOperation(FileStore fileStore, String baseUrl) {
+    public QuestionnairePackageOperation(FileStore fileStore, String baseUrl, FhirRuntime fhirRuntime) {
         this.fileStore = fileStore;
         this.baseUrl = baseUrl;
+        this.fhirRuntime = fhirRuntime;
     }
 
     /*
@@ -144,9 +143,7 @@ public class QuestionnairePackageOperation {
         }
 
         // convert the outputParameters to a string
-        FhirContext ctx = new org.hl7.davinci.r4.FhirComponents().getFhirContext();
-        IParser parser = ctx.newJsonParser().setPrettyPrint(true);
-        return parser.encodeResourceToString(outputParameters);
+        return fhirRuntime.getPrettyJsonParser().encodeResourceToString(outputParameters);
     }
 
     private Resource getResource(Parameters parameters, String name) {
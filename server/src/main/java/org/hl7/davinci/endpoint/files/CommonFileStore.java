@@ -3,16 +3,24 @@ package org.hl7.davinci.endpoint.files;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.filefilter.RegexFileFilter;
 import org.hl7.ShortNameMaps;
 import org.hl7.davinci.SuppressParserErrorHandler;
 import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.hl7.davinci.endpoint.cql.CompiledLibraryCache;
 import org.hl7.davinci.endpoint.cql.CqlRule;
+import org.hl7.davinci.endpoint.cql.ElmPrecompiler;
+import org.hl7.davinci.endpoint.cql.ElmTranslationCache;
 import org.hl7.davinci.endpoint.database.*;
 import org.hl7.davinci.endpoint.rules.CoverageRequirementRuleCriteria;
+import org.hl7.davinci.endpoint.vsac.TerminologyService;
 import org.hl7.davinci.endpoint.vsac.ValueSetCache;
+import org.hl7.davinci.endpoint.vsac.ValueSetExpansion;
+import org.hl7.davinci.endpoint.vsac.ValueSetIndex;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Questionnaire;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.fhir.r4.model.Bundle.BundleEntryComponent;
 import org.slf4j.Logger;
@@ -20,20 +28,52 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.Locale;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.annotation.processing.Filer;
 
 public abstract class CommonFileStore implements FileStore {
 
   static final Logger logger = LoggerFactory.getLogger(CommonFileStore.class);
 
+  // rows per flush when the generation is written to the database, matches hibernate.jdbc.batch_size
+  private static final int INSERT_BATCH_SIZE = 50;
+
+  private static final ValueSetIndex EMPTY_VALUE_SET_INDEX = new ValueSetIndex(Collections.emptyList());
+
   @Autowired
   protected RuleFinder ruleFinder;
 
@@ -46,7 +86,62 @@ public abstract class CommonFileStore implements FileStore {
   @Autowired
   protected YamlConfig config;
 
+  @Autowired
+  protected ElmPrecompiler elmPrecompiler;
+
+  @Autowired
+  protected ElmTranslationCache elmTranslationCache;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final AtomicLong generationIds = new AtomicLong();
+
+  // the rules and resources requests read from, replaced as a whole on reload. null until the first reload.
+  private volatile FileStoreGeneration generation;
+
+  private Counter questionnaireHitCounter;
+  private Counter questionnaireMissCounter;
+
+  // the generation a reload is filling, only set while reload() runs
+  private FileStoreGeneration.Builder nextGeneration;
+
+  // the VSAC ValueSets the ingest came across, fetched together once it is done. only set while reload() runs
+  private Set<String> requestedValueSets;
+
+  // "stage=millis" of the running reload, for the log
+  private StringBuilder stageTimings;
+
+  // what the running reload does, and what the last one did
+  private boolean fullReload;
+  // the topics the running reload scans, null for all of them
+  private Set<String> scannedTopics;
+  private ReloadReport nextReport;
+  private volatile ReloadReport lastReloadReport;
+
+  // content hash of every library file by path, kept while the length and modification time do not change
+  private final Map<String, FileFingerprint> fileFingerprints = new ConcurrentHashMap<>();
+
+  private static class FileFingerprint {
+    private final long length;
+    private final long lastModified;
+    private final String hash;
+
+    FileFingerprint(long length, long lastModified, String hash) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+  }
+
   private ValueSetCache valueSetCache;
+  private final Object valueSetCacheLock = new Object();
 
   private QuestionnaireValueSetProcessor questionnaireValueSetProcessor;
   private SubQuestionnaireProcessor subQuestionnaireProcessor;
@@ -65,8 +160,449 @@ public abstract class CommonFileStore implements FileStore {
     this.questionnaireEmbeddedCQLProcessor = new QuestionnaireEmbeddedCQLProcessor();
   }
 
-  // must define in child class
-  public abstract void reload();
+  @PostConstruct
+  public void registerGenerationMetrics() {
+    questionnaireHitCounter = Counter.builder("crd.questionnaire.assembled").tag("result", "hit")
+        .description("Questionnaire reads answered with a memoized assembly").register(meterRegistry);
+    questionnaireMissCounter = Counter.builder("crd.questionnaire.assembled").tag("result", "miss")
+        .description("Questionnaire reads that ran the processors").register(meterRegistry);
+    Gauge.builder("crd.filestore.generation", this, CommonFileStore::getGenerationId)
+        .description("Id of the published FileStore generation").register(meterRegistry);
+    Gauge.builder("crd.filestore.generation.rules", this, store -> store.getGenerationSize(true))
+        .description("Rule mappings in the published FileStore generation").register(meterRegistry);
+    Gauge.builder("crd.filestore.generation.resources", this, store -> store.getGenerationSize(false))
+        .description("FHIR resources in the published FileStore generation").register(meterRegistry);
+  }
+
+  public void reload() {
+    reload(false);
+  }
+
+  /**
+   * Reload incrementally, looking only at the given topics and the Shared topic for changes. The other
+   * topics are taken to be unchanged and carried over without fingerprinting their files again.
+   * Stores that do not scan library folders look at every topic.
+   * @param topics the topic folders that changed, "*" if that is not known
+   */
+  public synchronized void reloadTopics(Set<String> topics) {
+    if (topics.contains("*")) {
+      reload(false);
+      return;
+    }
+    scannedTopics = new HashSet<>(topics);
+    scannedTopics.add(FileStore.SHARED_TOPIC);
+    try {
+      reload(false);
+    } finally {
+      scannedTopics = null;
+    }
+  }
+
+  /**
+   * Load a complete new generation of rules and resources and publish it. Requests keep reading the
+   * current generation until the new one is complete and mirrored to the database, a failed reload
+   * leaves it in place and is reported like any other.
+   * Stores that fingerprint their topics only ingest the topics that changed since the published
+   * generation and carry the others over, unless a full reload is asked for.
+   * @param full true to ingest every topic again
+   */
+  public synchronized void reload(boolean full) {
+    long startTime = System.nanoTime();
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "failure";
+
+    fullReload = full;
+    nextReport = new ReloadReport();
+    nextGeneration = new FileStoreGeneration.Builder();
+    requestedValueSets = ConcurrentHashMap.newKeySet();
+    stageTimings = new StringBuilder();
+    try {
+      boolean loaded = timeStage("ingest", this::loadGeneration);
+      timeStage("valuesets", this::fetchRequestedValueSets);
+      if (loaded) {
+        publish(nextGeneration.build(generationIds.incrementAndGet()), nextReport);
+        outcome = "success";
+      }
+    } catch (RuntimeException e) {
+      logger.error("CommonFileStore::reload(): " + e.getMessage());
+      throw e;
+    } finally {
+      requestedValueSets = null;
+      nextGeneration = null;
+      if (valueSetCache != null) {
+        valueSetCache.setGeneration(null);
+      }
+      if (!outcome.equals("success")) {
+        discardGeneration();
+      }
+      sample.stop(Timer.builder("crd.filestore.reload")
+          .description("Time to load and publish a FileStore generation")
+          .tag("outcome", outcome)
+          .register(meterRegistry));
+
+      float seconds = (float) (System.nanoTime() - startTime) / (float) 1000000000;
+      lastReloadReport = nextReport.setGeneration(getGenerationId()).setOutcome(outcome).setSeconds(seconds);
+      nextReport = null;
+      logger.info("CommonFileStore::reload(): " + (lastReloadReport.isFull() ? "full" : "incremental") + ", added "
+          + lastReloadReport.getAdded() + ", changed " + lastReloadReport.getChanged() + ", removed "
+          + lastReloadReport.getRemoved() + ", " + lastReloadReport.getUnchanged().size() + " unchanged");
+      if (outcome.equals("success")) {
+        logger.info("CommonFileStore::reload(): generation " + getGenerationId() + " completed in " + seconds
+            + " seconds (" + stageTimings.toString().trim() + ")");
+      } else {
+        logger.warn("CommonFileStore::reload(): failed in " + seconds + " seconds, keeping generation "
+            + getGenerationId());
+      }
+    }
+  }
+
+  /**
+   * Run one stage of the reload, recording its time under crd.filestore.reload.stage.
+   */
+  private <T> T timeStage(String stage, Supplier<T> work) {
+    long startTime = System.nanoTime();
+    try {
+      return work.get();
+    } finally {
+      long elapsed = System.nanoTime() - startTime;
+      Timer.builder("crd.filestore.reload.stage")
+          .description("Time spent in one stage of a FileStore reload")
+          .tag("stage", stage)
+          .register(meterRegistry)
+          .record(elapsed, TimeUnit.NANOSECONDS);
+      stageTimings.append(stage).append('=').append(elapsed / 1000000).append("ms ");
+    }
+  }
+
+  private void timeStage(String stage, Runnable work) {
+    timeStage(stage, () -> {
+      work.run();
+      return null;
+    });
+  }
+
+  /**
+   * Read the rules and resources of the CDS-Library, passing them to addRule() and processFhirResource().
+   * Must define in child class.
+   * @return true if the whole library was loaded, the generation is only published then
+   */
+  protected abstract boolean loadGeneration();
+
+  public ReloadReport getLastReloadReport() {
+    return lastReloadReport;
+  }
+
+  private void publish(FileStoreGeneration newGeneration, ReloadReport report) {
+    logger.info("CommonFileStore::publish(): generation " + newGeneration.getId() + " with "
+        + newGeneration.getRuleIndex().size() + " rules and " + newGeneration.getFhirResources().size()
+        + " resources");
+
+    timeStage("prepare", () -> prepareGeneration(newGeneration));
+
+    // translate the new rules before they are published so no request pays for it. the libraries are keyed
+    // by rule content hash, the published generation keeps finding its own meanwhile
+    Set<String> contentHashes = timeStage("precompile", () -> elmPrecompiler.precompileAll(newGeneration,
+        (topic, fhirVersion) -> getPreparedCqlRule(newGeneration, topic, fhirVersion)));
+
+    // mirror the generation to the database for the REST repositories, readers see the old rows until commit.
+    // nothing is swapped before the commit, if it fails the published generation and its rows stay together
+    timeStage("database", () -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+      if (report.isFull()) {
+        entityManager.createQuery("delete from RuleMapping").executeUpdate();
+        entityManager.createQuery("delete from FhirResource").executeUpdate();
+        insertAll(newGeneration.getRuleIndex().findAll());
+        insertAll(newGeneration.getFhirResources());
+      } else {
+        // only the rows of the topics that were ingested again or are gone
+        Set<String> topics = new HashSet<>(report.getAdded());
+        topics.addAll(report.getChanged());
+        topics.addAll(report.getRemoved());
+        topics.add(ValueSetCache.VSAC_TOPIC);
+        entityManager.createQuery("delete from RuleMapping where topic in :topics")
+            .setParameter("topics", topics).executeUpdate();
+        entityManager.createQuery("delete from FhirResource where topic in :topics")
+            .setParameter("topics", topics).executeUpdate();
+        insertAll(newGeneration.getRuleIndex().findAll().stream()
+            .filter(rule -> topics.contains(rule.getTopic())).collect(Collectors.toList()));
+        insertAll(newGeneration.getFhirResources().stream()
+            .filter(resource -> topics.contains(resource.getTopic())).collect(Collectors.toList()));
+      }
+    }));
+
+    // resources first, the new rules may point at them
+    swapGeneration(newGeneration);
+    generation = newGeneration;
+    ruleFinder.setIndex(newGeneration.getRuleIndex());
+
+    // drop the libraries of retired rules
+    CompiledLibraryCache.retain(contentHashes);
+    elmPrecompiler.retain(contentHashes);
+
+    // same for the ELM the DTR clients download for the libraries, unchanged topics keep theirs unless the
+    // shared libraries they include changed
+    Set<String> reusableTopics = new HashSet<>();
+    if (!report.isFull() && !report.getChanged().contains(FileStore.SHARED_TOPIC)
+        && !report.getAdded().contains(FileStore.SHARED_TOPIC)
+        && !report.getRemoved().contains(FileStore.SHARED_TOPIC)) {
+      reusableTopics.addAll(report.getUnchanged());
+    }
+    timeStage("elm", () -> elmTranslationCache.warm(this, newGeneration.getCqlFiles(), reusableTopics));
+  }
+
+  /**
+   * Insert new rows in JDBC batches. The tables were just emptied, so unlike save() there is no need to look
+   * each row up first.
+   */
+  private void insertAll(Iterable<?> entities) {
+    int count = 0;
+    for (Object entity : entities) {
+      entityManager.persist(entity);
+      if (++count % INSERT_BATCH_SIZE == 0) {
+        entityManager.flush();
+        entityManager.clear();
+      }
+    }
+    entityManager.flush();
+    entityManager.clear();
+  }
+
+  /**
+   * Called with a complete generation before it is mirrored to the database, for a child class to derive
+   * what it serves the generation with. Must leave what the published generation is served with alone, the
+   * generation is not published if the database fails. Does nothing by default.
+   */
+  protected void prepareGeneration(FileStoreGeneration newGeneration) {
+  }
+
+  /**
+   * Read the CQL of a rule of the generation prepareGeneration() was just called with, before it is
+   * published. The same as getCqlRule() by default, stores that read rules through what the published
+   * generation is served with override it.
+   */
+  protected CqlRule getPreparedCqlRule(FileStoreGeneration newGeneration, String topic, String fhirVersion) {
+    return getCqlRule(topic, fhirVersion);
+  }
+
+  /**
+   * Called once the generation prepareGeneration() was called with is in the database, right before it is
+   * published, to serve it with what was derived for it. Does nothing by default.
+   */
+  protected void swapGeneration(FileStoreGeneration newGeneration) {
+  }
+
+  /**
+   * Called when a reload fails, to drop what the running reload loaded or derived for its generation.
+   * Does nothing by default.
+   */
+  protected void discardGeneration() {
+  }
+
+  public long getGenerationId() {
+    FileStoreGeneration current = generation;
+    return current == null ? 0 : current.getId();
+  }
+
+  private int getGenerationSize(boolean rules) {
+    FileStoreGeneration current = generation;
+    if (current == null) {
+      return 0;
+    }
+    return rules ? current.getRuleIndex().size() : current.getFhirResources().size();
+  }
+
+  /**
+   * Run a Questionnaire through the sub-questionnaire, ValueSet and embedded CQL processors. The stages
+   * work on one parsed Questionnaire that is encoded once at the end. Questionnaires of the published
+   * generation are memoized in it per (id, fhirVersion, baseUrl), so a reload starts over.
+   * @return the assembled Questionnaire, null if it could not be read
+   */
+  private FileResource assembleQuestionnaire(FhirResource fhirResource, String fhirVersion, String baseUrl) {
+    FileStoreGeneration current = generation;
+    FhirResourceCriteria criteria = new FhirResourceCriteria();
+    criteria.setFhirVersion(fhirResource.getFhirVersion()).setResourceType("questionnaire")
+        .setId(fhirResource.getId());
+    // resources posted at runtime are not part of the generation and not memoized
+    if (current != null && current.findById(criteria).isEmpty()) {
+      current = null;
+    }
+
+    String key = fhirResource.getId() + "|" + fhirVersion + "|" + baseUrl;
+    byte[] assembled = current == null ? null : current.getAssembledQuestionnaire(key);
+    if (assembled != null) {
+      questionnaireHitCounter.increment();
+    } else {
+      questionnaireMissCounter.increment();
+      FileResource resource = readFhirResourceFromFiles(fhirResource, fhirVersion, baseUrl);
+      if (resource == null) {
+        return null;
+      }
+      Questionnaire questionnaire = (Questionnaire) subQuestionnaireProcessor.parseFhirFileResource(resource);
+      if (questionnaire == null) {
+        return null;
+      }
+      questionnaire = subQuestionnaireProcessor.processResource(questionnaire, this, baseUrl);
+      questionnaire = questionnaireValueSetProcessor.processResource(questionnaire, this, baseUrl);
+      questionnaire = questionnaireEmbeddedCQLProcessor.processResource(questionnaire, null, null);
+      assembled = ctx.newJsonParser().setPrettyPrint(true).encodeResourceToString(questionnaire)
+          .getBytes(Charset.defaultCharset());
+      if (current != null) {
+        current.putAssembledQuestionnaire(key, assembled, config.getAssembledQuestionnaireCacheSize());
+      }
+    }
+
+    FileResource fileResource = new FileResource();
+    fileResource.setFilename(fhirResource.getFilename());
+    fileResource.setResource(new ByteArrayResource(assembled));
+    return fileResource;
+  }
+
+  /**
+   * Convert a CQL file to ELM JSON through the ElmTranslationCache.
+   * @param cql the CQL source of the file
+   * @return the ELM with its ETag, null if the CQL does not translate
+   */
+  protected FileResource convertCqlToElm(String topic, String fileName, String fhirVersion, byte[] cql) {
+    ElmTranslationCache.TranslatedElm elm = elmTranslationCache.get(this, topic, fhirVersion, fileName, cql);
+    if (elm == null) {
+      return null;
+    }
+    FileResource fileResource = new FileResource();
+    fileResource.setFilename(fileName)
+        .setResource(new ByteArrayResource(elm.getElm()))
+        .setEtag(elm.getEtag());
+    return fileResource;
+  }
+
+  /**
+   * Compare the content fingerprints of the topics about to be loaded with the ones of the published
+   * generation. On an incremental reload the rules, resources and CQL files of an unchanged topic are
+   * carried over into the generation being loaded as they are, along with the VSAC ValueSets, so only the
+   * returned topics need to be ingested. On a full reload, or before the first generation, all are returned.
+   * @param fingerprints content fingerprint of every topic of the library, keyed by topic name
+   * @return the topics to ingest
+   */
+  protected Set<String> carryOverUnchangedTopics(Map<String, String> fingerprints) {
+    FileStoreGeneration previous = generation;
+    boolean incremental = !fullReload && previous != null && !previous.getTopicFingerprints().isEmpty();
+    nextReport.setFull(!incremental);
+
+    Set<String> ingest = new TreeSet<>();
+    for (Map.Entry<String, String> entry : new TreeMap<>(fingerprints).entrySet()) {
+      String topic = entry.getKey();
+      nextGeneration.setTopicFingerprint(topic, entry.getValue());
+      String previousFingerprint = previous == null ? null : previous.getTopicFingerprint(topic);
+      if (previousFingerprint == null) {
+        nextReport.addAdded(topic);
+        ingest.add(topic);
+      } else if (!previousFingerprint.equals(entry.getValue())) {
+        nextReport.addChanged(topic);
+        ingest.add(topic);
+      } else {
+        nextReport.addUnchanged(topic);
+        if (incremental) {
+          carryOverTopic(previous, topic);
+        } else {
+          ingest.add(topic);
+        }
+      }
+    }
+    if (previous != null) {
+      for (String topic : new TreeSet<>(previous.getTopicFingerprints().keySet())) {
+        if (!fingerprints.containsKey(topic)) {
+          nextReport.addRemoved(topic);
+        }
+      }
+    }
+
+    if (incremental) {
+      // the ValueSets of unchanged topics are not requested again, changed topics fetch the ones they add
+      carryOverTopic(previous, ValueSetCache.VSAC_TOPIC);
+    }
+    return ingest;
+  }
+
+  private void carryOverTopic(FileStoreGeneration previous, String topic) {
+    for (RuleMapping rule : previous.getRuleIndex().findAll()) {
+      if (topic.equals(rule.getTopic())) {
+        nextGeneration.addRule(rule);
+      }
+    }
+    for (FhirResource fhirResource : previous.getFhirResources()) {
+      if (topic.equals(fhirResource.getTopic())) {
+        nextGeneration.addFhirResource(fhirResource);
+        if (topic.equals(ValueSetCache.VSAC_TOPIC)) {
+          ValueSetExpansion expansion = previous.getValueSetIndex().getById(fhirResource.getId());
+          if (expansion != null) {
+            nextGeneration.addValueSet(expansion);
+          }
+        }
+      }
+    }
+    for (String cqlFile : previous.getCqlFiles()) {
+      String[] parts = cqlFile.split("/");
+      if (parts[0].equals(topic)) {
+        nextGeneration.addCqlFile(parts[0], parts[1], parts[2]);
+      }
+    }
+  }
+
+  /**
+   * Fingerprint the files of a topic across the library folders it appears in. A file is only hashed again
+   * once its length or modification time changed.
+   * @param seen collects the paths of the files fingerprinted
+   */
+  private String fingerprintTopic(List<File> topicFolders, Set<String> seen) throws IOException {
+    List<String> entries = new ArrayList<>();
+    for (int i = 0; i < topicFolders.size(); i++) {
+      Path folder = topicFolders.get(i).toPath();
+      List<Path> files;
+      try (Stream<Path> walk = Files.walk(folder)) {
+        files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        entries.add(i + ":" + folder.relativize(file) + "=" + fingerprintFile(file.toFile()));
+        seen.add(file.toString());
+      }
+    }
+    Collections.sort(entries);
+    return DigestUtils.sha256Hex(String.join("\n", entries));
+  }
+
+  private String fingerprintFile(File file) throws IOException {
+    long length = file.length();
+    long lastModified = file.lastModified();
+    FileFingerprint known = fileFingerprints.get(file.getPath());
+    if (known != null && known.length == length && known.lastModified == lastModified) {
+      return known.hash;
+    }
+    String hash;
+    try (InputStream inputStream = new FileInputStream(file)) {
+      hash = DigestUtils.sha256Hex(inputStream);
+    }
+    fileFingerprints.put(file.getPath(), new FileFingerprint(length, lastModified, hash));
+    return hash;
+  }
+
+  /**
+   * Add a rule mapping to the generation being loaded.
+   */
+  protected void addRule(RuleMapping ruleMapping) {
+    nextGeneration.addRule(ruleMapping);
+  }
+
+  /**
+   * Look resources up in the published generation. Resources that are not part of the CDS-Library, like the
+   * ones posted to the FhirController, only live in the database and are looked up there.
+   */
+  private List<FhirResource> findFhirResources(Function<FileStoreGeneration, List<FhirResource>> inGeneration,
+                                               Supplier<List<FhirResource>> inDatabase) {
+    FileStoreGeneration current = generation;
+    List<FhirResource> found = current == null ? null : inGeneration.apply(current);
+    if (found == null || found.isEmpty()) {
+      found = inDatabase.get();
+    }
+    return found;
+  }
 
   public abstract CqlRule getCqlRule(String topic, String fhirVersion);
 
@@ -74,10 +610,41 @@ public abstract class CommonFileStore implements FileStore {
 
   protected abstract String readFhirResourceFromFile(FhirResource fhirResource, String fhirVersion);
 
+  /**
+   * Open the file of a FHIR resource as a stream with <server-path> replaced, without reading it up front.
+   * Child classes that can stream their files override this.
+   * @return the resource, null to fall back to readFhirResourceFromFile()
+   */
+  protected org.springframework.core.io.Resource openFhirResourceFile(FhirResource fhirResource,
+      String fhirVersion, String serverPath) {
+    return null;
+  }
+
   protected FileResource readFhirResourceFromFiles(FhirResource fhirResource, String fhirVersion,
       String baseUrl) {
     String fileString = null;
 
+    // VSAC ValueSets are served from the expansions in memory, they are not kept as files
+    if (fhirResource.getData() == null && ValueSetCache.VSAC_TOPIC.equals(fhirResource.getTopic())) {
+      FileResource expanded = readValueSetExpansion(fhirResource);
+      if (expanded == null) {
+        logger.warn("CommonFhirStore::readFhirResourceFromFiles() no expansion for ValueSet " + fhirResource.getId());
+      }
+      return expanded;
+    }
+
+    // stream the file when the store can, resources posted at runtime only live in the database
+    if (fhirResource.getData() == null) {
+      org.springframework.core.io.Resource streamed = openFhirResourceFile(fhirResource, fhirVersion,
+          baseUrl + "fhir/" + fhirVersion + "/");
+      if (streamed != null) {
+        FileResource fileResource = new FileResource();
+        fileResource.setFilename(fhirResource.getFilename());
+        fileResource.setResource(streamed);
+        return fileResource;
+      }
+    }
+
     // grab the data from the database directly if it is there
     String data = fhirResource.getData();
     if (data != null) {
@@ -103,6 +670,30 @@ public abstract class CommonFileStore implements FileStore {
     }
   }
 
+  public TerminologyService getTerminologyService() {
+    FileStoreGeneration current = generation;
+    return new TerminologyService(current == null ? EMPTY_VALUE_SET_INDEX : current.getValueSetIndex());
+  }
+
+  /**
+   * Encode a VSAC ValueSet from its expansion in the published generation.
+   * @return the ValueSet, null if the generation does not hold its expansion
+   */
+  private FileResource readValueSetExpansion(FhirResource fhirResource) {
+    FileStoreGeneration current = generation;
+    ValueSetExpansion expansion = current == null ? null : current.getValueSetIndex().getById(fhirResource.getId());
+    if (expansion == null) {
+      return null;
+    }
+    byte[] valueSet = ctx.newJsonParser().setPrettyPrint(true).encodeResourceToString(expansion.toValueSet())
+        .getBytes(Charset.defaultCharset());
+    FileResource fileResource = new FileResource();
+    // the name the download is offered under
+    fileResource.setFilename("ValueSet-" + fhirResource.getFhirVersion() + "-" + fhirResource.getId() + ".json");
+    fileResource.setResource(new ByteArrayResource(valueSet));
+    return fileResource;
+  }
+
   protected FileResource readFhirResourceFromFiles(List<FhirResource> fhirResourceList, String fhirVersion,
       String baseUrl) {
     if (!fhirResourceList.isEmpty()) {
@@ -135,7 +726,8 @@ public abstract class CommonFileStore implements FileStore {
     criteria.setFhirVersion(fhirVersion).setResourceType(resourceType.toLowerCase()).setName(name);
     logger.info("CommonFileStore::getFhirResourceByName(): " + criteria.toString());
 
-    List<FhirResource> fhirResourceList = fhirResources.findByName(criteria);
+    List<FhirResource> fhirResourceList = findFhirResources(current -> current.findByName(criteria),
+        () -> fhirResources.findByName(criteria));
     FileResource resource = readFhirResourceFromFiles(fhirResourceList, fhirVersion, baseUrl);
 
     if ((resource != null) && fhirVersion.equalsIgnoreCase("r4")) {
@@ -160,22 +752,21 @@ public abstract class CommonFileStore implements FileStore {
     criteria.setFhirVersion(fhirVersion).setResourceType(resourceType.toLowerCase()).setId(id);
     logger.info("CommonFileStore::getFhirResourceById(): " + criteria.toString());
 
-    List<FhirResource> fhirResourceList = fhirResources.findById(criteria);
+    List<FhirResource> fhirResourceList = findFhirResources(current -> current.findById(criteria),
+        () -> fhirResources.findById(criteria));
+
+    // If this is a questionnaire, assemble it before returning.
+    // We do not handle nested sub-questionnaire at this time.
+    if (isRoot && fhirVersion.equalsIgnoreCase("r4") && resourceType.equalsIgnoreCase("Questionnaire")
+        && !fhirResourceList.isEmpty()) {
+      return assembleQuestionnaire(fhirResourceList.get(0), fhirVersion, baseUrl);
+    }
+
     FileResource resource = readFhirResourceFromFiles(fhirResourceList, fhirVersion, baseUrl);
     System.out.println("Resource Pulled: " + resource + "-" + resource.getFilename());
 
     if ((resource != null) && fhirVersion.equalsIgnoreCase("r4")) {
 
-      // If this is a questionnaire, run it through the processor to modify it before
-      // returning.
-      // We do not handle nested sub-questionnaire at this time.
-      if (isRoot && resourceType.equalsIgnoreCase("Questionnaire")) {
-        FileResource processedResource = this.subQuestionnaireProcessor.processResource(resource, this, baseUrl);
-        processedResource = this.questionnaireValueSetProcessor.processResource(processedResource, this, baseUrl);
-        processedResource = this.questionnaireEmbeddedCQLProcessor.processResource(processedResource, null, null);
-        return processedResource;
-      }
-
       // If this is a library, process it by replacing the content url with a base64
       // encoded version of the cql
       if (resourceType.equalsIgnoreCase("Library") && config.getEmbedCqlInLibrary()) {
@@ -192,7 +783,8 @@ public abstract class CommonFileStore implements FileStore {
     criteria.setFhirVersion(fhirVersion).setResourceType(resourceType.toLowerCase()).setUrl(url);
     logger.info("CommonFileStore::getFhirResourceByUrl(): " + criteria.toString());
 
-    List<FhirResource> fhirResourceList = fhirResources.findByUrl(criteria);
+    List<FhirResource> fhirResourceList = findFhirResources(current -> current.findByUrl(criteria),
+        () -> fhirResources.findByUrl(criteria));
     FileResource resource = readFhirResourceFromFiles(fhirResourceList, fhirVersion, baseUrl);
 
     if ((resource != null) && fhirVersion.equalsIgnoreCase("r4")) {
@@ -238,23 +830,30 @@ public abstract class CommonFileStore implements FileStore {
     criteria.setFhirVersion(fhirVersion).setResourceType(resourceType.toLowerCase()).setTopic(topic);
     logger.info("CommonFileStore::getFhirResourcesByTopic(): " + criteria.toString());
 
-    List<FhirResource> fhirResourceList = fhirResources.findByTopic(criteria);
-    List<FileResource> resources = readFhirResourcesFromFiles(fhirResourceList, fhirVersion, baseUrl);
+    List<FhirResource> fhirResourceList = findFhirResources(current -> current.findByTopic(criteria),
+        () -> fhirResources.findByTopic(criteria));
     List<FileResource> outputResources = new ArrayList<>();
 
+    if (fhirVersion.equalsIgnoreCase("r4") && resourceType.equalsIgnoreCase("Questionnaire")) {
+      // If this is a questionnaire, assemble it before returning.
+      // We do not handle nested sub-questionnaire at this time.
+      for (FhirResource fhirResource : fhirResourceList) {
+        FileResource assembledResource = assembleQuestionnaire(fhirResource, fhirVersion, baseUrl);
+        if (assembledResource != null) {
+          outputResources.add(assembledResource);
+        }
+      }
+      return outputResources;
+    }
+
+    List<FileResource> resources = readFhirResourcesFromFiles(fhirResourceList, fhirVersion, baseUrl);
+
     if (!resources.isEmpty()) {
       for (FileResource resource : resources) {
         if ((resource != null) && fhirVersion.equalsIgnoreCase("r4")) {
           FileResource processedResource = resource;
 
-          if (resourceType.equalsIgnoreCase("Questionnaire")) {
-            // If this is a questionnaire, run it through the processor to modify it before returning.
-            // We do not handle nested sub-questionnaire at this time.
-            processedResource = this.subQuestionnaireProcessor.processResource(resource, this, baseUrl);
-            processedResource = this.questionnaireValueSetProcessor.processResource(processedResource, this, baseUrl);
-            processedResource = this.questionnaireEmbeddedCQLProcessor.processResource(processedResource, null, null);
-
-          } else if (resourceType.equalsIgnoreCase("Library")) {
+          if (resourceType.equalsIgnoreCase("Library")) {
             // If this is a library, process it by replacing the content url with a base64
             // encoded version of the cql
             // When requested via topic, do this even if flag is not set in config (embedCqlInLibrary)
@@ -324,92 +923,85 @@ public abstract class CommonFileStore implements FileStore {
   }
 
   protected void reloadFromFolder(String path) throws IOException {
+    reloadFromFolders(path);
+  }
 
-    File filePath = new File(path);
-    if (!filePath.exists()) {
-      String error = "file path " + path + " does not exist";
-      throw new IOException(error);
+  /**
+   * Ingest CDS-Library folders. The topic folders are fingerprinted first, only the topics that changed since
+   * the published generation are ingested again (see carryOverUnchangedTopics()). Every topic folder to ingest
+   * is a task on a fork-join pool, the resource files of a topic are parsed in parallel as well. Blocks until
+   * all are done.
+   * @param paths the library folders, a topic may appear in more than one
+   */
+  protected void reloadFromFolders(String... paths) throws IOException {
+
+    // topic folders by topic name, in the order of the paths
+    Map<String, List<File>> topicFolders = new TreeMap<>();
+    for (String path : paths) {
+      File filePath = new File(path);
+      if (!filePath.exists()) {
+        String error = "file path " + path + " does not exist";
+        throw new IOException(error);
+      }
+      for (File topic : filePath.listFiles()) {
+        if (topic.isDirectory() && !topic.getName().startsWith(".")) {
+          topicFolders.computeIfAbsent(topic.getName(), name -> new ArrayList<>()).add(topic);
+        }
+      }
     }
 
-    File[] topics = new File(path).listFiles();
-    for (File topic : topics) {
-      if (topic.isDirectory()) {
-
-        String topicName = topic.getName();
-
-        // skip the shared folder for now...
-        if (topicName.equalsIgnoreCase(FileStore.SHARED_TOPIC)) {
-          logger.info("  CommonFileStore::reloadFromFolder() found Shared files");
-
-          File[] fhirFolders = topic.listFiles();
-          for (File fhirFolder : fhirFolders) {
-            if (fhirFolder.isDirectory()) {
-              String fhirVersion = fhirFolder.getName();
-              processFhirFolder(topicName, fhirVersion, fhirFolder);
-            }
-          }
-
-        } else if (topicName.startsWith(".")) {
-          // logger.info(" CommonFileStore::reloadFromFolder() skipping all folders
-          // starting with .: " + topicName);
+    int threads = config.getReloadThreads() > 0 ? config.getReloadThreads()
+        : Runtime.getRuntime().availableProcessors();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      // topics outside of the ones to scan keep the fingerprint they were published with
+      Set<String> scope = scannedTopics;
+      FileStoreGeneration previous = generation;
+      Map<String, String> fingerprints = new HashMap<>();
+      Set<String> seen = ConcurrentHashMap.newKeySet();
+      Map<String, ForkJoinTask<String>> fingerprintTasks = new TreeMap<>();
+      for (Map.Entry<String, List<File>> entry : topicFolders.entrySet()) {
+        String publishedFingerprint = previous == null ? null : previous.getTopicFingerprint(entry.getKey());
+        if (scope != null && !scope.contains(entry.getKey()) && publishedFingerprint != null) {
+          fingerprints.put(entry.getKey(), publishedFingerprint);
         } else {
-          logger.info("  CommonFileStore::reloadFromFolder() found topic: " + topicName);
-
-          // process the metadata file
-          File[] fhirFolders = topic.listFiles();
-          for (File file : fhirFolders) {
-            String fileName = file.getName();
-            if (fileName.equalsIgnoreCase("TopicMetadata.json")) {
-              ObjectMapper objectMapper = new ObjectMapper();
-
-              try {
-                // read the file
-                String content = new String(Files.readAllBytes(file.toPath()));
-
-                // convert to object
-                TopicMetadata metadata = objectMapper.readValue(content, TopicMetadata.class);
-
-                for (Mapping mapping : metadata.getMappings()) {
-                  for (String code : mapping.getCodes()) {
-                    for (String payer : metadata.getPayers()) {
-                      for (String fhirVersion : metadata.getFhirVersions()) {
-
-                        String mainCqlLibraryName = metadata.getTopic() + "Rule";
-                        File mainCqlFile = findFile(path, metadata.getTopic(), fhirVersion, mainCqlLibraryName,
-                            FileStore.CQL_EXTENSION);
-                        if (mainCqlFile == null) {
-                          logger.warn("CommonFileStore::reloadFromFolder(): failed to find main CQL file for topic: "
-                              + metadata.getTopic());
-                        } else {
-                          logger.info("    Added: " + metadata.getTopic() + ": " + payer + ", "
-                              + mapping.getCodeSystem() + ", " + code + " (" + fhirVersion + ")");
-
-                          // create table entry and store it back to the table
-                          RuleMapping ruleMappingEntry = new RuleMapping();
-                          ruleMappingEntry.setPayer(ShortNameMaps.PAYOR_SHORT_NAME_TO_FULL_NAME.get(payer))
-                              .setCodeSystem(
-                                  ShortNameMaps.CODE_SYSTEM_SHORT_NAME_TO_FULL_NAME.get(mapping.getCodeSystem()))
-                              .setCode(code).setFhirVersion(fhirVersion).setTopic(metadata.getTopic())
-                              .setRuleFile(mainCqlFile.getName());
-                          lookupTable.save(ruleMappingEntry);
-                        }
-                      }
-                    }
-                  }
-                }
-
-              } catch (IOException e) {
-                logger.info("failed to open file: " + file.getAbsoluteFile());
-              }
-            } else {
-              if (file.isDirectory()) {
-                String fhirVersion = fileName;
-                processFhirFolder(topicName, fhirVersion, file);
-              }
-            }
+          fingerprintTasks.put(entry.getKey(), pool.submit(() -> fingerprintTopic(entry.getValue(), seen)));
+        }
+      }
+      for (Map.Entry<String, ForkJoinTask<String>> entry : fingerprintTasks.entrySet()) {
+        fingerprints.put(entry.getKey(), entry.getValue().join());
+      }
+      if (scope == null) {
+        fileFingerprints.keySet().retainAll(seen);
+      } else {
+        // only forget the files of the scanned topics
+        List<String> scannedFolders = new ArrayList<>();
+        for (String path : paths) {
+          for (String topic : fingerprintTasks.keySet()) {
+            scannedFolders.add(new File(path, topic).getPath() + File.separator);
+          }
+          for (String topic : scope) {
+            scannedFolders.add(new File(path, topic).getPath() + File.separator);
           }
         }
+        fileFingerprints.keySet().removeIf(file -> !seen.contains(file)
+            && scannedFolders.stream().anyMatch(file::startsWith));
       }
+      logger.info("CommonFileStore::reloadFromFolders(): fingerprinted " + fingerprintTasks.size() + " of "
+          + topicFolders.size() + " topics");
+
+      List<ForkJoinTask<?>> tasks = new ArrayList<>();
+      for (String topicName : carryOverUnchangedTopics(fingerprints)) {
+        for (File topic : topicFolders.get(topicName)) {
+          String path = topic.getParentFile().getPath() + "/";
+          tasks.add(pool.submit(() -> reloadTopicFolder(path, topic)));
+        }
+      }
+      for (ForkJoinTask<?> task : tasks) {
+        task.join();
+      }
+    } finally {
+      pool.shutdown();
     }
 
     /*
@@ -421,56 +1013,132 @@ public abstract class CommonFileStore implements FileStore {
 
   }
 
-  private void processFhirFolder(String topic, String fhirVersion, File fhirPath) {
-    fhirVersion = fhirVersion.toUpperCase();
-    logger.info("      CommonFileStore::processFhirFolder(): " + fhirVersion + ": " + fhirPath.getName());
+  private void reloadTopicFolder(String path, File topic) {
+    String topicName = topic.getName();
+
+    // skip the shared folder for now...
+    if (topicName.equalsIgnoreCase(FileStore.SHARED_TOPIC)) {
+      logger.info("  CommonFileStore::reloadFromFolder() found Shared files");
+
+      File[] fhirFolders = topic.listFiles();
+      for (File fhirFolder : fhirFolders) {
+        if (fhirFolder.isDirectory()) {
+          String fhirVersion = fhirFolder.getName();
+          processFhirFolder(topicName, fhirVersion, fhirFolder);
+        }
+      }
 
-    // setup the proper FHIR Context for the version of FHIR we are dealing with
-    FhirContext ctx = null;
-    if (fhirVersion.equalsIgnoreCase("R4")) {
-      ctx = new org.hl7.davinci.r4.FhirComponents().getFhirContext();
     } else {
-      logger.warn("unsupported FHIR version: " + fhirVersion + ", skipping folder");
+      logger.info("  CommonFileStore::reloadFromFolder() found topic: " + topicName);
+
+      // process the metadata file
+      File[] fhirFolders = topic.listFiles();
+      for (File file : fhirFolders) {
+        String fileName = file.getName();
+        if (fileName.equalsIgnoreCase("TopicMetadata.json")) {
+          ObjectMapper objectMapper = new ObjectMapper();
+
+          try {
+            // read the file
+            String content = new String(Files.readAllBytes(file.toPath()));
+
+            // convert to object
+            TopicMetadata metadata = objectMapper.readValue(content, TopicMetadata.class);
+
+            for (Mapping mapping : metadata.getMappings()) {
+              for (String code : mapping.getCodes()) {
+                for (String payer : metadata.getPayers()) {
+                  for (String fhirVersion : metadata.getFhirVersions()) {
+
+                    String mainCqlLibraryName = metadata.getTopic() + "Rule";
+                    File mainCqlFile = findFile(path, metadata.getTopic(), fhirVersion, mainCqlLibraryName,
+                        FileStore.CQL_EXTENSION);
+                    if (mainCqlFile == null) {
+                      logger.warn("CommonFileStore::reloadFromFolder(): failed to find main CQL file for topic: "
+                          + metadata.getTopic());
+                    } else {
+                      logger.info("    Added: " + metadata.getTopic() + ": " + payer + ", "
+                          + mapping.getCodeSystem() + ", " + code + " (" + fhirVersion + ")");
+
+                      // create table entry and store it back to the table
+                      RuleMapping ruleMappingEntry = new RuleMapping();
+                      ruleMappingEntry.setPayer(ShortNameMaps.PAYOR_SHORT_NAME_TO_FULL_NAME.get(payer))
+                          .setCodeSystem(
+                              ShortNameMaps.CODE_SYSTEM_SHORT_NAME_TO_FULL_NAME.get(mapping.getCodeSystem()))
+                          .setCode(code).setFhirVersion(fhirVersion).setTopic(metadata.getTopic())
+                          .setRuleFile(mainCqlFile.getName());
+                      addRule(ruleMappingEntry);
+                    }
+                  }
+                }
+              }
+            }
+
+          } catch (IOException e) {
+            logger.info("failed to open file: " + file.getAbsoluteFile());
+          }
+        } else {
+          if (file.isDirectory()) {
+            String fhirVersion = fileName;
+            processFhirFolder(topicName, fhirVersion, file);
+          }
+        }
+      }
+    }
+  }
+
+  private void processFhirFolder(String topic, String fhirVersion, File fhirPath) {
+    final String version = fhirVersion.toUpperCase();
+    logger.info("      CommonFileStore::processFhirFolder(): " + version + ": " + fhirPath.getName());
+
+    // only R4 is supported, its context is shared and parsers are made per file
+    if (!version.equalsIgnoreCase("R4")) {
+      logger.warn("unsupported FHIR version: " + version + ", skipping folder");
       return;
     }
-    IParser parser = ctx.newJsonParser();
-    parser.setParserErrorHandler(new SuppressParserErrorHandler()); // suppress the unknown element warnings
 
     File[] directories = fhirPath.listFiles();
     for (File folder : directories) {
       if (folder.getName().equalsIgnoreCase("resources") && folder.isDirectory()) {
 
-        File[] resources = folder.listFiles();
-        for (File resource : resources) {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (File resource : folder.listFiles()) {
           if (resource.isFile()) {
-            String filename = resource.getName();
-            logger.info("        process: FHIR Resource: " + filename);
-
-            String[] parts = filename.split("-");
-            if (parts.length > 2) {
-
-              if (!parts[1].equalsIgnoreCase(fhirVersion)) {
-                logger.warn("CommonFileStore::processFhirFolder() warning: FhirVersion doesn't match!");
-                continue;
-              }
-
-              // parse the the resource file into the correct FHIR
-              IBaseResource baseResource = null;
-              try {
-                baseResource = parser.parseResource(new FileInputStream(resource));
-              } catch (FileNotFoundException e) {
-                logger.warn("could not find file: " + resource.getPath());
-                continue;
-              }
-
-              processFhirResource(baseResource, filename, filename, fhirVersion, topic);
-            }
+            tasks.add(ForkJoinTask.adapt(() -> processFhirFile(topic, version, resource)));
           }
         }
+        ForkJoinTask.invokeAll(tasks);
       }
     }
   }
 
+  private void processFhirFile(String topic, String fhirVersion, File resource) {
+    String filename = resource.getName();
+    logger.info("        process: FHIR Resource: " + filename);
+
+    String[] parts = filename.split("-");
+    if (parts.length <= 2) {
+      return;
+    }
+    if (!parts[1].equalsIgnoreCase(fhirVersion)) {
+      logger.warn("CommonFileStore::processFhirFolder() warning: FhirVersion doesn't match!");
+      return;
+    }
+
+    // parse the the resource file into the correct FHIR
+    IParser parser = ctx.newJsonParser();
+    parser.setParserErrorHandler(new SuppressParserErrorHandler()); // suppress the unknown element warnings
+    IBaseResource baseResource = null;
+    try (InputStream inputStream = new FileInputStream(resource)) {
+      baseResource = parser.parseResource(inputStream);
+    } catch (IOException e) {
+      logger.warn("could not read file: " + resource.getPath());
+      return;
+    }
+
+    processFhirResource(baseResource, filename, filename, fhirVersion, topic);
+  }
+
   protected void processFhirResource(IBaseResource baseResource, String path, String filename, String fhirVersion,
       String topic) {
     String resourceType;
@@ -495,6 +1163,7 @@ public abstract class CommonFileStore implements FileStore {
         resourceUrl = library.getUrl();
         // Look at data requirements for value sets
         findAndFetchRequiredVSACValueSets(library);
+        addLibraryCqlFiles(library);
       } else if (resourceType.equalsIgnoreCase("ValueSet")) {
         org.hl7.fhir.r4.model.ValueSet valueSet = (org.hl7.fhir.r4.model.ValueSet) baseResource;
         resourceId = valueSet.getIdElement().getIdPart();
@@ -518,7 +1187,7 @@ public abstract class CommonFileStore implements FileStore {
           "Could not find name for: " + filename + ", defaulting to '" + resourceName + "' as the name");
     }
 
-    // create a FhirResource and save it back to the table
+    // create a FhirResource and add it to the generation being loaded
     FhirResource fhirResource = new FhirResource();
     fhirResource.setId(resourceId)
         .setFhirVersion(fhirVersion)
@@ -530,7 +1199,25 @@ public abstract class CommonFileStore implements FileStore {
     if (resourceUrl != null) {
       fhirResource.setUrl(resourceUrl);
     }
-    fhirResources.save(fhirResource);
+    nextGeneration.addFhirResource(fhirResource);
+  }
+
+  /**
+   * Adds the CQL files hosted on this server that a Library points at to the generation
+   * being loaded, so their ELM is translated once the generation is published.
+   * 
+   * @param library The FHIR Library resource to look for relative content urls in.
+   */
+  protected void addLibraryCqlFiles(org.hl7.fhir.r4.model.Library library) {
+    for (org.hl7.fhir.r4.model.Attachment attachment : library.getContent()) {
+      // relative urls look like files/{topic}/{fhirVersion}/{fileName}
+      if (attachment.hasUrl() && !attachment.getUrl().toUpperCase().startsWith("HTTP")) {
+        String[] urlParts = attachment.getUrl().split("/");
+        if (urlParts.length >= 4 && urlParts[3].toUpperCase().endsWith(CQL_EXTENSION.toUpperCase())) {
+          nextGeneration.addCqlFile(urlParts[1], urlParts[2].toUpperCase(), urlParts[3]);
+        }
+      }
+    }
   }
 
   /**
@@ -552,18 +1239,48 @@ public abstract class CommonFileStore implements FileStore {
   }
 
   /**
-   * Gets or sets up and returns the ValueSetCache. The setup code provides the
-   * FhirResourceRepository to the ValueSetCache so it is able add the fetched
-   * value sets to the repository.
+   * Gets or sets up and returns the ValueSetCache. While reloading, the
+   * ValueSetCache is handed the generation being loaded so it is able add the
+   * fetched value sets to it.
    * 
    * @return The ValueSetCache to use for getting ValueSets.
    */
   protected ValueSetCache getValueSetCache() {
-    if (this.valueSetCache == null) {
-      this.valueSetCache = new ValueSetCache(this.config.getValueSetCachePath());
-      this.valueSetCache.setFhirResources(this.fhirResources);
+    // not on this, reload() holds that while the fetch stage runs
+    synchronized (valueSetCacheLock) {
+      if (this.valueSetCache == null) {
+        this.valueSetCache = new ValueSetCache(this.config.getValueSetCachePath(), this.config.getVsac());
+      }
+      this.valueSetCache.setGeneration(this.nextGeneration);
+      return this.valueSetCache;
+    }
+  }
+
+  /**
+   * Collect a VSAC ValueSet for the fetch stage of the running reload. Outside of a reload it is fetched
+   * right away.
+   *
+   * @param valueSetId The VSAC OID of the ValueSet.
+   */
+  protected void requestValueSet(String valueSetId) {
+    Set<String> requested = this.requestedValueSets;
+    if (requested == null) {
+      this.getValueSetCache().fetchValueSet(valueSetId);
+    } else {
+      requested.add(valueSetId);
+    }
+  }
+
+  /**
+   * Fetch the ValueSets the ingest collected, concurrently and rate limited as set up under vsac.
+   */
+  private void fetchRequestedValueSets() {
+    if (requestedValueSets.isEmpty()) {
+      return;
     }
-    return this.valueSetCache;
+    int loaded = this.getValueSetCache().fetchValueSets(requestedValueSets);
+    logger.info("CommonFileStore::fetchRequestedValueSets(): loaded " + loaded + " of " + requestedValueSets.size()
+        + " VSAC ValueSets");
   }
 
   /**
@@ -580,7 +1297,7 @@ public abstract class CommonFileStore implements FileStore {
         if (valueSetRef != null && valueSetRef.startsWith(ValueSetCache.VSAC_CANONICAL_BASE)) {
           String valueSetId = valueSetRef.split("ValueSet/")[1];
           logger.info("          VSAC ValueSet reference found: " + valueSetId);
-          this.getValueSetCache().fetchValueSet(valueSetId);
+          requestValueSet(valueSetId);
         }
       }
     }
@@ -615,7 +1332,7 @@ public abstract class CommonFileStore implements FileStore {
         if (valueSetRef.startsWith(ValueSetCache.VSAC_CANONICAL_BASE)) {
           String valueSetId = valueSetRef.split("ValueSet/")[1];
           logger.info("          VSAC ValueSet reference found: " + valueSetId);
-          this.getValueSetCache().fetchValueSet(valueSetId);
+          requestValueSet(valueSetId);
         }
       }
 
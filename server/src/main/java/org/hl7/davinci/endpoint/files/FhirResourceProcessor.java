@@ -35,11 +35,16 @@ public abstract class FhirResourceProcessor<T extends Resource> {
   protected abstract T processResource(T inputResource, FileStore fileStore, String baseUrl);
 
   private FhirContext ctx;
-  private IParser parser;
 
   public FhirResourceProcessor() {
     this.ctx = new org.hl7.davinci.r4.FhirComponents().getFhirContext();
-    this.parser = ctx.newJsonParser().setPrettyPrint(true);
+  }
+
+  /**
+   * Parsers are not thread safe and cheap to create from the context, every call gets its own.
+   */
+  protected IParser newParser() {
+    return ctx.newJsonParser().setPrettyPrint(true);
   }
 
   /**
@@ -55,7 +60,7 @@ public abstract class FhirResourceProcessor<T extends Resource> {
     T inputResource = (T) this.parseFhirFileResource(inputFileResource);
     T outputResource = this.processResource(inputResource, fileStore, baseUrl);
 
-    byte[] resourceData = parser.encodeResourceToString(outputResource).getBytes(Charset.defaultCharset());
+    byte[] resourceData = newParser().encodeResourceToString(outputResource).getBytes(Charset.defaultCharset());
     FileResource outputFileResource = new FileResource();
     outputFileResource.setResource(new ByteArrayResource(resourceData));
     outputFileResource.setFilename(inputFileResource.getFilename());
@@ -70,7 +75,7 @@ public abstract class FhirResourceProcessor<T extends Resource> {
    */
   protected Resource parseFhirFileResource(FileResource fileResource) {
     try {
-      return (Resource) parser.parseResource(fileResource.getResource().getInputStream());
+      return (Resource) newParser().parseResource(fileResource.getResource().getInputStream());
     } catch(IOException ioe) {
       logger.error("Issue parsing FHIR file resource for preprocessing.", ioe);
       return null;
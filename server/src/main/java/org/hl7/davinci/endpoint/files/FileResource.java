@@ -5,6 +5,7 @@ import org.springframework.core.io.Resource;
 public class FileResource {
   private Resource resource;
   private String filename;
+  private String etag;
 
   public Resource getResource() {
     return resource;
@@ -23,4 +24,16 @@ public class FileResource {
     this.filename = filename;
     return this;
   }
+
+  /**
+   * @return the strong ETag of the content, including the quotes, or null if there is none
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  public FileResource setEtag(String etag) {
+    this.etag = etag;
+    return this;
+  }
 }
@@ -1,6 +1,7 @@
 package org.hl7.davinci.endpoint.files;
 
 import java.util.List;
+import java.util.Set;
 
 import org.hl7.davinci.endpoint.cql.CqlRule;
 import org.hl7.davinci.endpoint.rules.CoverageRequirementRuleCriteria;
@@ -8,6 +9,7 @@ import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Resource;
 import org.hl7.davinci.endpoint.database.RuleMapping;
 import org.hl7.davinci.endpoint.database.FhirResource;
+import org.hl7.davinci.endpoint.vsac.TerminologyService;
 
 public interface FileStore {
 
@@ -16,6 +18,11 @@ public interface FileStore {
   String CQL_EXTENSION = ".cql";
 
   void reload();
+  // full=false only ingests the topics that changed since the last reload
+  void reload(boolean full);
+  // incremental reload that only looks for changes in the given topics and Shared, "*" for all of them
+  void reloadTopics(Set<String> topics);
+  ReloadReport getLastReloadReport();
   void reinitializeVSACLoader();
   void reinitializeVSACLoader(String apiKey);
 
@@ -41,4 +48,7 @@ public interface FileStore {
   List<RuleMapping> findAllRules();
 
   List<FhirResource> findAllFhirResources();
+
+  // ValueSet membership against the VSAC ValueSets of the published generation
+  TerminologyService getTerminologyService();
 }
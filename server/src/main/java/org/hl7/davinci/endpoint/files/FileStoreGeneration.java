@@ -0,0 +1,231 @@
+package org.hl7.davinci.endpoint.files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hl7.davinci.endpoint.database.FhirResource;
+import org.hl7.davinci.endpoint.database.FhirResourceCriteria;
+import org.hl7.davinci.endpoint.database.RuleMapping;
+import org.hl7.davinci.endpoint.vsac.ValueSetExpansion;
+import org.hl7.davinci.endpoint.vsac.ValueSetIndex;
+
+/**
+ * Immutable snapshot of everything one FileStore reload produced: the rule mappings and the FHIR resources
+ * of the CDS-Library. A reload fills a Builder off to the side while requests keep reading the published
+ * generation, the new one is swapped in as a whole once it is complete.
+ * The resource lookups match the FhirResourceRepository queries: fhirVersion, id and url compare exactly,
+ * resourceType, name and topic compare against the lower cased column.
+ * Output derived from the generation, like assembled Questionnaires, is memoized here as well so it is
+ * dropped together with the generation.
+ * The generation also carries the content fingerprint of every topic it was loaded from, the next reload
+ * compares against it to find the topics that changed.
+ * The expansions of the VSAC ValueSets it loaded are indexed in memory, by id, url and member code.
+ */
+public class FileStoreGeneration {
+
+  private static final char SEPARATOR = '\u0000';
+
+  private final long id;
+  private final RuleIndex ruleIndex;
+  private final List<FhirResource> fhirResources;
+  private final Set<String> cqlFiles;
+  private final Map<String, String> topicFingerprints;
+  private final ValueSetIndex valueSetIndex;
+  private final Map<String, List<FhirResource>> byId = new HashMap<>();
+  private final Map<String, List<FhirResource>> byName = new HashMap<>();
+  private final Map<String, List<FhirResource>> byUrl = new HashMap<>();
+  private final Map<String, List<FhirResource>> byTopic = new HashMap<>();
+  // least recently used first
+  private final LinkedHashMap<String, byte[]> assembledQuestionnaires = new LinkedHashMap<>(16, 0.75f, true);
+
+  private FileStoreGeneration(long id, List<RuleMapping> rules, List<FhirResource> resources, Set<String> cqlFiles,
+                              Map<String, String> topicFingerprints, List<ValueSetExpansion> valueSets) {
+    this.id = id;
+    this.valueSetIndex = new ValueSetIndex(valueSets);
+    this.cqlFiles = Collections.unmodifiableSet(cqlFiles);
+    this.topicFingerprints = Collections.unmodifiableMap(topicFingerprints);
+    this.ruleIndex = new RuleIndex(rules);
+    List<FhirResource> sorted = new ArrayList<>(resources);
+    // same order as FhirResourceRepository.findAll()
+    sorted.sort(Comparator.comparing(FhirResource::getTopic, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+        .thenComparing(FhirResource::getId, Comparator.nullsFirst(Comparator.<String>naturalOrder())));
+    this.fhirResources = Collections.unmodifiableList(sorted);
+    for (FhirResource resource : resources) {
+      add(byId, resource, resource.getId());
+      add(byName, resource, lower(resource.getName()));
+      add(byUrl, resource, resource.getUrl());
+      add(byTopic, resource, lower(resource.getTopic()));
+    }
+  }
+
+  private static void add(Map<String, List<FhirResource>> map, FhirResource resource, String value) {
+    if (value != null) {
+      map.computeIfAbsent(key(resource.getFhirVersion(), lower(resource.getResourceType()), value),
+          k -> new ArrayList<>()).add(resource);
+    }
+  }
+
+  private static List<FhirResource> find(Map<String, List<FhirResource>> map, FhirResourceCriteria criteria,
+                                         String value) {
+    if (criteria.getFhirVersion() == null || criteria.getResourceType() == null || value == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(map.getOrDefault(key(criteria.getFhirVersion(), criteria.getResourceType(),
+        value), Collections.emptyList()));
+  }
+
+  private static String key(String fhirVersion, String resourceType, String value) {
+    return fhirVersion + SEPARATOR + resourceType + SEPARATOR + value;
+  }
+
+  private static String lower(String value) {
+    return value == null ? null : value.toLowerCase();
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public RuleIndex getRuleIndex() {
+    return ruleIndex;
+  }
+
+  public List<FhirResource> findById(FhirResourceCriteria criteria) {
+    return find(byId, criteria, criteria.getId());
+  }
+
+  public List<FhirResource> findByName(FhirResourceCriteria criteria) {
+    return find(byName, criteria, criteria.getName());
+  }
+
+  public List<FhirResource> findByUrl(FhirResourceCriteria criteria) {
+    return find(byUrl, criteria, criteria.getUrl());
+  }
+
+  public List<FhirResource> findByTopic(FhirResourceCriteria criteria) {
+    return find(byTopic, criteria, criteria.getTopic());
+  }
+
+  public List<FhirResource> getFhirResources() {
+    return fhirResources;
+  }
+
+  public ValueSetIndex getValueSetIndex() {
+    return valueSetIndex;
+  }
+
+  /**
+   * @return the memoized assembled Questionnaire for the key, or null
+   */
+  public byte[] getAssembledQuestionnaire(String key) {
+    synchronized (assembledQuestionnaires) {
+      return assembledQuestionnaires.get(key);
+    }
+  }
+
+  /**
+   * Memoize an assembled Questionnaire, evicting the least recently used ones beyond maxEntries. Keys built
+   * from junk Host headers fall out again instead of taking the place of the ones in use.
+   */
+  public void putAssembledQuestionnaire(String key, byte[] questionnaire, int maxEntries) {
+    if (maxEntries <= 0) {
+      return;
+    }
+    synchronized (assembledQuestionnaires) {
+      assembledQuestionnaires.put(key, questionnaire);
+      Iterator<String> eldest = assembledQuestionnaires.keySet().iterator();
+      while (assembledQuestionnaires.size() > maxEntries) {
+        eldest.next();
+        eldest.remove();
+      }
+    }
+  }
+
+  public int getAssembledQuestionnaireCount() {
+    synchronized (assembledQuestionnaires) {
+      return assembledQuestionnaires.size();
+    }
+  }
+
+  /**
+   * @return the CQL files the Library resources point at, as "topic/fhirVersion/fileName"
+   */
+  public Set<String> getCqlFiles() {
+    return cqlFiles;
+  }
+
+  /**
+   * @return the content fingerprint of a topic, null if the topic was not fingerprinted
+   */
+  public String getTopicFingerprint(String topic) {
+    return topicFingerprints.get(topic);
+  }
+
+  public Map<String, String> getTopicFingerprints() {
+    return topicFingerprints;
+  }
+
+  /**
+   * Collects the rules and resources of a reload. Thread safe, the topic folders are ingested in parallel.
+   */
+  public static class Builder {
+
+    private final List<RuleMapping> rules = new ArrayList<>();
+    // keyed like the table's primary key, a resource added twice replaces the first just like a save would
+    private final Map<String, FhirResource> fhirResources = new LinkedHashMap<>();
+    private final Set<String> cqlFiles = new LinkedHashSet<>();
+    private final Map<String, String> topicFingerprints = new HashMap<>();
+    private final Map<String, ValueSetExpansion> valueSets = new LinkedHashMap<>();
+
+    public synchronized Builder addRule(RuleMapping rule) {
+      rules.add(rule);
+      return this;
+    }
+
+    public synchronized Builder addFhirResource(FhirResource fhirResource) {
+      fhirResources.put(key(fhirResource.getFhirVersion(), fhirResource.getResourceType(), fhirResource.getId()),
+          fhirResource);
+      return this;
+    }
+
+    public synchronized Builder addValueSet(ValueSetExpansion expansion) {
+      valueSets.put(expansion.getId(), expansion);
+      return this;
+    }
+
+    public synchronized Builder addCqlFile(String topic, String fhirVersion, String fileName) {
+      cqlFiles.add(topic + "/" + fhirVersion + "/" + fileName);
+      return this;
+    }
+
+    public synchronized Builder setTopicFingerprint(String topic, String fingerprint) {
+      topicFingerprints.put(topic, fingerprint);
+      return this;
+    }
+
+    public synchronized boolean containsFhirResource(String fhirVersion, String resourceType, String id) {
+      return fhirResources.containsKey(key(fhirVersion, resourceType, id));
+    }
+
+    public synchronized int getRuleCount() {
+      return rules.size();
+    }
+
+    public synchronized int getFhirResourceCount() {
+      return fhirResources.size();
+    }
+
+    public synchronized FileStoreGeneration build(long id) {
+      return new FileStoreGeneration(id, new ArrayList<>(rules), new ArrayList<>(fhirResources.values()),
+          new LinkedHashSet<>(cqlFiles), new HashMap<>(topicFingerprints), new ArrayList<>(valueSets.values()));
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package org.hl7.davinci.endpoint.files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a FileStore reload did: whether it rebuilt everything or only the topics whose content fingerprint
+ * changed, and which topics were added, changed, removed or carried over from the previous generation.
+ */
+public class ReloadReport {
+  private long generation;
+  private boolean full = true;
+  private String outcome;
+  private float seconds;
+  private final List<String> added = new ArrayList<>();
+  private final List<String> changed = new ArrayList<>();
+  private final List<String> removed = new ArrayList<>();
+  private final List<String> unchanged = new ArrayList<>();
+
+  /**
+   * @return the id of the generation the reload published, or of the one it kept if it failed
+   */
+  public long getGeneration() {
+    return generation;
+  }
+
+  public ReloadReport setGeneration(long generation) {
+    this.generation = generation;
+    return this;
+  }
+
+  /**
+   * @return true if every topic was ingested again
+   */
+  public boolean isFull() {
+    return full;
+  }
+
+  public ReloadReport setFull(boolean full) {
+    this.full = full;
+    return this;
+  }
+
+  public String getOutcome() {
+    return outcome;
+  }
+
+  public ReloadReport setOutcome(String outcome) {
+    this.outcome = outcome;
+    return this;
+  }
+
+  public float getSeconds() {
+    return seconds;
+  }
+
+  public ReloadReport setSeconds(float seconds) {
+    this.seconds = seconds;
+    return this;
+  }
+
+  public List<String> getAdded() {
+    return Collections.unmodifiableList(added);
+  }
+
+  public List<String> getChanged() {
+    return Collections.unmodifiableList(changed);
+  }
+
+  public List<String> getRemoved() {
+    return Collections.unmodifiableList(removed);
+  }
+
+  public List<String> getUnchanged() {
+    return Collections.unmodifiableList(unchanged);
+  }
+
+  ReloadReport addAdded(String topic) {
+    added.add(topic);
+    return this;
+  }
+
+  ReloadReport addChanged(String topic) {
+    changed.add(topic);
+    return this;
+  }
+
+  ReloadReport addRemoved(String topic) {
+    removed.add(topic);
+    return this;
+  }
+
+  ReloadReport addUnchanged(String topic) {
+    unchanged.add(topic);
+    return this;
+  }
+}
@@ -21,10 +21,22 @@ public class RuleFinder {
   @Autowired
   RuleMappingRepository ruleMappingRepository;
 
+  // snapshot of the rule mapping table, replaced as a whole on reload. null until the first rebuild.
+  private volatile RuleIndex ruleIndex;
+
   public RuleFinder() {
     logger.info("Using RuleFinder");
   }
 
+  /**
+   * Swap in the rule index of a new FileStore generation. Called by the FileStore once the whole generation
+   * has been loaded, lookups keep using the previous index until then.
+   */
+  public void setIndex(RuleIndex newIndex) {
+    ruleIndex = newIndex;
+    logger.info("RuleFinder::setIndex(): now using " + newIndex.size() + " rules");
+  }
+
   /**
    * Find and retern the relevant coverage rules in the database.
    * @param criteria The search criteria object
@@ -33,12 +45,17 @@ public class RuleFinder {
   public List<RuleMapping> findRules(CoverageRequirementRuleCriteria criteria) {
     logger.info("RuleFinder::findRules(" + criteria.getQueryString() + ")");
     List<RuleMapping> ruleList = new ArrayList<>();
-    if (ruleMappingRepository == null) {
+    RuleIndex index = ruleIndex;
+    if (index != null) {
+      ruleList.addAll(index.find(criteria.getPayor(), criteria.getCodeSystem(), criteria.getCode(),
+          criteria.getFhirVersion()));
+    } else if (ruleMappingRepository == null) {
       logger.warn("RuleFinder::findRules: the ruleMappingRepository is null");
       return ruleList;
-    }
-    for (RuleMapping rule : ruleMappingRepository.findRules(criteria)) {
-      ruleList.add(rule);
+    } else {
+      for (RuleMapping rule : ruleMappingRepository.findRules(criteria)) {
+        ruleList.add(rule);
+      }
     }
     if (ruleList.size() == 0) {
       logger.info("RuleFinder::findRules() returned no results for query: " + criteria.toString());
@@ -49,12 +66,16 @@ public class RuleFinder {
   public List<RuleMapping> findRules(String topic, String fhirVersion) {
     logger.info("RuleFinder::findRules(" + topic + ", " + fhirVersion + ")");
     List<RuleMapping> ruleList = new ArrayList<>();
-    if (ruleMappingRepository == null) {
+    RuleIndex index = ruleIndex;
+    if (index != null) {
+      ruleList.addAll(index.findByTopic(topic, fhirVersion));
+    } else if (ruleMappingRepository == null) {
       logger.warn("RuleFinder::findRules: the ruleMappingRepository is null");
       return ruleList;
-    }
-    for (RuleMapping rule : ruleMappingRepository.findRules(topic, fhirVersion)) {
-      ruleList.add(rule);
+    } else {
+      for (RuleMapping rule : ruleMappingRepository.findRules(topic, fhirVersion)) {
+        ruleList.add(rule);
+      }
     }
     if (ruleList.size() == 0) {
       logger.info("RuleFinder::findRules() returned no results for topic: " + topic + "(" + fhirVersion + ")");
@@ -69,8 +90,13 @@ public class RuleFinder {
   public List<RuleMapping> findAll() {
     logger.info("RuleFinder::findAll()");
     List<RuleMapping> ruleList = new ArrayList<>();
-    for (RuleMapping rule : ruleMappingRepository.findAll()) {
-      ruleList.add(rule);
+    RuleIndex index = ruleIndex;
+    if (index != null) {
+      ruleList.addAll(index.findAll());
+    } else {
+      for (RuleMapping rule : ruleMappingRepository.findAll()) {
+        ruleList.add(rule);
+      }
     }
     if (ruleList.size() == 0) {
       logger.debug("RuleFinder returned no results for find all");
@@ -0,0 +1,76 @@
+package org.hl7.davinci.endpoint.files;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.davinci.endpoint.database.RuleMapping;
+
+/**
+ * Immutable snapshot of the rule mapping table. Lookups by (payer, codeSystem, code, fhirVersion) and by
+ * (topic, fhirVersion) are plain hash map reads. A new index is built on every reload and swapped in as a
+ * whole by the RuleFinder.
+ */
+public class RuleIndex {
+
+  private static final char SEPARATOR = '\u0000';
+
+  private final List<RuleMapping> all;
+  private final Map<String, List<RuleMapping>> byCriteria;
+  private final Map<String, List<RuleMapping>> byTopic;
+
+  public RuleIndex(Iterable<RuleMapping> rules) {
+    List<RuleMapping> allRules = new ArrayList<>();
+    Map<String, List<RuleMapping>> criteriaMap = new HashMap<>();
+    Map<String, List<RuleMapping>> topicMap = new HashMap<>();
+
+    for (RuleMapping rule : rules) {
+      allRules.add(rule);
+      criteriaMap.computeIfAbsent(criteriaKey(rule.getPayer(), rule.getCodeSystem(), rule.getCode(), rule.getFhirVersion()),
+          k -> new ArrayList<>()).add(rule);
+      topicMap.computeIfAbsent(topicKey(rule.getTopic(), rule.getFhirVersion()), k -> new ArrayList<>()).add(rule);
+    }
+
+    this.all = Collections.unmodifiableList(allRules);
+    this.byCriteria = freeze(criteriaMap);
+    this.byTopic = freeze(topicMap);
+  }
+
+  public List<RuleMapping> find(String payer, String codeSystem, String code, String fhirVersion) {
+    // the database query never matches a null column, keep that behavior
+    if (payer == null || codeSystem == null || code == null || fhirVersion == null) {
+      return Collections.emptyList();
+    }
+    return byCriteria.getOrDefault(criteriaKey(payer, codeSystem, code, fhirVersion), Collections.emptyList());
+  }
+
+  public List<RuleMapping> findByTopic(String topic, String fhirVersion) {
+    if (topic == null || fhirVersion == null) {
+      return Collections.emptyList();
+    }
+    return byTopic.getOrDefault(topicKey(topic, fhirVersion), Collections.emptyList());
+  }
+
+  public List<RuleMapping> findAll() {
+    return all;
+  }
+
+  public int size() {
+    return all.size();
+  }
+
+  private static String criteriaKey(String payer, String codeSystem, String code, String fhirVersion) {
+    return payer + SEPARATOR + codeSystem + SEPARATOR + code + SEPARATOR + fhirVersion;
+  }
+
+  private static String topicKey(String topic, String fhirVersion) {
+    return topic + SEPARATOR + fhirVersion;
+  }
+
+  private static Map<String, List<RuleMapping>> freeze(Map<String, List<RuleMapping>> map) {
+    map.replaceAll((key, list) -> Collections.unmodifiableList(list));
+    return Collections.unmodifiableMap(map);
+  }
+}
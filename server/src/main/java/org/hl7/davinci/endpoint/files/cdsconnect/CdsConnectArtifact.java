@@ -4,6 +4,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,6 +17,8 @@ public class CdsConnectArtifact {
 
   static final Logger logger = LoggerFactory.getLogger(CdsConnectArtifact.class);
 
+  private static final String[] REVISION_FIELDS = { "revision_id", "vid", "changed" };
+
   private CdsConnectConnection connection;
   private JsonObject jsonArtifactObject;
 
@@ -67,6 +70,20 @@ public class CdsConnectArtifact {
     return meta.get("node_id").getAsInt();
   }
 
+  /**
+   * Gets the revision of the artifact, the files it lists are cached per revision. Falls back to a hash of
+   * the artifact if CDS Connect does not report the revision, so any edit still makes a new one.
+   */
+  public String getRevision() {
+    for (String field : REVISION_FIELDS) {
+      JsonElement revision = meta.get(field);
+      if (revision != null && revision.isJsonPrimitive()) {
+        return revision.getAsString();
+      }
+    }
+    return DigestUtils.sha1Hex(jsonArtifactObject.toString());
+  }
+
   public String getTopicMetadata() {
     try {
       String topicMetadata = jsonArtifactObject.get("artifact_representation").getAsJsonObject().get("inclusions").getAsString();
@@ -0,0 +1,192 @@
+package org.hl7.davinci.endpoint.files.cdsconnect;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded in-memory cache of the files downloaded from CDS Connect, keyed by the node id and revision of
+ * the artifact they belong to and their path. A file is only requested again once a reload finds a new
+ * revision of its artifact, and then conditionally with the ETag and Last-Modified of the cached copy so
+ * an unchanged file is not downloaded again. The least recently used files are evicted once the cached
+ * bytes exceed the limit.
+ */
+public class CdsConnectArtifactCache {
+
+  static final Logger logger = LoggerFactory.getLogger(CdsConnectArtifactCache.class);
+
+  /**
+   * Downloads a file, conditionally if a previous copy is given.
+   */
+  public interface Fetcher {
+    /**
+     * @param previous the cached copy of an older revision, null if there is none
+     * @return the file, null if the server reports the previous copy is still current
+     */
+    Entry fetch(String path, Entry previous);
+  }
+
+  /**
+   * The content of a file and the validators the server sent with it.
+   */
+  public static class Entry {
+    private final byte[] content;
+    private final String etag;
+    private final long lastModified;
+
+    public Entry(byte[] content, String etag, long lastModified) {
+      this.content = content;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+
+    public byte[] getContent() {
+      return content;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+
+    /**
+     * @return the Last-Modified time in epoch millis, -1 if the server sent none
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+  }
+
+  private final long maxBytes;
+  private final Fetcher fetcher;
+
+  // key to entry, in access order for the eviction
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  // path to the key of its latest cached revision, to revalidate against when the revision changes
+  private final Map<String, String> latest = new LinkedHashMap<>();
+  private long bytes = 0;
+
+  private final Counter hitCounter;
+  private final Counter revalidatedCounter;
+  private final Counter missCounter;
+  private final Counter savedCounter;
+
+  public CdsConnectArtifactCache(long maxBytes, Fetcher fetcher, MeterRegistry meterRegistry) {
+    this.maxBytes = maxBytes;
+    this.fetcher = fetcher;
+    hitCounter = Counter.builder("crd.cdsconnect.artifacts").tag("result", "hit")
+        .description("CDS Connect files served from the cache").register(meterRegistry);
+    revalidatedCounter = Counter.builder("crd.cdsconnect.artifacts").tag("result", "revalidated")
+        .description("CDS Connect files the server reported unchanged in a new revision").register(meterRegistry);
+    missCounter = Counter.builder("crd.cdsconnect.artifacts").tag("result", "miss")
+        .description("CDS Connect files downloaded").register(meterRegistry);
+    savedCounter = Counter.builder("crd.cdsconnect.artifacts.saved").baseUnit("bytes")
+        .description("Bytes not downloaded from CDS Connect thanks to the cache").register(meterRegistry);
+    Gauge.builder("crd.cdsconnect.artifacts.cached", this, CdsConnectArtifactCache::getBytes).baseUnit("bytes")
+        .description("Bytes of CDS Connect files held in the cache").register(meterRegistry);
+  }
+
+  private static String key(Integer nodeId, String revision, String path) {
+    return nodeId + "@" + revision + ":" + path;
+  }
+
+  /**
+   * Get a file of an artifact revision, from the cache if possible.
+   * @return the content, null if it could not be downloaded
+   */
+  public byte[] get(Integer nodeId, String revision, String path) {
+    String key = key(nodeId, revision, path);
+    Entry previous;
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null) {
+        hitCounter.increment();
+        savedCounter.increment(entry.getContent().length);
+        return entry.getContent();
+      }
+      String previousKey = latest.get(path);
+      previous = previousKey == null ? null : entries.get(previousKey);
+    }
+
+    // download outside of the lock, two threads missing the same file at once both fetch it
+    Entry fetched = fetcher.fetch(path, previous);
+    if (fetched == null && previous != null) {
+      logger.info("CdsConnectArtifactCache::get(): " + path + " unchanged in revision " + revision);
+      revalidatedCounter.increment();
+      savedCounter.increment(previous.getContent().length);
+      fetched = previous;
+    } else if (fetched == null || fetched.getContent() == null) {
+      logger.warn("CdsConnectArtifactCache::get(): failed to download " + path);
+      return null;
+    } else {
+      missCounter.increment();
+    }
+    put(key, path, fetched);
+    return fetched.getContent();
+  }
+
+  private synchronized void put(String key, String path, Entry entry) {
+    Entry replaced = entries.put(key, entry);
+    if (replaced != null) {
+      bytes -= replaced.getContent().length;
+    }
+    bytes += entry.getContent().length;
+    String previousKey = latest.put(path, key);
+    if (previousKey != null && !previousKey.equals(key)) {
+      remove(previousKey);
+    }
+    Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+    while (bytes > maxBytes && eldest.hasNext()) {
+      Map.Entry<String, Entry> evicted = eldest.next();
+      if (evicted.getKey().equals(key)) {
+        // never evict the file just added, even if it alone exceeds the limit
+        continue;
+      }
+      bytes -= evicted.getValue().getContent().length;
+      eldest.remove();
+    }
+    latest.values().retainAll(entries.keySet());
+  }
+
+  private void remove(String key) {
+    Entry removed = entries.remove(key);
+    if (removed != null) {
+      bytes -= removed.getContent().length;
+    }
+  }
+
+  /**
+   * Drop the files of every artifact that is not in the current revisions any more. Files of an artifact
+   * with a new revision stay until they are revalidated against the server.
+   * @param nodeIds the node ids of the artifacts of the published generation
+   */
+  public synchronized void retainNodes(Set<Integer> nodeIds) {
+    Set<String> nodes = new HashSet<>();
+    nodeIds.forEach(nodeId -> nodes.add(String.valueOf(nodeId)));
+    Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Entry> entry = iterator.next();
+      String key = entry.getKey();
+      if (!nodes.contains(key.substring(0, key.indexOf('@')))) {
+        bytes -= entry.getValue().getContent().length;
+        iterator.remove();
+      }
+    }
+    latest.values().retainAll(entries.keySet());
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+}
@@ -22,6 +22,7 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.SimpleClientHttpRequestFactory;
@@ -176,6 +177,15 @@ public class CdsConnectConnection {
   }
 
   public <E> E restExchange(String url, boolean isRetry, Class<E> bodyClass) {
+    return restExchange(url, isRetry, bodyClass, new HttpHeaders()).getBody();
+  }
+
+  /**
+   * GET the url with the session cookie and any extra headers, like the validators of a conditional request.
+   * @return the whole response, a 304 Not Modified comes back without a body
+   */
+  public <E> ResponseEntity<E> restExchange(String url, boolean isRetry, Class<E> bodyClass,
+      HttpHeaders extraHeaders) {
     if (isRetry) {
       logger.info("restExchange retry: " + url);
     }
@@ -191,12 +201,12 @@ public class CdsConnectConnection {
     if (useBasicAuth) {
       headers.add("Authorization", "basic " + basicAuthValue);
     }
+    headers.addAll(extraHeaders);
 
     HttpEntity<String> entity = new HttpEntity<>("", headers);
 
     try {
-      ResponseEntity<E> response = restTemplate.exchange(url, HttpMethod.GET, entity, bodyClass);
-      return response.getBody();
+      return restTemplate.exchange(url, HttpMethod.GET, entity, bodyClass);
 
     } catch (HttpClientErrorException e) {
       if (isRetry) {
@@ -205,7 +215,7 @@ public class CdsConnectConnection {
       } else {
         // try again and make sure we are logged out
         logout();
-        return restExchange(url, true, bodyClass);
+        return restExchange(url, true, bodyClass, extraHeaders);
       }
     }
   }
@@ -232,4 +242,32 @@ public class CdsConnectConnection {
     String fileUrl = baseUrl + cqlBundleLocation;
     return restExchange(fileUrl, false, byte[].class);
   }
+
+  /**
+   * Retrieve a file, conditionally on the ETag and Last-Modified of a copy already downloaded.
+   * @param previous the copy already downloaded, null to retrieve the file unconditionally
+   * @return the file with its validators, null if the server reports the previous copy is still current
+   */
+  public CdsConnectArtifactCache.Entry retrieveCqlBundle(String cqlBundleLocation,
+      CdsConnectArtifactCache.Entry previous) {
+    logger.info("retrieveCqlBundle( " + cqlBundleLocation + (previous == null ? "" : ", conditional") + " )");
+    String fileUrl = baseUrl + cqlBundleLocation;
+
+    HttpHeaders conditions = new HttpHeaders();
+    if (previous != null) {
+      if (previous.getEtag() != null) {
+        conditions.setIfNoneMatch(previous.getEtag());
+      }
+      if (previous.getLastModified() >= 0) {
+        conditions.setIfModifiedSince(previous.getLastModified());
+      }
+    }
+
+    ResponseEntity<byte[]> response = restExchange(fileUrl, false, byte[].class, conditions);
+    if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && previous != null) {
+      return null;
+    }
+    return new CdsConnectArtifactCache.Entry(response.getBody(), response.getHeaders().getETag(),
+        response.getHeaders().getLastModified());
+  }
 }
@@ -3,11 +3,11 @@ package org.hl7.davinci.endpoint.files.cdsconnect;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.parser.IParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.hl7.ShortNameMaps;
 import org.hl7.davinci.SuppressParserErrorHandler;
-import org.hl7.davinci.endpoint.cql.CqlExecution;
 import org.hl7.davinci.endpoint.cql.CqlRule;
 import org.hl7.davinci.endpoint.database.*;
 import org.hl7.davinci.endpoint.files.*;
@@ -23,7 +23,9 @@ import org.springframework.stereotype.Component;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.regex.Pattern;
+import javax.annotation.PostConstruct;
 
 @Component
 @Profile("cdsConnect")
@@ -34,19 +36,40 @@ public class CdsConnectFileStore extends CommonFileStore {
   @Autowired
   private CdsConnectConnection connection;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private CdsConnectArtifactCache artifactCache;
+
+  // the artifact revision every file of the published generation belongs to, by path
+  private volatile Map<String, ArtifactRevision> fileRevisions = Collections.emptyMap();
+
+  // the revisions the running reload found, published with its generation
+  private Map<String, ArtifactRevision> nextFileRevisions;
+
+  private static class ArtifactRevision {
+    private final Integer nodeId;
+    private final String revision;
+
+    ArtifactRevision(Integer nodeId, String revision) {
+      this.nodeId = nodeId;
+      this.revision = revision;
+    }
+  }
+
   public CdsConnectFileStore() {
     logger.info("Using CdsConnectFileStore");
   }
 
-  public void reload() {
-    long startTime = System.nanoTime();
-    boolean success = true;
-
-    // clear the database first
-    lookupTable.deleteAll();
-    fhirResources.deleteAll();
+  @PostConstruct
+  public void createArtifactCache() {
+    artifactCache = new CdsConnectArtifactCache(config.getCdsConnect().getArtifactCacheMaxBytes(),
+        connection::retrieveCqlBundle, meterRegistry);
+  }
 
-    logger.info("CdsConnectFileStore::reload()");
+  protected boolean loadGeneration() {
+    logger.info("CdsConnectFileStore::loadGeneration()");
+    nextFileRevisions = new HashMap<>();
 
     // query for all of the Artifact Node IDs
     CdsConnectArtifactList artifactList = connection.queryForArtifactList();
@@ -57,6 +80,11 @@ public class CdsConnectFileStore extends CommonFileStore {
 
       String topic = artifact.getCode();
 
+      ArtifactRevision artifactRevision = new ArtifactRevision(artifact.getId(), artifact.getRevision());
+      for (CdsConnectFile file : artifact.getFiles()) {
+        nextFileRevisions.put(file.getPath(), artifactRevision);
+      }
+
       ObjectMapper objectMapper = new ObjectMapper();
 
       String topicMetadataString = artifact.getTopicMetadata();
@@ -100,7 +128,7 @@ public class CdsConnectFileStore extends CommonFileStore {
                 .setRuleFile(mainCqlFilename)
                 .setRuleFilePath(mainCqlFile)
                 .setNode(artifact.getId());
-            lookupTable.save(ruleMappingEntry);
+            addRule(ruleMappingEntry);
           }
 
         } else {
@@ -134,7 +162,7 @@ public class CdsConnectFileStore extends CommonFileStore {
                         .setRuleFile(mainCqlFilename)
                         .setRuleFilePath(mainCqlFile)
                         .setNode(artifact.getId());
-                    lookupTable.save(ruleMappingEntry);
+                    addRule(ruleMappingEntry);
                   }
                 }
               }
@@ -146,7 +174,7 @@ public class CdsConnectFileStore extends CommonFileStore {
         continue;
       }
 
-      processFhirFiles(files, topic);
+      processFhirFiles(files, topic, artifactRevision);
     }
 
     /*
@@ -158,18 +186,48 @@ public class CdsConnectFileStore extends CommonFileStore {
     }
     */
 
-    long endTime = System.nanoTime();
-    long timeElapsed = endTime - startTime;
-    float seconds = (float) timeElapsed / (float) 1000000000;
+    return true;
+  }
 
-    if (success) {
-      logger.info("CdsConnectFileStore::reload(): completed in " + seconds + " seconds");
-    } else {
-      logger.warn("CdsConnectFileStore::reload(): failed in " + seconds + " seconds");
+  /**
+   * Publish the artifact revisions along with the generation, and drop the cached files of artifacts
+   * that are gone. Files of artifacts with a new revision are revalidated the next time they are read.
+   */
+  @Override
+  protected void swapGeneration(FileStoreGeneration newGeneration) {
+    Set<Integer> nodeIds = new HashSet<>();
+    nextFileRevisions.values().forEach(artifactRevision -> nodeIds.add(artifactRevision.nodeId));
+    fileRevisions = nextFileRevisions;
+    nextFileRevisions = null;
+    artifactCache.retainNodes(nodeIds);
+  }
+
+  @Override
+  protected void discardGeneration() {
+    nextFileRevisions = null;
+  }
+
+  /**
+   * Read a file of the published generation through the artifact cache.
+   */
+  private byte[] readFile(String path) {
+    return readFile(fileRevisions, path);
+  }
+
+  private byte[] readFile(Map<String, ArtifactRevision> revisions, String path) {
+    ArtifactRevision artifactRevision = revisions.get(path);
+    if (artifactRevision == null) {
+      logger.info("CdsConnectFileStore::readFile(): " + path + " is not part of a known artifact");
+      return new CdsConnectFile(connection, path).getCqlBundle();
     }
+    return readFile(path, artifactRevision);
   }
 
-  private void processFhirFiles(List<CdsConnectFile> files, String topic) {
+  private byte[] readFile(String path, ArtifactRevision artifactRevision) {
+    return artifactCache.get(artifactRevision.nodeId, artifactRevision.revision, path);
+  }
+
+  private void processFhirFiles(List<CdsConnectFile> files, String topic, ArtifactRevision artifactRevision) {
     // process the fhir resource files
     // setup the proper FHIR Context for the version of FHIR we are dealing with
     FhirContext r4ctx = new org.hl7.davinci.r4.FhirComponents().getFhirContext();
@@ -192,7 +250,7 @@ public class CdsConnectFileStore extends CommonFileStore {
           String name = parts[2];
 
           IBaseResource baseResource = null;
-          byte[] fileContents = file.getCqlBundle();
+          byte[] fileContents = readFile(path, artifactRevision);
           if (fhirVersion.equalsIgnoreCase("R4")) {
             baseResource = r4parser.parseResource(new ByteArrayInputStream(fileContents));
           }
@@ -204,6 +262,21 @@ public class CdsConnectFileStore extends CommonFileStore {
   }
 
   public CqlRule getCqlRule(String topic, String fhirVersion) {
+    return getCqlRule(ruleFinder::findRules, fileRevisions, topic, fhirVersion);
+  }
+
+  /**
+   * Read the rule through the rules and artifact revisions of the generation being published.
+   */
+  @Override
+  protected CqlRule getPreparedCqlRule(FileStoreGeneration newGeneration, String topic, String fhirVersion) {
+    Map<String, ArtifactRevision> revisions = nextFileRevisions;
+    return getCqlRule(newGeneration.getRuleIndex()::findByTopic, revisions == null ? fileRevisions : revisions,
+        topic, fhirVersion);
+  }
+
+  private CqlRule getCqlRule(BiFunction<String, String, List<RuleMapping>> findRules,
+                             Map<String, ArtifactRevision> revisions, String topic, String fhirVersion) {
     logger.info("CdsConnectFileStore::getCqlRule(): " + topic + "/" + fhirVersion);
 
     // load CQL files needed for the CRD Rule
@@ -212,7 +285,7 @@ public class CdsConnectFileStore extends CommonFileStore {
     String mainCqlLibraryName = topic + "Rule";
 
     // get the node for the matching topic from the database
-    List<RuleMapping> rules = ruleFinder.findRules(topic, fhirVersion);
+    List<RuleMapping> rules = findRules.apply(topic, fhirVersion);
     if (rules.isEmpty()) {
       logger.info("CdsConnectFileStore::getCqlRule(): matching rule cannot be found");
       return new CqlRule();
@@ -221,12 +294,12 @@ public class CdsConnectFileStore extends CommonFileStore {
 
     // find the main CQL file
     CdsConnectFile file = new CdsConnectFile(connection, rule.getRuleFilePath());
-    cqlFiles.put(file.getFilename(), file.getCqlBundle());
+    cqlFiles.put(file.getFilename(), readFile(revisions, file.getPath()));
     logger.info("CdsConnectFileStore::getCqlRule(): added mainCqlFile: " + file.getFilename());
 
     // find the FHIRHelpers CQL file
     // get the node for the shared topic from the database
-    List<RuleMapping> sharedRules = ruleFinder.findRules(FileStore.SHARED_TOPIC, fhirVersion);
+    List<RuleMapping> sharedRules = findRules.apply(FileStore.SHARED_TOPIC, fhirVersion);
     if (sharedRules.isEmpty()) {
       logger.info("CdsConnectFileStore::getCqlRule(): Shared info could not be found");
       return new CqlRule();
@@ -236,7 +309,7 @@ public class CdsConnectFileStore extends CommonFileStore {
     // get the matching artifact for the node
     // find the CQL helper file
     CdsConnectFile sharedFile = new CdsConnectFile(connection, sharedRule.getRuleFilePath());
-    cqlFiles.put(sharedFile.getFilename(), sharedFile.getCqlBundle());
+    cqlFiles.put(sharedFile.getFilename(), readFile(revisions, sharedFile.getPath()));
     logger.info("CdsConnectFileStore::getCqlRule(): added FHIRHelpers: " + sharedFile.getFilename());
 
     return new CqlRule(mainCqlLibraryName, cqlFiles, fhirVersion);
@@ -246,9 +319,6 @@ public class CdsConnectFileStore extends CommonFileStore {
     FileResource fileResource = new FileResource();
     fileResource.setFilename(fileName);
 
-    //TODO: maybe build a files table for quick lookup and retrieval
-    // this would save a round trip to the server to get the topic/artifact
-
     // get the node for the matching topic from the database
     List<RuleMapping> rules = ruleFinder.findRules(topic, fhirVersion);
     if (rules.isEmpty()) {
@@ -257,9 +327,13 @@ public class CdsConnectFileStore extends CommonFileStore {
     }
     RuleMapping rule = rules.get(0);
 
-    // get the matching artifact for the node
-    CdsConnectArtifact artifact = new CdsConnectArtifact(connection, connection.retrieveArtifact(rule.getNode()));
-    List<CdsConnectFile> files = artifact.getFiles();
+    // the files of the artifact for the node, as of the last reload
+    List<String> files = new ArrayList<>();
+    fileRevisions.forEach((path, artifactRevision) -> {
+      if (artifactRevision.nodeId.equals(rule.getNode())) {
+        files.add(path);
+      }
+    });
 
     // regex pattern will ignore the versioning that CDS Connect may add to the filename
     String extension = FilenameUtils.getExtension(fileName);
@@ -268,7 +342,6 @@ public class CdsConnectFileStore extends CommonFileStore {
     Pattern pattern = Pattern.compile(regex);
 
     Optional<String> foundFile = files.stream()
-        .map(s-> s.getPath())
         .filter(pattern.asPredicate())
         .findFirst();
 
@@ -278,24 +351,13 @@ public class CdsConnectFileStore extends CommonFileStore {
     } else {
 
       // read the file
-      CdsConnectFile file = new CdsConnectFile(connection, foundFile.get());
-      byte[] fileData = file.getCqlBundle();
+      byte[] fileData = readFile(foundFile.get());
 
       // convert to ELM
       if (convert && FilenameUtils.getExtension(fileName).toUpperCase().equals("CQL")) {
         logger.info("CdsConnectFileStore::getFile() converting CQL to JSON ELM");
 
-        // convert byte array to string
-        String cql = new String(fileData);
-        byte[] elmFileData = null;
-        try {
-          String elm = CqlExecution.translateToElm(cql, new CDSLibrarySourceProvider(this));
-          elmFileData = elm.getBytes();
-        } catch (Exception e) {
-          logger.warn("CdsConnectFileStore::getFile() Error: could not convert CQL: " + e.getMessage());
-          return null;
-        }
-        fileResource.setResource(new ByteArrayResource(elmFileData));
+        return convertCqlToElm(topic, fileName, fhirVersion, fileData);
 
       } else {
         fileResource.setResource(new ByteArrayResource(fileData));
@@ -327,8 +389,10 @@ public class CdsConnectFileStore extends CommonFileStore {
         return null;
       }
     } else {
-      CdsConnectFile file = new CdsConnectFile(connection, fhirResource.getPath());
-      byte[] fileData = file.getCqlBundle();
+      byte[] fileData = readFile(fhirResource.getPath());
+      if (fileData == null) {
+        return null;
+      }
       fileString = new String(fileData);
     }
 
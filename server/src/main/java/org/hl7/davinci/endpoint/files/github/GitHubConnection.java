@@ -21,6 +21,8 @@ import org.springframework.stereotype.Component;
 import org.kohsuke.github.GitHub;
 import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GHTree;
+import org.kohsuke.github.GHTreeEntry;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -87,6 +89,32 @@ public class GitHubConnection {
     return fileList;
   }
 
+  /**
+   * List the whole branch recursively: every file and folder with its git SHA. For folders that is the SHA of
+   * their tree, which changes whenever anything below it does.
+   * @return the entries, null if the branch could not be listed completely
+   */
+  public List<GHTreeEntry> getTree() {
+    logger.info("GitHubConnection::getTree(): " + branch);
+
+    // connect if needed
+    if (!connect()) {
+      return null;
+    }
+
+    try {
+      GHTree tree = repo.getTreeRecursive(branch, 1);
+      if (tree.isTruncated()) {
+        logger.warning("GitHubConnection::getTree(): ERROR: the tree listing of " + branch + " is truncated");
+        return null;
+      }
+      return tree.getTree();
+    } catch (IOException e) {
+      logger.warning("GitHubConnection::getTree(): ERROR: problem getting the tree: " + e.getMessage());
+      return null;
+    }
+  }
+
   public InputStream getFile(String filePath) {
     logger.info("GitHubConnection::getFile(" + filePath + ")");
     InputStream fileStream = null;
@@ -8,30 +8,34 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.hl7.ShortNameMaps;
 import org.hl7.davinci.SuppressParserErrorHandler;
-import org.hl7.davinci.endpoint.cql.CqlExecution;
 import org.hl7.davinci.endpoint.cql.CqlRule;
 import org.hl7.davinci.endpoint.database.*;
 import org.hl7.davinci.endpoint.files.*;
+import org.hl7.davinci.endpoint.files.local.TemplatedFile;
 import org.hl7.davinci.endpoint.vsac.ValueSetCache;
 import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.kohsuke.github.GHTreeEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.InputStream;
 
 import org.zeroturnaround.zip.ZipUtil;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 
 @Component
 @Profile("gitHub")
@@ -42,44 +46,95 @@ public class GitHubFileStore extends CommonFileStore {
   @Autowired
   GitHubConnection connection;
 
+  private GitHubMirror mirror;
+  // the library as of the published generation, every read is served from it
+  private volatile GitHubMirror.Manifest manifest;
+  // the library as of the reload running
+  private GitHubMirror.Manifest loadingManifest;
+  // resource blobs split at their <server-path> markers, blobs never change so they are split once
+  private final Map<String, TemplatedFile> templatedFiles = new ConcurrentHashMap<>();
+
   public GitHubFileStore() {
     logger.info("Using GitHubFileStore");
   }
 
-  public void reload() {
-
-    long startTime = System.nanoTime();
+  protected boolean loadGeneration() {
     boolean success = true;
-
-    // clear the database first
-    lookupTable.deleteAll();
-    fhirResources.deleteAll();
+    if (mirror == null) {
+      mirror = new GitHubMirror(new File(config.getGitHubConfig().getMirrorPath()));
+    }
 
     if (config.getGitHubConfig().getUseZipForReload()) {
       success = reloadFromZip();
 
     } else {
       String rulePath = config.getGitHubConfig().getRulePath();
-      success = reloadFromGitHub(rulePath);
+      String examplesPath = config.getGitHubConfig().getExamplesPath();
+
+      List<GHTreeEntry> tree = connection.getTree();
+      if (tree == null) {
+        return false;
+      }
+
+      // the tree SHA of a topic folder changes with anything below it, a topic in both folders gets both
+      Map<String, String> blobs = new HashMap<>();
+      Map<String, String> fingerprints = new HashMap<>();
+      for (GHTreeEntry entry : tree) {
+        if (entry.getType().equals("blob")) {
+          blobs.put(entry.getPath(), entry.getSha());
+        } else if (entry.getType().equals("tree")) {
+          for (String path : Arrays.asList(rulePath, examplesPath)) {
+            String topicName = entry.getPath().startsWith(path) ? entry.getPath().substring(path.length()) : "";
+            if (!topicName.isEmpty() && !topicName.contains("/") && !topicName.contains(".")) {
+              fingerprints.merge(topicName, entry.getSha(), (first, second) -> first + "+" + second);
+            }
+          }
+        }
+      }
+
+      // only the files whose blob SHA is not mirrored yet are downloaded
+      try {
+        loadingManifest = mirror.mirrorTree(blobs, connection::getFile);
+      } catch (IOException e) {
+        logger.warn("GitHubFileStore::loadGeneration(): failed to mirror the library: " + e.getMessage());
+        return false;
+      }
+      Set<String> topics = carryOverUnchangedTopics(fingerprints);
+
+      success = reloadFromGitHub(loadingManifest, rulePath, topics);
 
       // Load the examples folder
       if (success) {
-        String examplesPath = config.getGitHubConfig().getExamplesPath();
-        success = reloadFromGitHub(examplesPath);
+        success = reloadFromGitHub(loadingManifest, examplesPath, topics);
       }
     }
 
-    long endTime = System.nanoTime();
-    long timeElapsed = endTime - startTime;
-    float seconds = (float) timeElapsed / (float) 1000000000;
+    return success;
+  }
 
-    if (success) {
-      logger.info("GitHubFileStore::reload(): completed in " + seconds + " seconds");
-    } else {
-      logger.warn("GitHubFileStore::reload(): failed in " + seconds + " seconds");
+  /**
+   * Serve the new generation from the mirror it was loaded from. The blobs of the previous manifest are kept
+   * for requests still reading it, anything older is deleted.
+   */
+  @Override
+  protected void swapGeneration(FileStoreGeneration newGeneration) {
+    if (loadingManifest != null) {
+      GitHubMirror.Manifest previous = manifest;
+      manifest = loadingManifest;
+      loadingManifest = null;
+      mirror.retain(previous, manifest);
+      templatedFiles.keySet().retainAll(manifest.getShas());
     }
   }
 
+  /**
+   * The blobs the failed reload mirrored stay on disk, the next reload reuses them or deletes them.
+   */
+  @Override
+  protected void discardGeneration() {
+    loadingManifest = null;
+  }
+
   private boolean reloadFromZip() {
     logger.info("GitHubFileStore::reloadFromZip()");
     // download the repo
@@ -99,23 +154,22 @@ public class GitHubFileStore extends CommonFileStore {
     }
     if (location != null) {
 
-      // load the folder
-      String rulePath = config.getGitHubConfig().getRulePath();
-      String path = location.getPath() + "/" + rulePath;
+      // keep the files for serving once the unzipped folder is gone
       try {
-        reloadFromFolder(path + "/");
+        loadingManifest = mirror.mirrorFolder(location);
       } catch (IOException e) {
-        logger.error("FATAL ERROR: Failed to reload from folder: " + e.getMessage());
-        System.exit(1);
+        logger.warn("GitHubFileStore::reloadFromZip() failed to mirror the library: " + e.getMessage());
+        return false;
       }
 
-      // load the examples folder
+      // load the folder and the examples folder, the topics are fingerprinted by content as the
+      // unzipped files are all new
+      String rulePath = config.getGitHubConfig().getRulePath();
       String examplesPath = config.getGitHubConfig().getExamplesPath();
-      path = location.getPath() + "/" + examplesPath;
       try {
-        reloadFromFolder(path + "/");
+        reloadFromFolders(location.getPath() + "/" + rulePath + "/", location.getPath() + "/" + examplesPath + "/");
       } catch (IOException e) {
-        logger.error("FATAL ERROR: Failed to reload from examples folder: " + e.getMessage());
+        logger.error("FATAL ERROR: Failed to reload from folder: " + e.getMessage());
         System.exit(1);
       }
 
@@ -132,22 +186,22 @@ public class GitHubFileStore extends CommonFileStore {
     return true;
   }
 
-  private boolean reloadFromGitHub(String rulePath) {
+  private boolean reloadFromGitHub(GitHubMirror.Manifest library, String rulePath, Set<String> topics) {
     logger.info("GitHubFileStore::reloadFromGitHub(): " + rulePath);
 
-    for (String topicName : connection.getDirectory(rulePath)) {
+    for (String topicName : library.list(rulePath)) {
       String topicPath = rulePath + topicName;
-      // skip files with an extension or folders that start with a '.'
-      if (!topicName.contains(".")) {
+      // skip files with an extension or folders that start with a '.', and topics carried over unchanged
+      if (!topicName.contains(".") && topics.contains(topicName)) {
 
         // skip the shared folder for now...
         if (topicName.equalsIgnoreCase(FileStore.SHARED_TOPIC)) {
           logger.info("  GitHubFileStore::reloadFromGitHub() found Shared files");
 
-          for (String fhirFolder : connection.getDirectory(topicPath)) {
+          for (String fhirFolder : library.list(topicPath)) {
             String fhirVersion = fhirFolder;
             String fullPath = topicPath + "/" + fhirFolder;
-            processFhirFolder(topicName, fhirVersion, fullPath);
+            processFhirFolder(library, topicName, fhirVersion, fullPath);
           }
 
         } else if (topicName.startsWith(".")) {
@@ -156,7 +210,7 @@ public class GitHubFileStore extends CommonFileStore {
           logger.info("  GitHubFileStore::reloadFromGitHub() found topic: " + topicName);
 
           // process the metadata file
-          for (String fileName : connection.getDirectory(topicPath)) {
+          for (String fileName : library.list(topicPath)) {
 
             if (fileName.equalsIgnoreCase("TopicMetadata.json")) {
               ObjectMapper objectMapper = new ObjectMapper();
@@ -164,7 +218,7 @@ public class GitHubFileStore extends CommonFileStore {
               String fullPath = rulePath + topicName + "/" + fileName;
               try {
                 // read the file
-                InputStream inputStream = connection.getFile(fullPath);
+                InputStream inputStream = open(library, fullPath);
                 String content = IOUtils.toString(inputStream, Charset.defaultCharset());
 
                 // convert to object
@@ -176,7 +230,7 @@ public class GitHubFileStore extends CommonFileStore {
                       for (String fhirVersion : metadata.getFhirVersions()) {
 
                         String mainCqlLibraryName = metadata.getTopic() + "Rule";
-                        String mainCqlFile = findGitHubFile(metadata.getTopic(), fhirVersion, mainCqlLibraryName, FileStore.CQL_EXTENSION);
+                        String mainCqlFile = findGitHubFile(library, metadata.getTopic(), fhirVersion, mainCqlLibraryName, FileStore.CQL_EXTENSION);
                         if (mainCqlFile == null) {
                           logger.warn("GitHubFileStore::reloadFromGitHub(): failed to find main CQL file for topic: " + metadata.getTopic());
                         } else {
@@ -191,7 +245,7 @@ public class GitHubFileStore extends CommonFileStore {
                               .setFhirVersion(fhirVersion)
                               .setTopic(metadata.getTopic())
                               .setRuleFile(mainCqlFile);
-                          lookupTable.save(ruleMappingEntry);
+                          addRule(ruleMappingEntry);
                         }
                       }
                     }
@@ -204,7 +258,7 @@ public class GitHubFileStore extends CommonFileStore {
             } else {
               String fhirVersion = fileName;
               String fullPath = topicPath + "/" + fileName;
-              processFhirFolder(topicName, fhirVersion, fullPath);
+              processFhirFolder(library, topicName, fhirVersion, fullPath);
             }
           }
         }
@@ -213,7 +267,7 @@ public class GitHubFileStore extends CommonFileStore {
     return true;
   }
 
-  private void processFhirFolder(String topic, String fhirVersion, String fhirPath) {
+  private void processFhirFolder(GitHubMirror.Manifest library, String topic, String fhirVersion, String fhirPath) {
     fhirVersion = fhirVersion.toUpperCase();
     logger.info("      GitHubFileStore::processFhirFolder(): " + fhirVersion + ": " + fhirPath);
 
@@ -228,12 +282,12 @@ public class GitHubFileStore extends CommonFileStore {
     IParser parser = ctx.newJsonParser();
     parser.setParserErrorHandler(new SuppressParserErrorHandler()); // suppress the unknown element warnings
 
-    for (String folder : connection.getDirectory(fhirPath)) {
+    for (String folder : library.list(fhirPath)) {
       if (folder.equalsIgnoreCase("resources")) {
 
         String fullFolderPath = fhirPath + "/" + folder;
 
-        for (String resource : connection.getDirectory(fullFolderPath)) {
+        for (String resource : library.list(fullFolderPath)) {
           String filename = resource;
           String fullFilePath = fullFolderPath + "/" + filename;
           logger.info("        process: FHIR Resource: " + filename);
@@ -247,7 +301,7 @@ public class GitHubFileStore extends CommonFileStore {
               continue;
             }
 
-            InputStream inputStream = connection.getFile(fullFilePath);
+            InputStream inputStream = open(library, fullFilePath);
             if (inputStream != null) {
               IBaseResource baseResource = parser.parseResource(inputStream);
 
@@ -263,48 +317,88 @@ public class GitHubFileStore extends CommonFileStore {
     }
   }
 
+  /**
+   * Open a file of the mirrored library. The content is read up front, so callers do not need to close it.
+   * @return the file, null if it is not in the library
+   */
+  private InputStream open(GitHubMirror.Manifest library, String path) {
+    try {
+      byte[] content = library == null ? null : library.read(path);
+      return content == null ? null : new ByteArrayInputStream(content);
+    } catch (IOException e) {
+      logger.warn("GitHubFileStore::open(): failed to read " + path + " from the mirror: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Find a file of a topic in the published mirror, looking in the rule folder first and then the examples.
+   * @return the blob of the file, null if it is in neither
+   */
+  private File findMirroredFile(String topic, String fhirVersion, String folder, String fileName) {
+    return findMirroredFile(manifest, topic, fhirVersion, folder, fileName);
+  }
+
+  private File findMirroredFile(GitHubMirror.Manifest library, String topic, String fhirVersion, String folder,
+                                String fileName) {
+    if (library == null) {
+      logger.warn("GitHubFileStore::findMirroredFile(): the library is not mirrored yet");
+      return null;
+    }
+    String partialFilePath = topic + "/" + fhirVersion + "/" + folder + "/" + fileName;
+    File file = library.getFile(config.getGitHubConfig().getRulePath() + partialFilePath);
+    if (file == null) {
+      file = library.getFile(config.getGitHubConfig().getExamplesPath() + partialFilePath);
+    }
+    return file;
+  }
+
   public CqlRule getCqlRule(String topic, String fhirVersion) {
+    return getCqlRule(manifest, topic, fhirVersion);
+  }
+
+  /**
+   * Read the rule from the mirror the generation being published was loaded from.
+   */
+  @Override
+  protected CqlRule getPreparedCqlRule(FileStoreGeneration newGeneration, String topic, String fhirVersion) {
+    GitHubMirror.Manifest library = loadingManifest;
+    return getCqlRule(library == null ? manifest : library, topic, fhirVersion);
+  }
+
+  private CqlRule getCqlRule(GitHubMirror.Manifest library, String topic, String fhirVersion) {
     logger.info("GitHubFileStore::getCqlRule(): " + topic + "/" + fhirVersion);
 
     // load CQL files needed for the CRD Rule
     HashMap<String, byte[]> cqlFiles = new HashMap<>();
 
-    String rulePath = config.getGitHubConfig().getRulePath();
-    String examplesPath = config.getGitHubConfig().getExamplesPath();
-
     String mainCqlLibraryName = topic + "Rule";
-    String mainCqlFile = findGitHubFile(topic, fhirVersion, mainCqlLibraryName, FileStore.CQL_EXTENSION);
+    String mainCqlFile = findGitHubFile(library, topic, fhirVersion, mainCqlLibraryName, FileStore.CQL_EXTENSION);
     if (mainCqlFile == null) {
       logger.warn("GitHubFileStore::getCqlRule(): failed to find main CQL file");
     } else {
-      String mainCqlFilePath = rulePath + topic + "/" + fhirVersion + "/files/" + mainCqlFile;
+      File file = findMirroredFile(library, topic, fhirVersion, "files", mainCqlFile);
       try {
-        InputStream inputStream = connection.getFile(mainCqlFilePath);
-        if (inputStream == null) {
-          // look for the main cql file in the examples path as well
-          mainCqlFilePath = examplesPath + topic + "/" + fhirVersion + "/files/" + mainCqlFile;
-          inputStream = connection.getFile(mainCqlFilePath);
+        if (file == null) {
+          throw new IOException("not in the library");
         }
-        cqlFiles.put(mainCqlFile, IOUtils.toByteArray(inputStream));
+        cqlFiles.put(mainCqlFile, Files.readAllBytes(file.toPath()));
         logger.info("GitHubFileStore::getCqlRule(): added mainCqlFile: " + mainCqlFile);
       } catch (IOException e) {
         logger.warn("GitHubFileStore::getCqlRule(): failed to open main cql file: " + e.getMessage());
       }
     }
 
-    String helperCqlFile = findGitHubFile(FileStore.SHARED_TOPIC, fhirVersion, FileStore.FHIR_HELPERS_FILENAME, FileStore.CQL_EXTENSION);
+    String helperCqlFile = findGitHubFile(library, FileStore.SHARED_TOPIC, fhirVersion, FileStore.FHIR_HELPERS_FILENAME, FileStore.CQL_EXTENSION);
     if (helperCqlFile == null) {
       logger.warn("GitHubFileStore::getCqlRule(): failed to find FHIR helper CQL file");
     } else {
-      String helperCqlFilePath = rulePath + "Shared/" + fhirVersion + "/files/" + helperCqlFile;
+      File file = findMirroredFile(library, FileStore.SHARED_TOPIC, fhirVersion, "files", helperCqlFile);
       try {
-        InputStream inputStream = connection.getFile(helperCqlFilePath);
-        if (inputStream == null) {
-          // look for the helper cql file in the examples path as well
-          helperCqlFilePath = examplesPath + "Shared/" + fhirVersion + "/files/" + helperCqlFile;
-          inputStream = connection.getFile(helperCqlFilePath);
+        if (file == null) {
+          throw new IOException("not in the library");
         }
-        cqlFiles.put(helperCqlFile, IOUtils.toByteArray(inputStream));
+        cqlFiles.put(helperCqlFile, Files.readAllBytes(file.toPath()));
         logger.info("GitHubFileStore::getCqlRule(): added helperCqlFile: " + helperCqlFile);
       } catch (IOException e) {
         logger.warn("GitHubFileStore::getCqlRule(): failed to open file FHIR helper cql file: " + e.getMessage());
@@ -319,21 +413,10 @@ public class GitHubFileStore extends CommonFileStore {
     fhirVersion = fhirVersion.toUpperCase();
     fileResource.setFilename(fileName);
 
-    String rulePath = config.getGitHubConfig().getRulePath();
-    String filePath = rulePath + topic + "/" + fhirVersion + "/files/" + fileName;
-    InputStream inputStream = connection.getFile(filePath);
-
-    if (inputStream == null) {
-
-      // Look in the examples folder
-      String examplesPath = config.getGitHubConfig().getExamplesPath();
-      filePath = examplesPath + topic + "/" + fhirVersion + "/files/" + fileName;
-      inputStream = connection.getFile(filePath);
-
-      if (inputStream == null) {
-        logger.warn("GitHubFileStore:getFile() Error getting file");
-        return null;
-      }
+    File file = findMirroredFile(topic, fhirVersion, "files", fileName);
+    if (file == null) {
+      logger.warn("GitHubFileStore:getFile() Error getting file");
+      return null;
     }
 
     // convert to ELM
@@ -341,73 +424,76 @@ public class GitHubFileStore extends CommonFileStore {
       logger.info("GitHubFileStore::getFile() converting CQL to JSON ELM");
 
       try {
-        String cql = IOUtils.toString(inputStream, Charset.defaultCharset());
-        byte[] fileData = null;
-        try {
-          String elm = CqlExecution.translateToElm(cql, new CDSLibrarySourceProvider(this));
-          fileData = elm.getBytes();
-        } catch (Exception e) {
-          logger.warn("GitHubFileStore::getFile() Error: could not convert CQL: " + e.getMessage());
-          return null;
-        }
-        fileResource.setResource(new ByteArrayResource(fileData));
+        byte[] cql = Files.readAllBytes(file.toPath());
+        return convertCqlToElm(topic, fileName, fhirVersion, cql);
       } catch (IOException e) {
         logger.warn("GitHubFileStore::getFile() Error: could not read file: " + e.getMessage());
         return null;
       }
     } else {
-      fileResource.setResource(new InputStreamResource(inputStream));
+      fileResource.setResource(new FileSystemResource(file));
     }
 
     return fileResource;
   }
 
+  /**
+   * Stream a resource from its blob with <server-path> replaced. ValueSets of the cache are read as before.
+   */
+  @Override
+  protected org.springframework.core.io.Resource openFhirResourceFile(FhirResource fhirResource,
+      String fhirVersion, String serverPath) {
+    if (fhirResource.getTopic().equals(ValueSetCache.VSAC_TOPIC)) {
+      return null;
+    }
+    File file = findMirroredFile(fhirResource.getTopic(), fhirVersion, "resources", fhirResource.getFilename());
+    if (file == null) {
+      return null;
+    }
+    // the blob file is named after the rest of its SHA
+    String sha = file.getParentFile().getName() + file.getName();
+    TemplatedFile templatedFile = templatedFiles.computeIfAbsent(sha, key -> {
+      try {
+        return TemplatedFile.split(file);
+      } catch (IOException e) {
+        logger.warn("GitHubFileStore::openFhirResourceFile(): failed to split " + file + ": " + e.getMessage());
+        return null;
+      }
+    });
+    return templatedFile == null ? null : templatedFile.open(serverPath);
+  }
 
   protected String readFhirResourceFromFile(FhirResource fhirResource, String fhirVersion) {
-    String fileString = null;
     String filePath;
-    InputStream inputStream;
 
-    // If the topic indicates it's actually from the ValueSet cache. Grab file input stream from there.
+    // If the topic indicates it's actually from the ValueSet cache. Grab file from there.
+    File file;
     if (fhirResource.getTopic().equals(ValueSetCache.VSAC_TOPIC)) {
       filePath = config.getValueSetCachePath() + fhirResource.getFilename();
-      try {
-        inputStream = new FileInputStream(filePath);
-      } catch (FileNotFoundException e) {
+      file = new File(filePath);
+      if (!file.exists()) {
         logger.warn("GitHubFileStore::readFhirResourceFromFile() Could not find ValueSet in cache folder.");
         return null;
       }
     } else {
-      String rulePath = config.getGitHubConfig().getRulePath();
-      filePath = rulePath + fhirResource.getTopic() + "/" + fhirVersion + "/resources/" + fhirResource.getFilename();
-      inputStream = connection.getFile(filePath);
-    }
-
-    if (inputStream == null) {
-      // try to get the file from the examples folder
-      String examplesPath = config.getGitHubConfig().getExamplesPath();
-      filePath = examplesPath + fhirResource.getTopic() + "/" + fhirVersion + "/resources/" + fhirResource.getFilename();
-      inputStream = connection.getFile(filePath);
-
-      if (inputStream == null) {
+      file = findMirroredFile(fhirResource.getTopic(), fhirVersion, "resources", fhirResource.getFilename());
+      if (file == null) {
         logger.warn("GitHubFileStore::readFhirResourceFromFile() Error getting file");
         return null;
       }
     }
 
     try {
-      fileString = IOUtils.toString(inputStream, Charset.defaultCharset());
+      return new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
     } catch (IOException e) {
       logger.warn("GitHubFileStore::readFhirResourceFromFile() failed to get file: " + e.getMessage());
       return null;
     }
-
-    return fileString;
   }
 
-  private String findGitHubFileInPath(String rulePath, String topic, String fhirVersion, String name, String extension) {
+  private String findGitHubFileInPath(GitHubMirror.Manifest library, String rulePath, String topic, String fhirVersion, String name, String extension) {
     String cqlFileLocation = rulePath + topic + "/" + fhirVersion + "/files/";
-    for (String file : connection.getDirectory(cqlFileLocation)) {
+    for (String file : library.list(cqlFileLocation)) {
       if (file.startsWith(name) && file.endsWith(extension)) {
         return file;
       }
@@ -416,14 +502,14 @@ public class GitHubFileStore extends CommonFileStore {
     return null;
   }
 
-  private String findGitHubFile(String topic, String fhirVersion, String name, String extension) {
+  private String findGitHubFile(GitHubMirror.Manifest library, String topic, String fhirVersion, String name, String extension) {
     String rulePath = config.getGitHubConfig().getRulePath();
-    String file = findGitHubFileInPath(rulePath, topic, fhirVersion, name, extension);
+    String file = findGitHubFileInPath(library, rulePath, topic, fhirVersion, name, extension);
 
     // look in the examples path
     if (file == null) {
       String examplesPath = config.getGitHubConfig().getExamplesPath();
-      file = findGitHubFileInPath(examplesPath, topic, fhirVersion, name, extension);
+      file = findGitHubFileInPath(library, examplesPath, topic, fhirVersion, name, extension);
     }
 
     return file;
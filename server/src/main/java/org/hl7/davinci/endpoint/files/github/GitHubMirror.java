@@ -0,0 +1,213 @@
+package org.hl7.davinci.endpoint.files.github;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local mirror of the CDS-Library repository. File contents are kept in a content addressed blob store on
+ * disk, keyed by their git blob SHA and laid out like a .git/objects folder, so a file that did not change
+ * between reloads is never downloaded again. Each reload produces a Manifest mapping the repository paths to
+ * their blobs, the GitHubFileStore serves every read from the manifest of the published generation.
+ */
+public class GitHubMirror {
+
+  static final Logger logger = LoggerFactory.getLogger(GitHubMirror.class);
+
+  private final File root;
+
+  public GitHubMirror(File root) {
+    this.root = root;
+    if (!root.isDirectory() && !root.mkdirs()) {
+      logger.warn("GitHubMirror::GitHubMirror(): failed to create " + root.getAbsolutePath());
+    }
+  }
+
+  /**
+   * @return the git blob SHA of the content, the same git hash-object reports
+   */
+  public static String blobSha(byte[] content) {
+    MessageDigest digest = DigestUtils.getSha1Digest();
+    digest.update(("blob " + content.length + "\u0000").getBytes(StandardCharsets.US_ASCII));
+    return Hex.encodeHexString(digest.digest(content));
+  }
+
+  File blobFile(String sha) {
+    return new File(new File(root, sha.substring(0, 2)), sha.substring(2));
+  }
+
+  public boolean hasBlob(String sha) {
+    return blobFile(sha).isFile();
+  }
+
+  /**
+   * Store content under its SHA, written to a temporary file first so a blob is either complete or missing.
+   * @return the SHA
+   */
+  String putBlob(byte[] content) throws IOException {
+    String sha = blobSha(content);
+    File blob = blobFile(sha);
+    if (!blob.isFile()) {
+      Files.createDirectories(blob.getParentFile().toPath());
+      Path temporary = Files.createTempFile(blob.getParentFile().toPath(), sha.substring(2), ".tmp");
+      Files.write(temporary, content);
+      Files.move(temporary, blob.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    return sha;
+  }
+
+  /**
+   * Mirror an unpacked copy of the repository, like the exploded branch zip.
+   * @param folder the top folder of the repository
+   */
+  public Manifest mirrorFolder(File folder) throws IOException {
+    Path top = folder.toPath();
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(top)) {
+      files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    Map<String, String> shas = new TreeMap<>();
+    for (Path file : files) {
+      String path = top.relativize(file).toString().replace(File.separatorChar, '/');
+      shas.put(path, putBlob(Files.readAllBytes(file)));
+    }
+    logger.info("GitHubMirror::mirrorFolder(): mirrored " + shas.size() + " files from " + folder);
+    return new Manifest(shas);
+  }
+
+  /**
+   * Mirror a listing of the repository, only downloading the blobs that are not in the store yet.
+   * @param blobs the git blob SHA of every file by repository path
+   * @param fetch opens a file by repository path, null if it can not be fetched
+   */
+  public Manifest mirrorTree(Map<String, String> blobs, Function<String, InputStream> fetch) throws IOException {
+    Map<String, String> shas = new TreeMap<>();
+    int fetched = 0;
+    for (Map.Entry<String, String> blob : blobs.entrySet()) {
+      String path = blob.getKey();
+      String sha = blob.getValue();
+      if (!hasBlob(sha)) {
+        try (InputStream inputStream = fetch.apply(path)) {
+          if (inputStream == null) {
+            throw new IOException("could not fetch " + path);
+          }
+          String stored = putBlob(IOUtils.toByteArray(inputStream));
+          if (!stored.equals(sha)) {
+            logger.warn("GitHubMirror::mirrorTree(): " + path + " is listed as " + sha + " but hashes to " + stored);
+            sha = stored;
+          }
+        }
+        fetched++;
+      }
+      shas.put(path, sha);
+    }
+    logger.info("GitHubMirror::mirrorTree(): mirrored " + shas.size() + " files, downloaded " + fetched);
+    return new Manifest(shas);
+  }
+
+  /**
+   * Delete every blob that none of the manifests refers to.
+   */
+  public void retain(Manifest... manifests) {
+    Set<String> keep = new HashSet<>();
+    for (Manifest manifest : manifests) {
+      if (manifest != null) {
+        keep.addAll(manifest.getShas());
+      }
+    }
+    int deleted = 0;
+    File[] folders = root.listFiles(File::isDirectory);
+    for (File folder : folders == null ? new File[0] : folders) {
+      File[] blobs = folder.listFiles();
+      for (File blob : blobs == null ? new File[0] : blobs) {
+        if (!keep.contains(folder.getName() + blob.getName()) && blob.delete()) {
+          deleted++;
+        }
+      }
+    }
+    logger.info("GitHubMirror::retain(): deleted " + deleted + " blobs");
+  }
+
+  /**
+   * The repository as of one reload: every file path mapped to the SHA of its blob.
+   */
+  public class Manifest {
+
+    private final SortedMap<String, String> shas;
+
+    private Manifest(Map<String, String> shas) {
+      this.shas = Collections.unmodifiableSortedMap(new TreeMap<>(shas));
+    }
+
+    public int size() {
+      return shas.size();
+    }
+
+    /**
+     * @return the SHAs of all blobs the manifest refers to
+     */
+    public Set<String> getShas() {
+      return new HashSet<>(shas.values());
+    }
+
+    /**
+     * @return the git blob SHA of the file, null if there is no such file
+     */
+    public String getSha(String path) {
+      return shas.get(path);
+    }
+
+    /**
+     * @return the blob holding the content of the file, null if there is no such file
+     */
+    public File getFile(String path) {
+      String sha = shas.get(path);
+      return sha == null ? null : blobFile(sha);
+    }
+
+    /**
+     * @return the content of the file, null if there is no such file
+     */
+    public byte[] read(String path) throws IOException {
+      File file = getFile(path);
+      return file == null ? null : Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * List the files and folders directly in a folder, like the GitHub contents API does.
+     */
+    public List<String> list(String folder) {
+      String prefix = folder.isEmpty() || folder.endsWith("/") ? folder : folder + "/";
+      Set<String> names = new LinkedHashSet<>();
+      for (String path : shas.subMap(prefix, prefix + Character.MAX_VALUE).keySet()) {
+        String rest = path.substring(prefix.length());
+        int slash = rest.indexOf('/');
+        names.add(slash < 0 ? rest : rest.substring(0, slash));
+      }
+      return new ArrayList<>(names);
+    }
+  }
+}
@@ -0,0 +1,195 @@
+package org.hl7.davinci.endpoint.files.local;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.hl7.davinci.endpoint.files.FileStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches the CDS-Library folders of the LocalFileStore when localDb.watch is on. Changes are collected
+ * until the folders were quiet for localDb.watchDebounce milliseconds, mapped to the topics they are in,
+ * and then picked up with an incremental reload of those topics on the watcher thread, the files of the
+ * other topics are not looked at. Requests keep being served from the published generation meanwhile.
+ */
+@Component
+@Profile("localDb")
+public class LibraryWatcher {
+
+  static final Logger logger = LoggerFactory.getLogger(LibraryWatcher.class);
+
+  // a steady stream of changes still reloads after this many debounce periods
+  private static final int MAX_DEBOUNCE_PERIODS = 10;
+
+  @Autowired
+  private YamlConfig config;
+
+  @Autowired
+  private FileStore fileStore;
+
+  private List<Path> roots;
+  private WatchService watchService;
+  private Thread thread;
+
+  @PostConstruct
+  public void init() {
+    if (config.getLocalDb() == null || !config.getLocalDb().getWatch()) {
+      return;
+    }
+    List<Path> folders = new ArrayList<>();
+    for (String folder : Arrays.asList(config.getLocalDb().getPath(), config.getLocalDb().getExamplesPath())) {
+      if (folder != null) {
+        folders.add(Paths.get(folder));
+      }
+    }
+    try {
+      start(folders, config.getLocalDb().getWatchDebounce(), fileStore::reloadTopics);
+    } catch (IOException e) {
+      logger.warn("LibraryWatcher::init(): failed to watch the CDS-Library: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Start watching the folders, and everything below them, on a daemon thread.
+   * @param onChange called with the changed topics once the folders are quiet, "*" if events were lost
+   */
+  void start(List<Path> folders, long debounceMillis, Consumer<Set<String>> onChange) throws IOException {
+    roots = new ArrayList<>();
+    watchService = FileSystems.getDefault().newWatchService();
+    for (Path folder : folders) {
+      Path root = folder.toAbsolutePath().normalize();
+      if (Files.isDirectory(root)) {
+        roots.add(root);
+        register(root);
+      } else {
+        logger.warn("LibraryWatcher::start(): " + root + " is not a folder, not watching it");
+      }
+    }
+    thread = new Thread(() -> watch(Math.max(1, debounceMillis), onChange), "library-watcher");
+    thread.setDaemon(true);
+    thread.start();
+    logger.info("LibraryWatcher::start(): watching " + roots);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (watchService != null) {
+      try {
+        watchService.close();
+      } catch (IOException e) {
+        logger.warn("LibraryWatcher::stop(): " + e.getMessage());
+      }
+      thread.interrupt();
+    }
+  }
+
+  private void register(Path folder) throws IOException {
+    // the WatchService does not watch subfolders itself
+    try (Stream<Path> folders = Files.walk(folder)) {
+      for (Path subfolder : (Iterable<Path>) folders.filter(Files::isDirectory)::iterator) {
+        subfolder.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+      }
+    }
+  }
+
+  private void watch(long debounceMillis, Consumer<Set<String>> onChange) {
+    Set<String> topics = new TreeSet<>();
+    long firstChange = 0;
+    try {
+      while (true) {
+        WatchKey key;
+        if (topics.isEmpty()) {
+          key = watchService.take();
+        } else {
+          long deadline = firstChange + MAX_DEBOUNCE_PERIODS * debounceMillis;
+          long wait = Math.min(debounceMillis, deadline - System.currentTimeMillis());
+          key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+        }
+
+        if (key == null) {
+          // quiet long enough
+          changed(topics, onChange);
+          topics = new TreeSet<>();
+          continue;
+        }
+
+        Path folder = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW) {
+            topics.add("*");
+            continue;
+          }
+          Path path = folder.resolve((Path) event.context());
+          if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+            try {
+              register(path);
+            } catch (IOException e) {
+              logger.warn("LibraryWatcher::watch(): failed to watch " + path + ": " + e.getMessage());
+            }
+          }
+          String topic = topicOf(path);
+          if (topic != null) {
+            if (topics.isEmpty()) {
+              firstChange = System.currentTimeMillis();
+            }
+            topics.add(topic);
+          }
+        }
+        key.reset();
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      logger.info("LibraryWatcher::watch(): stopped");
+    }
+  }
+
+  private void changed(Set<String> topics, Consumer<Set<String>> onChange) {
+    logger.info("LibraryWatcher::changed(): reloading after changes to " + topics);
+    try {
+      onChange.accept(topics);
+    } catch (RuntimeException e) {
+      logger.warn("LibraryWatcher::changed(): reload failed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return the topic folder a path is in, null for paths outside of them or in hidden folders
+   */
+  String topicOf(Path path) {
+    Path absolute = path.toAbsolutePath().normalize();
+    for (Path root : roots) {
+      if (absolute.startsWith(root) && !absolute.equals(root)) {
+        String topic = root.relativize(absolute).getName(0).toString();
+        return topic.startsWith(".") ? null : topic;
+      }
+    }
+    return null;
+  }
+}
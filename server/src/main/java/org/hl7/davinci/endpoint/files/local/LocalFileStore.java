@@ -3,7 +3,6 @@ package org.hl7.davinci.endpoint.files.local;
 import org.apache.commons.io.FilenameUtils;
 import org.cqframework.cql.cql2elm.LibrarySourceProvider;
 import org.cqframework.cql.elm.execution.VersionedIdentifier;
-import org.hl7.davinci.endpoint.cql.CqlExecution;
 import org.hl7.davinci.endpoint.cql.CqlRule;
 import org.hl7.davinci.endpoint.database.*;
 import org.hl7.davinci.endpoint.files.*;
@@ -12,7 +11,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 
 import java.io.*;
@@ -20,6 +20,8 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 @Component
@@ -28,45 +30,33 @@ public class LocalFileStore extends CommonFileStore {
 
   static final Logger logger = LoggerFactory.getLogger(LocalFileStore.class);
 
+  // resource files split at their <server-path> markers, keyed by path
+  private volatile Map<String, TemplatedFile> templatedFiles = new ConcurrentHashMap<>();
+
+  // the files split for the generation being published, served once it is swapped in
+  private Map<String, TemplatedFile> nextTemplatedFiles;
 
   @Autowired
   public LocalFileStore() {
     logger.info("Using LocalFileStore");
   }
 
-  public void reload() {
-    long startTime = System.nanoTime();
-
-    // clear the database first
-    lookupTable.deleteAll();
-    fhirResources.deleteAll();
-
+  protected boolean loadGeneration() {
     String path = config.getLocalDb().getPath();
-    logger.info("LocalFileStore::reload(): " + path);
-
-    try {
-      reloadFromFolder(path);
-    } catch (IOException e) {
-      logger.error("FATAL ERROR: Failed to reload from folder: " + e.getMessage());
-      System.exit(1);
-    }
+    logger.info("LocalFileStore::loadGeneration(): " + path);
 
-    // Load the examples folder
+    // Load the examples folder along with it, topics are fingerprinted across both
     String examplesPath = config.getLocalDb().getExamplesPath();
-    logger.info("LocalFileStore::reload(): (examples) " + examplesPath);
+    logger.info("LocalFileStore::loadGeneration(): (examples) " + examplesPath);
 
     try {
-      reloadFromFolder(examplesPath);
+      reloadFromFolders(path, examplesPath);
     } catch (IOException e) {
-      logger.error("FATAL ERROR: Failed to reload examples from folder: " + e.getMessage());
+      logger.error("FATAL ERROR: Failed to reload from folder: " + e.getMessage());
       System.exit(1);
     }
 
-    long endTime = System.nanoTime();
-    long timeElapsed = endTime - startTime;
-    float seconds = (float)timeElapsed / (float)1000000000;
-
-    logger.info("LocalFileStore::reload(): completed in " + seconds + " seconds");
+    return true;
   }
 
   public CqlRule getCqlRule(String topic, String fhirVersion) {
@@ -135,70 +125,134 @@ public class LocalFileStore extends CommonFileStore {
       }
     }
 
-    byte[] fileData = null;
-    try {
-      fileData = Files.readAllBytes(file.toPath());
-
-      // convert to ELM
-      if (convert && FilenameUtils.getExtension(fileName).toUpperCase().equals("CQL")) {
+    // convert to ELM
+    if (convert && FilenameUtils.getExtension(fileName).toUpperCase().equals("CQL")) {
+      try {
         logger.info("LocalFileStore::getFile() converting CQL to JSON ELM");
-        String cql = new String(fileData);
-        try {
-          String elm = CqlExecution.translateToElm(cql, new CDSLibrarySourceProvider(this));
-          fileData = elm.getBytes();
-        } catch (Exception e) {
-          logger.warn("LocalFileStore::getFile() Error: could not convert CQL: " + e.getMessage());
-          return null;
-        }
+        return convertCqlToElm(topic, fileName, fhirVersion, Files.readAllBytes(file.toPath()));
+      } catch (IOException e) {
+        logger.warn("LocalFileStore::getFile() failed to get file: " + e.getMessage());
+        return null;
       }
-    } catch (IOException e) {
-      logger.warn("LocalFileStore::getFile() failed to get file: " + e.getMessage());
-      return null;
     }
 
-    fileResource.setResource(new ByteArrayResource(fileData));
+    // everything else is streamed straight from the disk
+    fileResource.setResource(new FileSystemResource(file));
     return fileResource;
   }
 
-  protected String readFhirResourceFromFile(FhirResource fhirResource, String fhirVersion) {
-    String fileString = null;
+  /**
+   * Find the file of a FHIR resource: ValueSets come from the ValueSet cache, everything else from the
+   * resources folder of its topic in the CDS-Library or the examples.
+   * @return the file, null if it does not exist
+   */
+  private File findFhirResourceFile(FhirResource fhirResource, String fhirVersion) {
     String filePath;
-    String localPath = config.getLocalDb().getPath();
-    File file = null;
+    File file;
 
     // If the topic indicates it's actually from the ValueSet cache. Grab file path from there.
     if (fhirResource.getTopic().equals(ValueSetCache.VSAC_TOPIC)) {
       filePath = config.getValueSetCachePath() + fhirResource.getFilename();
       file = new File(filePath);
-      logger.warn("Atempting to serve valueset from cache at: " + filePath);
     } else {
+      String localPath = config.getLocalDb().getPath();
       String partialFilePath = fhirResource.getTopic() + "/" + fhirVersion + "/resources/" + fhirResource.getFilename();
       filePath = localPath + partialFilePath;
       file = new File(filePath);
 
       if (!Files.exists(file.toPath())) {
-        logger.info("LocalFileStore::readFhirResourceFromFile(): could not find file: " + file.toString() + " will try examples folder");
+        logger.info("LocalFileStore::findFhirResourceFile(): could not find file: " + file.toString() + " will try examples folder");
         String examplesPath = config.getLocalDb().getExamplesPath();
         filePath = examplesPath + partialFilePath;
         file = new File(filePath);
-        if (!Files.exists(file.toPath())) {
-          logger.warn("LocalFileStore::readFhirResourceFromFile(): could not find file: " + file.toString());
-          return null;
-        }
       }
+    }
 
-      logger.warn("Attemping to serve file from: " + filePath);
+    if (!Files.exists(file.toPath())) {
+      logger.warn("LocalFileStore::findFhirResourceFile(): could not find file: " + file.toString());
+      return null;
+    }
+    return file;
+  }
+
+  /**
+   * Split the resource files of the new generation at their <server-path> markers, so serving them only
+   * streams the segments.
+   */
+  @Override
+  protected void prepareGeneration(FileStoreGeneration newGeneration) {
+    long startTime = System.nanoTime();
+    Map<String, TemplatedFile> split = new ConcurrentHashMap<>();
+    int markers = 0;
+    for (FhirResource fhirResource : newGeneration.getFhirResources()) {
+      // VSAC ValueSets are served from their expansions and have no file
+      if (fhirResource.getData() != null || ValueSetCache.VSAC_TOPIC.equals(fhirResource.getTopic())) {
+        continue;
+      }
+      File file = findFhirResourceFile(fhirResource, fhirResource.getFhirVersion());
+      if (file == null) {
+        continue;
+      }
+      try {
+        TemplatedFile templatedFile = TemplatedFile.split(file);
+        split.put(file.getPath(), templatedFile);
+        markers += templatedFile.getMarkerCount();
+      } catch (IOException e) {
+        logger.warn("LocalFileStore::prepareGeneration(): failed to split " + file + ": " + e.getMessage());
+      }
+    }
+    nextTemplatedFiles = split;
+    float seconds = (float) (System.nanoTime() - startTime) / (float) 1000000000;
+    logger.info("LocalFileStore::prepareGeneration(): split " + split.size() + " files at " + markers
+        + " server path markers in " + seconds + " seconds");
+  }
+
+  @Override
+  protected void swapGeneration(FileStoreGeneration newGeneration) {
+    templatedFiles = nextTemplatedFiles;
+    nextTemplatedFiles = null;
+  }
+
+  @Override
+  protected void discardGeneration() {
+    nextTemplatedFiles = null;
+  }
+
+  @Override
+  protected Resource openFhirResourceFile(FhirResource fhirResource, String fhirVersion, String serverPath) {
+    File file = findFhirResourceFile(fhirResource, fhirVersion);
+    if (file == null) {
+      return null;
+    }
+    logger.info("LocalFileStore::openFhirResourceFile(): serving file from: " + file);
+
+    // a file changed on disk since the reload is split again
+    TemplatedFile templatedFile = templatedFiles.get(file.getPath());
+    if (templatedFile == null || !templatedFile.isCurrent()) {
+      try {
+        templatedFile = TemplatedFile.split(file);
+        templatedFiles.put(file.getPath(), templatedFile);
+      } catch (IOException e) {
+        logger.warn("LocalFileStore::openFhirResourceFile() failed to split file: " + e.getMessage());
+        return null;
+      }
+    }
+    return templatedFile.open(serverPath);
+  }
+
+  protected String readFhirResourceFromFile(FhirResource fhirResource, String fhirVersion) {
+    File file = findFhirResourceFile(fhirResource, fhirVersion);
+    if (file == null) {
+      return null;
     }
 
     try {
       byte[] fileData = Files.readAllBytes(file.toPath());
-      fileString = new String(fileData, Charset.defaultCharset());
+      return new String(fileData, Charset.defaultCharset());
     } catch (IOException e) {
       logger.warn("LocalFileStore::readFhirResourceFromFile() failed to get file: " + e.getMessage());
       return null;
     }
-
-    return fileString;
   }
 
   private class CqlLibrarySourceProvider implements LibrarySourceProvider {
@@ -0,0 +1,197 @@
+package org.hl7.davinci.endpoint.files.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+/**
+ * A file of the CDS-Library split at its <server-path> markers. Opening it for a server path streams the
+ * segments between the markers straight from the file and splices the server path in between, so the file
+ * is never held on the heap. Files without markers are served as they are.
+ * The split remembers the length and modification time of the file, isCurrent() tells if it still applies.
+ */
+public class TemplatedFile {
+
+  public static final String SERVER_PATH = "<server-path>";
+
+  private static final byte[] MARKER = SERVER_PATH.getBytes(StandardCharsets.US_ASCII);
+
+  private final File file;
+  private final long length;
+  private final long lastModified;
+  // byte offsets of the markers in the file
+  private final long[] markers;
+
+  private TemplatedFile(File file, long length, long lastModified, long[] markers) {
+    this.file = file;
+    this.length = length;
+    this.lastModified = lastModified;
+    this.markers = markers;
+  }
+
+  /**
+   * Find the markers in a file. The file is memory mapped for the scan.
+   */
+  public static TemplatedFile split(File file) throws IOException {
+    long lastModified = file.lastModified();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long length = channel.size();
+      List<Long> found = new ArrayList<>();
+      if (length > 0) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        long limit = length - MARKER.length;
+        for (long position = 0; position <= limit; position++) {
+          if (matchesMarker(buffer, (int) position)) {
+            found.add(position);
+            position += MARKER.length - 1;
+          }
+        }
+      }
+      long[] markers = new long[found.size()];
+      for (int i = 0; i < markers.length; i++) {
+        markers[i] = found.get(i);
+      }
+      return new TemplatedFile(file, length, lastModified, markers);
+    }
+  }
+
+  private static boolean matchesMarker(ByteBuffer buffer, int position) {
+    for (int i = 0; i < MARKER.length; i++) {
+      if (buffer.get(position + i) != MARKER[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the file did not change since it was split
+   */
+  public boolean isCurrent() {
+    return file.length() == length && file.lastModified() == lastModified;
+  }
+
+  public int getMarkerCount() {
+    return markers.length;
+  }
+
+  /**
+   * @param serverPath the text that replaces every marker
+   * @return a resource that streams the file with the markers replaced
+   */
+  public Resource open(String serverPath) {
+    if (markers.length == 0) {
+      return new FileSystemResource(file);
+    }
+    byte[] replacement = serverPath.getBytes(Charset.defaultCharset());
+    return new AbstractResource() {
+      @Override
+      public String getDescription() {
+        return "templated file [" + file.getPath() + "]";
+      }
+
+      @Override
+      public String getFilename() {
+        return file.getName();
+      }
+
+      @Override
+      public boolean exists() {
+        return file.exists();
+      }
+
+      @Override
+      public long contentLength() {
+        return length + (long) markers.length * (replacement.length - MARKER.length);
+      }
+
+      @Override
+      public long lastModified() {
+        return lastModified;
+      }
+
+      @Override
+      public InputStream getInputStream() throws IOException {
+        return new SplicedInputStream(FileChannel.open(file.toPath(), StandardOpenOption.READ), replacement);
+      }
+    };
+  }
+
+  /**
+   * Reads the file segments with positional reads on the channel and hands out the replacement in between.
+   * Parts alternate: even parts are file segments, odd parts are the replacement.
+   */
+  private class SplicedInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final byte[] replacement;
+    private int part = 0;
+    private long filePosition = 0;
+    private int replacementPosition = 0;
+
+    SplicedInputStream(FileChannel channel, byte[] replacement) {
+      this.channel = channel;
+      this.replacement = replacement;
+    }
+
+    private long segmentEnd(int segment) {
+      return segment < markers.length ? markers[segment] : length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      int read = read(single, 0, 1);
+      return read < 0 ? -1 : (single[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (part <= 2 * markers.length) {
+        if (part % 2 == 0) {
+          long end = segmentEnd(part / 2);
+          if (filePosition < end) {
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - filePosition)), filePosition);
+            if (read < 0) {
+              // the file shrank underneath us
+              return -1;
+            }
+            filePosition += read;
+            return read;
+          }
+          replacementPosition = 0;
+        } else {
+          if (replacementPosition < replacement.length) {
+            int count = Math.min(len, replacement.length - replacementPosition);
+            System.arraycopy(replacement, replacementPosition, b, off, count);
+            replacementPosition += count;
+            return count;
+          }
+          filePosition = markers[part / 2] + MARKER.length;
+        }
+        part++;
+      }
+      return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package org.hl7.davinci.endpoint.vsac;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces out requests shared by several threads so no more than permitsPerSecond start in any second.
+ * Permits are handed out in order, a caller sleeps until its slot comes up.
+ */
+public class RateLimiter {
+
+  private final long intervalNanos;
+
+  // when the next permit is available, in System.nanoTime()
+  private long next = System.nanoTime();
+
+  /**
+   * @param permitsPerSecond the rate to keep to, 0 or less for no limit
+   */
+  public RateLimiter(double permitsPerSecond) {
+    this.intervalNanos = permitsPerSecond > 0 ? (long) (1000000000 / permitsPerSecond) : 0;
+  }
+
+  public void acquire() throws InterruptedException {
+    long wait;
+    synchronized (this) {
+      long now = System.nanoTime();
+      long slot = Math.max(now, next);
+      next = slot + intervalNanos;
+      wait = slot - now;
+    }
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+  }
+}
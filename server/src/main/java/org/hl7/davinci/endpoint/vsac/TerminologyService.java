@@ -0,0 +1,117 @@
+package org.hl7.davinci.endpoint.vsac;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.terminology.CodeSystemInfo;
+import org.opencds.cqf.cql.engine.terminology.TerminologyProvider;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+
+/**
+ * Answers ValueSet membership from the ValueSetIndex of one FileStore generation, for the $validate-code
+ * operation and as the terminology provider of the CQL engine. Holding on to an instance keeps answering
+ * from the same generation, so one CQL execution sees consistent ValueSets even if a reload publishes a
+ * new one meanwhile.
+ */
+public class TerminologyService implements TerminologyProvider {
+
+  private static final String URN_OID = "urn:oid:";
+
+  private final ValueSetIndex index;
+
+  public TerminologyService(ValueSetIndex index) {
+    this.index = index;
+  }
+
+  /**
+   * Find an expansion by canonical url. VSAC ValueSets are also found by OID, as a urn:oid: or bare.
+   * @return the expansion, null if the ValueSet is not known
+   */
+  public ValueSetExpansion findValueSet(String url) {
+    if (url == null) {
+      return null;
+    }
+    ValueSetExpansion expansion = index.getByUrl(url);
+    if (expansion == null) {
+      String id = url.startsWith(URN_OID) ? url.substring(URN_OID.length()) : url;
+      expansion = index.getById(id.substring(id.lastIndexOf('/') + 1));
+    }
+    return expansion;
+  }
+
+  /**
+   * The ValueSet/$validate-code operation.
+   * @param url the canonical url of the ValueSet
+   * @param system the code system, null to match the code in any of them
+   * @param display if given, checked against the display of the concept
+   * @return the Parameters with result, message and display, null if the ValueSet is not known
+   */
+  public Parameters validateCode(String url, String system, String code, String display) {
+    ValueSetExpansion expansion = findValueSet(url);
+    if (expansion == null) {
+      return null;
+    }
+    Parameters parameters = new Parameters();
+    int concept = index.findConcept(expansion, system, code);
+    if (concept < 0) {
+      parameters.addParameter().setName("result").setValue(new BooleanType(false));
+      parameters.addParameter().setName("message").setValue(new StringType("The code " + code
+          + (system == null ? "" : " of " + system) + " is not in the ValueSet " + expansion.getUrl()));
+      return parameters;
+    }
+    String conceptDisplay = expansion.getDisplay(concept);
+    boolean displayMatches = display == null || conceptDisplay == null || display.equalsIgnoreCase(conceptDisplay);
+    parameters.addParameter().setName("result").setValue(new BooleanType(displayMatches));
+    if (!displayMatches) {
+      parameters.addParameter().setName("message").setValue(new StringType("The display " + display
+          + " does not match the display of the code: " + conceptDisplay));
+    }
+    if (conceptDisplay != null) {
+      parameters.addParameter().setName("display").setValue(new StringType(conceptDisplay));
+    }
+    return parameters;
+  }
+
+  @Override
+  public boolean in(Code code, ValueSetInfo valueSet) {
+    ValueSetExpansion expansion = findValueSet(valueSet.getId());
+    if (expansion == null) {
+      throw new IllegalArgumentException("Unknown ValueSet: " + valueSet.getId());
+    }
+    return index.findConcept(expansion, code.getSystem(), code.getCode()) >= 0;
+  }
+
+  @Override
+  public Iterable<Code> expand(ValueSetInfo valueSet) {
+    ValueSetExpansion expansion = findValueSet(valueSet.getId());
+    if (expansion == null) {
+      throw new IllegalArgumentException("Unknown ValueSet: " + valueSet.getId());
+    }
+    List<Code> codes = new ArrayList<>(expansion.size());
+    for (int i = 0; i < expansion.size(); i++) {
+      codes.add(new Code().withSystem(expansion.getSystem(i)).withVersion(expansion.getVersion(i))
+          .withCode(expansion.getCode(i)).withDisplay(expansion.getDisplay(i)));
+    }
+    return Collections.unmodifiableList(codes);
+  }
+
+  /**
+   * Only the codes in the cached expansions are known, the display comes from the first one containing it.
+   */
+  @Override
+  public Code lookup(Code code, CodeSystemInfo codeSystem) {
+    List<ValueSetExpansion> expansions = index.findExpansions(codeSystem.getId(), code.getCode());
+    if (expansions.isEmpty()) {
+      return null;
+    }
+    ValueSetExpansion expansion = expansions.get(0);
+    int concept = index.findConcept(expansion, codeSystem.getId(), code.getCode());
+    return new Code().withSystem(expansion.getSystem(concept)).withVersion(expansion.getVersion(concept))
+        .withCode(code.getCode()).withDisplay(expansion.getDisplay(concept));
+  }
+}
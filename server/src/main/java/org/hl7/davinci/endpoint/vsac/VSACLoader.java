@@ -29,7 +29,7 @@ import org.hl7.fhir.r4.model.ValueSet;
 import org.xml.sax.SAXException;
 
 /**
- * Class that handles interaction with the VSAC SVS API.
+ * Class that handles interaction with the VSAC SVS API. Value sets may be fetched from several threads at once.
  */
 public class VSACLoader {
 
@@ -37,6 +37,16 @@ public class VSACLoader {
   public static final String SVS_URL = "https://vsac.nlm.nih.gov/vsac/svs/RetrieveMultipleValueSets";
   public static final String DEFAULT_PROFILE = "Most Recent Code System Versions in VSAC";
 
+  /**
+   * Service tickets last 5 minutes, they are reused for a little less than that.
+   */
+  public static final long SERVICE_TICKET_REUSE_MILLIS = 4 * 60 * 1000;
+
+  /**
+   * The API key, kept to get a new Ticket Granting Ticket once the current one expires.
+   */
+  private String apiKey;
+
   /** 
    * The Ticket Granting Ticket that allows us to get service Tickets.
    */
@@ -47,6 +57,14 @@ public class VSACLoader {
    */
   private CloseableHttpClient client;
 
+  /**
+   * The service ticket handed out to value set fetches until it is due, or it turns out the server only
+   * accepts every ticket once.
+   */
+  private String serviceTicket;
+  private long serviceTicketDue;
+  private boolean reuseServiceTickets = true;
+
   /**
    * Initializes a VSACLoader. This attmepts to get a VSAC TGT.
    * 
@@ -54,7 +72,22 @@ public class VSACLoader {
    * @throws VSACException If there was an inability to get a TGT with these credentials.
    */
   public VSACLoader(String apiKey) throws VSACException {
-    this.client = HttpClients.createDefault();
+    this(apiKey, 2);
+  }
+
+  /**
+   * Initializes a VSACLoader for fetching value sets from several threads. This attmepts to get a VSAC TGT.
+   * 
+   * @param apiKey UMLS/VSAC API KEY
+   * @param maxConnections The number of requests that may be in flight at the same time.
+   * @throws VSACException If there was an inability to get a TGT with these credentials.
+   */
+  public VSACLoader(String apiKey, int maxConnections) throws VSACException {
+    this.client = HttpClients.custom()
+        .setMaxConnPerRoute(Math.max(1, maxConnections))
+        .setMaxConnTotal(Math.max(1, maxConnections))
+        .build();
+    this.apiKey = apiKey;
     this.ticketGrantingTicket = getTicketGrantingTicket(apiKey);
   }
 
@@ -105,12 +138,52 @@ public class VSACLoader {
   }
 
   /**
-   * Get a one time use service ticket. The result of this will be used for a single value set fetch call.
+   * Get a new service ticket. If the Ticket Granting Ticket expired, a new one is fetched first.
    * 
    * @return The service ticket.
    * @throws VSACException If there was an issue getting the service ticket.
    */
   public String getTicket() throws VSACException {
+    try {
+      return requestTicket();
+    } catch (VSACInvalidCredentialsException e) {
+      // The ticket granting ticket expired, get a new one once.
+      renewTicketGrantingTicket();
+      return requestTicket();
+    }
+  }
+
+  private synchronized void renewTicketGrantingTicket() throws VSACException {
+    this.ticketGrantingTicket = getTicketGrantingTicket(this.apiKey);
+  }
+
+  /**
+   * Get a service ticket for a value set fetch, reusing the current one while it is valid.
+   * 
+   * @param reused Set to whether the ticket was handed out before.
+   * @return The service ticket.
+   * @throws VSACException If there was an issue getting the service ticket.
+   */
+  private synchronized String getServiceTicket(boolean[] reused) throws VSACException {
+    long now = System.currentTimeMillis();
+    if (this.reuseServiceTickets && this.serviceTicket != null && now < this.serviceTicketDue) {
+      reused[0] = true;
+      return this.serviceTicket;
+    }
+    reused[0] = false;
+    this.serviceTicket = getTicket();
+    this.serviceTicketDue = now + SERVICE_TICKET_REUSE_MILLIS;
+    return this.serviceTicket;
+  }
+
+  private synchronized void rejectServiceTicket(String ticket) {
+    if (ticket.equals(this.serviceTicket)) {
+      this.serviceTicket = null;
+      this.reuseServiceTickets = false;
+    }
+  }
+
+  private String requestTicket() throws VSACException {
     // Service info that needs to be passed when getting a ticket.
     List<NameValuePair> serviceInfo = new ArrayList<NameValuePair>();
     serviceInfo.add(new BasicNameValuePair("service", "http://umlsks.nlm.nih.gov"));
@@ -196,12 +269,27 @@ public class VSACLoader {
    * @throws VSACException If there was an error with any of the process.
    */
   public ValueSet getValueSet(String oid) throws VSACException {
+    boolean[] reused = new boolean[1];
+    String ticket = this.getServiceTicket(reused);
+    try {
+      return this.getValueSet(oid, ticket);
+    } catch (VSACInvalidCredentialsException e) {
+      if (!reused[0]) {
+        throw e;
+      }
+      // The server does not take a ticket twice, stop reusing them and try again with a new one.
+      this.rejectServiceTicket(ticket);
+      return this.getValueSet(oid, this.getServiceTicket(reused));
+    }
+  }
+
+  private ValueSet getValueSet(String oid, String ticket) throws VSACException {
     // Build up request.
     HttpGet vsRequest;
     try {
       URIBuilder vsUriBuilder;
       vsUriBuilder = new URIBuilder(SVS_URL);    
-      vsUriBuilder.setParameter("ticket", this.getTicket())
+      vsUriBuilder.setParameter("ticket", ticket)
         .setParameter("id", oid)
         .setParameter("profile", DEFAULT_PROFILE)
         .setParameter("includeDraft", "yes");
@@ -219,7 +307,7 @@ public class VSACLoader {
         HttpEntity responseEntity = response.getEntity();
         int statusCode = response.getStatusLine().getStatusCode();
         if (statusCode == 401) {
-          // Service tickets only last 5 minutes. This is unlikely to happen.
+          // Service tickets only last 5 minutes, or the server did not accept a reused one.
           throw new VSACInvalidCredentialsException();
         } else if (statusCode == 200) {
           valueSet = this.parseValueSetResponse(responseEntity.getContent());
@@ -3,13 +3,20 @@ package org.hl7.davinci.endpoint.vsac;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.hl7.davinci.endpoint.config.VsacConfig;
 import org.hl7.davinci.endpoint.database.FhirResource;
-import org.hl7.davinci.endpoint.database.FhirResourceCriteria;
-import org.hl7.davinci.endpoint.database.FhirResourceRepository;
+import org.hl7.davinci.endpoint.files.FileStoreGeneration;
 import org.hl7.davinci.endpoint.vsac.errors.VSACException;
 import org.hl7.fhir.r4.model.ValueSet;
 import org.slf4j.Logger;
@@ -21,11 +28,13 @@ import ca.uhn.fhir.parser.DataFormatException;
 /**
  * Manages the ValueSetCache folder. This is used by the FileStore classes. Forwards requests to an instance of VSACLoader to fetch valuesets
  * when they are requested. If the VSACLoader could not be set up it will look for ValueSets in the cache folder.
+ * The expansions are kept in a single ValueSetStore file in the folder and handed to the FileStore generation,
+ * which serves them from memory.
  */
 public class ValueSetCache {
 
   /**
-   * Topic to use when storing information about valuesets to the FhirResourceRepository.
+   * Topic to use when storing information about valuesets in the FileStore generation.
    */
   public static final String VSAC_TOPIC = "VSACValueSets";
 
@@ -33,10 +42,15 @@ public class ValueSetCache {
 
   static final Logger logger = LoggerFactory.getLogger(ValueSetCache.class);
 
-  private FhirResourceRepository fhirResources;
+  private FileStoreGeneration.Builder generation;
 
   private File cacheDir;
 
+  /**
+   * The expansions kept in the cache dir.
+   */
+  private ValueSetStore store;
+
   /**
    * Currently initialized VSACLoader. This may be null if there are no credentials found.
    */
@@ -47,6 +61,12 @@ public class ValueSetCache {
    */
   private FhirContext fhirContext;
 
+  /**
+   * How many ValueSets are fetched at once, and how fast requests to VSAC may start.
+   */
+  private VsacConfig vsacConfig = new VsacConfig();
+  private RateLimiter rateLimiter = new RateLimiter(vsacConfig.getRequestsPerSecond());
+
   /**
    * Initializes the cache with no credentials passed in. Note. initializeLoader function may find credentials in the environement variables.
    * 
@@ -58,6 +78,21 @@ public class ValueSetCache {
     this.initializeCacheDir(cacheDir);
   }
 
+  /**
+   * Initializes the cache with no credentials passed in and the given fetch limits. Note. initializeLoader
+   * function may find credentials in the environement variables.
+   * 
+   * @param cacheDir Location of the ValueSet cache folder.
+   * @param vsacConfig Concurrency and rate limit for fetching from VSAC.
+   */
+  public ValueSetCache(String cacheDir, VsacConfig vsacConfig) {
+    this.fhirContext = ca.uhn.fhir.context.FhirContext.forR4();
+    this.vsacConfig = vsacConfig;
+    this.rateLimiter = new RateLimiter(vsacConfig.getRequestsPerSecond());
+    this.initializeLoader();
+    this.initializeCacheDir(cacheDir);
+  }
+
   /**
    * Initializes the cache with credentials passed in.
    * 
@@ -90,7 +125,7 @@ public class ValueSetCache {
    */
   private void initializeLoader(String apiKey) {
     try {
-      this.vsacLoader = new VSACLoader(apiKey);
+      this.vsacLoader = new VSACLoader(apiKey, this.vsacConfig.getConcurrency());
       logger.info("VSACLoader sucessfully initialized.");
     } catch (VSACException e) {
       logger.error("Exception setting up VSACLoader. ValueSetCache will not be able to fetch valuesets.", e);
@@ -113,6 +148,7 @@ public class ValueSetCache {
         logger.error("Failed to create ValueSetCache directory at " + this.cacheDir.getAbsolutePath());
       }
     }
+    this.store = new ValueSetStore(this.cacheDir);
   }
 
   /**
@@ -149,20 +185,13 @@ public class ValueSetCache {
   }
 
   /**
-   * Fetch a ValueSet from VSAC or cache and add it to the FhirResourceRepository.
+   * Fetch a ValueSet from VSAC or cache and add it to the FileStore generation being loaded.
    * @param oid The VSAC OID of the ValueSet to fetch.
    * @return true if sucessful, false if failed to fetch ValueSet.
    */
   public boolean fetchValueSet(String oid) {
-    // check if the valueset has already been loaded
-    FhirResourceCriteria criteria = new FhirResourceCriteria();
-    criteria.setFhirVersion("R4")
-        .setResourceType("valueset")
-        .setId("valueset/" + oid);
-    List<FhirResource> fhirResourceList = fhirResources.findById(criteria);
-
     // Skip fetching if it already has been loaded
-    if (!fhirResourceList.isEmpty()) {
+    if (this.generation != null && this.generation.containsFhirResource("R4", "valueset", oid)) {
       logger.info("ValueSet (" + oid + ") already loaded.");
       return true;
     }
@@ -176,57 +205,99 @@ public class ValueSetCache {
   }
 
   /**
-   * Fetches a ValueSet already in the cache dir and adds it to the FhirResourceRepository.
+   * Fetch ValueSets from VSAC or cache and add them to the FileStore generation being loaded. Duplicates and
+   * ValueSets that are loaded already are skipped, the rest are fetched on vsac.concurrency threads. The
+   * SVS API takes a single value set id per request, so every OID is its own request.
+   * 
+   * @param oids The VSAC OIDs of the ValueSets to fetch.
+   * @return The number of ValueSets that are loaded.
+   */
+  public int fetchValueSets(Collection<String> oids) {
+    Set<String> pending = new LinkedHashSet<>(oids);
+    if (pending.isEmpty()) {
+      return 0;
+    }
+    AtomicInteger loaded = new AtomicInteger();
+    int threads = Math.max(1, Math.min(this.vsacConfig.getConcurrency(), pending.size()));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (String oid : pending) {
+        tasks.add(() -> {
+          if (this.fetchValueSet(oid)) {
+            loaded.incrementAndGet();
+          }
+          return null;
+        });
+      }
+      executor.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+    return loaded.get();
+  }
+
+  /**
+   * Fetches a ValueSet already in the cache dir and adds it to the FileStore generation. ValueSets are
+   * looked up in the ValueSetStore first, ones only found as JSON files of an older cache dir are moved into
+   * the store on the way.
    * 
    * @param oid The VSAC OID of the ValueSet to fetch.
    * @return true if sucessfuly found in cache dir. Otherwise, false.
    */
   private boolean fetchValueSetFromCache(String oid) {
     logger.warn("            VSACLoader was not setup, possibly due to lack of credentials. ValueSets already in directory will be considered.");
-    File valueSetPath = new File(this.cacheDir, "ValueSet-R4-" + oid + ".json");
+    ValueSetExpansion expansion = this.store.get(oid);
+    if (expansion != null) {
+      logger.info("            ValueSet (" + oid + ") found in cache dir, will use.");
+      this.addValueSetToFhirResources(oid, expansion);
+      return true;
+    }
 
-    try {
-      ValueSet valueSet = (ValueSet) this.fhirContext.newJsonParser().parseResource(new FileInputStream(valueSetPath));
+    File valueSetPath = this.pathForOID(oid);
+    try (FileInputStream valueSetStream = new FileInputStream(valueSetPath)) {
+      ValueSet valueSet = (ValueSet) this.fhirContext.newJsonParser().parseResource(valueSetStream);
       // fix id, for some reason the parser adds 'ValueSet' on it
       valueSet.setId(oid);
       logger.info("            ValueSet (" + oid + ") found in cache dir, will use.");
-      this.addValueSetToFhirResources(valueSet, valueSetPath);
+      expansion = ValueSetExpansion.from(valueSet);
+      this.storeExpansion(oid, expansion);
+      this.addValueSetToFhirResources(oid, expansion);
       return true;
     } catch (FileNotFoundException e) {
       logger.error("            ValueSet (" + oid + ") not found in cache dir. It will NOT be available!");
       return false;
-    } catch (DataFormatException e) {
+    } catch (DataFormatException | IOException e) {
       logger.error("            ValueSet (" + oid + ") in cache dir is malformed. It will NOT be available!");
       return false;
     }
   }
 
   /**
-   * Fetches a ValueSet from VSAC and adds it to the FhirResourceRepository. 
+   * Fetches a ValueSet from VSAC and adds it to the FileStore generation.
    * 
    * @param oid The VSAC OID of the ValueSet to fetch.
    * @return true if sucessfully fetched. Otherwise, false.
    */
   private boolean fetchValueSetFromVSAC(String oid) {
+    try {
+      this.rateLimiter.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
     try {
       ValueSet valueSet = vsacLoader.getValueSet(oid);
-      File valueSetPath = this.pathForOID(oid);
-
-      if (valueSetPath.exists()) {
-        valueSetPath.delete();
+      valueSet.setId(oid);
+      ValueSetExpansion expansion = ValueSetExpansion.from(valueSet);
+      if (this.store.contains(oid)) {
         logger.info("            Replacing ValueSet (" + oid + ") in cache dir.");
       }
-
-      try {
-        FileWriter jsonWriter = new FileWriter(valueSetPath);
-        this.fhirContext.newJsonParser().setPrettyPrint(true).encodeResourceToWriter(valueSet, jsonWriter);
-        jsonWriter.close();
-        this.addValueSetToFhirResources(valueSet, valueSetPath);
-        return true;
-      } catch (IOException ioe) {
-        logger.error("Failed to save ValueSet (" + oid + ") to cache dir:", ioe);
-        return false;
-      }
+      this.storeExpansion(oid, expansion);
+      this.addValueSetToFhirResources(oid, expansion);
+      return true;
     } catch(VSACException e) {
       logger.error("Failed to fetch ValueSet (" + oid + "): " + e.getMessage(), e);
       return false;
@@ -234,7 +305,19 @@ public class ValueSetCache {
   }
 
   /**
-   * Helper function to turn a ValueSet oid into to the expected path of the ValueSet in the cache dir.
+   * Save an expansion to the ValueSetStore. It is still served from memory if that fails.
+   */
+  private void storeExpansion(String oid, ValueSetExpansion expansion) {
+    try {
+      this.store.put(oid, expansion);
+    } catch (IOException ioe) {
+      logger.error("Failed to save ValueSet (" + oid + ") to cache dir:", ioe);
+    }
+  }
+
+  /**
+   * Helper function to turn a ValueSet oid into to the path of the ValueSet in a cache dir from before the
+   * ValueSetStore.
    * 
    * @param oid The VSAC OID of the ValueSet.
    * @return Path to the expected location.
@@ -244,35 +327,35 @@ public class ValueSetCache {
   }
 
   /**
-   * Add a ValueSet to the FhirResourcesRepository.
+   * Add a ValueSet to the FileStore generation being loaded.
    * 
-   * @param valueSet The ValueSet to add.
-   * @param valueSetPath The path to the JSON file for this value set in the cache folder.
+   * @param oid The VSAC OID of the ValueSet.
+   * @param expansion The expansion of the ValueSet, indexed by the generation.
    */
-  private void addValueSetToFhirResources(ValueSet valueSet, File valueSetPath) {
-    if (this.fhirResources != null) {
-      // create a FhirResource and save it back to the table
+  private void addValueSetToFhirResources(String oid, ValueSetExpansion expansion) {
+    if (this.generation != null) {
+      // create a FhirResource and add it to the generation
       FhirResource fhirResource = new FhirResource();
-      fhirResource.setId(valueSet.getId())
+      fhirResource.setId(oid)
           .setFhirVersion("R4")
           .setResourceType("valueset")
           .setTopic(VSAC_TOPIC)
-          .setFilename(valueSetPath.getName())
-          .setName(valueSet.getName())
-          .setUrl(valueSet.getUrl());
-      fhirResources.save(fhirResource);
-      logger.info("            Added ValueSet (" + valueSet.getId() + ") to FhirResourceRepository");
+          .setName(expansion.getName())
+          .setUrl(expansion.getUrl());
+      this.generation.addFhirResource(fhirResource);
+      this.generation.addValueSet(expansion);
+      logger.info("            Added ValueSet (" + oid + ") to FileStore generation");
     } else {
-      logger.info("            Cannot add to FhirResourceRepository, it wasn't provided");
+      logger.info("            Cannot add to FileStore generation, no reload is running");
     }
   }
 
   /**
-   * Used to set the FhirResourceRepository before reloading rulesets.
+   * Used to set the FileStore generation being loaded before reloading rulesets, and to clear it after.
    * 
-   * @param fhirResources
+   * @param generation
    */
-  public void setFhirResources(FhirResourceRepository fhirResources) {
-    this.fhirResources = fhirResources;
+  public void setGeneration(FileStoreGeneration.Builder generation) {
+    this.generation = generation;
   }
 }
\ No newline at end of file
@@ -0,0 +1,217 @@
+package org.hl7.davinci.endpoint.vsac;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionComponent;
+import org.hl7.fhir.r4.model.ValueSet.ValueSetExpansionContainsComponent;
+
+/**
+ * Compact, immutable form of an expanded VSAC ValueSet. The concepts are kept as parallel arrays, with the
+ * code systems and their versions interned into a small string table, which is also how they are written
+ * to the ValueSetStore. toValueSet() builds the FHIR ValueSet back without any parsing.
+ */
+public class ValueSetExpansion {
+
+  private final String id;
+  private final String url;
+  private final String name;
+  private final String status;
+  private final String publisher;
+  private final long timestamp;
+  // code systems and code system versions
+  private final String[] strings;
+  private final int[] systems;
+  private final int[] versions;
+  private final String[] codes;
+  private final String[] displays;
+
+  private ValueSetExpansion(String id, String url, String name, String status, String publisher, long timestamp,
+                            String[] strings, int[] systems, int[] versions, String[] codes, String[] displays) {
+    this.id = id;
+    this.url = url;
+    this.name = name;
+    this.status = status;
+    this.publisher = publisher;
+    this.timestamp = timestamp;
+    this.strings = strings;
+    this.systems = systems;
+    this.versions = versions;
+    this.codes = codes;
+    this.displays = displays;
+  }
+
+  /**
+   * Take the expansion out of a ValueSet, as the VSACLoader returns it or as it was kept in the cache folder.
+   */
+  public static ValueSetExpansion from(ValueSet valueSet) {
+    List<ValueSetExpansionContainsComponent> contains = new ArrayList<>();
+    if (valueSet.hasExpansion()) {
+      collect(valueSet.getExpansion().getContains(), contains);
+    }
+    List<String> strings = new ArrayList<>();
+    Map<String, Integer> interned = new HashMap<>();
+    int[] systems = new int[contains.size()];
+    int[] versions = new int[contains.size()];
+    String[] codes = new String[contains.size()];
+    String[] displays = new String[contains.size()];
+    for (int i = 0; i < contains.size(); i++) {
+      ValueSetExpansionContainsComponent concept = contains.get(i);
+      systems[i] = intern(concept.getSystem(), strings, interned);
+      versions[i] = intern(concept.getVersion(), strings, interned);
+      codes[i] = concept.getCode();
+      displays[i] = concept.getDisplay();
+    }
+    Date timestamp = valueSet.hasExpansion() ? valueSet.getExpansion().getTimestamp() : null;
+    return new ValueSetExpansion(valueSet.getIdElement().getIdPart(), valueSet.getUrl(), valueSet.getName(),
+        valueSet.hasStatus() ? valueSet.getStatus().toCode() : null, valueSet.getPublisher(),
+        timestamp == null ? 0 : timestamp.getTime(), strings.toArray(new String[0]), systems, versions, codes,
+        displays);
+  }
+
+  private static void collect(List<ValueSetExpansionContainsComponent> concepts,
+                              List<ValueSetExpansionContainsComponent> into) {
+    for (ValueSetExpansionContainsComponent concept : concepts) {
+      if (concept.hasCode()) {
+        into.add(concept);
+      }
+      collect(concept.getContains(), into);
+    }
+  }
+
+  private static int intern(String value, List<String> strings, Map<String, Integer> interned) {
+    if (value == null) {
+      return -1;
+    }
+    return interned.computeIfAbsent(value, v -> {
+      strings.add(v);
+      return strings.size() - 1;
+    });
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int size() {
+    return codes.length;
+  }
+
+  public String getSystem(int concept) {
+    return string(systems[concept]);
+  }
+
+  public String getVersion(int concept) {
+    return string(versions[concept]);
+  }
+
+  public String getCode(int concept) {
+    return codes[concept];
+  }
+
+  public String getDisplay(int concept) {
+    return displays[concept];
+  }
+
+  private String string(int index) {
+    return index < 0 ? null : strings[index];
+  }
+
+  /**
+   * Build the FHIR ValueSet with its expansion.
+   */
+  public ValueSet toValueSet() {
+    ValueSet valueSet = new ValueSet();
+    valueSet.setId(id);
+    valueSet.setUrl(url);
+    valueSet.setName(name);
+    if (status != null) {
+      valueSet.setStatus(PublicationStatus.fromCode(status));
+    }
+    valueSet.setPublisher(publisher);
+    ValueSetExpansionComponent expansion = new ValueSetExpansionComponent();
+    if (timestamp != 0) {
+      expansion.setTimestamp(new Date(timestamp));
+    }
+    for (int i = 0; i < codes.length; i++) {
+      expansion.addContains().setSystem(getSystem(i)).setVersion(getVersion(i)).setCode(codes[i])
+          .setDisplay(displays[i]);
+    }
+    expansion.setTotal(codes.length);
+    valueSet.setExpansion(expansion);
+    return valueSet;
+  }
+
+  void write(DataOutput out) throws IOException {
+    writeString(out, id);
+    writeString(out, url);
+    writeString(out, name);
+    writeString(out, status);
+    writeString(out, publisher);
+    out.writeLong(timestamp);
+    out.writeInt(strings.length);
+    for (String string : strings) {
+      out.writeUTF(string);
+    }
+    out.writeInt(codes.length);
+    for (int i = 0; i < codes.length; i++) {
+      out.writeInt(systems[i]);
+      out.writeInt(versions[i]);
+      writeString(out, codes[i]);
+      writeString(out, displays[i]);
+    }
+  }
+
+  static ValueSetExpansion read(DataInput in) throws IOException {
+    String id = readString(in);
+    String url = readString(in);
+    String name = readString(in);
+    String status = readString(in);
+    String publisher = readString(in);
+    long timestamp = in.readLong();
+    String[] strings = new String[in.readInt()];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = in.readUTF();
+    }
+    int count = in.readInt();
+    int[] systems = new int[count];
+    int[] versions = new int[count];
+    String[] codes = new String[count];
+    String[] displays = new String[count];
+    for (int i = 0; i < count; i++) {
+      systems[i] = in.readInt();
+      versions[i] = in.readInt();
+      codes[i] = readString(in);
+      displays[i] = readString(in);
+    }
+    return new ValueSetExpansion(id, url, name, status, publisher, timestamp, strings, systems, versions, codes,
+        displays);
+  }
+
+  private static void writeString(DataOutput out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
@@ -0,0 +1,225 @@
+package org.hl7.davinci.endpoint.vsac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index over the VSAC ValueSet expansions of a FileStore generation: the expansions by id and by
+ * canonical url, and the (system, code) membership of every concept in them. Membership checks and $expand
+ * answers are served from here without reading or parsing a ValueSet file.
+ * Code systems and codes are interned to ints across all expansions, each expansion keeps its members as a
+ * sorted array of (system, code) pairs packed into longs, so a membership check is two hash lookups and a
+ * binary search. The reverse maps from each (system, code) to the expansions containing it and from each code to
+ * the systems it appears in answer which ValueSets contain a code without scanning the expansions.
+ */
+public class ValueSetIndex {
+
+  // in the order the expansions were given, which is also the order of their ordinals
+  private final Map<String, ValueSetExpansion> byId = new LinkedHashMap<>();
+  private final Map<String, ValueSetExpansion> byUrl = new HashMap<>();
+  private final Map<String, Integer> systemIds = new HashMap<>();
+  private final Map<String, Integer> codeIds = new HashMap<>();
+  private final Map<ValueSetExpansion, CodeSet> codeSets = new IdentityHashMap<>();
+  private final List<ValueSetExpansion> ordinals = new ArrayList<>();
+  // (system, code) to the ordinals of the expansions containing it, ascending
+  private final Map<Long, int[]> containing = new HashMap<>();
+  // code to the systems it appears in, in the order they were first seen
+  private final Map<Integer, int[]> codeSystems = new HashMap<>();
+  private int conceptCount = 0;
+
+  /**
+   * The members of one expansion, sorted, with the position of each member's concept in the expansion.
+   */
+  private static class CodeSet {
+    private final long[] members;
+    private final int[] concepts;
+
+    CodeSet(long[] members, int[] concepts) {
+      this.members = members;
+      this.concepts = concepts;
+    }
+  }
+
+  public ValueSetIndex(Collection<ValueSetExpansion> expansions) {
+    for (ValueSetExpansion expansion : expansions) {
+      byId.put(expansion.getId(), expansion);
+      if (expansion.getUrl() != null) {
+        byUrl.put(expansion.getUrl(), expansion);
+      }
+    }
+    for (ValueSetExpansion expansion : byId.values()) {
+      codeSets.put(expansion, index(expansion, ordinals.size()));
+      ordinals.add(expansion);
+      conceptCount += expansion.size();
+    }
+  }
+
+  private CodeSet index(ValueSetExpansion expansion, int ordinal) {
+    int size = expansion.size();
+    long[] keyed = new long[size];
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      String systemUrl = expansion.getSystem(i) == null ? "" : expansion.getSystem(i);
+      int system = systemIds.computeIfAbsent(systemUrl, s -> systemIds.size());
+      int code = codeIds.computeIfAbsent(expansion.getCode(i), c -> codeIds.size());
+      keyed[i] = member(system, code);
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(keyed[a], keyed[b]));
+
+    // drop duplicate members, the first concept wins
+    long[] members = new long[size];
+    int[] concepts = new int[size];
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      long member = keyed[order[i]];
+      if (count == 0 || members[count - 1] != member) {
+        members[count] = member;
+        concepts[count] = order[i];
+        count++;
+        int[] previous = containing.put(member, append(containing.get(member), ordinal));
+        if (previous == null) {
+          codeSystems.merge(code(member), new int[] { system(member) }, ValueSetIndex::concat);
+        }
+      }
+    }
+    return new CodeSet(Arrays.copyOf(members, count), Arrays.copyOf(concepts, count));
+  }
+
+  private static long member(int system, int code) {
+    return ((long) system << 32) | (code & 0xffffffffL);
+  }
+
+  private static int system(long member) {
+    return (int) (member >>> 32);
+  }
+
+  private static int code(long member) {
+    return (int) member;
+  }
+
+  private static int[] append(int[] values, int value) {
+    return values == null ? new int[] { value } : concat(values, new int[] { value });
+  }
+
+  private static int[] concat(int[] first, int[] second) {
+    int[] values = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, values, first.length, second.length);
+    return values;
+  }
+
+  /**
+   * @return the expansion with the id, null if there is none
+   */
+  public ValueSetExpansion getById(String id) {
+    return byId.get(id);
+  }
+
+  /**
+   * @return the expansion with the canonical url, null if there is none
+   */
+  public ValueSetExpansion getByUrl(String url) {
+    return byUrl.get(url);
+  }
+
+  public Collection<ValueSetExpansion> getExpansions() {
+    return Collections.unmodifiableCollection(byId.values());
+  }
+
+  /**
+   * Find a code in an expansion of this index. Without a system the code matches in any code system, and the
+   * first concept of the expansion with the code is returned.
+   * @return the position of the concept in the expansion, -1 if the expansion does not contain the code
+   */
+  public int findConcept(ValueSetExpansion expansion, String system, String code) {
+    CodeSet codeSet = codeSets.get(expansion);
+    Integer codeId = code == null ? null : codeIds.get(code);
+    if (codeSet == null || codeId == null) {
+      return -1;
+    }
+    if (system != null) {
+      Integer systemId = systemIds.get(system);
+      return systemId == null ? -1 : find(codeSet, systemId, codeId);
+    }
+    int first = -1;
+    for (int systemId : codeSystems.get(codeId)) {
+      int concept = find(codeSet, systemId, codeId);
+      if (concept >= 0 && (first < 0 || concept < first)) {
+        first = concept;
+      }
+    }
+    return first;
+  }
+
+  private static int find(CodeSet codeSet, int systemId, int codeId) {
+    int position = Arrays.binarySearch(codeSet.members, member(systemId, codeId));
+    return position < 0 ? -1 : codeSet.concepts[position];
+  }
+
+  /**
+   * @return true if the ValueSet with the canonical url contains the code of the system
+   */
+  public boolean contains(String url, String system, String code) {
+    ValueSetExpansion expansion = byUrl.get(url);
+    return expansion != null && findConcept(expansion, system, code) >= 0;
+  }
+
+  /**
+   * Find the expansions containing a code. Without a system the code matches in any code system.
+   * @return the expansions, in the order they were given to the index
+   */
+  public List<ValueSetExpansion> findExpansions(String system, String code) {
+    Integer codeId = code == null ? null : codeIds.get(code);
+    if (codeId == null) {
+      return Collections.emptyList();
+    }
+    int[] found;
+    if (system != null) {
+      Integer systemId = systemIds.get(system);
+      found = systemId == null ? null : containing.get(member(systemId, codeId));
+    } else {
+      int[] systems = codeSystems.get(codeId);
+      found = containing.get(member(systems[0], codeId));
+      for (int i = 1; i < systems.length; i++) {
+        found = concat(found, containing.get(member(systems[i], codeId)));
+      }
+      if (systems.length > 1) {
+        found = Arrays.stream(found).sorted().distinct().toArray();
+      }
+    }
+    if (found == null) {
+      return Collections.emptyList();
+    }
+    List<ValueSetExpansion> expansions = new ArrayList<>(found.length);
+    for (int ordinal : found) {
+      expansions.add(ordinals.get(ordinal));
+    }
+    return expansions;
+  }
+
+  /**
+   * @return the canonical urls of the ValueSets containing the code of the system
+   */
+  public List<String> findValueSets(String system, String code) {
+    List<String> urls = new ArrayList<>();
+    for (ValueSetExpansion expansion : findExpansions(system, code)) {
+      urls.add(expansion.getUrl());
+    }
+    return urls;
+  }
+
+  public int size() {
+    return byId.size();
+  }
+
+  public int getConceptCount() {
+    return conceptCount;
+  }
+}
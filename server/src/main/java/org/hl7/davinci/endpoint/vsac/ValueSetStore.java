@@ -0,0 +1,179 @@
+package org.hl7.davinci.endpoint.vsac;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single file in the ValueSet cache folder holding every cached expansion. The file is an append only log
+ * of deflated records, one per ValueSet, behind a short header. Opening it reads the log once into memory,
+ * a later record for the same OID replaces the earlier one, and a record torn by a crash is cut off.
+ * Once more than half of the file is replaced records it is compacted into a fresh log.
+ */
+public class ValueSetStore {
+
+  static final Logger logger = LoggerFactory.getLogger(ValueSetStore.class);
+
+  public static final String FILE_NAME = "ValueSets.bin";
+
+  private static final int MAGIC = 0x43524456; // "CRDV"
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 8;
+
+  private final File file;
+  private final Map<String, ValueSetExpansion> expansions = new ConcurrentHashMap<>();
+  // length of the record of every OID in the file, to tell how much of it is replaced records
+  private final Map<String, Integer> recordLengths = new ConcurrentHashMap<>();
+  private long liveBytes = 0;
+
+  public ValueSetStore(File cacheDir) {
+    this.file = new File(cacheDir, FILE_NAME);
+    try {
+      load();
+    } catch (IOException e) {
+      logger.error("ValueSetStore::ValueSetStore(): failed to read " + file + ", starting empty: " + e.getMessage());
+      expansions.clear();
+      recordLengths.clear();
+      liveBytes = 0;
+    }
+  }
+
+  /**
+   * @return the cached expansion of the ValueSet, null if it is not in the store
+   */
+  public ValueSetExpansion get(String oid) {
+    return expansions.get(oid);
+  }
+
+  public boolean contains(String oid) {
+    return expansions.containsKey(oid);
+  }
+
+  public int size() {
+    return expansions.size();
+  }
+
+  /**
+   * Add or replace the expansion of a ValueSet and append it to the file.
+   */
+  public synchronized void put(String oid, ValueSetExpansion expansion) throws IOException {
+    byte[] record = encode(oid, expansion);
+    try (RandomAccessFile out = open()) {
+      out.seek(out.length());
+      out.writeInt(record.length);
+      out.write(record);
+    }
+    Integer replaced = recordLengths.put(oid, record.length);
+    liveBytes += 4 + record.length - (replaced == null ? 0 : 4 + replaced);
+    expansions.put(oid, expansion);
+
+    if (file.length() - HEADER_LENGTH > 2 * liveBytes) {
+      try {
+        compact();
+      } catch (IOException e) {
+        logger.warn("ValueSetStore::put(): failed to compact " + file + ": " + e.getMessage());
+      }
+    }
+  }
+
+  private RandomAccessFile open() throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    if (raf.length() < HEADER_LENGTH) {
+      raf.setLength(0);
+      raf.writeInt(MAGIC);
+      raf.writeInt(VERSION);
+    }
+    return raf;
+  }
+
+  private void load() throws IOException {
+    if (!file.exists()) {
+      return;
+    }
+    try (RandomAccessFile in = new RandomAccessFile(file, "rw")) {
+      if (in.length() < HEADER_LENGTH) {
+        return;
+      }
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("not a ValueSet store of version " + VERSION);
+      }
+      long position = HEADER_LENGTH;
+      try {
+        while (position < in.length()) {
+          int length = in.readInt();
+          if (length < 0 || position + 4 + length > in.length()) {
+            throw new EOFException();
+          }
+          byte[] record = new byte[length];
+          in.readFully(record);
+          decode(record, length);
+          position += 4 + length;
+        }
+      } catch (EOFException e) {
+        logger.warn("ValueSetStore::load(): dropping a torn record at the end of " + file);
+        in.setLength(position);
+      }
+    }
+    logger.info("ValueSetStore::load(): read " + expansions.size() + " ValueSets from " + file);
+  }
+
+  private void decode(byte[] record, int length) throws IOException {
+    try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(record)))) {
+      String oid = in.readUTF();
+      expansions.put(oid, ValueSetExpansion.read(in));
+      Integer replaced = recordLengths.put(oid, length);
+      liveBytes += 4 + length - (replaced == null ? 0 : 4 + replaced);
+    } catch (IOException e) {
+      // the length was intact but the content is not, treat it like a torn record
+      throw new EOFException(e.getMessage());
+    }
+  }
+
+  private static byte[] encode(String oid, ValueSetExpansion expansion) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+      out.writeUTF(oid);
+      expansion.write(out);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Write the live records to a new file and swap it in.
+   */
+  private void compact() throws IOException {
+    File compacted = new File(file.getPath() + ".tmp");
+    long length = HEADER_LENGTH;
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compacted)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      for (Map.Entry<String, ValueSetExpansion> entry : expansions.entrySet()) {
+        byte[] record = encode(entry.getKey(), entry.getValue());
+        out.writeInt(record.length);
+        out.write(record);
+        recordLengths.put(entry.getKey(), record.length);
+        length += 4 + record.length;
+      }
+    }
+    if (!compacted.renameTo(file)) {
+      compacted.delete();
+      throw new IOException("could not replace " + file);
+    }
+    liveBytes = length - HEADER_LENGTH;
+    logger.info("ValueSetStore::compact(): compacted " + file + " to " + length + " bytes");
+  }
+}
@@ -5,12 +5,16 @@ import './request.css';
 import ErrorDetail from './ErrorDetail';
 
 import ResponseCheck from './ResponseCheck';
+import {getBaseUrl} from '../../Utils';
+
+let baseUrl = getBaseUrl();
 export default class DetailEntry extends Component {
     constructor(props){
         super(props);
         this.state={
             slideIn: "slideInStart",
             requestInfo: {},
+            requestBody: null,
             showRequestBody:false,
             showResults: false,
             showCards: false
@@ -42,6 +46,21 @@ export default class DetailEntry extends Component {
         this.setState(prevState=>{
             return {showRequestBody:!prevState.showRequestBody}
         });
+        // the list only holds the summary of each request, the body is fetched the first time it is shown
+        if (this.state.requestBody == null) {
+            fetch(baseUrl + 'api/requests/' + this.props.data.id + '/body', {
+                method: 'GET',
+                headers: {
+                    'Accept': 'application/json'
+                }
+            }).then(response => {
+                return response.json();
+            }).then(requestBody => {
+                this.setState({ requestBody: requestBody });
+            }).catch(error => {
+                console.log("Couldn't load the request body, error=", error)
+            });
+        }
     }
 
     showResults(){
@@ -126,7 +145,7 @@ export default class DetailEntry extends Component {
                 </div>
                 {this.state.showRequestBody?
                  <div className="requestBody">
-                 { this.unfurlJson(JSON.parse(atob(this.props.data.requestBody))) }
+                 { this.unfurlJson(this.state.requestBody) }
                  </div>
                  :
                  null}
@@ -51,7 +51,6 @@ export default class RequestLog extends Component {
         if (requestData) {
             requestData.sort(this.compareTime);
             this.setState({ data: requestData });
-            var webdata = requestData.requestBody;
             this.getPage(1);
         }
 
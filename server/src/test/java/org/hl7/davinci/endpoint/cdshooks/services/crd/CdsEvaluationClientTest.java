@@ -0,0 +1,84 @@
+package org.hl7.davinci.endpoint.cdshooks.services.crd;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.json.simple.JSONArray;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CdsEvaluationClientTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final YamlConfig config = new YamlConfig();
+
+  private WireMockServer cds;
+  private CdsEvaluationClient client;
+
+  @BeforeEach
+  public void start() {
+    cds = new WireMockServer(wireMockConfig().dynamicPort());
+    cds.start();
+    config.setMettlesCDSUrl("http://localhost:" + cds.port() + "/cds/executeCRD");
+    client = new CdsEvaluationClient();
+    ReflectionTestUtils.setField(client, "myConfig", config);
+    ReflectionTestUtils.setField(client, "meterRegistry", meterRegistry);
+    client.init();
+  }
+
+  @AfterEach
+  public void stop() {
+    client.close();
+    cds.stop();
+  }
+
+  private double leased() {
+    return meterRegistry.get("crd.cds.client.pool.leased").gauge().value();
+  }
+
+  @Test
+  public void testResultIsParsed() {
+    cds.stubFor(post(urlEqualTo("/cds/executeCRD")).willReturn(aResponse()
+        .withHeader("Content-Type", "application/json")
+        .withBody("[{\"requestId\":\"devreq1\"}]")));
+
+    JSONArray result = client.post("{}");
+    assertEquals(1, result.size());
+    assertEquals(0, leased());
+    assertEquals(1, meterRegistry.get("crd.cds.client.requests").tag("outcome", "success").timer().count());
+  }
+
+  @Test
+  public void testCallIsAbortedAtTheDeadline() {
+    // the response would arrive within the read timeout, but past the deadline
+    cds.stubFor(post(urlEqualTo("/cds/executeCRD")).willReturn(aResponse()
+        .withHeader("Content-Type", "application/json")
+        .withBody("[]")
+        .withFixedDelay(3000)));
+    config.getCdsClient().setRequestDeadline(300);
+
+    long startTime = System.nanoTime();
+    assertNull(client.post("{}"));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+    assertTrue(elapsed >= 300 && elapsed < 2000, "took " + elapsed + " ms");
+    assertEquals(1, meterRegistry.get("crd.cds.client.deadline.exceeded").counter().count());
+    assertEquals(1, meterRegistry.get("crd.cds.client.requests").tag("outcome", "deadline").timer().count());
+    // the aborted connection went back to the pool
+    assertEquals(0, leased());
+  }
+}
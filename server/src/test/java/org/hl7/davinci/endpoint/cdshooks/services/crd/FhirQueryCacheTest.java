@@ -0,0 +1,92 @@
+package org.hl7.davinci.endpoint.cdshooks.services.crd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.cdshooks.FhirAuthorization;
+import org.hl7.davinci.endpoint.config.FhirQueryCacheConfig;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.hl7.davinci.r4.crdhook.ordersign.OrderSignContext;
+import org.hl7.davinci.r4.crdhook.ordersign.OrderSignRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class FhirQueryCacheTest {
+
+  private static final String FHIR_SERVER = "http://localhost:9089/";
+  private static final String QUERY = "Coverage?patient=pat1234";
+
+  private FhirQueryCache buildCache(int ttl, int maxEntries, MeterRegistry meterRegistry) {
+    FhirQueryCacheConfig cacheConfig = new FhirQueryCacheConfig();
+    cacheConfig.setTtl(ttl);
+    cacheConfig.setMaxEntries(maxEntries);
+    YamlConfig config = new YamlConfig();
+    config.setFhirQueryCache(cacheConfig);
+    FhirQueryCache cache = new FhirQueryCache();
+    ReflectionTestUtils.setField(cache, "myConfig", config);
+    ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+    cache.init();
+    return cache;
+  }
+
+  private OrderSignRequest request(String patientId, String subject, String token) {
+    OrderSignRequest request = new OrderSignRequest();
+    request.setFhirServer(FHIR_SERVER);
+    OrderSignContext context = new OrderSignContext();
+    context.setPatientId(patientId);
+    request.setContext(context);
+    if (token != null) {
+      FhirAuthorization authorization = new FhirAuthorization();
+      authorization.setSubject(subject);
+      authorization.setAccessToken(token);
+      authorization.setScope("patient/*.read");
+      request.setFhirAuthorization(authorization);
+    }
+    return request;
+  }
+
+  private String key(OrderSignRequest request) {
+    return FhirQueryCache.key(FHIR_SERVER, "GET", QUERY, "", request);
+  }
+
+  @Test
+  public void testKeyIsScopedToPatientAndAuthorization() {
+    String key = key(request("pat1234", "practitioner1", "token1"));
+    assertEquals(key, key(request("pat1234", "practitioner1", "token1")));
+    assertNotEquals(key, key(request("pat5678", "practitioner1", "token1")));
+    assertNotEquals(key, key(request("pat1234", "practitioner2", "token1")));
+    assertNotEquals(key, key(request("pat1234", "practitioner1", "token2")));
+    assertNotEquals(key, key(request("pat1234", null, null)));
+  }
+
+  @Test
+  public void testHitMissAndExpiry() throws InterruptedException {
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    FhirQueryCache cache = buildCache(50, 10, meterRegistry);
+    String key = key(request("pat1234", "practitioner1", "token1"));
+
+    assertNull(cache.get(key));
+    cache.put(key, "{\"resourceType\":\"Bundle\"}");
+    assertEquals("{\"resourceType\":\"Bundle\"}", cache.get(key));
+    Thread.sleep(100);
+    assertNull(cache.get(key));
+
+    assertEquals(1.0, meterRegistry.counter("crd.fhir.query.cache", "result", "hit").count());
+    assertEquals(2.0, meterRegistry.counter("crd.fhir.query.cache", "result", "miss").count());
+  }
+
+  @Test
+  public void testSizeIsBounded() {
+    FhirQueryCache cache = buildCache(60000, 3, new SimpleMeterRegistry());
+    for (int i = 0; i < 10; i++) {
+      cache.put("key" + i, "body" + i);
+    }
+    assertEquals(3, cache.size());
+    assertNull(cache.get("key0"));
+    assertEquals("body9", cache.get("key9"));
+  }
+}
@@ -0,0 +1,78 @@
+package org.hl7.davinci.endpoint.cdshooks.services.crd.r4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Coverage;
+import org.hl7.fhir.r4.model.DeviceRequest;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class BundleIndexTest {
+
+  static final Logger logger = LoggerFactory.getLogger(BundleIndexTest.class);
+
+  private Bundle buildBundle(int patients) {
+    Bundle prefetch = new Bundle();
+    Bundle nested = new Bundle();
+    for (int i = 0; i < patients; i++) {
+      Patient patient = new Patient();
+      patient.setId("Patient/pat" + i);
+      nested.addEntry().setResource(patient);
+      Coverage coverage = new Coverage();
+      coverage.setId("cov" + i);
+      nested.addEntry().setResource(coverage);
+    }
+    DeviceRequest deviceRequest = new DeviceRequest();
+    deviceRequest.setId("devreq1");
+    prefetch.addEntry().setResource(deviceRequest);
+    prefetch.addEntry().setResource(nested);
+    return prefetch;
+  }
+
+  @Test
+  public void testLookups() {
+    Bundle bundle = buildBundle(3);
+    BundleIndex index = new BundleIndex(bundle);
+
+    assertEquals("DeviceRequest", index.getById("devreq1").fhirType());
+    assertEquals("cov1", index.get("Coverage", "cov1").getIdElement().getIdPart());
+    assertNull(index.get("Patient", "cov1"));
+    assertNull(index.getById(null));
+    assertEquals("cov0", index.getFirst("Coverage").getIdElement().getIdPart());
+    assertEquals(3, index.getResources(Patient.class).size());
+
+    // relative, absolute and bare references all resolve
+    assertSame(index.get("Patient", "pat2"), index.findReferenced(Patient.class, "Patient/pat2").get(0));
+    assertSame(index.get("Patient", "pat2"),
+        index.findReferenced(Patient.class, "http://localhost:8080/fhir/Patient/pat2").get(0));
+    assertSame(index.get("Patient", "pat2"), index.findReferenced(Patient.class, "pat2").get(0));
+    assertTrue(index.findReferenced(Patient.class, "Patient/missing").isEmpty());
+    assertTrue(index.findReferenced(Patient.class, null).isEmpty());
+  }
+
+  @Test
+  public void testLookupThroughput() {
+    int patients = 5000;
+    Bundle bundle = buildBundle(patients);
+
+    long startTime = System.nanoTime();
+    BundleIndex index = new BundleIndex(bundle);
+    int found = 0;
+    for (int i = 0; i < patients; i++) {
+      found += index.findReferenced(Patient.class, "Patient/pat" + i).size();
+      if (index.get("Coverage", "cov" + i) != null) {
+        found++;
+      }
+    }
+    long elapsed = System.nanoTime() - startTime;
+    logger.info("BundleIndexTest: indexed " + index.size() + " resources and ran " + (patients * 2)
+        + " lookups in " + (elapsed / 1000000) + " ms");
+    assertEquals(patients * 2, found);
+  }
+}
@@ -0,0 +1,123 @@
+package org.hl7.davinci.endpoint.cdshooks.services.crd.r4;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Coverage;
+import org.hl7.fhir.r4.model.DeviceRequest;
+import org.hl7.fhir.r4.model.Reference;
+import org.hl7.fhir.r4.model.Resource;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ReferenceExtractionTest {
+
+  static final Logger logger = LoggerFactory.getLogger(ReferenceExtractionTest.class);
+
+  private final FhirContext ctx = new org.hl7.davinci.r4.FhirComponents().getFhirContext();
+
+  private DeviceRequest buildDeviceRequest(int notes) {
+    DeviceRequest deviceRequest = new DeviceRequest();
+    deviceRequest.setId("devreq1");
+    deviceRequest.setSubject(new Reference("Patient/pat1234"));
+    deviceRequest.setPerformer(new Reference("PractitionerRole/prarol1234"));
+    deviceRequest.setRequester(new Reference("Practitioner/pra1234"));
+    deviceRequest.addInsurance(new Reference("Coverage/cov1234"));
+    // a reference without a reference string, and nested elements that are not looked at
+    deviceRequest.setEncounter(new Reference().setDisplay("Office visit"));
+    deviceRequest.setCode(new CodeableConcept().setText("Home oxygen"));
+    for (int i = 0; i < notes; i++) {
+      deviceRequest.addNote().setText("note " + i).setAuthor(new Reference("Practitioner/pra" + i));
+    }
+    return deviceRequest;
+  }
+
+  private Coverage buildCoverage() {
+    Coverage coverage = new Coverage();
+    coverage.setId("cov1234");
+    coverage.setBeneficiary(new Reference("Patient/pat1234"));
+    coverage.addPayor(new Reference("Organization/org1234"));
+    return coverage;
+  }
+
+  private List<String> extractFromJson(Resource resource) {
+    List<String> references = new ArrayList<>();
+    for (Map.Entry<String, JsonElement> entry : new Gson().toJsonTree(resource).getAsJsonObject().entrySet()) {
+      FhirRequestProcessor.extractReferenceIds(references, entry.getValue());
+    }
+    return references;
+  }
+
+  /**
+   * The JSON walk reflects over the HAPI model and the JDK classes it holds, newer JDKs refuse that.
+   */
+  private boolean jsonWalkAvailable() {
+    try {
+      extractFromJson(buildCoverage());
+      return true;
+    } catch (RuntimeException e) {
+      logger.info("ReferenceExtractionTest: the JSON walk does not run on this JDK: " + e.getMessage());
+      return false;
+    }
+  }
+
+  private List<String> extract(Resource resource) {
+    List<String> references = new ArrayList<>();
+    FhirRequestProcessor.extractReferenceIds(references, resource, ctx);
+    return references;
+  }
+
+  @Test
+  public void testFindsTheSameReferencesAsTheJsonWalk() {
+    DeviceRequest deviceRequest = buildDeviceRequest(2);
+    // in the order of the elements in the resource definition
+    assertEquals(Arrays.asList("Patient/pat1234", "Practitioner/pra1234", "PractitionerRole/prarol1234",
+        "Coverage/cov1234"), extract(deviceRequest));
+    Coverage coverage = buildCoverage();
+    assertEquals(Arrays.asList("Patient/pat1234", "Organization/org1234"), extract(coverage));
+
+    assumeTrue(jsonWalkAvailable());
+    assertEquals(extractFromJson(deviceRequest), extract(deviceRequest));
+    assertEquals(extractFromJson(coverage), extract(coverage));
+  }
+
+  @Test
+  public void testExtractionThroughput() {
+    int iterations = 2000;
+    DeviceRequest deviceRequest = buildDeviceRequest(200);
+    Coverage coverage = buildCoverage();
+
+    extract(deviceRequest);
+    long startTime = System.nanoTime();
+    int found = 0;
+    for (int i = 0; i < iterations; i++) {
+      found += extract(deviceRequest).size() + extract(coverage).size();
+    }
+    long elapsed = System.nanoTime() - startTime;
+    logger.info("ReferenceExtractionTest: typed walk over " + iterations + " orders in " + (elapsed / 1000000)
+        + " ms");
+    assertEquals(iterations * 6, found);
+
+    // the JSON walk is slow enough to only run a tenth of the orders
+    assumeTrue(jsonWalkAvailable());
+    startTime = System.nanoTime();
+    int jsonFound = 0;
+    for (int i = 0; i < iterations / 10; i++) {
+      jsonFound += extractFromJson(deviceRequest).size() + extractFromJson(coverage).size();
+    }
+    long jsonElapsed = (System.nanoTime() - startTime) * 10;
+    logger.info("ReferenceExtractionTest: JSON walk over " + iterations + " orders in " + (jsonElapsed / 1000000)
+        + " ms (extrapolated)");
+    assertEquals(iterations / 10 * 6, jsonFound);
+  }
+}
@@ -0,0 +1,173 @@
+package org.hl7.davinci.endpoint.components;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hl7.davinci.PrefetchTemplateElement;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.hl7.davinci.r4.crdhook.ordersign.OrderSignContext;
+import org.hl7.davinci.r4.crdhook.ordersign.OrderSignRequest;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PrefetchHydratorTest {
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final YamlConfig config = new YamlConfig();
+  private PrefetchExecutor prefetchExecutor;
+
+  // what the stub EHR saw, the queries are "<key>:<milliseconds to answer>"
+  private final Set<String> started = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  /**
+   * Answers every query with a Patient after the delay in the query, without an EHR.
+   */
+  private class SlowHydrator extends PrefetchHydrator {
+    SlowHydrator() {
+      super(null, request(), null, null, prefetchExecutor);
+    }
+
+    @Override
+    IBaseResource fetch(String query) {
+      started.add(query);
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(Long.parseLong(query.substring(query.indexOf(':') + 1)));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        running.decrementAndGet();
+      }
+      return new Patient().setId(query.substring(0, query.indexOf(':')));
+    }
+  }
+
+  private static OrderSignRequest request() {
+    OrderSignContext context = new OrderSignContext();
+    context.setDraftOrders(new Bundle());
+    OrderSignRequest request = new OrderSignRequest();
+    request.setContext(context);
+    return request;
+  }
+
+  private void start(int threads, int width, int deadline, int queryTimeout) {
+    config.getPrefetch().setThreads(threads);
+    config.getPrefetch().setWidth(width);
+    config.getPrefetch().setDeadline(deadline);
+    config.getPrefetch().setQueryTimeout(queryTimeout);
+    prefetchExecutor = new PrefetchExecutor();
+    ReflectionTestUtils.setField(prefetchExecutor, "myConfig", config);
+    ReflectionTestUtils.setField(prefetchExecutor, "meterRegistry", meterRegistry);
+    prefetchExecutor.init();
+  }
+
+  @AfterEach
+  public void stop() {
+    prefetchExecutor.close();
+  }
+
+  private static Map<PrefetchTemplateElement, String> queries(String... queries) {
+    Map<PrefetchTemplateElement, String> elements = new LinkedHashMap<>();
+    for (String query : queries) {
+      elements.put(new PrefetchTemplateElement(query.substring(0, query.indexOf(':')), Patient.class, query), query);
+    }
+    return elements;
+  }
+
+  private static Set<String> keys(Map<PrefetchTemplateElement, IBaseResource> results) {
+    Set<String> keys = ConcurrentHashMap.newKeySet();
+    results.keySet().forEach(element -> keys.add(element.getKey()));
+    return keys;
+  }
+
+  private long count(String outcome) {
+    return meterRegistry.get("crd.prefetch.queries").tag("outcome", outcome).timer().count();
+  }
+
+  private void awaitQueries(long count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (meterRegistry.find("crd.prefetch.queries").timers().stream().mapToLong(timer -> timer.count()).sum()
+        < count && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testQueriesRunConcurrentlyUpToTheWidth() throws InterruptedException {
+    start(8, 2, 5000, 5000);
+
+    long startTime = System.nanoTime();
+    Map<PrefetchTemplateElement, IBaseResource> results = new SlowHydrator()
+        .fetchParallel(queries("a:200", "b:200", "c:200", "d:200"));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+    assertEquals(Set.of("a", "b", "c", "d"), keys(results));
+    assertEquals(2, maxRunning.get());
+    // two rounds of two queries
+    assertTrue(elapsed >= 400 && elapsed < 1500, "took " + elapsed + " ms");
+    awaitQueries(4);
+    assertEquals(4, count("success"));
+  }
+
+  @Test
+  public void testDeadlineReturnsPartialResults() throws InterruptedException {
+    start(8, 4, 300, 5000);
+
+    long startTime = System.nanoTime();
+    Map<PrefetchTemplateElement, IBaseResource> results = new SlowHydrator()
+        .fetchParallel(queries("fast:10", "slow:1000"));
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+    assertEquals(Set.of("fast"), keys(results));
+    assertTrue(elapsed < 800, "took " + elapsed + " ms");
+    // the slow query keeps its slot until it is done, then counts as past the deadline
+    awaitQueries(2);
+    assertEquals(1, count("success"));
+    assertEquals(1, count("deadline"));
+  }
+
+  @Test
+  public void testQueuedQueriesAreDroppedAtTheDeadline() throws InterruptedException {
+    // one thread, so the second query waits in the shared queue
+    start(1, 4, 300, 5000);
+
+    Map<PrefetchTemplateElement, IBaseResource> results = new SlowHydrator()
+        .fetchParallel(queries("slow:800", "queued:10"));
+
+    assertTrue(results.isEmpty());
+    awaitQueries(2);
+    Thread.sleep(200);
+    assertEquals(Set.of("slow:800"), started);
+    assertEquals(2, count("deadline"));
+  }
+
+  @Test
+  public void testQueryTimeoutStartsWhenTheQueryRuns() throws InterruptedException {
+    // the second query waits 250 ms for the thread, which does not count against its 400 ms
+    start(1, 2, 5000, 400);
+
+    Map<PrefetchTemplateElement, IBaseResource> results = new SlowHydrator()
+        .fetchParallel(queries("first:250", "second:250", "late:1000"));
+
+    assertEquals(Set.of("first", "second"), keys(results));
+    awaitQueries(3);
+    assertEquals(2, count("success"));
+    assertEquals(1, count("timeout"));
+  }
+}
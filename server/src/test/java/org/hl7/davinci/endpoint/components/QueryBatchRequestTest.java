@@ -0,0 +1,106 @@
+package org.hl7.davinci.endpoint.components;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import ca.uhn.fhir.context.FhirContext;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import org.hl7.davinci.r4.FhirComponents;
+import org.hl7.davinci.r4.crdhook.CrdPrefetch;
+import org.hl7.davinci.r4.crdhook.ordersign.OrderSignContext;
+import org.hl7.davinci.r4.crdhook.ordersign.OrderSignRequest;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Coverage;
+import org.hl7.fhir.r4.model.DeviceRequest;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Practitioner;
+import org.hl7.fhir.r4.model.Reference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class QueryBatchRequestTest {
+
+  private final FhirComponents fhirComponents = new FhirComponents();
+  private final FhirContext ctx = fhirComponents.getFhirContext();
+
+  private WireMockServer ehr;
+
+  @BeforeEach
+  public void startEhr() {
+    ehr = new WireMockServer(wireMockConfig().dynamicPort());
+    ehr.start();
+  }
+
+  @AfterEach
+  public void stopEhr() {
+    ehr.stop();
+  }
+
+  private DeviceRequest buildOrder(String id, String requester) {
+    DeviceRequest deviceRequest = new DeviceRequest();
+    deviceRequest.setId(id);
+    deviceRequest.setSubject(new Reference("Patient/pat1"));
+    deviceRequest.setRequester(new Reference("Practitioner/" + requester));
+    deviceRequest.addInsurance(new Reference("Coverage/cov1"));
+    return deviceRequest;
+  }
+
+  private Bundle buildBatchResponse() {
+    Bundle response = new Bundle();
+    response.setType(Bundle.BundleType.BATCHRESPONSE);
+    response.addEntry().setResource(new Patient().setId("pat1"));
+    response.addEntry().setResource(new Practitioner().setId("pra1"));
+    response.addEntry().setResource(new Practitioner().setId("pra2"));
+    // the Coverage is asked for with a search, which comes back as a nested searchset
+    Bundle coverages = new Bundle();
+    coverages.setType(Bundle.BundleType.SEARCHSET);
+    coverages.addEntry().setResource(new Coverage().setId("cov1"));
+    response.addEntry().setResource(coverages);
+    return response;
+  }
+
+  @Test
+  public void testDraftOrdersShareOneQueryBatch() {
+    ehr.stubFor(post(urlEqualTo("/")).willReturn(aResponse()
+        .withHeader("Content-Type", "application/fhir+json")
+        .withBody(ctx.newJsonParser().encodeResourceToString(buildBatchResponse()))));
+
+    DeviceRequest first = buildOrder("devreq1", "pra1");
+    DeviceRequest second = buildOrder("devreq2", "pra2");
+    Bundle draftOrders = new Bundle();
+    draftOrders.addEntry().setResource(first);
+    draftOrders.addEntry().setResource(second);
+    OrderSignContext context = new OrderSignContext();
+    context.setDraftOrders(draftOrders);
+    OrderSignRequest request = new OrderSignRequest();
+    request.setContext(context);
+    request.setFhirServer("http://localhost:" + ehr.port());
+    CrdPrefetch prefetch = new CrdPrefetch();
+
+    new QueryBatchRequest(fhirComponents).performQueryBatchRequest(request, prefetch);
+
+    // one request with every reference once
+    ehr.verify(1, postRequestedFor(urlEqualTo("/")));
+    Bundle batch = ctx.newJsonParser().parseResource(Bundle.class,
+        ehr.findAll(postRequestedFor(urlEqualTo("/"))).get(0).getBodyAsString());
+    List<String> urls = batch.getEntry().stream().map(entry -> entry.getRequest().getUrl())
+        .collect(Collectors.toList());
+    assertEquals(4, urls.size());
+    assertEquals("Patient/pat1", urls.get(0));
+
+    // and the response fanned out to both orders
+    assertEquals("pat1", first.getSubject().getResource().getIdElement().getIdPart());
+    assertSame(first.getSubject().getResource(), second.getSubject().getResource());
+    assertEquals("cov1", second.getInsuranceFirstRep().getResource().getIdElement().getIdPart());
+    assertEquals(4, prefetch.getDeviceRequestBundle().getEntry().size());
+  }
+}
@@ -0,0 +1,58 @@
+package org.hl7.davinci.endpoint.cql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import org.cqframework.cql.elm.execution.Library;
+import org.hl7.davinci.endpoint.cql.r4.CqlExecutionContextBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CompiledLibraryCacheTest {
+
+  private static final String LIBRARY_PATH = "src/test/resources/CDS-Library/";
+
+  private CqlRule loadRule() throws IOException {
+    HashMap<String, byte[]> cqlFiles = new HashMap<>();
+    cqlFiles.put("HomeOxygenTherapyRule-0.1.0.cql",
+        Files.readAllBytes(Paths.get(LIBRARY_PATH + "HomeOxygenTherapy/R4/files/HomeOxygenTherapyRule-0.1.0.cql")));
+    cqlFiles.put("FHIRHelpers-4.0.0.cql",
+        Files.readAllBytes(Paths.get(LIBRARY_PATH + "Shared/R4/files/FHIRHelpers-4.0.0.cql")));
+    return new CqlRule("HomeOxygenTherapyRule", cqlFiles, "R4");
+  }
+
+  private Library compile(CqlRule rule) {
+    return CqlExecutionContextBuilder.getExecutionContext(rule, new HashMap<>(), "http://localhost/")
+        .getCurrentLibrary();
+  }
+
+  @BeforeEach
+  public void clearCache() {
+    CompiledLibraryCache.clear();
+  }
+
+  @Test
+  public void testContentHashIsStable() throws IOException {
+    assertNotNull(loadRule().getContentHash(CqlExecutionContextBuilder.CQL_VERSION));
+    assertEquals(loadRule().getContentHash(CqlExecutionContextBuilder.CQL_VERSION),
+        loadRule().getContentHash(CqlExecutionContextBuilder.CQL_VERSION));
+  }
+
+  @Test
+  public void testLibraryReusedUntilCleared() throws IOException {
+    Library first = compile(loadRule());
+    Library second = compile(loadRule());
+    assertNotNull(first);
+    assertSame(first, second);
+
+    CompiledLibraryCache.clear();
+    assertNotSame(first, compile(loadRule()));
+  }
+}
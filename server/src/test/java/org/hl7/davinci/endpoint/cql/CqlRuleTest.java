@@ -0,0 +1,66 @@
+package org.hl7.davinci.endpoint.cql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import org.cqframework.cql.cql2elm.LibraryManager;
+import org.cqframework.cql.cql2elm.ModelManager;
+import org.hl7.davinci.endpoint.cql.r4.CqlExecutionContextBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencds.cqf.cql.engine.execution.Context;
+
+public class CqlRuleTest {
+
+  private static final String RULE_CQL = "library Rule version '1.0.0'\n"
+      + "using FHIR version '4.0.0'\n"
+      + "include FHIRHelpers version '4.0.0' called FHIRHelpers\n"
+      + "define \"Answer\": 42\n";
+
+  @TempDir
+  Path rulePath;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    CompiledLibraryCache.clear();
+    Files.write(rulePath.resolve("Rule-1.0.0.cql"), RULE_CQL.getBytes(StandardCharsets.UTF_8));
+    Files.copy(Paths.get("src/test/resources/CDS-Library/Shared/R4/files/FHIRHelpers-4.0.0.cql"),
+        rulePath.resolve("FHIRHelpers-4.0.0.cql"));
+  }
+
+  private void writeElm() throws Exception {
+    ModelManager modelManager = new ModelManager();
+    LibraryManager libraryManager = new LibraryManager(modelManager);
+    libraryManager.getLibrarySourceLoader().registerProvider(new CqlRule(rulePath.toString(), "R4")
+        .getRawCqlLibrarySourceProvider(CqlExecutionContextBuilder.CQL_VERSION));
+    Files.write(rulePath.resolve("Rule-1.0.0.xml"),
+        CqlExecution.translateToXml(RULE_CQL, libraryManager, modelManager).getBytes(StandardCharsets.UTF_8));
+    Files.write(rulePath.resolve("FHIRHelpers-4.0.0.xml"), CqlExecution.toXml(libraryManager.getTranslatedLibraries()
+        .get("FHIRHelpers").getLibrary()).getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testRuleWithoutElmIsNotPrecompiled() {
+    assertFalse(new CqlRule(rulePath.toString(), "R4").isPrecompiled());
+  }
+
+  @Test
+  public void testPrecompiledRuleEvaluates() throws Exception {
+    writeElm();
+    CqlRule cqlRule = new CqlRule(rulePath.toString(), "R4");
+    assertTrue(cqlRule.isPrecompiled());
+
+    Context context = CqlExecutionContextBuilder.getExecutionContext(cqlRule, new HashMap<>(), "http://localhost/");
+    assertEquals("Rule", context.getCurrentLibrary().getIdentifier().getId());
+    assertEquals(42, context.resolveExpressionRef("Answer").evaluate(context));
+  }
+}
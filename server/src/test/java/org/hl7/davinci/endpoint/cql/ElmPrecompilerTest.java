@@ -0,0 +1,114 @@
+package org.hl7.davinci.endpoint.cql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.hl7.davinci.endpoint.cql.r4.CqlExecutionContextBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ElmPrecompilerTest {
+
+  private static final String MAIN = "library Sample version '0.1.0'\n"
+      + "using FHIR version '4.0.0'\n"
+      + "include Helper version '0.1.0' called Helper\n"
+      + "define \"Answer\": Helper.\"Base\" + 1\n";
+  private static final String HELPER = "library Helper version '0.1.0'\n"
+      + "using FHIR version '4.0.0'\n"
+      + "define \"Base\": 41\n";
+
+  @TempDir
+  Path elmCache;
+
+  private ElmPrecompiler buildPrecompiler() {
+    YamlConfig config = new YamlConfig();
+    config.setElmCachePath(elmCache.toString());
+    ElmPrecompiler precompiler = new ElmPrecompiler();
+    ReflectionTestUtils.setField(precompiler, "config", config);
+    return precompiler;
+  }
+
+  private static CqlRule buildRule() {
+    HashMap<String, byte[]> cqlFiles = new HashMap<>();
+    cqlFiles.put("Sample-0.1.0.cql", MAIN.getBytes(StandardCharsets.UTF_8));
+    cqlFiles.put("Helper-0.1.0.cql", HELPER.getBytes(StandardCharsets.UTF_8));
+    return new CqlRule("Sample", cqlFiles, "R4");
+  }
+
+  private static Set<String> fileNames(File folder) {
+    Set<String> names = new TreeSet<>();
+    File[] files = folder.listFiles();
+    for (File file : files == null ? new File[0] : files) {
+      names.add(file.getName());
+    }
+    return names;
+  }
+
+  @AfterEach
+  public void clearCache() {
+    CompiledLibraryCache.clear();
+  }
+
+  @Test
+  public void testCorruptElmIsTranslatedAgain() throws IOException {
+    ElmPrecompiler precompiler = buildPrecompiler();
+    CqlRule rule = buildRule();
+
+    String contentHash = precompiler.precompile((topic, fhirVersion) -> rule, "Sample", "R4");
+    assertNotNull(contentHash);
+    File folder = elmCache.resolve(contentHash).toFile();
+    assertEquals(new TreeSet<>(Set.of("Helper-0.1.0.xml", "Sample-0.1.0.xml")), fileNames(folder));
+
+    // a torn file from an earlier run
+    File main = new File(folder, "Sample-0.1.0.xml");
+    Files.write(main.toPath(), "<library".getBytes(StandardCharsets.UTF_8));
+    CompiledLibraryCache.clear();
+    assertEquals(contentHash, precompiler.precompile((topic, fhirVersion) -> rule, "Sample", "R4"));
+    assertTrue(CompiledLibraryCache.contains(CompiledLibraryCache.key(contentHash, "Sample", "0.1.0")));
+    assertNotNull(CqlExecution.readXmlElm(Files.readAllBytes(main.toPath())));
+  }
+
+  @Test
+  public void testFolderIsNotMarkedCompleteWithoutItsIncludes() throws IOException {
+    ElmPrecompiler precompiler = buildPrecompiler();
+    CqlRule rule = buildRule();
+    String contentHash = rule.getContentHash(CqlExecutionContextBuilder.CQL_VERSION);
+    // the included library can not be written where it belongs
+    File blocked = elmCache.resolve(contentHash).resolve("Helper-0.1.0.xml").toFile();
+    assertTrue(blocked.mkdirs());
+    Files.write(new File(blocked, "in-the-way").toPath(), new byte[] { 1 });
+
+    // the libraries are still in the cache, only the folder is incomplete
+    assertEquals(contentHash, precompiler.precompile((topic, fhirVersion) -> rule, "Sample", "R4"));
+    assertTrue(CompiledLibraryCache.contains(CompiledLibraryCache.key(contentHash, "Sample", "0.1.0")));
+    assertFalse(new File(blocked.getParentFile(), "Sample-0.1.0.xml").exists());
+  }
+
+  @Test
+  public void testRetiredRulesAreDeleted() {
+    ElmPrecompiler precompiler = buildPrecompiler();
+    CqlRule rule = buildRule();
+    String contentHash = precompiler.precompile((topic, fhirVersion) -> rule, "Sample", "R4");
+    assertTrue(elmCache.resolve("retired").toFile().mkdirs());
+
+    precompiler.retain(Collections.singleton(contentHash));
+    assertEquals(Set.of(contentHash), fileNames(elmCache.toFile()));
+    precompiler.retain(Collections.emptySet());
+    assertTrue(fileNames(elmCache.toFile()).isEmpty());
+  }
+}
@@ -0,0 +1,64 @@
+package org.hl7.davinci.endpoint.cql;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ElmTranslationCacheTest {
+
+  private static final String CQL = "library Sample version '0.1.0'\n"
+      + "define \"Answer\": 42\n";
+
+  private ElmTranslationCache buildCache(MeterRegistry meterRegistry) {
+    ElmTranslationCache cache = new ElmTranslationCache();
+    ReflectionTestUtils.setField(cache, "config", new YamlConfig());
+    ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+    cache.init();
+    return cache;
+  }
+
+  private byte[] bytes(String cql) {
+    return cql.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testTranslatesOnceAndKeepsEtagStable() {
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ElmTranslationCache cache = buildCache(meterRegistry);
+
+    ElmTranslationCache.TranslatedElm first = cache.get(null, "Sample", "R4", "Sample-0.1.0.cql", bytes(CQL));
+    ElmTranslationCache.TranslatedElm second = cache.get(null, "Sample", "R4", "Sample-0.1.0.cql", bytes(CQL));
+    assertSame(first, second);
+    assertTrue(new String(first.getElm(), StandardCharsets.UTF_8).contains("\"Answer\""));
+    assertTrue(first.getEtag().startsWith("\"") && first.getEtag().endsWith("\""));
+    assertEquals(1, cache.size());
+
+    assertEquals(1.0, meterRegistry.counter("crd.elm.translation.cache", "result", "hit").count());
+    assertEquals(1.0, meterRegistry.counter("crd.elm.translation.cache", "result", "miss").count());
+  }
+
+  @Test
+  public void testChangedSourceIsTranslatedAgain() {
+    ElmTranslationCache cache = buildCache(new SimpleMeterRegistry());
+
+    ElmTranslationCache.TranslatedElm first = cache.get(null, "Sample", "R4", "Sample-0.1.0.cql", bytes(CQL));
+    ElmTranslationCache.TranslatedElm changed = cache.get(null, "Sample", "R4", "Sample-0.1.0.cql",
+        bytes(CQL.replace("42", "43")));
+    assertNotEquals(first.getEtag(), changed.getEtag());
+    assertEquals(1, cache.size());
+
+    assertNull(cache.get(null, "Sample", "R4", "Broken-0.1.0.cql", bytes("library Broken define")));
+    assertEquals(1, cache.size());
+  }
+}
@@ -0,0 +1,75 @@
+package org.hl7.davinci.endpoint.database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class RequestLogStorageTest {
+
+  @Autowired
+  private RequestRepository requestRepository;
+
+  private static byte[] buildRequestBody() {
+    StringBuilder body = new StringBuilder("{\"hook\":\"order-sign\",\"context\":{\"draftOrders\":{\"entry\":[");
+    for (int i = 0; i < 50; i++) {
+      body.append(i == 0 ? "" : ",").append("{\"resource\":{\"resourceType\":\"DeviceRequest\",\"id\":\"devreq")
+          .append(i).append("\",\"subject\":{\"reference\":\"Patient/pat1234\"}}}");
+    }
+    return body.append("]}}}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testPayloadIsCompressed() {
+    byte[] requestBody = buildRequestBody();
+    RequestLogPayload payload = new RequestLogPayload(requestBody);
+
+    assertTrue(payload.getCompressedRequestBody().length < requestBody.length / 4);
+    assertEquals(requestBody.length, payload.getRequestBodyLength());
+    assertArrayEquals(requestBody, payload.getRequestBody());
+    assertArrayEquals(new byte[0], new RequestLogPayload(new byte[0]).getRequestBody());
+    assertNull(RequestLogPayload.decompress(new byte[] { 1, 2, 3 }, 10));
+  }
+
+  @Test
+  public void testLogsAreListedWithoutTheirPayload() {
+    byte[] requestBody = buildRequestBody();
+    RequestLog older = new RequestLog(requestBody, 1000);
+    older.setHookType("order-sign");
+    older.setCode("E0424");
+    RequestLog newer = new RequestLog("{}".getBytes(StandardCharsets.UTF_8), 2000);
+    newer = requestRepository.save(newer);
+    older = requestRepository.save(older);
+
+    List<RequestLogSummary> summaries = requestRepository.findLogs();
+    assertTrue(summaries.size() >= 2);
+    RequestLogSummary summary = summaries.stream().filter(log -> log.getTimestamp() == 1000).findFirst().get();
+    assertEquals(older.getId(), summary.getId());
+    assertEquals("order-sign", summary.getHookType());
+    assertEquals("E0424", summary.getCode());
+    // newest first
+    assertTrue(summaries.indexOf(summary) > summaries.indexOf(
+        summaries.stream().filter(log -> log.getTimestamp() == 2000).findFirst().get()));
+
+    Optional<RequestLogPayload> payload = requestRepository.findPayload(older.getId());
+    assertTrue(payload.isPresent());
+    assertArrayEquals(requestBody, payload.get().getRequestBody());
+    assertFalse(requestRepository.findPayload(-1).isPresent());
+
+    requestRepository.delete(older);
+    requestRepository.delete(newer);
+  }
+}
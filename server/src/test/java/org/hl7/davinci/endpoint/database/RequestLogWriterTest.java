@@ -0,0 +1,122 @@
+package org.hl7.davinci.endpoint.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.davinci.endpoint.config.RequestLogConfig;
+import org.hl7.davinci.endpoint.config.YamlConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RequestLogWriterTest {
+
+  /**
+   * Collects the batches instead of writing them, optionally holding the writer thread until released.
+   */
+  static class RecordingRequestService implements RequestService {
+    final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    final List<RequestLog> written = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch release;
+
+    RecordingRequestService(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public Iterable<RequestLog> createAll(Iterable<RequestLog> rules) {
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      int count = 0;
+      for (RequestLog log : rules) {
+        written.add(log);
+        count++;
+      }
+      batchSizes.add(count);
+      return rules;
+    }
+
+    public Iterable<RequestLog> findAll() { return written; }
+
+    public RequestLog findById(Long id) { return null; }
+
+    public RequestLog create(RequestLog rule) { return rule; }
+
+    public RequestLog edit(RequestLog rule) { return rule; }
+
+    public void deleteById(Long id) { }
+
+    public void logAll() { }
+  }
+
+  private RequestLogWriter buildWriter(RequestLogConfig logConfig, RequestService requestService,
+                                       MeterRegistry meterRegistry) {
+    YamlConfig config = new YamlConfig();
+    config.setRequestLog(logConfig);
+    RequestLogWriter writer = new RequestLogWriter();
+    ReflectionTestUtils.setField(writer, "myConfig", config);
+    ReflectionTestUtils.setField(writer, "requestService", requestService);
+    ReflectionTestUtils.setField(writer, "meterRegistry", meterRegistry);
+    writer.init();
+    return writer;
+  }
+
+  @Test
+  public void testLogsAreWrittenInBatches() {
+    RequestLogConfig logConfig = new RequestLogConfig();
+    logConfig.setBatchSize(50);
+    logConfig.setFlushInterval(50);
+    RecordingRequestService requestService = new RecordingRequestService(new CountDownLatch(0));
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RequestLogWriter writer = buildWriter(logConfig, requestService, meterRegistry);
+
+    for (int i = 0; i < 120; i++) {
+      assertTrue(writer.submit(new RequestLog(new byte[0], i)));
+    }
+    writer.close();
+
+    assertEquals(120, requestService.written.size());
+    assertTrue(requestService.batchSizes.stream().allMatch(size -> size <= 50));
+    assertEquals(0, writer.getQueueDepth());
+    assertEquals(120.0, meterRegistry.counter("crd.requestlog.written").count());
+  }
+
+  @Test
+  public void testDropWhenQueueIsFull() {
+    RequestLogConfig logConfig = new RequestLogConfig();
+    logConfig.setQueueCapacity(2);
+    logConfig.setBatchSize(1);
+    logConfig.setFlushInterval(50);
+    logConfig.setOverflow(RequestLogConfig.OVERFLOW_DROP);
+    CountDownLatch release = new CountDownLatch(1);
+    RecordingRequestService requestService = new RecordingRequestService(release);
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RequestLogWriter writer = buildWriter(logConfig, requestService, meterRegistry);
+
+    // the writer holds at most one log while blocked, the queue two more
+    int queued = 0;
+    for (int i = 0; i < 10; i++) {
+      if (writer.submit(new RequestLog(new byte[0], i))) {
+        queued++;
+      }
+    }
+    assertFalse(queued == 10);
+    assertEquals(10 - queued, (int) meterRegistry.counter("crd.requestlog.dropped").count());
+
+    release.countDown();
+    writer.close();
+    assertEquals(queued, requestService.written.size());
+  }
+}
@@ -0,0 +1,87 @@
+package org.hl7.davinci.endpoint.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.hl7.davinci.endpoint.database.FhirResource;
+import org.hl7.davinci.endpoint.database.FhirResourceCriteria;
+import org.hl7.davinci.endpoint.database.RuleMapping;
+import org.junit.jupiter.api.Test;
+
+public class FileStoreGenerationTest {
+
+  private FhirResource resource(String type, String id, String name, String topic) {
+    return new FhirResource().setId(id).setFhirVersion("R4").setResourceType(type).setName(name).setTopic(topic)
+        .setFilename(type + "-R4-" + name + ".json").setUrl("http://example.org/" + type + "/" + id);
+  }
+
+  private FhirResourceCriteria criteria(String type) {
+    return new FhirResourceCriteria().setFhirVersion("R4").setResourceType(type);
+  }
+
+  @Test
+  public void testLookupsMatchRepositoryQueries() {
+    FileStoreGeneration.Builder builder = new FileStoreGeneration.Builder();
+    builder.addRule(new RuleMapping().setPayer("cms").setCodeSystem("hcpcs").setCode("E0424").setFhirVersion("R4")
+        .setTopic("HomeOxygenTherapy").setRuleFile("HomeOxygenTherapyRule-0.1.0.cql"));
+    builder.addFhirResource(resource("questionnaire", "HomeOxygenTherapyAdditional", "HomeOxygenTherapyAdditional",
+        "HomeOxygenTherapy"));
+    builder.addFhirResource(resource("library", "HomeOxygenTherapyPrepopulation", "HomeOxygenTherapyPrepopulation",
+        "HomeOxygenTherapy"));
+    builder.addFhirResource(resource("library", "FHIRHelpers", "FHIRHelpers", "Shared"));
+    FileStoreGeneration generation = builder.build(7);
+
+    assertEquals(7, generation.getId());
+    assertEquals(1, generation.getRuleIndex().find("cms", "hcpcs", "E0424", "R4").size());
+    assertEquals(3, generation.getFhirResources().size());
+    // ordered by topic then id, like FhirResourceRepository.findAll()
+    assertEquals("HomeOxygenTherapyAdditional", generation.getFhirResources().get(0).getId());
+    assertEquals("FHIRHelpers", generation.getFhirResources().get(2).getId());
+
+    assertEquals(1, generation.findById(criteria("library").setId("FHIRHelpers")).size());
+    assertTrue(generation.findById(criteria("library").setId("fhirhelpers")).isEmpty());
+    assertTrue(generation.findById(criteria("questionnaire").setId("FHIRHelpers")).isEmpty());
+    // name and topic are compared against the lower cased column
+    assertEquals(1, generation.findByName(criteria("library").setName("fhirhelpers")).size());
+    assertEquals(2, generation.findByTopic(criteria("library").setTopic("homeoxygentherapy")).size()
+        + generation.findByTopic(criteria("questionnaire").setTopic("homeoxygentherapy")).size());
+    assertEquals(1, generation.findByUrl(criteria("library").setUrl("http://example.org/library/FHIRHelpers")).size());
+    assertTrue(generation.findById(new FhirResourceCriteria().setId("FHIRHelpers")).isEmpty());
+  }
+
+  @Test
+  public void testBuilderReplacesDuplicatesAndLeavesPublishedGenerationAlone() {
+    FileStoreGeneration.Builder builder = new FileStoreGeneration.Builder();
+    builder.addFhirResource(resource("valueset", "2.16.840.1.113762.1.4.1219.35", "Old", "VSACValueSets"));
+    FileStoreGeneration published = builder.build(1);
+
+    builder.addFhirResource(resource("valueset", "2.16.840.1.113762.1.4.1219.35", "New", "VSACValueSets"));
+    assertTrue(builder.containsFhirResource("R4", "valueset", "2.16.840.1.113762.1.4.1219.35"));
+    assertEquals(1, builder.getFhirResourceCount());
+    FileStoreGeneration next = builder.build(2);
+
+    assertEquals("Old", published.getFhirResources().get(0).getName());
+    assertEquals("New", next.getFhirResources().get(0).getName());
+  }
+
+  @Test
+  public void testAssembledQuestionnairesAreBounded() {
+    FileStoreGeneration generation = new FileStoreGeneration.Builder().build(1);
+    generation.putAssembledQuestionnaire("q1|R4|http://localhost:8090/", new byte[] { 1 }, 2);
+    generation.putAssembledQuestionnaire("q2|R4|http://localhost:8090/", new byte[] { 2 }, 2);
+    assertEquals(1, generation.getAssembledQuestionnaire("q1|R4|http://localhost:8090/")[0]);
+    generation.putAssembledQuestionnaire("q3|R4|http://localhost:8090/", new byte[] { 3 }, 2);
+
+    // the least recently used one makes room
+    assertEquals(2, generation.getAssembledQuestionnaireCount());
+    assertNull(generation.getAssembledQuestionnaire("q2|R4|http://localhost:8090/"));
+    assertEquals(1, generation.getAssembledQuestionnaire("q1|R4|http://localhost:8090/")[0]);
+    assertEquals(3, generation.getAssembledQuestionnaire("q3|R4|http://localhost:8090/")[0]);
+    // off
+    generation.putAssembledQuestionnaire("q4|R4|http://localhost:8090/", new byte[] { 4 }, 0);
+    assertNull(generation.getAssembledQuestionnaire("q4|R4|http://localhost:8090/"));
+    // a new generation starts without any
+    assertEquals(0, new FileStoreGeneration.Builder().build(2).getAssembledQuestionnaireCount());
+  }
+}
@@ -0,0 +1,129 @@
+package org.hl7.davinci.endpoint.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.EntityManagerFactory;
+
+import org.hl7.davinci.endpoint.Application;
+import org.hl7.davinci.endpoint.database.RuleMapping;
+import org.hl7.davinci.endpoint.database.RuleMappingRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Application.class)
+@Import(IncrementalReloadTest.FailingTransactions.class)
+public class IncrementalReloadTest {
+
+  @Autowired
+  private FileStore fileStore;
+
+  @Autowired
+  private RuleMappingRepository lookupTable;
+
+  private static volatile boolean databaseDown = false;
+
+  /**
+   * The JPA transaction manager, failing to start transactions while the database is down.
+   */
+  @TestConfiguration
+  static class FailingTransactions {
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+      JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory);
+      return new PlatformTransactionManager() {
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+          if (databaseDown) {
+            throw new CannotCreateTransactionException("database is down");
+          }
+          return transactionManager.getTransaction(definition);
+        }
+
+        public void commit(TransactionStatus status) {
+          transactionManager.commit(status);
+        }
+
+        public void rollback(TransactionStatus status) {
+          transactionManager.rollback(status);
+        }
+      };
+    }
+  }
+
+  @Test
+  public void unchangedLibraryIsCarriedOver() {
+    fileStore.reload(true);
+    List<RuleMapping> rules = fileStore.findAllRules();
+    long rows = lookupTable.count();
+    ReloadReport full = fileStore.getLastReloadReport();
+    assertTrue(full.isFull());
+    assertEquals("success", full.getOutcome());
+
+    fileStore.reload();
+    ReloadReport incremental = fileStore.getLastReloadReport();
+    assertFalse(incremental.isFull());
+    assertEquals(full.getGeneration() + 1, incremental.getGeneration());
+    assertTrue(incremental.getAdded().isEmpty());
+    assertTrue(incremental.getChanged().isEmpty());
+    assertTrue(incremental.getRemoved().isEmpty());
+    assertFalse(incremental.getUnchanged().isEmpty());
+
+    // same rules, in the generation and in the table
+    assertEquals(rules.size(), fileStore.findAllRules().size());
+    assertEquals(rows, lookupTable.count());
+  }
+
+  @Test
+  public void changedTopicsAreReloadedIncrementally() {
+    fileStore.reload(true);
+    ReloadReport full = fileStore.getLastReloadReport();
+    int rules = fileStore.findAllRules().size();
+
+    fileStore.reloadTopics(Collections.singleton(full.getUnchanged().get(0)));
+    ReloadReport incremental = fileStore.getLastReloadReport();
+    assertEquals("success", incremental.getOutcome());
+    assertFalse(incremental.isFull());
+    assertEquals(full.getUnchanged(), incremental.getUnchanged());
+    assertEquals(rules, fileStore.findAllRules().size());
+  }
+
+  @Test
+  public void failedDatabaseKeepsGeneration() {
+    fileStore.reload(true);
+    ReloadReport published = fileStore.getLastReloadReport();
+    int rules = fileStore.findAllRules().size();
+    long rows = lookupTable.count();
+
+    databaseDown = true;
+    try {
+      fileStore.reload(true);
+    } catch (CannotCreateTransactionException e) {
+      // reported below
+    } finally {
+      databaseDown = false;
+    }
+
+    // the failure is reported against the generation that is still published, rows and all
+    ReloadReport failed = fileStore.getLastReloadReport();
+    assertEquals("failure", failed.getOutcome());
+    assertEquals(published.getGeneration(), failed.getGeneration());
+    assertEquals(rules, fileStore.findAllRules().size());
+    assertEquals(rows, lookupTable.count());
+  }
+}
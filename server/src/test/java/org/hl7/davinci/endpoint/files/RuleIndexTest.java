@@ -0,0 +1,72 @@
+package org.hl7.davinci.endpoint.files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hl7.davinci.endpoint.database.RuleMapping;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class RuleIndexTest {
+
+  static final Logger logger = LoggerFactory.getLogger(RuleIndexTest.class);
+
+  private static final int TOPICS = 50;
+  private static final int CODES_PER_TOPIC = 200;
+  private static final String[] PAYERS = { "cms", "anthem", "aetna", "humana", "cigna" };
+
+  private List<RuleMapping> buildMappings() {
+    List<RuleMapping> mappings = new ArrayList<>();
+    for (int topic = 0; topic < TOPICS; topic++) {
+      for (int code = 0; code < CODES_PER_TOPIC; code++) {
+        for (String payer : PAYERS) {
+          mappings.add(new RuleMapping().setPayer(payer).setCodeSystem("hcpcs").setCode("E" + topic + "-" + code)
+              .setFhirVersion("R4").setTopic("Topic" + topic).setRuleFile("Topic" + topic + "Rule.cql"));
+        }
+      }
+    }
+    return mappings;
+  }
+
+  @Test
+  public void testLookups() {
+    RuleIndex index = new RuleIndex(buildMappings());
+    assertEquals(TOPICS * CODES_PER_TOPIC * PAYERS.length, index.size());
+
+    List<RuleMapping> rules = index.find("aetna", "hcpcs", "E7-42", "R4");
+    assertEquals(1, rules.size());
+    assertEquals("Topic7", rules.get(0).getTopic());
+
+    assertTrue(index.find("aetna", "hcpcs", "E7-42", "STU3").isEmpty());
+    assertTrue(index.find("aetna", "cpt", "E7-42", "R4").isEmpty());
+    assertTrue(index.find(null, "hcpcs", "E7-42", "R4").isEmpty());
+
+    assertEquals(CODES_PER_TOPIC * PAYERS.length, index.findByTopic("Topic3", "R4").size());
+    assertTrue(index.findByTopic("Topic3", "STU3").isEmpty());
+  }
+
+  @Test
+  public void testLookupThroughput() {
+    RuleIndex index = new RuleIndex(buildMappings());
+
+    int lookups = 0;
+    int found = 0;
+    long startTime = System.nanoTime();
+    for (int topic = 0; topic < TOPICS; topic++) {
+      for (int code = 0; code < CODES_PER_TOPIC; code++) {
+        for (String payer : PAYERS) {
+          found += index.find(payer, "hcpcs", "E" + topic + "-" + code, "R4").size();
+          lookups++;
+        }
+      }
+    }
+    long elapsed = System.nanoTime() - startTime;
+    logger.info("RuleIndexTest: " + lookups + " lookups over " + index.size() + " rules in "
+        + (elapsed / 1000000) + " ms (" + (elapsed / lookups) + " ns per lookup)");
+    assertEquals(lookups, found);
+  }
+}
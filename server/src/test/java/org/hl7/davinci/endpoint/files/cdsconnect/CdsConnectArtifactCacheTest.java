@@ -0,0 +1,105 @@
+package org.hl7.davinci.endpoint.files.cdsconnect;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+public class CdsConnectArtifactCacheTest {
+
+  private static final String RULE = "/sites/default/files/HomeOxygenTherapyRule-0.1.0.cql";
+  private static final String HELPERS = "/sites/default/files/FHIRHelpers-4.0.0.cql";
+
+  private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  // stands in for CDS Connect, answering conditional requests by ETag
+  private final Map<String, byte[]> server = new HashMap<>();
+  private int downloads = 0;
+  private int conditionalRequests = 0;
+
+  private CdsConnectArtifactCache.Entry fetch(String path, CdsConnectArtifactCache.Entry previous) {
+    byte[] content = server.get(path);
+    if (content == null) {
+      return null;
+    }
+    String etag = "\"" + new String(content, StandardCharsets.UTF_8).hashCode() + "\"";
+    if (previous != null) {
+      conditionalRequests++;
+      if (etag.equals(previous.getEtag())) {
+        return null;
+      }
+    }
+    downloads++;
+    return new CdsConnectArtifactCache.Entry(content, etag, -1);
+  }
+
+  private static byte[] bytes(String content) {
+    return content.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private double count(String result) {
+    return meterRegistry.get("crd.cdsconnect.artifacts").tag("result", result).counter().count();
+  }
+
+  @Test
+  public void testOnlyNewRevisionsAreRevalidated() {
+    server.put(RULE, bytes("library HomeOxygenTherapyRule version '0.1.0'"));
+    server.put(HELPERS, bytes("library FHIRHelpers version '4.0.0'"));
+    CdsConnectArtifactCache cache = new CdsConnectArtifactCache(1024, this::fetch, meterRegistry);
+
+    byte[] rule = cache.get(1, "1", RULE);
+    assertSame(rule, cache.get(1, "1", RULE));
+    cache.get(2, "1", HELPERS);
+    assertEquals(2, downloads);
+    assertEquals(1, count("hit"));
+    assertEquals(rule.length, meterRegistry.get("crd.cdsconnect.artifacts.saved").counter().count());
+
+    // a new revision of the rule artifact where the rule itself did not change
+    assertSame(rule, cache.get(1, "2", RULE));
+    assertEquals(1, conditionalRequests);
+    assertEquals(2, downloads);
+    assertEquals(1, count("revalidated"));
+
+    // a new revision that changed the rule
+    server.put(RULE, bytes("library HomeOxygenTherapyRule version '0.1.1'"));
+    assertArrayEquals(bytes("library HomeOxygenTherapyRule version '0.1.1'"), cache.get(1, "3", RULE));
+    assertEquals(3, downloads);
+    assertEquals(2, cache.size());
+
+    // the Shared artifact is gone after a reload
+    cache.retainNodes(Collections.singleton(1));
+    assertEquals(1, cache.size());
+    assertEquals(server.get(RULE).length, cache.getBytes());
+    assertNull(cache.get(3, "1", "/sites/default/files/Missing.cql"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedFilesAreEvicted() {
+    server.put(RULE, bytes("0123456789"));
+    server.put(HELPERS, bytes("abcdefghij"));
+    server.put("/sites/default/files/Other.cql", bytes("ABCDEFGHIJ"));
+    CdsConnectArtifactCache cache = new CdsConnectArtifactCache(20, this::fetch, meterRegistry);
+
+    cache.get(1, "1", RULE);
+    cache.get(2, "1", HELPERS);
+    cache.get(1, "1", RULE);
+    cache.get(3, "1", "/sites/default/files/Other.cql");
+    assertEquals(2, cache.size());
+    assertEquals(20, cache.getBytes());
+
+    // the helpers were used least recently, the rule is still cached
+    cache.get(1, "1", RULE);
+    assertEquals(3, downloads);
+    cache.get(2, "1", HELPERS);
+    assertEquals(4, downloads);
+  }
+}
@@ -0,0 +1,107 @@
+package org.hl7.davinci.endpoint.files.github;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitHubMirrorTest {
+
+  private static final String RULE = "CRD-DTR/HomeOxygenTherapy/R4/files/HomeOxygenTherapyRule-0.1.0.cql";
+  private static final String HELPERS = "CRD-DTR/Shared/R4/files/FHIRHelpers-4.0.0.cql";
+  private static final String EXAMPLE = "Examples/Shared/R4/files/FHIRHelpers-4.0.0.cql";
+
+  @TempDir
+  Path folder;
+
+  private static byte[] bytes(String content) {
+    return content.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void write(Path repository, String path, String content) throws IOException {
+    Path file = repository.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, bytes(content));
+  }
+
+  @Test
+  public void testBlobShaMatchesGit() {
+    // git hash-object of "hello\n"
+    assertEquals("ce013625030ba8dba906f756967f9e9ca394464a", GitHubMirror.blobSha(bytes("hello\n")));
+  }
+
+  @Test
+  public void testMirrorFolderDeduplicatesContent() throws IOException {
+    // stands in for the exploded branch zip
+    Path repository = folder.resolve("CDS-Library-master");
+    write(repository, RULE, "library HomeOxygenTherapyRule version '0.1.0'");
+    write(repository, HELPERS, "library FHIRHelpers version '4.0.0'");
+    write(repository, EXAMPLE, "library FHIRHelpers version '4.0.0'");
+    GitHubMirror mirror = new GitHubMirror(folder.resolve("mirror").toFile());
+
+    GitHubMirror.Manifest manifest = mirror.mirrorFolder(repository.toFile());
+
+    assertEquals(3, manifest.size());
+    assertEquals(2, manifest.getShas().size());
+    assertEquals(manifest.getSha(HELPERS), manifest.getSha(EXAMPLE));
+    assertArrayEquals(bytes("library HomeOxygenTherapyRule version '0.1.0'"), manifest.read(RULE));
+    assertEquals(Arrays.asList("CRD-DTR", "Examples"), manifest.list(""));
+    assertEquals(Arrays.asList("HomeOxygenTherapy", "Shared"), manifest.list("CRD-DTR/"));
+    assertEquals(Arrays.asList("FHIRHelpers-4.0.0.cql"), manifest.list("CRD-DTR/Shared/R4/files"));
+    assertNull(manifest.getFile("CRD-DTR/Missing/R4/files/Missing.cql"));
+  }
+
+  @Test
+  public void testMirrorTreeOnlyDownloadsNewBlobs() throws IOException {
+    Map<String, byte[]> repository = new HashMap<>();
+    repository.put(RULE, bytes("rule 1"));
+    repository.put(HELPERS, bytes("helpers"));
+    AtomicInteger downloads = new AtomicInteger();
+    Function<String, InputStream> fetch = path -> {
+      downloads.incrementAndGet();
+      return repository.containsKey(path) ? new ByteArrayInputStream(repository.get(path)) : null;
+    };
+    GitHubMirror mirror = new GitHubMirror(folder.resolve("mirror").toFile());
+
+    Map<String, String> tree = new HashMap<>();
+    repository.forEach((path, content) -> tree.put(path, GitHubMirror.blobSha(content)));
+    GitHubMirror.Manifest first = mirror.mirrorTree(tree, fetch);
+    assertEquals(2, downloads.get());
+
+    // unchanged files are served from the mirror, only the changed one is downloaded
+    repository.put(RULE, bytes("rule 2"));
+    tree.put(RULE, GitHubMirror.blobSha(repository.get(RULE)));
+    GitHubMirror.Manifest second = mirror.mirrorTree(tree, fetch);
+    assertEquals(3, downloads.get());
+    assertArrayEquals(bytes("rule 2"), second.read(RULE));
+
+    // the blob of the old rule goes once no manifest refers to it
+    File oldRule = first.getFile(RULE);
+    mirror.retain(first, second);
+    assertTrue(oldRule.isFile());
+    mirror.retain(second);
+    assertFalse(oldRule.isFile());
+    assertArrayEquals(bytes("helpers"), second.read(HELPERS));
+
+    tree.put(EXAMPLE, GitHubMirror.blobSha(bytes("missing")));
+    assertThrows(IOException.class, () -> mirror.mirrorTree(tree, fetch));
+  }
+}
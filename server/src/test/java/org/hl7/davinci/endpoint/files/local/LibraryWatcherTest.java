@@ -0,0 +1,63 @@
+package org.hl7.davinci.endpoint.files.local;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LibraryWatcherTest {
+
+  @TempDir
+  Path library;
+
+  @Test
+  public void testBurstOfChangesIsOneReload() throws IOException, InterruptedException {
+    Path resources = Files.createDirectories(library.resolve("HomeOxygenTherapy/R4/resources"));
+    Files.createDirectories(library.resolve("Shared/R4/files"));
+    Files.createDirectories(library.resolve(".git"));
+
+    BlockingQueue<Set<String>> reloads = new LinkedBlockingQueue<>();
+    LibraryWatcher watcher = new LibraryWatcher();
+    watcher.start(Collections.singletonList(library), 200, reloads::add);
+    try {
+      for (int i = 0; i < 5; i++) {
+        Files.write(resources.resolve("Questionnaire-R4-Test" + i + ".json"), "{}".getBytes(Charset.defaultCharset()));
+      }
+      Files.write(library.resolve("Shared/R4/files/FHIRHelpers-4.0.1.cql"), "library".getBytes(Charset.defaultCharset()));
+      Files.write(library.resolve(".git/index"), "ignored".getBytes(Charset.defaultCharset()));
+
+      Set<String> topics = reloads.poll(10, TimeUnit.SECONDS);
+      assertEquals(new TreeSet<>(Arrays.asList("HomeOxygenTherapy", "Shared")), topics);
+      assertNull(reloads.poll(1, TimeUnit.SECONDS));
+    } finally {
+      watcher.stop();
+    }
+  }
+
+  @Test
+  public void testTopicOf() throws IOException {
+    LibraryWatcher watcher = new LibraryWatcher();
+    watcher.start(Collections.singletonList(library), 200, topics -> { });
+    try {
+      assertEquals("HospitalBeds", watcher.topicOf(library.resolve("HospitalBeds/R4/files/Rule.cql")));
+      assertNull(watcher.topicOf(library.resolve(".github/workflows/ci.yml")));
+      assertNull(watcher.topicOf(library));
+      assertNull(watcher.topicOf(library.getParent()));
+    } finally {
+      watcher.stop();
+    }
+  }
+}
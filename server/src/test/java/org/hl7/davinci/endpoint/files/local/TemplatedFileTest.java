@@ -0,0 +1,77 @@
+package org.hl7.davinci.endpoint.files.local;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class TemplatedFileTest {
+
+  private static final String SERVER_PATH = "http://localhost:8090/fhir/R4/";
+
+  @TempDir
+  Path folder;
+
+  private File write(String name, String content) throws IOException {
+    return Files.write(folder.resolve(name), content.getBytes(Charset.defaultCharset())).toFile();
+  }
+
+  private String read(Resource resource) throws IOException {
+    try (InputStream inputStream = resource.getInputStream()) {
+      return IOUtils.toString(inputStream, Charset.defaultCharset());
+    }
+  }
+
+  @Test
+  public void testMarkersAreReplacedWhileStreaming() throws IOException {
+    String content = "<server-path>Library/a\", \"url\": \"<server-path>ValueSet/b\"<server-path><server-path>";
+    TemplatedFile templatedFile = TemplatedFile.split(write("Questionnaire-R4-a.json", content));
+    assertEquals(4, templatedFile.getMarkerCount());
+
+    Resource resource = templatedFile.open(SERVER_PATH);
+    String expected = content.replace(TemplatedFile.SERVER_PATH, SERVER_PATH);
+    assertEquals(expected, read(resource));
+    assertEquals(expected.getBytes(Charset.defaultCharset()).length, resource.contentLength());
+    // every stream starts over
+    assertEquals(expected, read(resource));
+
+    // byte by byte reads see the same content
+    StringBuilder single = new StringBuilder();
+    try (InputStream inputStream = resource.getInputStream()) {
+      for (int b = inputStream.read(); b >= 0; b = inputStream.read()) {
+        single.append((char) b);
+      }
+    }
+    assertEquals(expected, single.toString());
+  }
+
+  @Test
+  public void testFilesWithoutMarkersAreServedAsIs() throws IOException {
+    TemplatedFile templatedFile = TemplatedFile.split(write("Library-R4-b.json", "{ \"<server\": \"path>\" }"));
+    assertEquals(0, templatedFile.getMarkerCount());
+    assertTrue(templatedFile.open(SERVER_PATH) instanceof FileSystemResource);
+    assertEquals(0, TemplatedFile.split(write("empty.json", "")).getMarkerCount());
+  }
+
+  @Test
+  public void testChangedFileIsNotCurrent() throws IOException {
+    File file = write("ValueSet-R4-c.json", "<server-path>ValueSet/c");
+    TemplatedFile templatedFile = TemplatedFile.split(file);
+    assertTrue(templatedFile.isCurrent());
+
+    write("ValueSet-R4-c.json", "<server-path>ValueSet/c and more");
+    assertFalse(templatedFile.isCurrent());
+  }
+}
@@ -0,0 +1,47 @@
+package org.hl7.davinci.endpoint.vsac;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class RateLimiterTest {
+
+  @Test
+  public void testPermitsAreSpacedAcrossThreads() throws InterruptedException {
+    RateLimiter rateLimiter = new RateLimiter(20);
+    long startTime = System.nanoTime();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread thread = new Thread(() -> {
+        try {
+          for (int j = 0; j < 3; j++) {
+            rateLimiter.acquire();
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    // 12 permits at 20 per second, the first one is immediate
+    long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+    assertTrue(elapsedMillis >= 540, "took " + elapsedMillis + " ms");
+  }
+
+  @Test
+  public void testNoLimit() throws InterruptedException {
+    RateLimiter rateLimiter = new RateLimiter(0);
+    long startTime = System.nanoTime();
+    for (int i = 0; i < 1000; i++) {
+      rateLimiter.acquire();
+    }
+    assertTrue((System.nanoTime() - startTime) / 1000000 < 500);
+  }
+}
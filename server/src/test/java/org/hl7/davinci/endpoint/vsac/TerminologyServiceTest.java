@@ -0,0 +1,99 @@
+package org.hl7.davinci.endpoint.vsac;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.hl7.fhir.r4.model.BooleanType;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.jupiter.api.Test;
+import org.opencds.cqf.cql.engine.runtime.Code;
+import org.opencds.cqf.cql.engine.terminology.CodeSystemInfo;
+import org.opencds.cqf.cql.engine.terminology.ValueSetInfo;
+
+public class TerminologyServiceTest {
+
+  private static final String OXYGEN = "2.16.840.1.113762.1.4.1219.35";
+  private static final String OXYGEN_URL = ValueSetCache.VSAC_CANONICAL_BASE + OXYGEN;
+  private static final String SNOMED = "http://snomed.info/sct";
+  private static final String LOINC = "http://loinc.org";
+
+  private TerminologyService service() {
+    ValueSet valueSet = new ValueSet();
+    valueSet.setId(OXYGEN);
+    valueSet.setUrl(OXYGEN_URL);
+    valueSet.getExpansion().addContains().setSystem(SNOMED).setCode("46680005").setDisplay("Vital signs");
+    valueSet.getExpansion().addContains().setSystem(LOINC).setCode("2708-6").setDisplay("Oxygen saturation");
+    valueSet.getExpansion().addContains().setSystem(SNOMED).setCode("10828004").setDisplay("Positive");
+    return new TerminologyService(new ValueSetIndex(Arrays.asList(ValueSetExpansion.from(valueSet))));
+  }
+
+  private boolean result(Parameters parameters) {
+    return ((BooleanType) parameters.getParameter("result")).booleanValue();
+  }
+
+  @Test
+  public void testValidateCode() {
+    TerminologyService service = service();
+
+    Parameters found = service.validateCode(OXYGEN_URL, LOINC, "2708-6", null);
+    assertTrue(result(found));
+    assertEquals("Oxygen saturation", found.getParameter("display").primitiveValue());
+    // without a system the code matches in any of them
+    assertTrue(result(service.validateCode(OXYGEN_URL, null, "10828004", null)));
+    assertFalse(result(service.validateCode(OXYGEN_URL, LOINC, "10828004", null)));
+    assertFalse(result(service.validateCode(OXYGEN_URL, SNOMED, "2708-6", "Oxygen saturation")));
+    assertFalse(result(service.validateCode(OXYGEN_URL, LOINC, "2708-6", "Heart rate")));
+    // VSAC ValueSets are found by OID as well
+    assertTrue(result(service.validateCode("urn:oid:" + OXYGEN, SNOMED, "46680005", null)));
+    assertNull(service.validateCode(ValueSetCache.VSAC_CANONICAL_BASE + "2.16.840.1.113762.1.4.1219.36", SNOMED,
+        "46680005", null));
+  }
+
+  @Test
+  public void testTerminologyProvider() {
+    TerminologyService service = service();
+    ValueSetInfo valueSet = new ValueSetInfo().withId(OXYGEN_URL);
+
+    assertTrue(service.in(new Code().withSystem(SNOMED).withCode("46680005"), valueSet));
+    assertFalse(service.in(new Code().withSystem(SNOMED).withCode("2708-6"), valueSet));
+    assertEquals(3, ((List<Code>) service.expand(valueSet)).size());
+    assertThrows(IllegalArgumentException.class,
+        () -> service.in(new Code().withSystem(SNOMED).withCode("46680005"), new ValueSetInfo().withId("unknown")));
+  }
+
+  @Test
+  public void testCodesAreFoundThroughTheReverseIndex() {
+    // a second ValueSet where the code 10828004 is also a LOINC code, listed before the SNOMED one
+    ValueSet other = new ValueSet();
+    other.setId("2.16.840.1.113762.1.4.1219.36");
+    other.setUrl(ValueSetCache.VSAC_CANONICAL_BASE + "2.16.840.1.113762.1.4.1219.36");
+    other.getExpansion().addContains().setSystem(LOINC).setCode("10828004").setDisplay("Loinc display");
+    other.getExpansion().addContains().setSystem(SNOMED).setCode("10828004").setDisplay("Snomed display");
+    ValueSetIndex index = new ValueSetIndex(Arrays.asList(
+        ValueSetExpansion.from(other), service().findValueSet(OXYGEN_URL)));
+    TerminologyService service = new TerminologyService(index);
+
+    assertEquals(Arrays.asList(other.getUrl(), OXYGEN_URL), index.findValueSets(SNOMED, "10828004"));
+    assertEquals(Arrays.asList(other.getUrl()), index.findValueSets(LOINC, "10828004"));
+    assertEquals(Arrays.asList(other.getUrl(), OXYGEN_URL), index.findValueSets(null, "10828004"));
+    assertTrue(index.findValueSets(SNOMED, "2708-6").isEmpty());
+    assertTrue(index.findValueSets(null, "unknown").isEmpty());
+
+    // without a system the first concept of the expansion with the code wins
+    assertEquals("Loinc display", service.validateCode(other.getUrl(), null, "10828004", null)
+        .getParameter("display").primitiveValue());
+    // the display comes from the first ValueSet containing the code
+    assertEquals("Snomed display", service.lookup(new Code().withCode("10828004"),
+        new CodeSystemInfo().withId(SNOMED)).getDisplay());
+    assertEquals("Oxygen saturation", service.lookup(new Code().withCode("2708-6"),
+        new CodeSystemInfo().withId(LOINC)).getDisplay());
+    assertNull(service.lookup(new Code().withCode("2708-6"), new CodeSystemInfo().withId(SNOMED)));
+  }
+}
@@ -0,0 +1,102 @@
+package org.hl7.davinci.endpoint.vsac;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.hl7.fhir.r4.model.Enumerations.PublicationStatus;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ValueSetStoreTest {
+
+  private static final String OXYGEN = "2.16.840.1.113762.1.4.1219.35";
+  private static final String APNEA = "2.16.840.1.113762.1.4.1219.36";
+
+  @TempDir
+  Path folder;
+
+  private ValueSet valueSet(String oid, String name, String... codes) {
+    ValueSet valueSet = new ValueSet();
+    valueSet.setId(oid);
+    valueSet.setUrl(ValueSetCache.VSAC_CANONICAL_BASE + oid);
+    valueSet.setName(name);
+    valueSet.setStatus(PublicationStatus.ACTIVE);
+    for (String code : codes) {
+      valueSet.getExpansion().addContains().setSystem("http://snomed.info/sct").setVersion("2020-09")
+          .setCode(code).setDisplay("Display of " + code);
+    }
+    return valueSet;
+  }
+
+  @Test
+  public void testExpansionRoundTrips() {
+    ValueSet valueSet = ValueSetExpansion.from(valueSet(OXYGEN, "Oxygen", "1", "2")).toValueSet();
+
+    assertEquals(OXYGEN, valueSet.getIdElement().getIdPart());
+    assertEquals(ValueSetCache.VSAC_CANONICAL_BASE + OXYGEN, valueSet.getUrl());
+    assertEquals(PublicationStatus.ACTIVE, valueSet.getStatus());
+    assertEquals(2, valueSet.getExpansion().getTotal());
+    assertEquals("2", valueSet.getExpansion().getContains().get(1).getCode());
+    assertEquals("2020-09", valueSet.getExpansion().getContains().get(1).getVersion());
+    assertEquals("Display of 2", valueSet.getExpansion().getContains().get(1).getDisplay());
+  }
+
+  @Test
+  public void testStoreKeepsTheLatestExpansionAcrossReopens() throws IOException {
+    ValueSetStore store = new ValueSetStore(folder.toFile());
+    store.put(OXYGEN, ValueSetExpansion.from(valueSet(OXYGEN, "Old", "1")));
+    store.put(APNEA, ValueSetExpansion.from(valueSet(APNEA, "Apnea", "3")));
+    store.put(OXYGEN, ValueSetExpansion.from(valueSet(OXYGEN, "New", "1", "2")));
+
+    ValueSetStore reopened = new ValueSetStore(folder.toFile());
+    assertEquals(2, reopened.size());
+    assertEquals("New", reopened.get(OXYGEN).getName());
+    assertEquals(2, reopened.get(OXYGEN).size());
+    assertNull(reopened.get("2.16.840.1.113762.1.4.1219.37"));
+  }
+
+  @Test
+  public void testTornRecordIsDropped() throws IOException {
+    ValueSetStore store = new ValueSetStore(folder.toFile());
+    store.put(OXYGEN, ValueSetExpansion.from(valueSet(OXYGEN, "Oxygen", "1")));
+    File file = new File(folder.toFile(), ValueSetStore.FILE_NAME);
+    long intact = file.length();
+    store.put(APNEA, ValueSetExpansion.from(valueSet(APNEA, "Apnea", "3")));
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+
+    ValueSetStore reopened = new ValueSetStore(folder.toFile());
+    assertTrue(reopened.contains(OXYGEN));
+    assertFalse(reopened.contains(APNEA));
+    assertEquals(intact, file.length());
+    // appending after the cut works
+    reopened.put(APNEA, ValueSetExpansion.from(valueSet(APNEA, "Apnea", "3")));
+    assertTrue(new ValueSetStore(folder.toFile()).contains(APNEA));
+  }
+
+  @Test
+  public void testIndexAnswersMembership() {
+    ValueSetIndex index = new ValueSetIndex(Arrays.asList(
+        ValueSetExpansion.from(valueSet(OXYGEN, "Oxygen", "1", "2")),
+        ValueSetExpansion.from(valueSet(APNEA, "Apnea", "2", "3"))));
+
+    assertEquals(2, index.size());
+    assertEquals(4, index.getConceptCount());
+    assertEquals("Apnea", index.getById(APNEA).getName());
+    assertEquals("Oxygen", index.getByUrl(ValueSetCache.VSAC_CANONICAL_BASE + OXYGEN).getName());
+    assertTrue(index.contains(ValueSetCache.VSAC_CANONICAL_BASE + OXYGEN, "http://snomed.info/sct", "1"));
+    assertFalse(index.contains(ValueSetCache.VSAC_CANONICAL_BASE + APNEA, "http://snomed.info/sct", "1"));
+    assertFalse(index.contains(ValueSetCache.VSAC_CANONICAL_BASE + OXYGEN, "http://loinc.org", "1"));
+    assertEquals(2, index.findValueSets("http://snomed.info/sct", "2").size());
+  }
+}